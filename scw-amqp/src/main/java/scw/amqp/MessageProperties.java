@@ -24,6 +24,7 @@ public class MessageProperties implements Serializable, Cloneable {
 	private static final String RETRY_DELAY_MULTIPLE = "scw.retry.delay.multiple";
 	private static final String PUBLISH_ROUTING_KEY = "scw.publish.routingKey";
 	private static final String TRANSACTION_MESSAGE_CONFIRM_DELAY_KEY = "scw.transaction.message.confirm.delay";
+	private static final MathScriptEngine MATH_SCRIPT_ENGINE = new MathScriptEngine();
 
 	private String contentType;
 	private String contentEncoding;
@@ -301,9 +302,7 @@ public class MessageProperties implements Serializable, Cloneable {
 			return value.getAsLongValue();
 		}
 
-		MathScriptEngine mathScriptEngine = new MathScriptEngine();
-		mathScriptEngine.getResolvers().add(new MathScriptEngine.ObjectFieldScriptResolver(this));
-		NumberHolder value = mathScriptEngine.eval(script.toString());
+		NumberHolder value = MATH_SCRIPT_ENGINE.eval(script.toString(), this);
 		return value == null ? null : value.toBigDecimal().longValue();
 	}
 
@@ -0,0 +1,111 @@
+package scw.cloud;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 一个服务的实例快照，不可变，每次变更都会生成一个新的版本
+ *
+ * @author shuchaowen
+ *
+ * @param <T>
+ */
+public final class ServiceInstanceSnapshot<T extends ServiceInstance> {
+	private final String name;
+	private final long version;
+	private final Map<String, T> instanceMap;
+	private final List<ServiceInstance> instances;
+
+	private ServiceInstanceSnapshot(String name, long version, Map<String, T> instanceMap) {
+		this.name = name;
+		this.version = version;
+		this.instanceMap = Collections.unmodifiableMap(instanceMap);
+		this.instances = Collections.unmodifiableList(new ArrayList<ServiceInstance>(instanceMap.values()));
+	}
+
+	public static <T extends ServiceInstance> ServiceInstanceSnapshot<T> empty(String name) {
+		return new ServiceInstanceSnapshot<T>(name, 0, Collections.<String, T>emptyMap());
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * 版本号，每次变更加1
+	 *
+	 * @return
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	public List<ServiceInstance> getInstances() {
+		return instances;
+	}
+
+	public T getInstance(String id) {
+		return instanceMap.get(id);
+	}
+
+	public boolean isEmpty() {
+		return instanceMap.isEmpty();
+	}
+
+	public ServiceInstanceSnapshot<T> register(T instance) {
+		if (instanceMap.get(instance.getId()) == instance) {
+			return this;
+		}
+
+		Map<String, T> map = new LinkedHashMap<String, T>(instanceMap);
+		map.put(instance.getId(), instance);
+		return new ServiceInstanceSnapshot<T>(name, version + 1, map);
+	}
+
+	public ServiceInstanceSnapshot<T> deregister(String id) {
+		if (!instanceMap.containsKey(id)) {
+			return this;
+		}
+
+		Map<String, T> map = new LinkedHashMap<String, T>(instanceMap);
+		map.remove(id);
+		return new ServiceInstanceSnapshot<T>(name, version + 1, map);
+	}
+
+	/**
+	 * 使用新的实例列表替换，如果没有变化返回自身
+	 *
+	 * @param instances
+	 * @return
+	 */
+	public ServiceInstanceSnapshot<T> replace(Collection<? extends T> instances) {
+		Map<String, T> map = new LinkedHashMap<String, T>();
+		for (T instance : instances) {
+			map.put(instance.getId(), instance);
+		}
+
+		if (map.size() == instanceMap.size()) {
+			boolean changed = false;
+			for (Map.Entry<String, T> entry : map.entrySet()) {
+				if (instanceMap.get(entry.getKey()) != entry.getValue()) {
+					changed = true;
+					break;
+				}
+			}
+
+			if (!changed) {
+				return this;
+			}
+		}
+		return new ServiceInstanceSnapshot<T>(name, version + 1, map);
+	}
+
+	@Override
+	public String toString() {
+		return name + "@" + version + instances;
+	}
+}
@@ -17,48 +17,73 @@
 package scw.cloud;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
-import scw.core.utils.CollectionUtils;
+import scw.lang.Nullable;
 
+/**
+ * 每个服务保存一个不可变的{@link ServiceInstanceSnapshot}, 变更时替换整个快照，
+ * 所以{@link #getInstances(String)}只是一次读取不需要复制和加锁
+ * 
+ * @author shuchaowen
+ *
+ * @param <T>
+ */
 public class SimpleDiscoveryClient<T extends ServiceInstance> implements DiscoveryClient, ServiceRegistry<T> {
-	private final ConcurrentHashMap<String, Map<String, T>> instanceMap = new ConcurrentHashMap<String, Map<String, T>>();
+	private final ConcurrentHashMap<String, ServiceInstanceSnapshot<T>> snapshots = new ConcurrentHashMap<String, ServiceInstanceSnapshot<T>>();
 
 	public List<ServiceInstance> getInstances(String name) {
-		Map<String, T> serviceInstanceForService = instanceMap.get(name);
-		if (CollectionUtils.isEmpty(serviceInstanceForService)) {
-			return Collections.emptyList();
-		}
+		ServiceInstanceSnapshot<T> snapshot = getSnapshot(name);
+		return snapshot == null ? Collections.<ServiceInstance>emptyList() : snapshot.getInstances();
+	}
 
-		return new ArrayList<ServiceInstance>(serviceInstanceForService.values());
+	@Nullable
+	public ServiceInstanceSnapshot<T> getSnapshot(String name) {
+		return snapshots.get(name);
 	}
 
 	public List<String> getServices() {
-		return new ArrayList<String>(instanceMap.keySet());
+		List<String> services = new ArrayList<String>(snapshots.size());
+		for (ServiceInstanceSnapshot<T> snapshot : snapshots.values()) {
+			if (!snapshot.isEmpty()) {
+				services.add(snapshot.getName());
+			}
+		}
+		return services;
 	}
 
 	public void register(T instance) {
-		Map<String, T> serviceInstanceForService = instanceMap.get(instance.getName());
-		if (serviceInstanceForService == null) {
-			serviceInstanceForService = new LinkedHashMap<String, T>();
-			serviceInstanceForService.put(instance.getId(), instance);
-			instanceMap.putIfAbsent(instance.getName(), serviceInstanceForService);
-		} else {
-			serviceInstanceForService.put(instance.getId(), instance);
-			instanceMap.put(instance.getName(), serviceInstanceForService);
-		}
+		snapshots.compute(instance.getName(), (name, snapshot) -> {
+			return (snapshot == null ? ServiceInstanceSnapshot.<T>empty(name) : snapshot).register(instance);
+		});
 	}
 
 	public void deregister(T instance) {
-		Map<String, T> serviceInstanceForService = instanceMap.get(instance.getName());
-		if (serviceInstanceForService == null) {
-			return;
-		}
+		snapshots.computeIfPresent(instance.getName(), (name, snapshot) -> snapshot.deregister(instance.getId()));
+	}
+
+	/**
+	 * 使用新的实例列表替换一个服务的所有实例
+	 * 
+	 * @param name
+	 * @param instances
+	 * @return 替换后的快照
+	 */
+	protected ServiceInstanceSnapshot<T> replace(String name, Collection<? extends T> instances) {
+		return snapshots.compute(name, (key, snapshot) -> {
+			return (snapshot == null ? ServiceInstanceSnapshot.<T>empty(key) : snapshot).replace(instances);
+		});
+	}
 
-		serviceInstanceForService.remove(instance.getId());
+	/**
+	 * 移除一个服务
+	 * 
+	 * @param name
+	 */
+	protected void remove(String name) {
+		snapshots.remove(name);
 	}
 }
@@ -0,0 +1,117 @@
+package scw.context.circuitbreaker;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 熔断、舱壁隔离和超时的配置，方法上的配置优先于类上的配置<br/>
+ * 每个方法有独立的熔断器和舱壁
+ *
+ * @author shuchaowen
+ * @see CircuitBreakerMethodInterceptor
+ */
+@Target({ ElementType.METHOD, ElementType.TYPE })
+@Retention(RetentionPolicy.RUNTIME)
+@Inherited
+public @interface CircuitBreakerConfig {
+	/**
+	 * 是否开启熔断
+	 *
+	 * @return
+	 */
+	public boolean enable() default true;
+
+	/**
+	 * 滑动窗口的大小(调用次数)
+	 *
+	 * @return
+	 */
+	public int slidingWindowSize() default 100;
+
+	/**
+	 * 计算失败率前至少需要的调用次数
+	 *
+	 * @return
+	 */
+	public int minimumNumberOfCalls() default 10;
+
+	/**
+	 * 失败率阈值(百分比)
+	 *
+	 * @return
+	 */
+	public float failureRateThreshold() default 50;
+
+	/**
+	 * 超过此时间的调用视为慢调用(毫秒)，小于等于0表示不统计慢调用
+	 *
+	 * @return
+	 */
+	public long slowCallDuration() default 0;
+
+	/**
+	 * 慢调用率阈值(百分比)
+	 *
+	 * @return
+	 */
+	public float slowCallRateThreshold() default 100;
+
+	/**
+	 * 打开后多久进入半开状态(毫秒)
+	 *
+	 * @return
+	 */
+	public long waitDurationInOpenState() default 5000;
+
+	/**
+	 * 半开状态下放行的调用次数
+	 *
+	 * @return
+	 */
+	public int permittedNumberOfCallsInHalfOpenState() default 5;
+
+	/**
+	 * 最大并发数，小于等于0表示不限制
+	 *
+	 * @return
+	 */
+	public int maxConcurrentCalls() default 0;
+
+	/**
+	 * 并发已满时最多等待的时间(毫秒)
+	 *
+	 * @return
+	 */
+	public long maxWaitDuration() default 0;
+
+	/**
+	 * 超时时间(毫秒)，小于等于0表示不限制
+	 *
+	 * @return
+	 */
+	public long timeout() default 0;
+
+	/**
+	 * 超时后是否中断调用线程，默认只在调用结束后判断是否超时
+	 *
+	 * @return
+	 */
+	public boolean interruptOnTimeout() default false;
+
+	/**
+	 * 不计入失败的异常
+	 *
+	 * @return
+	 */
+	public Class<? extends Throwable>[] ignoreExceptions() default {};
+
+	/**
+	 * 失败后调用的实现，必须是被拦截类的子类
+	 *
+	 * @return
+	 */
+	public Class<?> fallback() default Void.class;
+}
@@ -0,0 +1,144 @@
+package scw.context.circuitbreaker;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import scw.aop.MethodInterceptor;
+import scw.aop.MethodInterceptorAccept;
+import scw.aop.interceptor.Bulkhead;
+import scw.aop.interceptor.CircuitBreaker;
+import scw.aop.interceptor.CircuitBreakerInterceptor;
+import scw.context.annotation.Provider;
+import scw.core.annotation.AnnotationUtils;
+import scw.core.reflect.MethodInvoker;
+import scw.instance.NoArgsInstanceFactory;
+import scw.lang.Nullable;
+
+/**
+ * 根据{@link CircuitBreakerConfig}实现熔断、舱壁隔离和超时<br/>
+ * 每个方法的配置、熔断器、舱壁和fallback只在第一次调用时解析，之后的调用直接使用
+ *
+ * @author shuchaowen
+ *
+ */
+@Provider
+public final class CircuitBreakerMethodInterceptor implements MethodInterceptor, MethodInterceptorAccept {
+	/**
+	 * 没有配置的方法
+	 */
+	private static final CircuitBreakerInterceptor NONE = new CircuitBreakerInterceptor(null, null, 0);
+
+	private final NoArgsInstanceFactory instanceFactory;
+	private final ConcurrentMap<Class<?>, ConcurrentMap<Method, CircuitBreakerInterceptor>> interceptorMap = new ConcurrentHashMap<Class<?>, ConcurrentMap<Method, CircuitBreakerInterceptor>>();
+	private final ConcurrentMap<Class<?>, Object> fallbackMap = new ConcurrentHashMap<Class<?>, Object>();
+
+	public CircuitBreakerMethodInterceptor(NoArgsInstanceFactory instanceFactory) {
+		this.instanceFactory = instanceFactory;
+	}
+
+	public boolean isAccept(MethodInvoker invoker, Object[] args) {
+		return getInterceptor(invoker) != null;
+	}
+
+	public Object intercept(MethodInvoker invoker, Object[] args) throws Throwable {
+		CircuitBreakerInterceptor interceptor = getInterceptor(invoker);
+		if (interceptor == null) {
+			return invoker.invoke(args);
+		}
+		return interceptor.intercept(invoker, args);
+	}
+
+	@Nullable
+	private CircuitBreakerInterceptor getInterceptor(MethodInvoker invoker) {
+		ConcurrentMap<Method, CircuitBreakerInterceptor> map = interceptorMap.get(invoker.getDeclaringClass());
+		if (map == null) {
+			map = new ConcurrentHashMap<Method, CircuitBreakerInterceptor>();
+			ConcurrentMap<Method, CircuitBreakerInterceptor> old = interceptorMap
+					.putIfAbsent(invoker.getDeclaringClass(), map);
+			if (old != null) {
+				map = old;
+			}
+		}
+
+		CircuitBreakerInterceptor interceptor = map.get(invoker.getMethod());
+		if (interceptor == null) {
+			interceptor = createInterceptor(invoker);
+			CircuitBreakerInterceptor old = map.putIfAbsent(invoker.getMethod(), interceptor);
+			if (old != null) {
+				interceptor = old;
+			}
+		}
+		return interceptor == NONE ? null : interceptor;
+	}
+
+	private CircuitBreakerInterceptor createInterceptor(MethodInvoker invoker) {
+		CircuitBreakerConfig config = AnnotationUtils.getAnnotation(CircuitBreakerConfig.class, invoker.getMethod(),
+				invoker.getDeclaringClass());
+		if (config == null) {
+			return NONE;
+		}
+
+		CircuitBreaker circuitBreaker = config.enable()
+				? new CircuitBreaker(config.slidingWindowSize(), config.minimumNumberOfCalls(),
+						config.failureRateThreshold(), config.slowCallDuration(), config.slowCallRateThreshold(),
+						config.waitDurationInOpenState(), config.permittedNumberOfCallsInHalfOpenState())
+				: null;
+		Bulkhead bulkhead = config.maxConcurrentCalls() > 0
+				? new Bulkhead(config.maxConcurrentCalls(), config.maxWaitDuration())
+				: null;
+		if (circuitBreaker == null && bulkhead == null && config.timeout() <= 0) {
+			return NONE;
+		}
+
+		CircuitBreakerInterceptor interceptor = new CircuitBreakerInterceptor(circuitBreaker, bulkhead,
+				config.timeout());
+		interceptor.setInterruptOnTimeout(config.interruptOnTimeout());
+		interceptor.setIgnoreExceptions(config.ignoreExceptions());
+		interceptor.setFallback(getFallback(config.fallback(), invoker.getMethod()));
+		return interceptor;
+	}
+
+	@Nullable
+	private Object getFallback(Class<?> fallbackClass, Method method) {
+		if (fallbackClass == Void.class) {
+			return null;
+		}
+
+		if (!method.getDeclaringClass().isAssignableFrom(fallbackClass)) {
+			throw new IllegalArgumentException("Fallback [" + fallbackClass.getName() + "] must be a subclass of ["
+					+ method.getDeclaringClass().getName() + "]: " + method);
+		}
+
+		Object fallback = fallbackMap.get(fallbackClass);
+		if (fallback == null) {
+			fallback = instanceFactory.getInstance(fallbackClass);
+			Object old = fallbackMap.putIfAbsent(fallbackClass, fallback);
+			if (old != null) {
+				fallback = old;
+			}
+		}
+		return fallback;
+	}
+
+	/**
+	 * 已经解析过的方法的熔断状态，可以用来暴露监控指标
+	 *
+	 * @return
+	 */
+	public Map<Method, CircuitBreakerInterceptor> getMetrics() {
+		Map<Method, CircuitBreakerInterceptor> metrics = new LinkedHashMap<Method, CircuitBreakerInterceptor>();
+		for (ConcurrentMap<Method, CircuitBreakerInterceptor> map : interceptorMap.values()) {
+			for (Entry<Method, CircuitBreakerInterceptor> entry : map.entrySet()) {
+				if (entry.getValue() != NONE) {
+					metrics.put(entry.getKey(), entry.getValue());
+				}
+			}
+		}
+		return Collections.unmodifiableMap(metrics);
+	}
+}
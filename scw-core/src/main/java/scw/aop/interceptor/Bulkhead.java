@@ -0,0 +1,73 @@
+package scw.aop.interceptor;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import scw.core.Assert;
+
+/**
+ * 基于信号量的舱壁隔离，限制同时执行的调用数量，在调用者线程中执行不需要切换线程
+ *
+ * @author shuchaowen
+ *
+ */
+public class Bulkhead {
+	private final int maxConcurrentCalls;
+	private final long maxWaitDuration;
+	private final Semaphore semaphore;
+	private final AtomicLong rejectedCalls = new AtomicLong();
+
+	/**
+	 * @param maxConcurrentCalls 最大并发数
+	 * @param maxWaitDuration    获取不到许可时最多等待的时间(毫秒)，小于等于0表示不等待
+	 */
+	public Bulkhead(int maxConcurrentCalls, long maxWaitDuration) {
+		Assert.requiredArgument(maxConcurrentCalls > 0, "maxConcurrentCalls");
+		this.maxConcurrentCalls = maxConcurrentCalls;
+		this.maxWaitDuration = maxWaitDuration;
+		this.semaphore = new Semaphore(maxConcurrentCalls, true);
+	}
+
+	/**
+	 * 获取许可，返回true后必须调用{@link #release()}
+	 *
+	 * @return
+	 * @throws InterruptedException
+	 */
+	public boolean tryAcquire() throws InterruptedException {
+		boolean acquired = maxWaitDuration > 0 ? semaphore.tryAcquire(maxWaitDuration, TimeUnit.MILLISECONDS)
+				: semaphore.tryAcquire();
+		if (!acquired) {
+			rejectedCalls.incrementAndGet();
+		}
+		return acquired;
+	}
+
+	public void release() {
+		semaphore.release();
+	}
+
+	public int getMaxConcurrentCalls() {
+		return maxConcurrentCalls;
+	}
+
+	public int getAvailableConcurrentCalls() {
+		return semaphore.availablePermits();
+	}
+
+	/**
+	 * 因为并发已满被拒绝的调用次数
+	 *
+	 * @return
+	 */
+	public long getNumberOfRejectedCalls() {
+		return rejectedCalls.get();
+	}
+
+	@Override
+	public String toString() {
+		return "Bulkhead[maxConcurrentCalls=" + maxConcurrentCalls + ", availableConcurrentCalls="
+				+ getAvailableConcurrentCalls() + ", rejectedCalls=" + getNumberOfRejectedCalls() + "]";
+	}
+}
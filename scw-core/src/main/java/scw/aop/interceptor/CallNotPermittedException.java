@@ -0,0 +1,15 @@
+package scw.aop.interceptor;
+
+/**
+ * 熔断器打开或舱壁已满时拒绝调用
+ *
+ * @author shuchaowen
+ *
+ */
+public class CallNotPermittedException extends RuntimeException {
+	private static final long serialVersionUID = 1L;
+
+	public CallNotPermittedException(String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,19 @@
+package scw.aop.interceptor;
+
+/**
+ * 调用超时
+ *
+ * @author shuchaowen
+ *
+ */
+public class CallTimeoutException extends RuntimeException {
+	private static final long serialVersionUID = 1L;
+
+	public CallTimeoutException(String message) {
+		super(message);
+	}
+
+	public CallTimeoutException(String message, Throwable cause) {
+		super(message, cause);
+	}
+}
@@ -0,0 +1,265 @@
+package scw.aop.interceptor;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import scw.core.Assert;
+
+/**
+ * 熔断器<br/>
+ * 使用基于调用次数的滑动窗口统计失败率和慢调用率，任意一个达到阈值后打开，等待一段时间后进入半开状态，放行少量请求以决定关闭还是重新打开<br/>
+ * 所有的判断都在调用者线程中完成，状态的修改是一个很短的同步块
+ *
+ * @author shuchaowen
+ *
+ */
+public class CircuitBreaker {
+	public enum State {
+		/**
+		 * 正常放行
+		 */
+		CLOSED,
+		/**
+		 * 拒绝所有请求
+		 */
+		OPEN,
+		/**
+		 * 放行有限的请求用于试探
+		 */
+		HALF_OPEN
+	}
+
+	private final int slidingWindowSize;
+	private final int minimumNumberOfCalls;
+	private final float failureRateThreshold;
+	private final long slowCallDurationThreshold;
+	private final float slowCallRateThreshold;
+	private final long waitDurationInOpenState;
+	private final int permittedNumberOfCallsInHalfOpenState;
+
+	/**
+	 * 环形窗口，每个元素是一次调用的结果
+	 */
+	private final byte[] window;
+	private int windowIndex;
+	private int bufferedCalls;
+	private int failedCalls;
+	private int slowCalls;
+
+	private volatile State state = State.CLOSED;
+	private long openedTime;
+	private int halfOpenPermittedCalls;
+	private int halfOpenCalls;
+	private int halfOpenFailedCalls;
+	private int halfOpenSlowCalls;
+
+	private final AtomicLong notPermittedCalls = new AtomicLong();
+
+	private static final byte SUCCESS = 0;
+	private static final byte FAILURE = 1;
+	private static final byte SLOW = 2;
+
+	/**
+	 * @param slidingWindowSize                     滑动窗口的大小(调用次数)
+	 * @param minimumNumberOfCalls                  计算失败率前至少需要的调用次数
+	 * @param failureRateThreshold                  失败率阈值(百分比)
+	 * @param slowCallDuration                      超过此时间的调用视为慢调用(毫秒)，小于等于0表示不统计慢调用
+	 * @param slowCallRateThreshold                 慢调用率阈值(百分比)
+	 * @param waitDurationInOpenState               打开后多久进入半开状态(毫秒)
+	 * @param permittedNumberOfCallsInHalfOpenState 半开状态下放行的调用次数
+	 */
+	public CircuitBreaker(int slidingWindowSize, int minimumNumberOfCalls, float failureRateThreshold,
+			long slowCallDuration, float slowCallRateThreshold, long waitDurationInOpenState,
+			int permittedNumberOfCallsInHalfOpenState) {
+		Assert.requiredArgument(slidingWindowSize > 0, "slidingWindowSize");
+		Assert.requiredArgument(minimumNumberOfCalls > 0, "minimumNumberOfCalls");
+		Assert.requiredArgument(failureRateThreshold > 0 && failureRateThreshold <= 100, "failureRateThreshold");
+		Assert.requiredArgument(slowCallRateThreshold > 0 && slowCallRateThreshold <= 100, "slowCallRateThreshold");
+		Assert.requiredArgument(waitDurationInOpenState >= 0, "waitDurationInOpenState");
+		Assert.requiredArgument(permittedNumberOfCallsInHalfOpenState > 0, "permittedNumberOfCallsInHalfOpenState");
+		this.slidingWindowSize = slidingWindowSize;
+		this.minimumNumberOfCalls = Math.min(minimumNumberOfCalls, slidingWindowSize);
+		this.failureRateThreshold = failureRateThreshold;
+		this.slowCallDurationThreshold = slowCallDuration > 0 ? TimeUnit.MILLISECONDS.toNanos(slowCallDuration) : 0;
+		this.slowCallRateThreshold = slowCallRateThreshold;
+		this.waitDurationInOpenState = TimeUnit.MILLISECONDS.toNanos(waitDurationInOpenState);
+		this.permittedNumberOfCallsInHalfOpenState = permittedNumberOfCallsInHalfOpenState;
+		this.window = new byte[slidingWindowSize];
+	}
+
+	public State getState() {
+		return state;
+	}
+
+	/**
+	 * 是否允许本次调用，返回true后必须调用{@link #onSuccess(long)}或{@link #onError(long)}
+	 *
+	 * @return
+	 */
+	public boolean tryAcquirePermission() {
+		if (state == State.CLOSED) {
+			return true;
+		}
+
+		synchronized (this) {
+			if (state == State.OPEN) {
+				if (System.nanoTime() - openedTime < waitDurationInOpenState) {
+					notPermittedCalls.incrementAndGet();
+					return false;
+				}
+				transitionTo(State.HALF_OPEN);
+			}
+
+			if (state == State.HALF_OPEN) {
+				if (halfOpenPermittedCalls >= permittedNumberOfCallsInHalfOpenState) {
+					notPermittedCalls.incrementAndGet();
+					return false;
+				}
+				halfOpenPermittedCalls++;
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * @param duration 调用耗时(纳秒)
+	 */
+	public void onSuccess(long duration) {
+		record(slowCallDurationThreshold > 0 && duration >= slowCallDurationThreshold ? SLOW : SUCCESS);
+	}
+
+	/**
+	 * @param duration 调用耗时(纳秒)
+	 */
+	public void onError(long duration) {
+		record(FAILURE);
+	}
+
+	private synchronized void record(byte outcome) {
+		if (state == State.HALF_OPEN) {
+			halfOpenCalls++;
+			if (outcome == FAILURE) {
+				halfOpenFailedCalls++;
+			} else if (outcome == SLOW) {
+				halfOpenSlowCalls++;
+			}
+
+			if (halfOpenCalls >= permittedNumberOfCallsInHalfOpenState) {
+				transitionTo(exceedsThreshold(halfOpenCalls, halfOpenFailedCalls, halfOpenSlowCalls) ? State.OPEN
+						: State.CLOSED);
+			}
+			return;
+		}
+
+		if (state == State.OPEN) {
+			// 打开之前已经开始的调用
+			return;
+		}
+
+		if (bufferedCalls == slidingWindowSize) {
+			byte old = window[windowIndex];
+			if (old == FAILURE) {
+				failedCalls--;
+			} else if (old == SLOW) {
+				slowCalls--;
+			}
+		} else {
+			bufferedCalls++;
+		}
+
+		window[windowIndex] = outcome;
+		windowIndex = (windowIndex + 1) % slidingWindowSize;
+		if (outcome == FAILURE) {
+			failedCalls++;
+		} else if (outcome == SLOW) {
+			slowCalls++;
+		}
+
+		if (bufferedCalls >= minimumNumberOfCalls && exceedsThreshold(bufferedCalls, failedCalls, slowCalls)) {
+			transitionTo(State.OPEN);
+		}
+	}
+
+	private boolean exceedsThreshold(int calls, int failed, int slow) {
+		return rate(failed, calls) >= failureRateThreshold
+				|| (slowCallDurationThreshold > 0 && rate(slow, calls) >= slowCallRateThreshold);
+	}
+
+	private static float rate(int count, int calls) {
+		return calls == 0 ? 0 : count * 100f / calls;
+	}
+
+	private void transitionTo(State state) {
+		if (state == State.OPEN) {
+			openedTime = System.nanoTime();
+		} else if (state == State.CLOSED) {
+			resetWindow();
+		}
+
+		halfOpenPermittedCalls = 0;
+		halfOpenCalls = 0;
+		halfOpenFailedCalls = 0;
+		halfOpenSlowCalls = 0;
+		this.state = state;
+	}
+
+	private void resetWindow() {
+		windowIndex = 0;
+		bufferedCalls = 0;
+		failedCalls = 0;
+		slowCalls = 0;
+	}
+
+	/**
+	 * 强制关闭并清空统计
+	 */
+	public synchronized void reset() {
+		transitionTo(State.CLOSED);
+		notPermittedCalls.set(0);
+	}
+
+	/**
+	 * 滑动窗口中的失败率(百分比)
+	 *
+	 * @return 调用次数不足时返回-1
+	 */
+	public synchronized float getFailureRate() {
+		return bufferedCalls < minimumNumberOfCalls ? -1 : rate(failedCalls, bufferedCalls);
+	}
+
+	/**
+	 * 滑动窗口中的慢调用率(百分比)
+	 *
+	 * @return 调用次数不足时返回-1
+	 */
+	public synchronized float getSlowCallRate() {
+		return bufferedCalls < minimumNumberOfCalls ? -1 : rate(slowCalls, bufferedCalls);
+	}
+
+	public synchronized int getNumberOfBufferedCalls() {
+		return bufferedCalls;
+	}
+
+	public synchronized int getNumberOfFailedCalls() {
+		return failedCalls;
+	}
+
+	public synchronized int getNumberOfSlowCalls() {
+		return slowCalls;
+	}
+
+	/**
+	 * 因为熔断被拒绝的调用次数
+	 *
+	 * @return
+	 */
+	public long getNumberOfNotPermittedCalls() {
+		return notPermittedCalls.get();
+	}
+
+	@Override
+	public String toString() {
+		return "CircuitBreaker[state=" + state + ", failureRate=" + getFailureRate() + ", slowCallRate="
+				+ getSlowCallRate() + ", notPermittedCalls=" + getNumberOfNotPermittedCalls() + "]";
+	}
+}
@@ -0,0 +1,239 @@
+package scw.aop.interceptor;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import scw.aop.MethodInterceptor;
+import scw.core.reflect.MethodInvoker;
+import scw.core.reflect.ReflectionUtils;
+import scw.lang.Nullable;
+
+/**
+ * 熔断、舱壁隔离和超时的拦截器<br/>
+ * 和hystrix的线程池隔离不同，调用始终在调用者线程中执行，可以设置超时后中断调用者线程
+ *
+ * @author shuchaowen
+ *
+ */
+public class CircuitBreakerInterceptor implements MethodInterceptor {
+	private final CircuitBreaker circuitBreaker;
+	private final Bulkhead bulkhead;
+	private final long timeout;
+	private volatile boolean interruptOnTimeout = false;
+	private volatile Object fallback;
+	private volatile Class<? extends Throwable>[] ignoreExceptions;
+	private final AtomicLong timeoutCalls = new AtomicLong();
+
+	/**
+	 * @param circuitBreaker 为空表示不熔断
+	 * @param bulkhead       为空表示不限制并发
+	 * @param timeout        超时时间(毫秒)，小于等于0表示不限制
+	 */
+	public CircuitBreakerInterceptor(@Nullable CircuitBreaker circuitBreaker, @Nullable Bulkhead bulkhead,
+			long timeout) {
+		this.circuitBreaker = circuitBreaker;
+		this.bulkhead = bulkhead;
+		this.timeout = timeout;
+	}
+
+	@Nullable
+	public CircuitBreaker getCircuitBreaker() {
+		return circuitBreaker;
+	}
+
+	@Nullable
+	public Bulkhead getBulkhead() {
+		return bulkhead;
+	}
+
+	public long getTimeout() {
+		return timeout;
+	}
+
+	public boolean isInterruptOnTimeout() {
+		return interruptOnTimeout;
+	}
+
+	/**
+	 * 超时后是否中断调用者线程，默认为false，只在调用结束后判断是否超时
+	 *
+	 * @param interruptOnTimeout
+	 */
+	public void setInterruptOnTimeout(boolean interruptOnTimeout) {
+		this.interruptOnTimeout = interruptOnTimeout;
+	}
+
+	@Nullable
+	public Object getFallback() {
+		return fallback;
+	}
+
+	/**
+	 * 调用失败、被拒绝或超时后会调用fallback的同名方法
+	 *
+	 * @param fallback
+	 */
+	public void setFallback(@Nullable Object fallback) {
+		this.fallback = fallback;
+	}
+
+	/**
+	 * 这些异常不计入失败也不会调用fallback
+	 *
+	 * @param ignoreExceptions
+	 */
+	@SuppressWarnings("unchecked")
+	public void setIgnoreExceptions(Class<? extends Throwable>... ignoreExceptions) {
+		this.ignoreExceptions = ignoreExceptions;
+	}
+
+	/**
+	 * 超时的调用次数
+	 *
+	 * @return
+	 */
+	public long getNumberOfTimeoutCalls() {
+		return timeoutCalls.get();
+	}
+
+	@Override
+	public Object intercept(MethodInvoker invoker, Object[] args) throws Throwable {
+		try {
+			return execute(invoker, args);
+		} catch (Throwable e) {
+			Object fallback = this.fallback;
+			if (fallback == null || isIgnored(e)) {
+				throw e;
+			}
+
+			try {
+				ReflectionUtils.makeAccessible(invoker.getMethod());
+				return invoker.getMethod().invoke(fallback, args);
+			} catch (InvocationTargetException fallbackException) {
+				throw fallbackException.getTargetException();
+			}
+		}
+	}
+
+	private Object execute(MethodInvoker invoker, Object[] args) throws Throwable {
+		// 先获取舱壁的许可，熔断器半开状态下的许可不能被浪费
+		if (bulkhead != null && !bulkhead.tryAcquire()) {
+			throw new CallNotPermittedException("Bulkhead is full: " + invoker.getMethod());
+		}
+
+		try {
+			if (circuitBreaker != null && !circuitBreaker.tryAcquirePermission()) {
+				throw new CallNotPermittedException("CircuitBreaker is " + circuitBreaker.getState() + ": "
+						+ invoker.getMethod());
+			}
+
+			TimeoutTask timeoutTask = (timeout > 0 && interruptOnTimeout) ? TimeoutTask.schedule(timeout) : null;
+			long start = System.nanoTime();
+			Object result = null;
+			Throwable error = null;
+			try {
+				result = invoker.invoke(args);
+			} catch (Throwable e) {
+				error = e;
+			}
+			long duration = System.nanoTime() - start;
+
+			boolean timedOut = timeoutTask != null ? timeoutTask.finish()
+					: (timeout > 0 && duration >= TimeUnit.MILLISECONDS.toNanos(timeout));
+			if (timedOut) {
+				timeoutCalls.incrementAndGet();
+				error = new CallTimeoutException("Call timeout " + timeout + "ms: " + invoker.getMethod(), error);
+			}
+
+			if (circuitBreaker != null) {
+				if (error == null || isIgnored(error)) {
+					circuitBreaker.onSuccess(duration);
+				} else {
+					circuitBreaker.onError(duration);
+				}
+			}
+
+			if (error != null) {
+				throw error;
+			}
+			return result;
+		} finally {
+			if (bulkhead != null) {
+				bulkhead.release();
+			}
+		}
+	}
+
+	private boolean isIgnored(Throwable e) {
+		Class<? extends Throwable>[] ignoreExceptions = this.ignoreExceptions;
+		if (ignoreExceptions == null || e instanceof CallNotPermittedException || e instanceof CallTimeoutException) {
+			return false;
+		}
+
+		for (Class<? extends Throwable> ignoreException : ignoreExceptions) {
+			if (ignoreException.isInstance(e)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public String toString() {
+		return "CircuitBreakerInterceptor[" + circuitBreaker + ", " + bulkhead + ", timeout=" + timeout
+				+ ", timeoutCalls=" + getNumberOfTimeoutCalls() + "]";
+	}
+
+	private static final class TimeoutTask implements Runnable {
+		private static final ScheduledThreadPoolExecutor EXECUTOR;
+
+		static {
+			EXECUTOR = new ScheduledThreadPoolExecutor(1, (runnable) -> {
+				Thread thread = new Thread(runnable, CircuitBreakerInterceptor.class.getSimpleName() + "-timeout");
+				thread.setDaemon(true);
+				return thread;
+			});
+			// 大部分调用都不会超时，取消后立即移除
+			EXECUTOR.setRemoveOnCancelPolicy(true);
+		}
+
+		private final Thread thread = Thread.currentThread();
+		/**
+		 * 中断和清除中断状态必须互斥，否则清除可能发生在中断之前
+		 */
+		private boolean completed;
+		private ScheduledFuture<?> future;
+
+		static TimeoutTask schedule(long timeout) {
+			TimeoutTask task = new TimeoutTask();
+			task.future = EXECUTOR.schedule(task, timeout, TimeUnit.MILLISECONDS);
+			return task;
+		}
+
+		@Override
+		public synchronized void run() {
+			if (!completed) {
+				completed = true;
+				thread.interrupt();
+			}
+		}
+
+		/**
+		 * @return 是否已经超时
+		 */
+		synchronized boolean finish() {
+			if (!completed) {
+				completed = true;
+				future.cancel(false);
+				return false;
+			}
+
+			// 清除超时设置的中断状态
+			Thread.interrupted();
+			return true;
+		}
+	}
+}
@@ -1,10 +1,24 @@
 package scw.env;
 
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import scw.convert.ConfigurableConversionService;
 import scw.convert.resolve.ConfigurableResourceResolver;
@@ -16,6 +30,8 @@ import scw.core.utils.ArrayUtils;
 import scw.core.utils.ClassUtils;
 import scw.core.utils.StringUtils;
 import scw.env.ObservablePropertiesPropertyFactory.ValueCreator;
+import scw.event.ChangeEvent;
+import scw.event.EventListener;
 import scw.event.Observable;
 import scw.instance.Configurable;
 import scw.instance.ConfigurableServices;
@@ -27,6 +43,7 @@ import scw.io.ResourceLoader;
 import scw.io.ResourceUtils;
 import scw.io.resolver.ConfigurablePropertiesResolver;
 import scw.io.resolver.support.PropertiesResolvers;
+import scw.lang.NamedThreadLocal;
 import scw.lang.Nullable;
 import scw.logger.Logger;
 import scw.logger.LoggerFactory;
@@ -42,11 +59,35 @@ import scw.value.StringValue;
 import scw.value.Value;
 import scw.value.support.DefaultPropertyFactory;
 
+/**
+ * 默认的环境<br/>
+ * 通过{@link #getObject(String, Class)}、{@link #getObject(String, Type)}、{@link #getString(String)}获取的值会按(key, 类型)缓存解析后的结果，
+ * 只有来源是可观察的(自身的值和{@link #loadProperties(String, Observable)}加载的配置)才会缓存，来源发生变化时只失效对应的key，
+ * 包含占位符的值在任意配置变化时失效，解析占位符时使用了不可观察的来源不会缓存<br/>
+ * 只缓存不可变的类型(基本类型、字符串、枚举等)，数组、集合等可变的类型每次都会重新解析，避免调用方之间共享同一个对象
+ * 
+ * @author shuchaowen
+ *
+ */
 public class DefaultEnvironment extends DefaultPropertyFactory implements ConfigurableEnvironment, Configurable {
 	private static final String[] SUFFIXS = new String[] { "scw_res_suffix", "SHUCHAOWEN_CONFIG_SUFFIX",
 			"resource.suffix" };
 	private static Logger logger = LoggerFactory.getLogger(DefaultEnvironment.class);
 
+	private final ConcurrentMap<String, ConcurrentMap<Type, CachedProperty>> propertyCache = new ConcurrentHashMap<String, ConcurrentMap<Type, CachedProperty>>();
+	/**
+	 * 包含占位符的key，依赖其他配置
+	 */
+	private final Set<String> placeholderKeys = ConcurrentHashMap.newKeySet();
+	private final AtomicLong propertyVersion = new AtomicLong();
+	private final Set<PropertyFactory> observedFactories = Collections
+			.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<PropertyFactory, Boolean>()));
+	/**
+	 * 当前线程正在解析的值
+	 */
+	private final ThreadLocal<Resolution> resolution = new NamedThreadLocal<Resolution>(
+			DefaultEnvironment.class.getSimpleName() + "-resolution");
+
 	private final ConcurrentReferenceHashMap<String, Resource> cacheMap = new ConcurrentReferenceHashMap<String, Resource>();
 	private final FileSystemResourceLoader configurableResourceLoader = new FileSystemResourceLoader() {
 		protected boolean ignoreClassPathResource(scw.io.FileSystemResource resource) {
@@ -61,7 +102,7 @@ public class DefaultEnvironment extends DefaultPropertyFactory implements Config
 			configurableConversionService, configurablePropertiesResolver, getObservableCharset());
 	private final DefaultPlaceholderReplacer placeholderReplacer = new DefaultPlaceholderReplacer();
 	private ClassLoaderProvider classLoaderProvider;
-	
+
 	public DefaultEnvironment() {
 		this(null);
 	}
@@ -187,7 +228,243 @@ public class DefaultEnvironment extends DefaultPropertyFactory implements Config
 	@Override
 	public void addFactory(PropertyFactory propertyFactory) {
 		aware(propertyFactory);
+		if (propertyFactory instanceof ObservablePropertiesPropertyFactory) {
+			observe((ObservablePropertiesPropertyFactory) propertyFactory);
+		}
 		super.addFactory(propertyFactory);
+		// 新的来源可能会覆盖已缓存的值
+		clearPropertyCache();
+	}
+
+	private void observe(ObservablePropertiesPropertyFactory factory) {
+		final AtomicReference<Set<String>> keys = new AtomicReference<Set<String>>(
+				new HashSet<String>(factory.get().keySet()));
+		factory.registerListener(new EventListener<ChangeEvent<Map<String, Value>>>() {
+
+			public void onEvent(ChangeEvent<Map<String, Value>> event) {
+				Set<String> newKeys = event.getSource() == null ? Collections.<String>emptySet()
+						: new HashSet<String>(event.getSource().keySet());
+				Set<String> changedKeys = new HashSet<String>(keys.getAndSet(newKeys));
+				changedKeys.addAll(newKeys);
+				invalidate(changedKeys);
+			}
+		});
+		observedFactories.add(factory);
+	}
+
+	/**
+	 * 清空解析后的配置缓存，例如修改了{@link System#setProperty(String, String)}后
+	 */
+	public void clearPropertyCache() {
+		propertyVersion.incrementAndGet();
+		propertyCache.clear();
+		placeholderKeys.clear();
+	}
+
+	private void invalidate(Iterable<String> keys) {
+		propertyVersion.incrementAndGet();
+		for (String key : keys) {
+			propertyCache.remove(key);
+		}
+
+		for (String key : placeholderKeys) {
+			propertyCache.remove(key);
+		}
+	}
+
+	private void invalidate(String key) {
+		invalidate(Collections.singleton(key));
+	}
+
+	/**
+	 * 获取可以缓存的值，如果来源不可观察(无法知道何时变化)返回空
+	 * 
+	 * @param key
+	 * @return
+	 */
+	private Value getCacheableValue(String key) {
+		Value value = getValueMap().get(key);
+		if (value != null) {
+			return value;
+		}
+
+		Iterator<PropertyFactory> iterator = getFactories();
+		while (iterator.hasNext()) {
+			PropertyFactory factory = iterator.next();
+			if (factory == null) {
+				continue;
+			}
+
+			if (!observedFactories.contains(factory)) {
+				Resolution current = resolution.get();
+				if (current != null) {
+					current.unobservable = true;
+				}
+				return null;
+			}
+
+			value = factory.getValue(key);
+			if (value != null) {
+				return value;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * 是否是不可变的类型，可变的对象缓存后会在调用方之间共享
+	 * 
+	 * @param type
+	 * @return
+	 */
+	protected boolean isCacheableType(Type type) {
+		if (!(type instanceof Class)) {
+			return false;
+		}
+
+		Class<?> clazz = (Class<?>) type;
+		return ClassUtils.isPrimitiveOrWrapper(clazz) || clazz == String.class || clazz.isEnum()
+				|| clazz == BigInteger.class || clazz == BigDecimal.class || clazz == Class.class
+				|| clazz == Charset.class || clazz == Locale.class;
+	}
+
+	private CachedProperty getCachedProperty(String key, Type type, @Nullable Class<?> clazz) {
+		if (!isCacheableType(type)) {
+			return null;
+		}
+
+		ConcurrentMap<Type, CachedProperty> cacheMap = propertyCache.get(key);
+		CachedProperty cached = cacheMap == null ? null : cacheMap.get(type);
+		return cached == null ? cacheProperty(key, type, clazz) : cached;
+	}
+
+	/**
+	 * @return 如果不能缓存返回空
+	 */
+	private CachedProperty cacheProperty(String key, Type type, Class<?> clazz) {
+		long version = propertyVersion.get();
+		Value value = getCacheableValue(key);
+		if (value == null) {
+			return null;
+		}
+
+		// 解析占位符时会读取其他的配置
+		Resolution parent = resolution.get();
+		Resolution current = new Resolution();
+		resolution.set(current);
+		Object result;
+		try {
+			result = clazz == null ? value.getAsObject(type) : value.getAsObject(clazz);
+		} finally {
+			if (parent == null) {
+				resolution.remove();
+			} else {
+				resolution.set(parent);
+			}
+		}
+
+		CachedProperty cached = new CachedProperty(result);
+		if (current.unobservable) {
+			// 依赖的配置无法知道何时变化，不缓存
+			if (parent != null) {
+				parent.unobservable = true;
+			}
+			return cached;
+		}
+
+		if (value instanceof FormatValue && ((FormatValue) value).hasPlaceholders()) {
+			placeholderKeys.add(key);
+		}
+
+		ConcurrentMap<Type, CachedProperty> cacheMap = propertyCache.get(key);
+		if (cacheMap == null) {
+			cacheMap = new ConcurrentHashMap<Type, CachedProperty>(4);
+			ConcurrentMap<Type, CachedProperty> old = propertyCache.putIfAbsent(key, cacheMap);
+			if (old != null) {
+				cacheMap = old;
+			}
+		}
+		cacheMap.put(type, cached);
+
+		// 在解析期间发生了变化，放弃这次的结果
+		if (propertyVersion.get() != version) {
+			cacheMap.remove(type, cached);
+		}
+		return cached;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public <T> T getObject(String key, Class<? extends T> type) {
+		if (key != null && type != null) {
+			CachedProperty cached = getCachedProperty(key, type, type);
+			if (cached != null) {
+				return (T) cached.value;
+			}
+		}
+		return ConfigurableEnvironment.super.getObject(key, type);
+	}
+
+	@Override
+	public Object getObject(String key, Type type) {
+		if (key != null && type != null) {
+			CachedProperty cached = getCachedProperty(key, type, null);
+			if (cached != null) {
+				return cached.value;
+			}
+		}
+		return ConfigurableEnvironment.super.getObject(key, type);
+	}
+
+	@Override
+	public String getString(String key) {
+		return getObject(key, String.class);
+	}
+
+	@Override
+	public boolean put(String key, Value value) {
+		boolean success = super.put(key, value);
+		invalidate(key);
+		return success;
+	}
+
+	@Override
+	public boolean putIfAbsent(String key, Value value) {
+		boolean success = super.putIfAbsent(key, value);
+		if (success) {
+			invalidate(key);
+		}
+		return success;
+	}
+
+	@Override
+	public boolean remove(String key) {
+		boolean success = super.remove(key);
+		if (success) {
+			invalidate(key);
+		}
+		return success;
+	}
+
+	@Override
+	public void clear() {
+		super.clear();
+		clearPropertyCache();
+	}
+
+	private static final class Resolution {
+		/**
+		 * 是否使用了不可观察的来源
+		 */
+		private boolean unobservable;
+	}
+
+	private static final class CachedProperty {
+		private final Object value;
+
+		CachedProperty(Object value) {
+			this.value = value;
+		}
 	}
 
 	public ClassLoader getClassLoader() {
@@ -231,7 +508,20 @@ public class DefaultEnvironment extends DefaultPropertyFactory implements Config
 		addFactory(factory);
 	}
 
-	private class StringFormatValue extends StringValue {
+	private interface FormatValue {
+		/**
+		 * 是否可能包含占位符
+		 * 
+		 * @return
+		 */
+		boolean hasPlaceholders();
+	}
+
+	private static boolean hasPlaceholders(String text, String resolved) {
+		return text != null && (text.indexOf('{') != -1 || !text.equals(resolved));
+	}
+
+	private class StringFormatValue extends StringValue implements FormatValue {
 		private static final long serialVersionUID = 1L;
 
 		public StringFormatValue(String value) {
@@ -242,9 +532,14 @@ public class DefaultEnvironment extends DefaultPropertyFactory implements Config
 		public String getAsString() {
 			return resolvePlaceholders(super.getAsString());
 		}
+
+		public boolean hasPlaceholders() {
+			String text = super.getAsString();
+			return DefaultEnvironment.hasPlaceholders(text, resolvePlaceholders(text));
+		}
 	}
 
-	private class AnyFormatValue extends AnyValue {
+	private class AnyFormatValue extends AnyValue implements FormatValue {
 		private static final long serialVersionUID = 1L;
 
 		public AnyFormatValue(Object value) {
@@ -254,6 +549,11 @@ public class DefaultEnvironment extends DefaultPropertyFactory implements Config
 		public String getAsString() {
 			return resolvePlaceholders(super.getAsString());
 		};
+
+		public boolean hasPlaceholders() {
+			String text = super.getAsString();
+			return DefaultEnvironment.hasPlaceholders(text, resolvePlaceholders(text));
+		}
 	}
 	
 	private ConfigurableServices<PropertyFactory> propertyFactorys = new ConfigurableServices<>(PropertyFactory.class, (s) -> aware(s));
@@ -270,6 +570,7 @@ public class DefaultEnvironment extends DefaultPropertyFactory implements Config
 		configurableConversionService.configure(serviceLoaderFactory);
 		propertyFactorys.configure(serviceLoaderFactory);
 		placeholderReplacer.configure(serviceLoaderFactory);
+		clearPropertyCache();
 	}
 
 	@Override
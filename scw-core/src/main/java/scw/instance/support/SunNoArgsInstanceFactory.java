@@ -6,6 +6,7 @@ import java.util.IdentityHashMap;
 
 import scw.core.utils.ClassUtils;
 import scw.instance.InstanceException;
+import scw.util.XUtils;
 
 public class SunNoArgsInstanceFactory extends AbstractNoArgsInstanceFactory {
 	private static final Constructor<?> CONSTRUCTOR;
@@ -71,6 +72,6 @@ public class SunNoArgsInstanceFactory extends AbstractNoArgsInstanceFactory {
 	}
 	
 	public boolean isInstance(Class<?> clazz) {
-		return isInstance(clazz);
+		return XUtils.isAvailable(clazz);
 	}
 }
@@ -0,0 +1,94 @@
+package scw.io;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import scw.core.Assert;
+import scw.lang.NamedThreadLocal;
+
+/**
+ * 字节数组缓冲池<br/>
+ * 每个线程缓存一个缓冲区，其余的放在一个有上限的共享队列中，大于{@link #getMaxBufferSize()}的缓冲区不会被回收
+ * 
+ * @author shuchaowen
+ *
+ */
+public class BufferPool {
+	public static final BufferPool DEFAULT = new BufferPool(Integer.getInteger("io.buffer.size", 4096),
+			Integer.getInteger("io.buffer.max.size", 64 * 1024), Integer.getInteger("io.buffer.pool.size", 64));
+
+	private final int bufferSize;
+	private final int maxBufferSize;
+	private final ThreadLocal<byte[]> threadLocal;
+	private final BlockingQueue<byte[]> queue;
+
+	/**
+	 * @param bufferSize    默认的缓冲区大小
+	 * @param maxBufferSize 可以回收的最大缓冲区
+	 * @param poolSize      共享队列的大小
+	 */
+	public BufferPool(int bufferSize, int maxBufferSize, int poolSize) {
+		Assert.requiredArgument(bufferSize > 0, "bufferSize");
+		Assert.requiredArgument(maxBufferSize >= bufferSize, "maxBufferSize");
+		Assert.requiredArgument(poolSize > 0, "poolSize");
+		this.bufferSize = bufferSize;
+		this.maxBufferSize = maxBufferSize;
+		this.threadLocal = new NamedThreadLocal<byte[]>(BufferPool.class.getSimpleName());
+		this.queue = new ArrayBlockingQueue<byte[]>(poolSize);
+	}
+
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	public int getMaxBufferSize() {
+		return maxBufferSize;
+	}
+
+	public byte[] acquire() {
+		return acquire(bufferSize);
+	}
+
+	/**
+	 * 获取一个缓冲区，使用完后应该调用{@link #release(byte[])}
+	 * 
+	 * @param minSize 最小的大小
+	 * @return
+	 */
+	public byte[] acquire(int minSize) {
+		byte[] buffer = threadLocal.get();
+		if (buffer != null && buffer.length >= minSize) {
+			threadLocal.set(null);
+			return buffer;
+		}
+
+		if (minSize <= maxBufferSize) {
+			// 共享队列中的缓冲区大小不一，只尝试一次
+			buffer = queue.poll();
+			if (buffer != null) {
+				if (buffer.length >= minSize) {
+					return buffer;
+				}
+				queue.offer(buffer);
+			}
+		}
+		return new byte[Math.max(minSize, bufferSize)];
+	}
+
+	/**
+	 * 归还缓冲区
+	 * 
+	 * @param buffer
+	 */
+	public void release(byte[] buffer) {
+		if (buffer == null || buffer.length < bufferSize || buffer.length > maxBufferSize) {
+			return;
+		}
+
+		if (threadLocal.get() == null) {
+			threadLocal.set(buffer);
+			return;
+		}
+		queue.offer(buffer);
+	}
+}
@@ -0,0 +1,14 @@
+package scw.io;
+
+/**
+ * 处理一段缓冲区中的数据，缓冲区只在调用期间有效
+ * 
+ * @author shuchaowen
+ *
+ * @param <T>
+ * @param <E>
+ */
+@FunctionalInterface
+public interface BufferProcessor<T, E extends Throwable> {
+	T process(byte[] buffer, int offset, int length) throws E;
+}
@@ -0,0 +1,73 @@
+package scw.io;
+
+import scw.core.Assert;
+
+/**
+ * 使用{@link BufferPool}中缓冲区的输出流，使用完后必须调用{@link #release()}归还缓冲区<br/>
+ * 和{@link java.io.ByteArrayOutputStream}一样{@link #close()}没有作用，因为序列化时流常常会被包装流关闭
+ * 
+ * @author shuchaowen
+ *
+ */
+public class PooledByteArrayOutputStream extends UnsafeByteArrayOutputStream {
+	private static final byte[] EMPTY = new byte[0];
+	private final BufferPool bufferPool;
+
+	public PooledByteArrayOutputStream() {
+		this(BufferPool.DEFAULT);
+	}
+
+	public PooledByteArrayOutputStream(BufferPool bufferPool) {
+		super(0);
+		Assert.requiredArgument(bufferPool != null, "bufferPool");
+		this.bufferPool = bufferPool;
+		this.mBuffer = bufferPool.acquire();
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity > mBuffer.length) {
+			byte[] buffer = bufferPool.acquire(Math.max(mBuffer.length << 1, capacity));
+			System.arraycopy(mBuffer, 0, buffer, 0, mCount);
+			bufferPool.release(mBuffer);
+			mBuffer = buffer;
+		}
+	}
+
+	@Override
+	public void write(int b) {
+		ensureCapacity(mCount + 1);
+		mBuffer[mCount++] = (byte) b;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) {
+		if ((off < 0) || (off > b.length) || (len < 0) || ((off + len) > b.length) || ((off + len) < 0))
+			throw new IndexOutOfBoundsException();
+		if (len == 0)
+			return;
+		ensureCapacity(mCount + len);
+		System.arraycopy(b, off, mBuffer, mCount, len);
+		mCount += len;
+	}
+
+	/**
+	 * 内部的缓冲区，有效数据为[0, {@link #size()})，在{@link #release()}后不能再使用
+	 * 
+	 * @return
+	 */
+	public byte[] getBuffer() {
+		return mBuffer;
+	}
+
+	/**
+	 * 归还缓冲区
+	 */
+	public void release() {
+		byte[] buffer = mBuffer;
+		mBuffer = EMPTY;
+		mCount = 0;
+		if (buffer != EMPTY) {
+			bufferPool.release(buffer);
+		}
+	}
+}
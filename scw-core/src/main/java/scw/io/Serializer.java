@@ -3,6 +3,7 @@ package scw.io;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 import scw.codec.Codec;
 import scw.codec.support.SerializerCodec;
@@ -17,17 +18,58 @@ public interface Serializer {
 	void serialize(OutputStream out, Object data) throws IOException;
 
 	default byte[] serialize(Object data) throws SerializerException {
-		UnsafeByteArrayOutputStream out = new UnsafeByteArrayOutputStream();
+		PooledByteArrayOutputStream out = new PooledByteArrayOutputStream();
 		try {
 			serialize(out, data);
 			return out.toByteArray();
 		} catch (IOException e) {
 			throw new SerializerException(e);
 		} finally {
-			out.close();
+			out.release();
 		}
 	}
 
+	/**
+	 * 序列化到{@link BufferPool#DEFAULT}的缓冲区中并交给processor处理，避免复制出新的数组<br/>
+	 * 缓冲区只在processor执行期间有效
+	 * 
+	 * @param data
+	 * @param processor
+	 * @return
+	 * @throws SerializerException
+	 * @throws E
+	 */
+	default <T, E extends Throwable> T serialize(Object data, BufferProcessor<T, E> processor)
+			throws SerializerException, E {
+		PooledByteArrayOutputStream out = new PooledByteArrayOutputStream();
+		try {
+			try {
+				serialize(out, data);
+			} catch (IOException e) {
+				throw new SerializerException(e);
+			}
+			return processor.process(out.getBuffer(), 0, out.size());
+		} finally {
+			out.release();
+		}
+	}
+
+	/**
+	 * 序列化到调用者提供的缓冲区中
+	 * 
+	 * @param data
+	 * @param buffer
+	 * @return 写入的长度
+	 * @throws SerializerException
+	 * @throws java.nio.BufferOverflowException 缓冲区的剩余空间不足
+	 */
+	default int serialize(Object data, ByteBuffer buffer) throws SerializerException {
+		return serialize(data, (bytes, offset, length) -> {
+			buffer.put(bytes, offset, length);
+			return length;
+		});
+	}
+
 	<T> T deserialize(InputStream input) throws IOException, ClassNotFoundException;
 
 	default <T> T deserialize(byte[] data) throws ClassNotFoundException, SerializerException {
@@ -41,6 +83,30 @@ public interface Serializer {
 		}
 	}
 	
+	default <T> T deserialize(byte[] data, int offset, int length)
+			throws ClassNotFoundException, SerializerException {
+		UnsafeByteArrayInputStream input = new UnsafeByteArrayInputStream(data, offset, length);
+		try {
+			return deserialize(input);
+		} catch (IOException e) {
+			throw new SerializerException(e);
+		} finally {
+			input.close();
+		}
+	}
+
+	default <T> T deserialize(ByteBuffer buffer) throws ClassNotFoundException, SerializerException {
+		if (buffer.hasArray()) {
+			T value = deserialize(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+			buffer.position(buffer.limit());
+			return value;
+		}
+
+		byte[] data = new byte[buffer.remaining()];
+		buffer.get(data);
+		return deserialize(data);
+	}
+	
 	default <D> Codec<D, byte[]> toCodec(){
 		return new SerializerCodec<D>(this);
 	}
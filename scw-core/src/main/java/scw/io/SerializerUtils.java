@@ -1,12 +1,18 @@
 package scw.io;
 
+import scw.core.utils.StringUtils;
 import scw.env.Sys;
+import scw.io.compact.CompactSerializer;
 import scw.json.JsonSerializer;
 import scw.logger.Logger;
 import scw.logger.LoggerFactory;
 
 public final class SerializerUtils {
 	private static Logger logger = LoggerFactory.getLogger(SerializerUtils.class);
+	/**
+	 * 指定默认的序列化实现，可以是java、compact或类名，不指定时使用spi加载的第一个，都不存在使用java序列化
+	 */
+	public static final String SERIALIZER_PROPERTY = "scw.io.serializer";
 	/**
 	 * 默认的序列化实现
 	 */
@@ -14,7 +20,10 @@ public final class SerializerUtils {
 	private static final CrossLanguageSerializer CROSS_LANGUAGE_SERIALIZER;
 
 	static {
-		Serializer serializer = Sys.env.getServiceLoader(Serializer.class).first();
+		Serializer serializer = getSerializer(Sys.env.getString(SERIALIZER_PROPERTY));
+		if (serializer == null) {
+			serializer = Sys.env.getServiceLoader(Serializer.class).first();
+		}
 		SERIALIZER = serializer == null ? JavaSerializer.INSTANCE : serializer;
 		logger.info("default serializer {}", SERIALIZER);
 
@@ -26,6 +35,21 @@ public final class SerializerUtils {
 	private SerializerUtils() {
 	}
 
+	private static Serializer getSerializer(String name) {
+		if (StringUtils.isEmpty(name)) {
+			return null;
+		}
+
+		if ("java".equalsIgnoreCase(name)) {
+			return JavaSerializer.INSTANCE;
+		}
+
+		if ("compact".equalsIgnoreCase(name)) {
+			return CompactSerializer.INSTANCE;
+		}
+		return Sys.env.getInstance(name);
+	}
+
 	/**
 	 * 使用序列化来实现对象拷贝
 	 * 
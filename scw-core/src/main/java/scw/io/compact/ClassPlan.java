@@ -0,0 +1,359 @@
+package scw.io.compact;
+
+import java.io.Externalizable;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+
+import scw.core.reflect.ReflectionUtils;
+import scw.env.Sys;
+import scw.instance.NoArgsInstanceFactory;
+import scw.mapper.Field;
+import scw.mapper.MapperUtils;
+
+/**
+ * 一个类的读写计划，由{@link MapperUtils#getMapper()}获取的字段生成，每个类只生成一次
+ *
+ * @author shuchaowen
+ *
+ */
+final class ClassPlan {
+	enum Kind {
+		/**
+		 * 按字段读写
+		 */
+		OBJECT,
+		/**
+		 * 集合，使用无参构造方法创建
+		 */
+		COLLECTION,
+		/**
+		 * 映射，使用无参构造方法创建
+		 */
+		MAP,
+		/**
+		 * 自定义了序列化方式的类或jdk内部的类，使用java序列化
+		 */
+		JAVA
+	}
+
+	private final Class<?> type;
+	private final Kind kind;
+	/**
+	 * 写入时使用的类型，无法创建实例的集合会使用通用的实现代替
+	 */
+	private final Class<?> writeType;
+	private final Constructor<?> constructor;
+	private final FieldPlan[] fields;
+	private final String[] names;
+	private final Map<String, FieldPlan> fieldMap;
+
+	private ClassPlan(Class<?> type, Kind kind, Class<?> writeType, Constructor<?> constructor, List<FieldPlan> fields) {
+		this.type = type;
+		this.kind = kind;
+		this.writeType = writeType;
+		this.constructor = constructor;
+		this.fields = fields.toArray(new FieldPlan[0]);
+		this.names = new String[this.fields.length];
+		Map<String, FieldPlan> fieldMap = new LinkedHashMap<String, FieldPlan>(this.fields.length);
+		for (int i = 0; i < this.fields.length; i++) {
+			names[i] = this.fields[i].name;
+			fieldMap.put(this.fields[i].name, this.fields[i]);
+		}
+		this.fieldMap = Collections.unmodifiableMap(fieldMap);
+	}
+
+	public Class<?> getType() {
+		return type;
+	}
+
+	public Kind getKind() {
+		return kind;
+	}
+
+	public Class<?> getWriteType() {
+		return writeType;
+	}
+
+	public FieldPlan[] getFields() {
+		return fields;
+	}
+
+	public String[] getNames() {
+		return names;
+	}
+
+	public FieldPlan getField(String name) {
+		return fieldMap.get(name);
+	}
+
+	public Object newInstance() throws ReflectiveOperationException {
+		if (kind == Kind.OBJECT) {
+			// 和java序列化一样不调用构造方法
+			NoArgsInstanceFactory instanceFactory = Sys.getUnsafeInstanceFactory();
+			if (instanceFactory != null && instanceFactory.isInstance(type)) {
+				return instanceFactory.getInstance(type);
+			}
+		}
+
+		if (constructor == null) {
+			throw new InstantiationException(type.getName());
+		}
+		return constructor.newInstance();
+	}
+
+	static ClassPlan create(Class<?> type) {
+		if (Collection.class.isAssignableFrom(type)) {
+			Constructor<?> constructor = getCollectionConstructor(type);
+			if (constructor != null) {
+				return new ClassPlan(type, Kind.COLLECTION, type, constructor, Collections.<FieldPlan>emptyList());
+			}
+
+			if (Serializable.class.isAssignableFrom(type)) {
+				return java(type);
+			}
+
+			Class<?> writeType = Set.class.isAssignableFrom(type) ? LinkedHashSet.class : ArrayList.class;
+			return new ClassPlan(type, Kind.COLLECTION, writeType, getConstructor(writeType),
+					Collections.<FieldPlan>emptyList());
+		}
+
+		if (Map.class.isAssignableFrom(type)) {
+			Constructor<?> constructor = Properties.class.isAssignableFrom(type) ? null
+					: getCollectionConstructor(type);
+			if (constructor != null) {
+				return new ClassPlan(type, Kind.MAP, type, constructor, Collections.<FieldPlan>emptyList());
+			}
+
+			if (Serializable.class.isAssignableFrom(type)) {
+				return java(type);
+			}
+
+			return new ClassPlan(type, Kind.MAP, LinkedHashMap.class, getConstructor(LinkedHashMap.class),
+					Collections.<FieldPlan>emptyList());
+		}
+
+		if (isJavaOnly(type)) {
+			return java(type);
+		}
+
+		List<FieldPlan> fields = new ArrayList<FieldPlan>();
+		Set<java.lang.reflect.Field> javaFields = Collections
+				.newSetFromMap(new IdentityHashMap<java.lang.reflect.Field, Boolean>());
+		Set<String> names = new LinkedHashSet<String>();
+		for (Field field : MapperUtils.getMapper().getFields(type)) {
+			java.lang.reflect.Field javaField = field.isSupportGetter() ? field.getGetter().getField() : null;
+			if (javaField == null && field.isSupportSetter()) {
+				javaField = field.getSetter().getField();
+			}
+
+			if (javaField == null || Modifier.isStatic(javaField.getModifiers())
+					|| Modifier.isTransient(javaField.getModifiers()) || javaField.isSynthetic()
+					|| !javaFields.add(javaField)) {
+				continue;
+			}
+
+			String name = javaField.getName();
+			if (!names.add(name)) {
+				// 父类中的同名字段
+				name = javaField.getDeclaringClass().getName() + "#" + name;
+				names.add(name);
+			}
+			ReflectionUtils.makeAccessible(javaField);
+			fields.add(new FieldPlan(name, javaField));
+		}
+		return new ClassPlan(type, Kind.OBJECT, type, getConstructor(type), fields);
+	}
+
+	private static ClassPlan java(Class<?> type) {
+		return new ClassPlan(type, Kind.JAVA, type, null, Collections.<FieldPlan>emptyList());
+	}
+
+	private static Constructor<?> getCollectionConstructor(Class<?> type) {
+		if (!type.getName().startsWith("java.util.")) {
+			// 子类可能有其他的字段
+			return null;
+		}
+
+		if (SortedSet.class.isAssignableFrom(type) || SortedMap.class.isAssignableFrom(type)) {
+			// 无法保存比较器
+			return null;
+		}
+
+		Constructor<?> constructor = getConstructor(type);
+		return constructor != null && Modifier.isPublic(constructor.getModifiers()) ? constructor : null;
+	}
+
+	private static Constructor<?> getConstructor(Class<?> type) {
+		try {
+			Constructor<?> constructor = type.getDeclaredConstructor();
+			ReflectionUtils.makeAccessible(constructor);
+			return constructor;
+		} catch (NoSuchMethodException e) {
+			return null;
+		} catch (RuntimeException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * 只能使用java序列化的类
+	 *
+	 * @param type
+	 * @return
+	 */
+	private static boolean isJavaOnly(Class<?> type) {
+		if (type.getClassLoader() == null || type.getName().startsWith("java.")
+				|| type.getName().startsWith("javax.") || type.getName().startsWith("sun.")) {
+			return true;
+		}
+
+		if (Proxy.isProxyClass(type) || type.isSynthetic() || type.isAnonymousClass() || type.isLocalClass()
+				|| (type.isMemberClass() && !Modifier.isStatic(type.getModifiers()))) {
+			return true;
+		}
+
+		if (Externalizable.class.isAssignableFrom(type)) {
+			return true;
+		}
+
+		for (Class<?> clazz = type; clazz != null && clazz != Object.class; clazz = clazz.getSuperclass()) {
+			if (hasMethod(clazz, "writeObject", ObjectOutputStream.class)
+					|| hasMethod(clazz, "readObject", ObjectInputStream.class) || hasMethod(clazz, "writeReplace")
+					|| hasMethod(clazz, "readResolve")) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean hasMethod(Class<?> clazz, String name, Class<?>... parameterTypes) {
+		try {
+			clazz.getDeclaredMethod(name, parameterTypes);
+			return true;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+
+	static final class FieldPlan {
+		private final String name;
+		private final java.lang.reflect.Field field;
+		private final Class<?> type;
+
+		FieldPlan(String name, java.lang.reflect.Field field) {
+			this.name = name;
+			this.field = field;
+			this.type = field.getType();
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public Class<?> getType() {
+			return type;
+		}
+
+		public Object get(Object instance) throws IllegalAccessException {
+			return field.get(instance);
+		}
+
+		/**
+		 * 是否是默认值，默认值不需要写入
+		 *
+		 * @param value
+		 * @return
+		 */
+		public boolean isDefaultValue(Object value) {
+			if (value == null) {
+				return true;
+			}
+
+			if (!type.isPrimitive()) {
+				return false;
+			}
+
+			if (type == boolean.class) {
+				return !((Boolean) value);
+			}
+
+			if (type == char.class) {
+				return ((Character) value) == 0;
+			}
+
+			if (type == float.class || type == double.class) {
+				// -0.0也需要写入
+				return Double.doubleToRawLongBits(((Number) value).doubleValue()) == 0;
+			}
+			return ((Number) value).longValue() == 0;
+		}
+
+		/**
+		 * 设置值，类型不兼容时(字段类型发生了变化)会尝试转换数值，失败返回false
+		 *
+		 * @param instance
+		 * @param value
+		 * @return
+		 * @throws IllegalAccessException
+		 */
+		public boolean set(Object instance, Object value) throws IllegalAccessException {
+			if (value == null) {
+				if (type.isPrimitive()) {
+					return false;
+				}
+				field.set(instance, null);
+				return true;
+			}
+
+			try {
+				field.set(instance, value);
+				return true;
+			} catch (IllegalArgumentException e) {
+				Object converted = convertNumber(value);
+				if (converted == null) {
+					return false;
+				}
+				field.set(instance, converted);
+				return true;
+			}
+		}
+
+		private Object convertNumber(Object value) {
+			if (!(value instanceof Number)) {
+				return null;
+			}
+
+			Number number = (Number) value;
+			if (type == int.class || type == Integer.class) {
+				return number.intValue();
+			} else if (type == long.class || type == Long.class) {
+				return number.longValue();
+			} else if (type == short.class || type == Short.class) {
+				return number.shortValue();
+			} else if (type == byte.class || type == Byte.class) {
+				return number.byteValue();
+			} else if (type == double.class || type == Double.class) {
+				return number.doubleValue();
+			} else if (type == float.class || type == Float.class) {
+				return number.floatValue();
+			}
+			return null;
+		}
+	}
+}
@@ -0,0 +1,91 @@
+package scw.io.compact;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 紧凑编码的输入，不会读取超出数据的部分
+ * 
+ * @author shuchaowen
+ *
+ * @see CompactOutput
+ */
+final class CompactInput {
+	private final InputStream in;
+
+	CompactInput(InputStream in) {
+		this.in = in;
+	}
+
+	int readByte() throws IOException {
+		int b = in.read();
+		if (b < 0) {
+			throw new EOFException();
+		}
+		return b;
+	}
+
+	long readVarint() throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = readByte();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Malformed varint");
+	}
+
+	int readVarintAsInt() throws IOException {
+		long value = readVarint();
+		if (value < 0 || value > Integer.MAX_VALUE) {
+			throw new IOException("Varint out of range: " + value);
+		}
+		return (int) value;
+	}
+
+	long readSignedVarint() throws IOException {
+		long value = readVarint();
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	long readLong() throws IOException {
+		long value = 0;
+		for (int i = 0; i < 8; i++) {
+			value = (value << 8) | readByte();
+		}
+		return value;
+	}
+
+	int readInt() throws IOException {
+		int value = 0;
+		for (int i = 0; i < 4; i++) {
+			value = (value << 8) | readByte();
+		}
+		return value;
+	}
+
+	byte[] readBytes() throws IOException {
+		byte[] bytes = new byte[readVarintAsInt()];
+		readFully(bytes);
+		return bytes;
+	}
+
+	void readFully(byte[] bytes) throws IOException {
+		int offset = 0;
+		while (offset < bytes.length) {
+			int len = in.read(bytes, offset, bytes.length - offset);
+			if (len < 0) {
+				throw new EOFException();
+			}
+			offset += len;
+		}
+	}
+
+	String readString() throws IOException {
+		return new String(readBytes(), StandardCharsets.UTF_8);
+	}
+}
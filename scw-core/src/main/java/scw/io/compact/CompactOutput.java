@@ -0,0 +1,105 @@
+package scw.io.compact;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 带缓冲的紧凑编码输出，整数使用varint编码
+ * 
+ * @author shuchaowen
+ *
+ */
+final class CompactOutput {
+	private final OutputStream out;
+	private final byte[] buffer;
+	private int position;
+
+	CompactOutput(OutputStream out, byte[] buffer) {
+		this.out = out;
+		this.buffer = buffer;
+	}
+
+	private void require(int size) throws IOException {
+		if (buffer.length - position < size) {
+			flush();
+		}
+	}
+
+	void writeByte(int b) throws IOException {
+		require(1);
+		buffer[position++] = (byte) b;
+	}
+
+	/**
+	 * 无符号的varint
+	 * 
+	 * @param value
+	 * @throws IOException
+	 */
+	void writeVarint(long value) throws IOException {
+		require(10);
+		while ((value & ~0x7FL) != 0) {
+			buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		buffer[position++] = (byte) value;
+	}
+
+	void writeVarint(int value) throws IOException {
+		writeVarint(value & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * 有符号的varint(zigzag编码)
+	 * 
+	 * @param value
+	 * @throws IOException
+	 */
+	void writeSignedVarint(long value) throws IOException {
+		writeVarint((value << 1) ^ (value >> 63));
+	}
+
+	void writeLong(long value) throws IOException {
+		require(8);
+		for (int i = 56; i >= 0; i -= 8) {
+			buffer[position++] = (byte) (value >>> i);
+		}
+	}
+
+	void writeInt(int value) throws IOException {
+		require(4);
+		buffer[position++] = (byte) (value >>> 24);
+		buffer[position++] = (byte) (value >>> 16);
+		buffer[position++] = (byte) (value >>> 8);
+		buffer[position++] = (byte) value;
+	}
+
+	void writeBytes(byte[] bytes) throws IOException {
+		writeVarint(bytes.length);
+		write(bytes, 0, bytes.length);
+	}
+
+	void write(byte[] bytes, int offset, int length) throws IOException {
+		if (length > buffer.length - position) {
+			flush();
+			if (length > buffer.length) {
+				out.write(bytes, offset, length);
+				return;
+			}
+		}
+		System.arraycopy(bytes, offset, buffer, position, length);
+		position += length;
+	}
+
+	void writeString(String value) throws IOException {
+		writeBytes(value.getBytes(StandardCharsets.UTF_8));
+	}
+
+	void flush() throws IOException {
+		if (position > 0) {
+			out.write(buffer, 0, position);
+			position = 0;
+		}
+	}
+}
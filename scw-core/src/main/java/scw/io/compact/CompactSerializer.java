@@ -0,0 +1,577 @@
+package scw.io.compact;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.NotSerializableException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.io.SequenceInputStream;
+import java.io.StreamCorruptedException;
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import scw.core.Assert;
+import scw.core.utils.ClassUtils;
+import scw.io.BufferPool;
+import scw.io.JavaSerializer;
+import scw.io.Serializer;
+import scw.io.compact.ClassPlan.FieldPlan;
+import scw.io.compact.ClassPlan.Kind;
+import scw.lang.Nullable;
+import scw.logger.Logger;
+import scw.logger.LoggerFactory;
+
+/**
+ * 不依赖第三方库的紧凑二进制序列化<br/>
+ * 每个类根据{@link scw.mapper.Mapper}的字段生成一次读写计划，整数使用varint编码，只写入非默认值的字段<br/>
+ * 字段以标签写入，每个流中第一次出现某个类时会写入一次字段名表，读取时按字段名匹配，增加或删除字段都可以兼容<br/>
+ * 通过{@link #register(Class, int)}注册的类型只写入类型id，否则写入类名(每个流中只写一次)<br/>
+ * 自定义了序列化方式(writeObject/readObject/writeReplace/readResolve/Externalizable)的类和jdk内部的类使用java序列化写入<br/>
+ * 可以读取{@link JavaSerializer}序列化的数据
+ *
+ * @author shuchaowen
+ *
+ */
+public class CompactSerializer implements Serializer {
+	private static Logger logger = LoggerFactory.getLogger(CompactSerializer.class);
+	public static final CompactSerializer INSTANCE = new CompactSerializer();
+
+	private static final int MAGIC = 0xC5;
+	private static final int VERSION = 1;
+	/**
+	 * java序列化的第一个字节
+	 */
+	private static final int JAVA_MAGIC = 0xAC;
+	/**
+	 * 写入缓冲区的最小大小，必须能容纳一个完整的varint
+	 */
+	private static final int MIN_BUFFER_SIZE = 64;
+
+	private static final int NULL = 0;
+	private static final int TRUE = 1;
+	private static final int FALSE = 2;
+	private static final int BYTE = 3;
+	private static final int SHORT = 4;
+	private static final int INT = 5;
+	private static final int LONG = 6;
+	private static final int FLOAT = 7;
+	private static final int DOUBLE = 8;
+	private static final int CHAR = 9;
+	private static final int STRING = 10;
+	private static final int BYTES = 11;
+	private static final int BIG_INTEGER = 12;
+	private static final int BIG_DECIMAL = 13;
+	private static final int DATE = 14;
+	private static final int ENUM = 15;
+	private static final int CLASS = 16;
+	private static final int ARRAY = 17;
+	private static final int COLLECTION = 18;
+	private static final int MAP = 19;
+	private static final int OBJECT = 20;
+	private static final int JAVA = 21;
+	/**
+	 * 引用同一个流中已经写入的对象
+	 */
+	private static final int REFERENCE = 22;
+
+	private final ConcurrentMap<Class<?>, ClassPlan> planMap = new ConcurrentHashMap<Class<?>, ClassPlan>();
+	private final ConcurrentMap<Class<?>, Integer> typeIdMap = new ConcurrentHashMap<Class<?>, Integer>();
+	private final ConcurrentMap<Integer, Class<?>> idTypeMap = new ConcurrentHashMap<Integer, Class<?>>();
+	private ClassLoader classLoader;
+	private BufferPool bufferPool = BufferPool.DEFAULT;
+
+	@Nullable
+	public ClassLoader getClassLoader() {
+		return classLoader == null ? ClassUtils.getDefaultClassLoader() : classLoader;
+	}
+
+	public void setClassLoader(ClassLoader classLoader) {
+		this.classLoader = classLoader;
+	}
+
+	public BufferPool getBufferPool() {
+		return bufferPool;
+	}
+
+	/**
+	 * 写入时使用的缓冲池
+	 * 
+	 * @param bufferPool
+	 */
+	public void setBufferPool(BufferPool bufferPool) {
+		Assert.requiredArgument(bufferPool != null, "bufferPool");
+		this.bufferPool = bufferPool;
+	}
+
+	/**
+	 * 注册类型id，注册后只写入id而不是类名，序列化和反序列化的双方必须使用相同的注册
+	 *
+	 * @param type
+	 * @param id 大于0
+	 * @return
+	 */
+	public CompactSerializer register(Class<?> type, int id) {
+		Assert.requiredArgument(type != null, "type");
+		Assert.requiredArgument(id > 0, "id");
+		Class<?> old = idTypeMap.putIfAbsent(id, type);
+		if (old != null && old != type) {
+			throw new IllegalArgumentException("Type id " + id + " already registered by " + old.getName());
+		}
+		typeIdMap.put(type, id);
+		return this;
+	}
+
+	@Nullable
+	public Integer getTypeId(Class<?> type) {
+		return typeIdMap.get(type);
+	}
+
+	ClassPlan getPlan(Class<?> type) {
+		ClassPlan plan = planMap.get(type);
+		if (plan == null) {
+			plan = ClassPlan.create(type);
+			ClassPlan old = planMap.putIfAbsent(type, plan);
+			if (old != null) {
+				plan = old;
+			}
+		}
+		return plan;
+	}
+
+	public void serialize(OutputStream out, Object data) throws IOException {
+		BufferPool bufferPool = this.bufferPool;
+		byte[] buffer = bufferPool.acquire(MIN_BUFFER_SIZE);
+		try {
+			CompactOutput output = new CompactOutput(out, buffer);
+			output.writeByte(MAGIC);
+			output.writeByte(VERSION);
+			new Writer(output).writeValue(data);
+			output.flush();
+		} finally {
+			bufferPool.release(buffer);
+		}
+		out.flush();
+	}
+
+	@SuppressWarnings("unchecked")
+	public <T> T deserialize(InputStream input) throws IOException, ClassNotFoundException {
+		int magic = input.read();
+		if (magic == JAVA_MAGIC) {
+			// 兼容之前使用java序列化的数据
+			return JavaSerializer.INSTANCE.deserialize(
+					new SequenceInputStream(new ByteArrayInputStream(new byte[] { (byte) magic }), input));
+		}
+
+		if (magic != MAGIC) {
+			throw new StreamCorruptedException("Invalid stream header: " + magic);
+		}
+
+		CompactInput in = new CompactInput(input);
+		int version = in.readByte();
+		if (version != VERSION) {
+			throw new StreamCorruptedException("Unsupported version: " + version);
+		}
+		return (T) new Reader(in).readValue();
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName();
+	}
+
+	private final class Writer {
+		private final CompactOutput out;
+		private final Map<Object, Integer> handles = new IdentityHashMap<Object, Integer>();
+		private final Map<Class<?>, Integer> classHandles = new HashMap<Class<?>, Integer>();
+		private final Map<Class<?>, Integer> schemaHandles = new HashMap<Class<?>, Integer>();
+
+		Writer(CompactOutput out) {
+			this.out = out;
+		}
+
+		/**
+		 * 0表示后面是类名，奇数是注册的类型id，偶数是流中已经写过的类
+		 */
+		void writeClass(Class<?> type) throws IOException {
+			Integer id = typeIdMap.get(type);
+			if (id != null) {
+				out.writeVarint(((long) id << 1) | 1);
+				return;
+			}
+
+			Integer handle = classHandles.get(type);
+			if (handle != null) {
+				out.writeVarint((long) (handle + 1) << 1);
+				return;
+			}
+
+			classHandles.put(type, classHandles.size());
+			out.writeVarint(0);
+			out.writeString(type.getName());
+		}
+
+		private boolean writeReference(Object value) throws IOException {
+			Integer handle = handles.get(value);
+			if (handle != null) {
+				out.writeByte(REFERENCE);
+				out.writeVarint(handle);
+				return true;
+			}
+			handles.put(value, handles.size());
+			return false;
+		}
+
+		void writeValue(Object value) throws IOException {
+			if (value == null) {
+				out.writeByte(NULL);
+				return;
+			}
+
+			Class<?> type = value.getClass();
+			if (type == String.class) {
+				out.writeByte(STRING);
+				out.writeString((String) value);
+			} else if (type == Integer.class) {
+				out.writeByte(INT);
+				out.writeSignedVarint((Integer) value);
+			} else if (type == Long.class) {
+				out.writeByte(LONG);
+				out.writeSignedVarint((Long) value);
+			} else if (type == Boolean.class) {
+				out.writeByte(((Boolean) value) ? TRUE : FALSE);
+			} else if (type == Double.class) {
+				out.writeByte(DOUBLE);
+				out.writeLong(Double.doubleToRawLongBits((Double) value));
+			} else if (type == Float.class) {
+				out.writeByte(FLOAT);
+				out.writeInt(Float.floatToRawIntBits((Float) value));
+			} else if (type == Short.class) {
+				out.writeByte(SHORT);
+				out.writeSignedVarint((Short) value);
+			} else if (type == Byte.class) {
+				out.writeByte(BYTE);
+				out.writeByte((Byte) value);
+			} else if (type == Character.class) {
+				out.writeByte(CHAR);
+				out.writeVarint((int) (Character) value);
+			} else if (type == byte[].class) {
+				out.writeByte(BYTES);
+				out.writeBytes((byte[]) value);
+			} else if (type == BigInteger.class) {
+				out.writeByte(BIG_INTEGER);
+				out.writeBytes(((BigInteger) value).toByteArray());
+			} else if (type == BigDecimal.class) {
+				BigDecimal decimal = (BigDecimal) value;
+				out.writeByte(BIG_DECIMAL);
+				out.writeSignedVarint(decimal.scale());
+				out.writeBytes(decimal.unscaledValue().toByteArray());
+			} else if (type == Date.class) {
+				out.writeByte(DATE);
+				out.writeSignedVarint(((Date) value).getTime());
+			} else if (value instanceof Enum) {
+				out.writeByte(ENUM);
+				writeClass(((Enum<?>) value).getDeclaringClass());
+				out.writeString(((Enum<?>) value).name());
+			} else if (type == Class.class) {
+				out.writeByte(CLASS);
+				writeClass((Class<?>) value);
+			} else if (type.isArray()) {
+				if (writeReference(value)) {
+					return;
+				}
+				writeArray(value);
+			} else {
+				if (writeReference(value)) {
+					return;
+				}
+				writePlan(value, getPlan(type));
+			}
+		}
+
+		private void writeArray(Object array) throws IOException {
+			out.writeByte(ARRAY);
+			writeClass(array.getClass().getComponentType());
+			int length = Array.getLength(array);
+			out.writeVarint(length);
+			for (int i = 0; i < length; i++) {
+				writeValue(Array.get(array, i));
+			}
+		}
+
+		private void writePlan(Object value, ClassPlan plan) throws IOException {
+			switch (plan.getKind()) {
+			case COLLECTION:
+				Collection<?> collection = (Collection<?>) value;
+				out.writeByte(COLLECTION);
+				writeClass(plan.getWriteType());
+				out.writeVarint(collection.size());
+				for (Object element : collection) {
+					writeValue(element);
+				}
+				break;
+			case MAP:
+				Map<?, ?> map = (Map<?, ?>) value;
+				out.writeByte(MAP);
+				writeClass(plan.getWriteType());
+				out.writeVarint(map.size());
+				for (Map.Entry<?, ?> entry : map.entrySet()) {
+					writeValue(entry.getKey());
+					writeValue(entry.getValue());
+				}
+				break;
+			case JAVA:
+				if (!(value instanceof Serializable)) {
+					throw new NotSerializableException(plan.getType().getName());
+				}
+				out.writeByte(JAVA);
+				out.writeBytes(JavaSerializer.INSTANCE.serialize(value));
+				break;
+			default:
+				writeObject(value, plan);
+				break;
+			}
+		}
+
+		private void writeObject(Object value, ClassPlan plan) throws IOException {
+			out.writeByte(OBJECT);
+			writeClass(plan.getType());
+			Integer schema = schemaHandles.get(plan.getType());
+			if (schema == null) {
+				// 第一次出现时写入字段名表
+				schemaHandles.put(plan.getType(), schemaHandles.size());
+				out.writeVarint(0);
+				String[] names = plan.getNames();
+				out.writeVarint(names.length);
+				for (String name : names) {
+					out.writeString(name);
+				}
+			} else {
+				out.writeVarint(schema + 1);
+			}
+
+			FieldPlan[] fields = plan.getFields();
+			for (int i = 0; i < fields.length; i++) {
+				Object fieldValue;
+				try {
+					fieldValue = fields[i].get(value);
+				} catch (IllegalAccessException e) {
+					throw new IOException(e);
+				}
+
+				if (fields[i].isDefaultValue(fieldValue)) {
+					continue;
+				}
+
+				out.writeVarint(i + 1);
+				writeValue(fieldValue);
+			}
+			out.writeVarint(0);
+		}
+	}
+
+	private final class Reader {
+		private final CompactInput in;
+		private final List<Object> handles = new ArrayList<Object>();
+		private final List<Class<?>> classHandles = new ArrayList<Class<?>>();
+		private final List<FieldPlan[]> schemas = new ArrayList<FieldPlan[]>();
+
+		Reader(CompactInput in) {
+			this.in = in;
+		}
+
+		Class<?> readClass() throws IOException, ClassNotFoundException {
+			long value = in.readVarint();
+			if (value == 0) {
+				Class<?> type = ClassUtils.forName(in.readString(), getClassLoader());
+				classHandles.add(type);
+				return type;
+			}
+
+			if ((value & 1) == 1) {
+				int id = (int) (value >>> 1);
+				Class<?> type = idTypeMap.get(id);
+				if (type == null) {
+					throw new ClassNotFoundException("Unregistered type id: " + id);
+				}
+				return type;
+			}
+
+			int handle = (int) (value >>> 1) - 1;
+			if (handle < 0 || handle >= classHandles.size()) {
+				throw new StreamCorruptedException("Invalid class handle: " + handle);
+			}
+			return classHandles.get(handle);
+		}
+
+		private int reserve() {
+			handles.add(null);
+			return handles.size() - 1;
+		}
+
+		Object readValue() throws IOException, ClassNotFoundException {
+			int tag = in.readByte();
+			switch (tag) {
+			case NULL:
+				return null;
+			case TRUE:
+				return Boolean.TRUE;
+			case FALSE:
+				return Boolean.FALSE;
+			case BYTE:
+				return (byte) in.readByte();
+			case SHORT:
+				return (short) in.readSignedVarint();
+			case INT:
+				return (int) in.readSignedVarint();
+			case LONG:
+				return in.readSignedVarint();
+			case FLOAT:
+				return Float.intBitsToFloat(in.readInt());
+			case DOUBLE:
+				return Double.longBitsToDouble(in.readLong());
+			case CHAR:
+				return (char) in.readVarint();
+			case STRING:
+				return in.readString();
+			case BYTES:
+				return in.readBytes();
+			case BIG_INTEGER:
+				return new BigInteger(in.readBytes());
+			case BIG_DECIMAL:
+				int scale = (int) in.readSignedVarint();
+				return new BigDecimal(new BigInteger(in.readBytes()), scale);
+			case DATE:
+				return new Date(in.readSignedVarint());
+			case ENUM:
+				return readEnum();
+			case CLASS:
+				return readClass();
+			case ARRAY:
+				return readArray();
+			case COLLECTION:
+				return readCollection();
+			case MAP:
+				return readMap();
+			case OBJECT:
+				return readObject();
+			case JAVA:
+				int handle = reserve();
+				Object value = JavaSerializer.INSTANCE.deserialize(in.readBytes());
+				handles.set(handle, value);
+				return value;
+			case REFERENCE:
+				int index = in.readVarintAsInt();
+				if (index >= handles.size()) {
+					throw new StreamCorruptedException("Invalid handle: " + index);
+				}
+				return handles.get(index);
+			default:
+				throw new StreamCorruptedException("Invalid tag: " + tag);
+			}
+		}
+
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		private Object readEnum() throws IOException, ClassNotFoundException {
+			Class<?> type = readClass();
+			String name = in.readString();
+			return Enum.valueOf((Class<? extends Enum>) type, name);
+		}
+
+		private Object readArray() throws IOException, ClassNotFoundException {
+			Class<?> componentType = readClass();
+			int length = in.readVarintAsInt();
+			Object array = Array.newInstance(componentType, length);
+			handles.add(array);
+			for (int i = 0; i < length; i++) {
+				Array.set(array, i, readValue());
+			}
+			return array;
+		}
+
+		@SuppressWarnings("unchecked")
+		private Object readCollection() throws IOException, ClassNotFoundException {
+			Collection<Object> collection = (Collection<Object>) newInstance(getPlan(readClass()));
+			handles.add(collection);
+			int size = in.readVarintAsInt();
+			for (int i = 0; i < size; i++) {
+				collection.add(readValue());
+			}
+			return collection;
+		}
+
+		@SuppressWarnings("unchecked")
+		private Object readMap() throws IOException, ClassNotFoundException {
+			Map<Object, Object> map = (Map<Object, Object>) newInstance(getPlan(readClass()));
+			handles.add(map);
+			int size = in.readVarintAsInt();
+			for (int i = 0; i < size; i++) {
+				Object key = readValue();
+				map.put(key, readValue());
+			}
+			return map;
+		}
+
+		private Object readObject() throws IOException, ClassNotFoundException {
+			ClassPlan plan = getPlan(readClass());
+			int schema = in.readVarintAsInt();
+			FieldPlan[] fields;
+			if (schema == 0) {
+				// 按字段名匹配当前类的字段，不存在的字段会被跳过
+				int size = in.readVarintAsInt();
+				fields = new FieldPlan[size];
+				for (int i = 0; i < size; i++) {
+					fields[i] = plan.getField(in.readString());
+				}
+				schemas.add(fields);
+			} else {
+				if (schema > schemas.size()) {
+					throw new StreamCorruptedException("Invalid schema handle: " + schema);
+				}
+				fields = schemas.get(schema - 1);
+			}
+
+			Object instance = newInstance(plan);
+			handles.add(instance);
+			int index;
+			while ((index = in.readVarintAsInt()) != 0) {
+				if (index > fields.length) {
+					throw new StreamCorruptedException("Invalid field tag: " + index);
+				}
+
+				Object value = readValue();
+				FieldPlan field = fields[index - 1];
+				if (field == null) {
+					continue;
+				}
+
+				try {
+					if (!field.set(instance, value) && logger.isDebugEnabled()) {
+						logger.debug("Ignore incompatible field [{}] of {}", field.getName(), plan.getType());
+					}
+				} catch (IllegalAccessException e) {
+					throw new IOException(e);
+				}
+			}
+			return instance;
+		}
+
+		private Object newInstance(ClassPlan plan) throws IOException {
+			try {
+				return plan.newInstance();
+			} catch (ReflectiveOperationException e) {
+				throw new IOException("Unable to create instance of " + plan.getType().getName(), e);
+			}
+		}
+	}
+}
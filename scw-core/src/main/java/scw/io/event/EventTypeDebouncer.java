@@ -0,0 +1,87 @@
+package scw.io.event;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import scw.core.Assert;
+import scw.event.EventType;
+
+/**
+ * 合并一段时间内的多次变化，最后一次变化后经过{@link #getDelay()}才会触发一次<br/>
+ * 创建后的修改仍然是创建，触发期间发生的变化会在下一个时间窗口触发，不会丢失
+ *
+ * @author shuchaowen
+ *
+ */
+public final class EventTypeDebouncer {
+	private final ScheduledExecutorService executor;
+	private final long delay;
+	private final Consumer<EventType> consumer;
+	private final AtomicBoolean debouncing = new AtomicBoolean(false);
+	private final AtomicReference<EventType> pendingEventType = new AtomicReference<EventType>();
+	private volatile long lastEventTime;
+
+	/**
+	 * @param executor
+	 * @param delay    合并的时间窗口(毫秒)
+	 * @param consumer 合并后的事件类型
+	 */
+	public EventTypeDebouncer(ScheduledExecutorService executor, long delay, Consumer<EventType> consumer) {
+		Assert.requiredArgument(executor != null, "executor");
+		Assert.requiredArgument(delay >= 0, "delay");
+		Assert.requiredArgument(consumer != null, "consumer");
+		this.executor = executor;
+		this.delay = delay;
+		this.consumer = consumer;
+	}
+
+	public long getDelay() {
+		return delay;
+	}
+
+	/**
+	 * 记录一次变化，在时间窗口结束后合并触发
+	 * 
+	 * @param eventType
+	 */
+	public void onEvent(EventType eventType) {
+		Assert.requiredArgument(eventType != null, "eventType");
+		pendingEventType.getAndUpdate((pending) -> (pending == EventType.CREATE && eventType == EventType.UPDATE)
+				? pending : eventType);
+		lastEventTime = System.currentTimeMillis();
+		schedule();
+	}
+
+	private void schedule() {
+		if (!debouncing.get() && debouncing.compareAndSet(false, true)) {
+			schedule(delay);
+		}
+	}
+
+	private void schedule(long delay) {
+		executor.schedule(() -> flush(), delay, TimeUnit.MILLISECONDS);
+	}
+
+	private void flush() {
+		long wait = lastEventTime + delay - System.currentTimeMillis();
+		if (wait > 0) {
+			schedule(wait);
+			return;
+		}
+
+		// 先取出待触发的事件再结束时间窗口，之后的变化会开始一个新的时间窗口
+		EventType eventType = pendingEventType.getAndSet(null);
+		debouncing.set(false);
+		if (pendingEventType.get() != null) {
+			// 在取出和结束之间发生的变化
+			schedule();
+		}
+
+		if (eventType != null) {
+			consumer.accept(eventType);
+		}
+	}
+}
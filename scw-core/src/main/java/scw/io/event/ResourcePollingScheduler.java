@@ -0,0 +1,179 @@
+package scw.io.event;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import scw.core.Assert;
+import scw.core.utils.XTime;
+import scw.io.Resource;
+import scw.logger.Logger;
+import scw.logger.LoggerFactory;
+
+/**
+ * 资源轮询调度器<br/>
+ * 所有轮询的资源由一个线程按固定间隔批量检查，只检查已经到期的资源，同一个资源在一次检查中只读取一次状态
+ *
+ * @author shuchaowen
+ *
+ */
+public final class ResourcePollingScheduler {
+	private static Logger logger = LoggerFactory.getLogger(ResourcePollingScheduler.class);
+	public static final ResourcePollingScheduler DEFAULT = new ResourcePollingScheduler(XTime.ONE_SECOND);
+
+	private final long tickInterval;
+	private final Set<PollingTask> tasks = ConcurrentHashMap.newKeySet();
+	private final AtomicBoolean started = new AtomicBoolean(false);
+	private volatile ScheduledExecutorService executor;
+
+	/**
+	 * @param tickInterval 检查的间隔(毫秒)，也是轮询的时间精度
+	 */
+	public ResourcePollingScheduler(long tickInterval) {
+		Assert.requiredArgument(tickInterval > 0, "tickInterval");
+		this.tickInterval = tickInterval;
+	}
+
+	public long getTickInterval() {
+		return tickInterval;
+	}
+
+	/**
+	 * 正在轮询的数量
+	 *
+	 * @return
+	 */
+	public int size() {
+		return tasks.size();
+	}
+
+	public void schedule(PollingTask task) {
+		Assert.requiredArgument(task != null, "task");
+		task.nextPollTime = System.currentTimeMillis() + task.period;
+		tasks.add(task);
+		start();
+	}
+
+	public boolean cancel(PollingTask task) {
+		return tasks.remove(task);
+	}
+
+	private void start() {
+		if (!started.get() && started.compareAndSet(false, true)) {
+			executor = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+				Thread thread = new Thread(runnable, ResourcePollingScheduler.class.getSimpleName());
+				thread.setDaemon(true);
+				return thread;
+			});
+			executor.scheduleWithFixedDelay(() -> {
+				try {
+					poll();
+				} catch (Throwable e) {
+					logger.error(e, "poll resources error");
+				}
+			}, tickInterval, tickInterval, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	public void shutdown() {
+		ScheduledExecutorService executor = this.executor;
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * 检查所有到期的资源
+	 */
+	public void poll() {
+		long now = System.currentTimeMillis();
+		Map<Resource, ResourceState> states = null;
+		for (PollingTask task : tasks) {
+			if (now < task.nextPollTime) {
+				continue;
+			}
+
+			task.nextPollTime = now + task.period;
+			if (states == null) {
+				states = new HashMap<Resource, ResourceState>();
+			}
+
+			try {
+				ResourceState state = states.get(task.resource);
+				if (state == null) {
+					state = new ResourceState(task.resource);
+					states.put(task.resource, state);
+				}
+				task.poll(state.exists, state.lastModified);
+			} catch (Throwable e) {
+				logger.error(e, task.resource.toString());
+			}
+		}
+	}
+
+	private static final class ResourceState {
+		private final boolean exists;
+		private final long lastModified;
+
+		ResourceState(Resource resource) {
+			this.exists = resource.exists();
+			this.lastModified = lastModified(resource, exists);
+		}
+	}
+
+	/**
+	 * @param resource
+	 * @param exists
+	 * @return 不存在返回-1, 无法获取返回-2
+	 */
+	static long lastModified(Resource resource, boolean exists) {
+		if (!exists) {
+			return -1;
+		}
+
+		try {
+			return resource.lastModified();
+		} catch (IOException e) {
+			// ignore
+		}
+		return -2;
+	}
+
+	public static abstract class PollingTask {
+		private final Resource resource;
+		private final long period;
+		private volatile long nextPollTime;
+
+		/**
+		 * @param resource
+		 * @param period 轮询周期(毫秒)
+		 */
+		public PollingTask(Resource resource, long period) {
+			Assert.requiredArgument(resource != null, "resource");
+			this.resource = resource;
+			this.period = period;
+		}
+
+		public Resource getResource() {
+			return resource;
+		}
+
+		public long getPeriod() {
+			return period;
+		}
+
+		/**
+		 * 到期检查
+		 *
+		 * @param exists
+		 * @param lastModified 不存在返回-1, 无法获取返回-2
+		 */
+		protected abstract void poll(boolean exists, long lastModified);
+	}
+}
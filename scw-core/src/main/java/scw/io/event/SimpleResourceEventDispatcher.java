@@ -1,8 +1,5 @@
 package scw.io.event;
 
-import java.io.IOException;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import scw.core.utils.XTime;
@@ -13,16 +10,23 @@ import scw.event.EventType;
 import scw.event.support.DefaultEventDispatcher;
 import scw.io.AbstractResource;
 import scw.io.Resource;
+import scw.io.event.ResourcePollingScheduler.PollingTask;
 import scw.logger.Logger;
 import scw.logger.LoggerFactory;
 
+/**
+ * 通过轮询实现resource监听<br/>
+ * 所有资源由{@link ResourcePollingScheduler#DEFAULT}批量轮询
+ * 
+ * @author shuchaowen
+ *
+ */
 public class SimpleResourceEventDispatcher extends DefaultEventDispatcher<ChangeEvent<Resource>> {
 	private static Logger logger = LoggerFactory.getLogger(SimpleResourceEventDispatcher.class);
 	/**
 	 * 默认的监听周期5s(经过多次尝试，在性能和实时性间取舍)
 	 */
 	static final long LISTENER_PERIOD = Math.max(1, Integer.getInteger("resource.listener.period", 5)) * 1000L;
-	static final Timer TIMER = new Timer(SimpleResourceEventDispatcher.class.getSimpleName(), true);// 守护进程，自动退出
 	private volatile AtomicBoolean lock = new AtomicBoolean(false);
 	private final AbstractResource resource;
 	private final long period;
@@ -41,20 +45,20 @@ public class SimpleResourceEventDispatcher extends DefaultEventDispatcher<Change
 		this.period = period < XTime.ONE_SECOND ? LISTENER_PERIOD : period;
 	}
 	
-	private volatile TimerTask timerTask;
-	protected void listener() {
-		if(timerTask != null){
+	private volatile PollingTask pollingTask;
+	protected synchronized void listener() {
+		if(pollingTask != null){
 			return ;
 		}
 		
-		timerTask = new DefaultEventTimerTask();
-		TIMER.schedule(timerTask, period, period);
+		pollingTask = new DefaultEventPollingTask();
+		ResourcePollingScheduler.DEFAULT.schedule(pollingTask);
 	}
 	
-	protected void cancelListener(){
-		if(timerTask != null){
-			timerTask.cancel();
-			timerTask = null;
+	protected synchronized void cancelListener(){
+		if(pollingTask != null){
+			ResourcePollingScheduler.DEFAULT.cancel(pollingTask);
+			pollingTask = null;
 		}
 	}
 	
@@ -77,43 +81,25 @@ public class SimpleResourceEventDispatcher extends DefaultEventDispatcher<Change
 		return super.registerListener(eventListener);
 	}
 
-	class DefaultEventTimerTask extends TimerTask {
+	class DefaultEventPollingTask extends PollingTask {
 		private long last;
 		private boolean exist;
 
-		public DefaultEventTimerTask() {
+		public DefaultEventPollingTask() {
+			super(resource, period);
 			this.exist = resource.exists();
-			this.last = lastModified();
-		}
-
-		protected long lastModified() {
-			if (!resource.exists()) {
-				return -1;
-			}
-
-			try {
-				return resource.lastModified();
-			} catch (IOException e) {
-				// ignore
-			}
-			return -2;
+			this.last = ResourcePollingScheduler.lastModified(resource, exist);
 		}
 
 		@Override
-		public void run() {
-			try {
-				boolean exist = resource.exists();
-				long last = lastModified();
-				if (exist != this.exist) {
-					this.last = last;
-					this.exist = exist;
-					onChange(new ChangeEvent<Resource>(exist ? EventType.CREATE : EventType.DELETE, resource));
-				} else if (this.last != last) {
-					this.last = last;
-					onChange(new ChangeEvent<Resource>(EventType.UPDATE, resource));
-				}
-			} catch (Exception e) {
-				logger.error(e, resource.toString());
+		protected void poll(boolean exist, long last) {
+			if (exist != this.exist) {
+				this.last = last;
+				this.exist = exist;
+				onChange(new ChangeEvent<Resource>(exist ? EventType.CREATE : EventType.DELETE, resource));
+			} else if (this.last != last) {
+				this.last = last;
+				onChange(new ChangeEvent<Resource>(EventType.UPDATE, resource));
 			}
 		}
 	}
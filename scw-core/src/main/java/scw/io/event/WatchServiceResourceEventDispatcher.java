@@ -8,10 +8,12 @@ import java.nio.file.StandardWatchEventKinds;
 import java.nio.file.WatchEvent;
 import java.nio.file.WatchKey;
 import java.nio.file.WatchService;
-import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import scw.event.ChangeEvent;
@@ -25,15 +27,21 @@ import scw.logger.LoggerFactory;
 /**
  * 使用WatchService实现resource监听<br/>
  * 需要jdk7(包含)以上<br/>
- * 事件可能会重复触发，这与操作系统的实现有关
+ * 事件只会分发给发生变化的目录中对应文件名的资源，同一个资源在{@link #DEBOUNCE_DELAY}内的多次变化只会触发一次事件(操作系统可能会对一次写入触发多次事件)<br/>
+ * 目录失效(例如被删除)后退回到轮询的方式
  * @author shuchaowen
  *
  */
 @RequiredJavaVersion(7)
 public class WatchServiceResourceEventDispatcher extends SimpleResourceEventDispatcher {
 	private static Logger logger = LoggerFactory.getLogger(WatchServiceResourceEventDispatcher.class);
+	/**
+	 * 合并事件的时间窗口(毫秒)，最后一次变化后经过这段时间才会触发事件
+	 */
+	static final long DEBOUNCE_DELAY = Math.max(0, Long.getLong("resource.listener.debounce", 100L));
 	private static final WatchService WATCH_SERVICE;
 	private static ConcurrentHashMap<Path, ResourceWatchKey> listenerMap;
+	private static ScheduledExecutorService debounceExecutor;
 
 	static {
 		WatchService watchService = null;
@@ -46,19 +54,26 @@ public class WatchServiceResourceEventDispatcher extends SimpleResourceEventDisp
 		WATCH_SERVICE = watchService;
 		if (WATCH_SERVICE != null) {
 			listenerMap = new ConcurrentHashMap<Path, WatchServiceResourceEventDispatcher.ResourceWatchKey>();
+			debounceExecutor = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+				Thread thread = new Thread(runnable, WatchServiceResourceEventDispatcher.class.getSimpleName() + "-debounce");
+				thread.setDaemon(true);
+				return thread;
+			});
 			Thread thread = new Thread() {
 				public void run() {
 					while (!Thread.currentThread().isInterrupted()) {
 						try {
-							WATCH_SERVICE.take();
-							for (ResourceWatchKey key : listenerMap.values()) {
-								key.run();
-							}
+							WatchKey watchKey = WATCH_SERVICE.take();
+							dispatch(watchKey);
+						} catch (InterruptedException e) {
+							break;
 						} catch (Throwable e) {
+							logger.error(e, "watch service error");
 							//如果出现异常就休眠一秒再轮询
 							try {
 								Thread.sleep(1000L);
 							} catch (InterruptedException e1) {
+								break;
 							}
 						}
 					}
@@ -75,12 +90,74 @@ public class WatchServiceResourceEventDispatcher extends SimpleResourceEventDisp
 						WATCH_SERVICE.close();
 					} catch (Exception e) {
 					}
+					debounceExecutor.shutdownNow();
 					super.run();
 				}
 			});
 		}
 	}
 
+	/**
+	 * 只处理触发的目录
+	 * 
+	 * @param watchKey
+	 */
+	private static void dispatch(WatchKey watchKey) {
+		ResourceWatchKey resourceWatchKey = null;
+		Object watchable = watchKey.watchable();
+		if (watchable instanceof Path) {
+			resourceWatchKey = listenerMap.get(watchable);
+		}
+
+		if (resourceWatchKey == null) {
+			// 没有监听者了
+			watchKey.pollEvents();
+			watchKey.cancel();
+			return;
+		}
+
+		try {
+			resourceWatchKey.onEvents(watchKey);
+		} finally {
+			if (!watchKey.reset()) {
+				// 目录已经不存在了
+				listenerMap.remove(watchable, resourceWatchKey);
+				resourceWatchKey.invalid();
+			}
+		}
+	}
+
+	/**
+	 * 只有WatchService可用时才会有事件
+	 */
+	private final EventTypeDebouncer debouncer = debounceExecutor == null ? null
+			: new EventTypeDebouncer(debounceExecutor, DEBOUNCE_DELAY, (eventType) -> flush(eventType));
+
+	/**
+	 * 记录一次变化，在时间窗口结束后合并触发
+	 * 
+	 * @param eventType
+	 */
+	private void onWatchEvent(EventType eventType) {
+		debouncer.onEvent(eventType);
+	}
+
+	private void flush(EventType eventType) {
+		// 以最终的状态为准
+		boolean exists = getResource().exists();
+		if (!exists) {
+			eventType = EventType.DELETE;
+		} else if (eventType == EventType.DELETE) {
+			eventType = EventType.CREATE;
+		}
+
+		try {
+			onChange(new ChangeEvent<Resource>(eventType, getResource()));
+		} catch (Throwable e) {
+			logger.error(e, getResource().getDescription());
+		}
+	}
+
 	public WatchServiceResourceEventDispatcher(AbstractResource resource) {
 		super(resource);
 	}
@@ -89,7 +166,7 @@ public class WatchServiceResourceEventDispatcher extends SimpleResourceEventDisp
 		super(resource, listenerPeriod);
 	}
 
-	private AtomicBoolean registred = new AtomicBoolean();
+	private final AtomicBoolean registred = new AtomicBoolean();
 	private boolean watchServiceRegister() {
 		if (WATCH_SERVICE == null) {
 			return false;
@@ -104,20 +181,17 @@ public class WatchServiceResourceEventDispatcher extends SimpleResourceEventDisp
 				}
 
 				Path path = file.getParentFile().toPath();
-				ResourceWatchKey resourceWatchKey = listenerMap.get(path);
-				if (resourceWatchKey == null) {
-					resourceWatchKey = new ResourceWatchKey();
-					ResourceWatchKey old = listenerMap.putIfAbsent(path, resourceWatchKey);
-					if (old != null) {
-						resourceWatchKey = old;
-					} else {
-						WatchKey watchKey = path.register(WATCH_SERVICE, StandardWatchEventKinds.ENTRY_CREATE,
+				ResourceWatchKey resourceWatchKey;
+				synchronized (listenerMap) {
+					resourceWatchKey = listenerMap.get(path);
+					if (resourceWatchKey == null) {
+						path.register(WATCH_SERVICE, StandardWatchEventKinds.ENTRY_CREATE,
 								StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
-						resourceWatchKey.setWatchKey(watchKey);
+						resourceWatchKey = new ResourceWatchKey();
+						listenerMap.put(path, resourceWatchKey);
 					}
+					resourceWatchKey.register(file.getName(), this);
 				}
-
-				resourceWatchKey.register(file, getResource());
 				return true;
 			} catch (IOException e) {
 				// 如果出现异常就使用默认的方式来实现监听
@@ -128,6 +202,14 @@ public class WatchServiceResourceEventDispatcher extends SimpleResourceEventDisp
 		return false;
 	}
 
+	/**
+	 * 目录的监听失效了，使用默认的方式，在资源重新创建后会再次尝试注册
+	 */
+	private void watchKeyInvalid() {
+		registred.set(false);
+		super.listener();
+	}
+
 	@Override
 	protected void onChange(ChangeEvent<Resource> resourceEvent) {
 		if (resourceEvent.getEventType() == EventType.CREATE) {
@@ -148,109 +230,77 @@ public class WatchServiceResourceEventDispatcher extends SimpleResourceEventDisp
 		super.listener();
 	}
 	
-	private static final class ResourceItem{
-		private final String name;
-		private final AbstractResource resource;
-		
-		public ResourceItem(String name, AbstractResource resource) {
-			this.name = name;
-			this.resource = resource;
-		}
-		
-		public String getName() {
-			return name;
-		}
-
-		public AbstractResource getResource() {
-			return resource;
-		}
+	private static final class ResourceWatchKey {
+		/**
+		 * 文件名 -> 监听者
+		 */
+		private final ConcurrentMap<String, Set<WatchServiceResourceEventDispatcher>> dispatcherMap = new ConcurrentHashMap<String, Set<WatchServiceResourceEventDispatcher>>();
 
-		@Override
-		public boolean equals(Object obj) {
-			if(obj == null){
-				return false;
-			}
-			
-			if(obj instanceof ResourceItem){
-				return ((ResourceItem) obj).resource == resource;
+		public void register(String name, WatchServiceResourceEventDispatcher dispatcher) {
+			Set<WatchServiceResourceEventDispatcher> dispatchers = dispatcherMap.get(name);
+			if (dispatchers == null) {
+				dispatchers = new CopyOnWriteArraySet<WatchServiceResourceEventDispatcher>();
+				Set<WatchServiceResourceEventDispatcher> old = dispatcherMap.putIfAbsent(name, dispatchers);
+				if (old != null) {
+					dispatchers = old;
+				}
 			}
-			
-			return false;
+			dispatchers.add(dispatcher);
 		}
-		
-		@Override
-		public int hashCode() {
-			return resource.hashCode();
-		}
-	}
 
-	private static class ResourceWatchKey implements Runnable {
-		private WatchKey watchKey;
-		private final Set<ResourceItem> resources = new CopyOnWriteArraySet<ResourceItem>();
+		public void onEvents(WatchKey watchKey) {
+			for (WatchEvent<?> event : watchKey.pollEvents()) {
+				if (StandardWatchEventKinds.OVERFLOW.equals(event.kind())) {
+					// 事件丢失了，只能全部检查一次
+					if (logger.isDebugEnabled()) {
+						logger.debug("watch event overflow: {}", watchKey.watchable());
+					}
+
+					for (Set<WatchServiceResourceEventDispatcher> dispatchers : dispatcherMap.values()) {
+						onEvent(dispatchers, EventType.UPDATE);
+					}
+					continue;
+				}
 
-		public void register(File file, AbstractResource resource) {
-			resources.add(new ResourceItem(file.getName(), resource));
-		}
+				Object context = event.context();
+				if (!(context instanceof Path)) {
+					continue;
+				}
+
+				EventType eventType = null;
+				if (StandardWatchEventKinds.ENTRY_CREATE.equals(event.kind())) {
+					eventType = EventType.CREATE;
+				} else if (StandardWatchEventKinds.ENTRY_MODIFY.equals(event.kind())) {
+					eventType = EventType.UPDATE;
+				} else if (StandardWatchEventKinds.ENTRY_DELETE.equals(event.kind())) {
+					eventType = EventType.DELETE;
+				}
 
-		public void setWatchKey(WatchKey watchKey) {
-			this.watchKey = watchKey;
+				if (eventType == null) {
+					continue;
+				}
+
+				Set<WatchServiceResourceEventDispatcher> dispatchers = dispatcherMap
+						.get(((Path) context).getFileName().toString());
+				if (dispatchers != null) {
+					onEvent(dispatchers, eventType);
+				}
+			}
 		}
 
-		public void run() {
-			if (watchKey == null || !watchKey.isValid()) {
-				return;
+		private void onEvent(Set<WatchServiceResourceEventDispatcher> dispatchers, EventType eventType) {
+			for (WatchServiceResourceEventDispatcher dispatcher : dispatchers) {
+				dispatcher.onWatchEvent(eventType);
 			}
-			
-			List<WatchEvent<?>> watchEvents = watchKey.pollEvents();
-			try {
-				for (WatchEvent<?> event : watchEvents) {
-					Object context = event.context();
-					if(context == null){
-						continue;
-					}
-					
-					if (!(context instanceof Path)) {
-						continue;
-					}
-					
-					Path path = (Path) context;
-					File file = path.toFile();
-					if(file == null){
-						continue;
-					}
-					
-					EventType eventType = null;
-					if (StandardWatchEventKinds.ENTRY_CREATE.equals(event.kind())) {
-						eventType = EventType.CREATE;
-					} else if (StandardWatchEventKinds.ENTRY_MODIFY.equals(event.kind())) {
-						eventType = EventType.UPDATE;
-					} else if (StandardWatchEventKinds.ENTRY_DELETE.equals(event.kind())) {
-						eventType = EventType.DELETE;
-					}
-					
-					if (eventType == null) {
-						continue;
-					}
-					
-					for(ResourceItem item : resources){
-						if (file.getName().equals(item.getName())) {
-							ChangeEvent<Resource> resourceEvent = new ChangeEvent<Resource>(eventType, item.getResource());
-							if(logger.isDebugEnabled()){
-								logger.debug(resourceEvent.toString());
-							}
-							
-							try {
-								item.getResource().publishEvent(resourceEvent);
-							} catch (Throwable e) {
-								logger.error(e, item.getResource().getDescription());
-							}
-						}
-					};
+		}
+
+		public void invalid() {
+			for (Set<WatchServiceResourceEventDispatcher> dispatchers : dispatcherMap.values()) {
+				for (WatchServiceResourceEventDispatcher dispatcher : dispatchers) {
+					dispatcher.watchKeyInvalid();
 				}
-			} catch (Throwable e) {
-				logger.error(e, watchKey.toString());
 			}
-			watchKey.reset();
+			dispatcherMap.clear();
 		}
 	}
 }
@@ -1,16 +1,31 @@
 package scw.locks;
 
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 
 import scw.env.Sys;
+import scw.lang.Nullable;
 
-public abstract class AbstractLock implements Lock{
+/**
+ * 等待锁时使用带随机抖动的指数退避，如果{@link #getWaiterName()}不为空那么同一个jvm中只有一个线程会去轮询
+ *
+ * @author shuchaowen
+ *
+ */
+public abstract class AbstractLock implements Lock {
 	private static final long DEFAULT_SLEEP_TIME = Sys.env.getValue("lock.sleep.time", Long.class, 1L);
-	
+	private static final long DEFAULT_MAX_SLEEP_TIME = Sys.env.getValue("lock.max.sleep.time", Long.class, 100L);
+
 	private long sleepTime = DEFAULT_SLEEP_TIME;
-	
+	private long maxSleepTime = DEFAULT_MAX_SLEEP_TIME;
+
+	/**
+	 * 初始的等待时间(毫秒)
+	 *
+	 * @return
+	 */
 	public long getSleepTime() {
 		return sleepTime;
 	}
@@ -19,32 +34,135 @@ public abstract class AbstractLock implements Lock{
 		this.sleepTime = sleepTime;
 	}
 
-	public boolean tryLock(long period, TimeUnit timeUnit)
-			throws InterruptedException {
-		boolean b = false;
-		while (!(b = tryLock())) {
-			timeUnit.sleep(period);
+	/**
+	 * 退避的最大等待时间(毫秒)
+	 *
+	 * @return
+	 */
+	public long getMaxSleepTime() {
+		return maxSleepTime;
+	}
+
+	public void setMaxSleepTime(long maxSleepTime) {
+		this.maxSleepTime = maxSleepTime;
+	}
+
+	/**
+	 * 本地等待队列的名称，相同名称的锁在同一个jvm中只会有一个线程去轮询<br/>
+	 * 默认为空，表示每个线程各自轮询
+	 *
+	 * @return
+	 */
+	@Nullable
+	protected String getWaiterName() {
+		return null;
+	}
+
+	/**
+	 * 解锁后调用，唤醒本jvm中等待此锁的线程
+	 */
+	protected void signalUnlocked() {
+		String name = getWaiterName();
+		if (name != null) {
+			LockWaiter.signal(name);
 		}
-		return b;
 	}
 
 	/**
-	 * 默认为ms试一次
+	 * 第attempt次重试前需要等待的时间(纳秒)
+	 *
+	 * @param attempt
+	 * @return
 	 */
+	protected long getBackoffNanos(int attempt) {
+		long min = Math.max(1, TimeUnit.MILLISECONDS.toNanos(sleepTime));
+		long max = Math.max(min, TimeUnit.MILLISECONDS.toNanos(maxSleepTime));
+		long backoff = attempt >= 30 ? max : Math.min(max, min << attempt);
+		// 一半固定一半随机，避免多个节点同时重试
+		long half = backoff >>> 1;
+		return half + ThreadLocalRandom.current().nextLong(backoff - half + 1);
+	}
+
+	/**
+	 * 在给定的时间内获取锁
+	 *
+	 * @param time 等待的最长时间，小于等于0表示只尝试一次
+	 */
+	public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+		return acquire(Math.max(0, unit.toNanos(time)));
+	}
+
 	public void lock() {
 		try {
 			lockInterruptibly();
 		} catch (InterruptedException e) {
-			throw new RuntimeException(e);
+			Thread.currentThread().interrupt();
+			throw new LockException(e);
 		}
 	}
 
 	public void lockInterruptibly() throws InterruptedException {
-		while (!tryLock()) {
-			TimeUnit.MILLISECONDS.sleep(sleepTime);
+		acquire(-1);
+	}
+
+	/**
+	 * @param timeout 纳秒，小于0表示一直等待
+	 * @return
+	 * @throws InterruptedException
+	 */
+	private boolean acquire(long timeout) throws InterruptedException {
+		if (Thread.interrupted()) {
+			throw new InterruptedException();
+		}
+
+		if (tryLock()) {
+			return true;
+		}
+
+		if (timeout == 0) {
+			return false;
+		}
+
+		long deadline = timeout < 0 ? 0 : (System.nanoTime() + timeout);
+		String name = getWaiterName();
+		LockWaiter waiter = name == null ? new LockWaiter() : LockWaiter.acquire(name);
+		try {
+			if (!waiter.acquirePoller(timeout < 0 ? -1 : (deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+				return false;
+			}
+
+			try {
+				int attempt = 0;
+				while (true) {
+					long signalCount = waiter.getSignalCount();
+					if (tryLock()) {
+						return true;
+					}
+
+					long wait = getBackoffNanos(attempt++);
+					if (timeout > 0) {
+						long remaining = deadline - System.nanoTime();
+						if (remaining <= 0) {
+							return false;
+						}
+						wait = Math.min(wait, remaining);
+					}
+
+					if (waiter.await(signalCount, wait, TimeUnit.NANOSECONDS)) {
+						// 收到解锁通知，重新开始退避
+						attempt = 0;
+					}
+				}
+			} finally {
+				waiter.releasePoller();
+			}
+		} finally {
+			if (name != null) {
+				LockWaiter.release(name, waiter);
+			}
 		}
 	}
-	
+
 	public Condition newCondition() {
 		throw new UnsupportedOperationException();
 	}
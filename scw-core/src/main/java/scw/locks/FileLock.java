@@ -29,6 +29,11 @@ public class FileLock extends AbstractLock{
 		file.deleteOnExit();
 	}
 
+	@Override
+	protected String getWaiterName() {
+		return FileLock.class.getName() + ":" + file.getAbsolutePath();
+	}
+
 	@Override
 	public boolean tryLock() {
 		if(file.exists()) {
@@ -60,6 +65,7 @@ public class FileLock extends AbstractLock{
 				String version = FileUtils.readFileToString(file, Constants.UTF_8_NAME);
 				if(this.version.equals(version)) {
 					file.delete();
+					signalUnlocked();
 				}
 			} catch (IOException e) {
 				//ignore 解锁失败
@@ -0,0 +1,14 @@
+package scw.locks;
+
+import java.util.EventListener;
+
+/**
+ * 租约丢失的回调，一般是因为锁已经过期被其他人获取，此时临界区已经不再受保护
+ * 
+ * @author shuchaowen
+ *
+ */
+@FunctionalInterface
+public interface LeaseListener extends EventListener {
+	void onLost(RenewableLock lock);
+}
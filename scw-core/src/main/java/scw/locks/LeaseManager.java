@@ -0,0 +1,241 @@
+package scw.locks;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import scw.core.Assert;
+import scw.env.Sys;
+import scw.logger.Logger;
+import scw.logger.LoggerFactory;
+
+/**
+ * 集中管理锁的租约续期<br/>
+ * 只使用一个线程按固定间隔检查需要续期的锁，同一个{@link LeaseRenewer}且超时时间相同的锁会合并成一批续期，续期失败会通知{@link LeaseListener}
+ *
+ * @author shuchaowen
+ *
+ */
+public class LeaseManager {
+	private static Logger logger = LoggerFactory.getLogger(LeaseManager.class);
+
+	public static final LeaseManager DEFAULT = new LeaseManager(
+			Sys.env.getValue("lock.lease.tick.interval", Long.class, 100L));
+
+	private final long tickInterval;
+	private final ConcurrentMap<RenewableLock, Lease> leases = new ConcurrentHashMap<RenewableLock, Lease>();
+	private final List<LeaseListener> leaseListeners = new CopyOnWriteArrayList<LeaseListener>();
+	private final AtomicBoolean started = new AtomicBoolean(false);
+	private volatile ScheduledExecutorService scheduledExecutorService;
+
+	/**
+	 * @param tickInterval 检查的间隔(毫秒)，续期的时间精度
+	 */
+	public LeaseManager(long tickInterval) {
+		Assert.requiredArgument(tickInterval > 0, "tickInterval");
+		this.tickInterval = tickInterval;
+	}
+
+	public long getTickInterval() {
+		return tickInterval;
+	}
+
+	public void addLeaseListener(LeaseListener leaseListener) {
+		Assert.requiredArgument(leaseListener != null, "leaseListener");
+		leaseListeners.add(leaseListener);
+	}
+
+	public boolean removeLeaseListener(LeaseListener leaseListener) {
+		return leaseListeners.remove(leaseListener);
+	}
+
+	/**
+	 * 正在续期的锁的数量
+	 *
+	 * @return
+	 */
+	public int size() {
+		return leases.size();
+	}
+
+	/**
+	 * 注册一个锁，每隔period续期一次
+	 *
+	 * @param lock
+	 * @param period
+	 * @param unit
+	 * @return 如果已经注册了返回false
+	 */
+	public boolean register(RenewableLock lock, long period, TimeUnit unit) {
+		Assert.requiredArgument(lock != null, "lock");
+		Assert.requiredArgument(period > 0, "period");
+		Lease lease = new Lease(lock, unit.toNanos(period), lock.getTimeout(TimeUnit.NANOSECONDS));
+		if (leases.putIfAbsent(lock, lease) != null) {
+			return false;
+		}
+		start();
+		return true;
+	}
+
+	public boolean unregister(RenewableLock lock) {
+		return leases.remove(lock) != null;
+	}
+
+	private void start() {
+		if (!started.get() && started.compareAndSet(false, true)) {
+			scheduledExecutorService = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+				Thread thread = new Thread(runnable, LeaseManager.class.getSimpleName());
+				thread.setDaemon(true);
+				return thread;
+			});
+			scheduledExecutorService.scheduleWithFixedDelay(() -> {
+				try {
+					renewal();
+				} catch (Throwable e) {
+					logger.error(e, "lease renewal error");
+				}
+			}, tickInterval, tickInterval, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	public void shutdown() {
+		ScheduledExecutorService scheduledExecutorService = this.scheduledExecutorService;
+		if (scheduledExecutorService != null) {
+			scheduledExecutorService.shutdownNow();
+		}
+	}
+
+	/**
+	 * 续期所有到期的锁
+	 */
+	public void renewal() {
+		long now = System.nanoTime();
+		Map<LeaseGroup, List<Lease>> groups = new LinkedHashMap<LeaseGroup, List<Lease>>();
+		for (Lease lease : leases.values()) {
+			if (now - lease.nextRenewalTime < 0) {
+				continue;
+			}
+
+			LeaseGroup group = new LeaseGroup(lease.lock.getLeaseRenewer(), lease.timeout);
+			List<Lease> list = groups.get(group);
+			if (list == null) {
+				list = new ArrayList<Lease>();
+				groups.put(group, list);
+			}
+			list.add(lease);
+		}
+
+		for (Map.Entry<LeaseGroup, List<Lease>> entry : groups.entrySet()) {
+			renewal(entry.getKey(), entry.getValue());
+		}
+	}
+
+	private void renewal(LeaseGroup group, List<Lease> list) {
+		List<RenewableLock> locks = new ArrayList<RenewableLock>(list.size());
+		for (Lease lease : list) {
+			locks.add(lease.lock);
+		}
+
+		long begin = System.nanoTime();
+		Collection<? extends RenewableLock> lost;
+		try {
+			lost = group.renewer.renewal(locks, group.timeout, TimeUnit.NANOSECONDS);
+		} catch (Throwable e) {
+			logger.error(e, "renewal {} locks error", locks.size());
+			// 下次检查时重试，直到租约真正过期
+			for (Lease lease : list) {
+				if (begin - lease.expireTime >= 0) {
+					lost(lease);
+				}
+			}
+			return;
+		}
+
+		Set<RenewableLock> lostSet = Collections.newSetFromMap(new IdentityHashMap<RenewableLock, Boolean>());
+		if (lost != null) {
+			lostSet.addAll(lost);
+		}
+
+		for (Lease lease : list) {
+			if (lostSet.contains(lease.lock)) {
+				lost(lease);
+			} else {
+				lease.expireTime = begin + lease.timeout;
+				lease.nextRenewalTime = begin + lease.period;
+			}
+		}
+	}
+
+	private void lost(Lease lease) {
+		if (!leases.remove(lease.lock, lease)) {
+			// 已经取消了
+			return;
+		}
+
+		lease.lock.leaseLost();
+		for (LeaseListener listener : leaseListeners) {
+			try {
+				listener.onLost(lease.lock);
+			} catch (Throwable e) {
+				logger.error(e, "lease lost listener error: {}", lease.lock);
+			}
+		}
+	}
+
+	private static final class Lease {
+		private final RenewableLock lock;
+		private final long period;
+		private final long timeout;
+		private volatile long nextRenewalTime;
+		private volatile long expireTime;
+
+		Lease(RenewableLock lock, long period, long timeout) {
+			this.lock = lock;
+			this.period = period;
+			this.timeout = timeout;
+			long now = System.nanoTime();
+			this.nextRenewalTime = now + period;
+			this.expireTime = now + timeout;
+		}
+	}
+
+	private static final class LeaseGroup {
+		private final LeaseRenewer renewer;
+		private final long timeout;
+
+		LeaseGroup(LeaseRenewer renewer, long timeout) {
+			this.renewer = renewer;
+			this.timeout = timeout;
+		}
+
+		@Override
+		public int hashCode() {
+			return renewer.hashCode() * 31 + Long.hashCode(timeout);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+
+			if (obj instanceof LeaseGroup) {
+				LeaseGroup other = (LeaseGroup) obj;
+				return timeout == other.timeout && renewer.equals(other.renewer);
+			}
+			return false;
+		}
+	}
+}
@@ -0,0 +1,38 @@
+package scw.locks;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 租约续期，{@link LeaseManager}会将同一个续期器(equals)且超时时间相同的锁合并成一批进行续期
+ * 
+ * @author shuchaowen
+ *
+ */
+@FunctionalInterface
+public interface LeaseRenewer {
+	/**
+	 * 逐个调用{@link RenewableLock#renewal(long, TimeUnit)}
+	 */
+	static final LeaseRenewer INDIVIDUAL = (locks, time, unit) -> {
+		List<RenewableLock> lost = new ArrayList<RenewableLock>();
+		for (RenewableLock lock : locks) {
+			if (!lock.renewal(time, unit)) {
+				lost.add(lock);
+			}
+		}
+		return lost;
+	};
+
+	/**
+	 * 批量续期
+	 * 
+	 * @param locks
+	 * @param time
+	 * @param unit
+	 * @return 续期失败(租约已丢失)的锁
+	 */
+	Collection<? extends RenewableLock> renewal(List<? extends RenewableLock> locks, long time, TimeUnit unit);
+}
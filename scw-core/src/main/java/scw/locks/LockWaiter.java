@@ -0,0 +1,131 @@
+package scw.locks;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 同一个jvm中等待同一个锁的线程共享一个LockWaiter<br/>
+ * 同一时间只有一个线程(轮询者)会去尝试获取锁，其他线程在本地排队，解锁时可以通过{@link #signal(String)}唤醒轮询者
+ *
+ * @author shuchaowen
+ *
+ */
+public final class LockWaiter {
+	private static final ConcurrentMap<String, LockWaiter> WAITERS = new ConcurrentHashMap<String, LockWaiter>();
+
+	private final Semaphore poller = new Semaphore(1, true);
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition condition = lock.newCondition();
+	private volatile long signalCount;
+	private int references;
+
+	/**
+	 * 获取一个等待者，使用完后必须调用{@link #release(String, LockWaiter)}
+	 *
+	 * @param name
+	 * @return
+	 */
+	public static LockWaiter acquire(String name) {
+		while (true) {
+			LockWaiter waiter = WAITERS.get(name);
+			if (waiter == null) {
+				waiter = new LockWaiter();
+				LockWaiter old = WAITERS.putIfAbsent(name, waiter);
+				if (old != null) {
+					waiter = old;
+				}
+			}
+
+			synchronized (waiter) {
+				// 可能在引用前已经被移除了
+				if (waiter.references >= 0 && WAITERS.get(name) == waiter) {
+					waiter.references++;
+					return waiter;
+				}
+			}
+		}
+	}
+
+	public static void release(String name, LockWaiter waiter) {
+		synchronized (waiter) {
+			if (--waiter.references == 0) {
+				waiter.references = -1;
+				WAITERS.remove(name, waiter);
+			}
+		}
+	}
+
+	/**
+	 * 通知本jvm中等待此锁的线程锁可能已经被释放
+	 *
+	 * @param name
+	 */
+	public static void signal(String name) {
+		LockWaiter waiter = WAITERS.get(name);
+		if (waiter != null) {
+			waiter.signalAll();
+		}
+	}
+
+	/**
+	 * 成为轮询者
+	 *
+	 * @param timeout 小于0表示一直等待
+	 * @return 超时返回false
+	 * @throws InterruptedException
+	 */
+	public boolean acquirePoller(long timeout, TimeUnit unit) throws InterruptedException {
+		if (timeout < 0) {
+			poller.acquire();
+			return true;
+		}
+		return poller.tryAcquire(timeout, unit);
+	}
+
+	public void releasePoller() {
+		poller.release();
+	}
+
+	public long getSignalCount() {
+		return signalCount;
+	}
+
+	/**
+	 * 等待通知
+	 *
+	 * @param signalCount 等待前获取的{@link #getSignalCount()}, 如果在此之后已经发生了通知就直接返回
+	 * @param timeout
+	 * @param unit
+	 * @return 是否收到了通知
+	 * @throws InterruptedException
+	 */
+	public boolean await(long signalCount, long timeout, TimeUnit unit) throws InterruptedException {
+		long nanos = unit.toNanos(timeout);
+		lock.lockInterruptibly();
+		try {
+			while (this.signalCount == signalCount) {
+				if (nanos <= 0) {
+					return false;
+				}
+				nanos = condition.awaitNanos(nanos);
+			}
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public void signalAll() {
+		lock.lock();
+		try {
+			signalCount++;
+			condition.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+}
@@ -1,36 +1,23 @@
 package scw.locks;
 
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import scw.core.Assert;
+import scw.lang.Nullable;
 
 /**
- * 一些锁的实现为了防止死锁会设置超时时间，有时因一些意外导致锁超时但不应该释放所以提供了续期的方法
+ * 一些锁的实现为了防止死锁会设置超时时间，有时因一些意外导致锁超时但不应该释放所以提供了续期的方法<br/>
+ * 自动续期由{@link LeaseManager}统一调度
  * @author shuchaowen
  *
  */
 public abstract class RenewableLock extends AbstractLock{
-	private static final ScheduledExecutorService SCHEDULED_EXECUTOR_SERVICE = Executors.newScheduledThreadPool(1);
-	
-	static{
-		Runtime.getRuntime().addShutdownHook(new Thread(){
-			@Override
-			public void run() {
-				SCHEDULED_EXECUTOR_SERVICE.shutdownNow();
-				super.run();
-			}
-		});
-	}
-	
-	private AtomicBoolean autoRenewal = new AtomicBoolean(false);
-	private volatile ScheduledFuture<?> scheduledFuture;
-	
+	private final AtomicBoolean autoRenewal = new AtomicBoolean(false);
 	private final TimeUnit timeUnit;
 	private final long timeout;
+	private volatile LeaseManager leaseManager = LeaseManager.DEFAULT;
+	private volatile LeaseListener leaseListener;
 	
 	public RenewableLock(TimeUnit timeUnit, long timeout){
 		this.timeout = timeout;
@@ -41,6 +28,41 @@ public abstract class RenewableLock extends AbstractLock{
 		return timeUnit.convert(this.timeout, this.timeUnit);
 	}
 	
+	public LeaseManager getLeaseManager() {
+		return leaseManager;
+	}
+
+	public void setLeaseManager(LeaseManager leaseManager) {
+		Assert.requiredArgument(leaseManager != null, "leaseManager");
+		this.leaseManager = leaseManager;
+	}
+
+	@Nullable
+	public LeaseListener getLeaseListener() {
+		return leaseListener;
+	}
+
+	/**
+	 * 自动续期失败(租约丢失)时的回调
+	 * @param leaseListener
+	 */
+	public void setLeaseListener(@Nullable LeaseListener leaseListener) {
+		this.leaseListener = leaseListener;
+	}
+
+	/**
+	 * 自动续期时使用的续期器，返回同一个(equals)续期器的锁会被合并成一批续期<br/>
+	 * 默认逐个调用{@link #renewal(long, TimeUnit)}
+	 * @return
+	 */
+	protected LeaseRenewer getLeaseRenewer() {
+		return LeaseRenewer.INDIVIDUAL;
+	}
+	
+	public boolean isAutoRenewal() {
+		return autoRenewal.get();
+	}
+
 	public boolean autoRenewal(){
 		return autoRenewal(getTimeout(TimeUnit.MILLISECONDS)/2, TimeUnit.MILLISECONDS);
 	}
@@ -56,14 +78,7 @@ public abstract class RenewableLock extends AbstractLock{
 		}
 		
 		if(autoRenewal.compareAndSet(false, true)){
-			scheduledFuture = SCHEDULED_EXECUTOR_SERVICE.scheduleAtFixedRate(new Runnable() {
-				
-				public void run() {
-					if(!renewal()){
-						cancelAutoRenewal();
-					}
-				}
-			}, period, period, timeUnit);
+			leaseManager.register(this, period, timeUnit);
 			return true;
 		}
 		
@@ -80,12 +95,24 @@ public abstract class RenewableLock extends AbstractLock{
 		}
 		
 		if(autoRenewal.compareAndSet(true, false)){
-			scheduledFuture.cancel(true);
+			leaseManager.unregister(this);
 			return true;
 		}
 		return false;
 	}
 	
+	/**
+	 * 由{@link LeaseManager}在续期失败时调用
+	 */
+	void leaseLost() {
+		if (autoRenewal.compareAndSet(true, false)) {
+			LeaseListener leaseListener = this.leaseListener;
+			if (leaseListener != null) {
+				leaseListener.onLost(this);
+			}
+		}
+	}
+	
 	/**
 	 * 续期
 	 * @return
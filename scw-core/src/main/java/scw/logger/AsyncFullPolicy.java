@@ -0,0 +1,26 @@
+package scw.logger;
+
+/**
+ * 异步日志缓冲区已满时的处理策略
+ * 
+ * @author shuchaowen
+ * @see AsyncLogAppender
+ */
+public enum AsyncFullPolicy {
+	/**
+	 * 阻塞调用线程直到缓冲区有空闲位置
+	 */
+	BLOCK,
+	/**
+	 * 直接丢弃
+	 */
+	DISCARD,
+	/**
+	 * 丢弃低于WARN等级的日志，其他的阻塞
+	 */
+	DISCARD_BELOW_WARN,
+	/**
+	 * 在调用线程中同步输出
+	 */
+	CALLER_RUNS
+}
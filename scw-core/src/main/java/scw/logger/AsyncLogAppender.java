@@ -0,0 +1,291 @@
+package scw.logger;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+
+import scw.core.Assert;
+
+/**
+ * 异步日志输出<br/>
+ * 调用线程只负责将日志参数放入一个有界的环形缓冲区(槽位会被复用)，由唯一的写线程完成格式化和输出
+ *
+ * @author shuchaowen
+ *
+ */
+public class AsyncLogAppender {
+	private static final int MAX_BUILDER_CAPACITY = 64 * 1024;
+	private static final long PARK_NANOS = 10 * 1000 * 1000L;
+
+	private final LogEvent[] events;
+	private final int mask;
+	private final AtomicLong tail = new AtomicLong();
+	/**
+	 * 只有写线程会修改
+	 */
+	private long head = 0;
+
+	private final AsyncFullPolicy fullPolicy;
+	private final Writer out;
+	private final CustomFormatter formatter = new CustomFormatter();
+	private final AtomicLong discardCount = new AtomicLong();
+	private final Thread thread;
+	private StringBuilder builder = new StringBuilder(256);
+	private volatile boolean waiting = false;
+	private volatile boolean running = true;
+
+	public AsyncLogAppender(int bufferSize, AsyncFullPolicy fullPolicy) {
+		this(bufferSize, fullPolicy, new BufferedWriter(new OutputStreamWriter(System.out), 8192));
+	}
+
+	/**
+	 * @param bufferSize 缓冲区大小,会向上取整为2的幂
+	 * @param fullPolicy
+	 * @param out
+	 */
+	public AsyncLogAppender(int bufferSize, AsyncFullPolicy fullPolicy, Writer out) {
+		Assert.requiredArgument(bufferSize > 0, "bufferSize");
+		Assert.requiredArgument(fullPolicy != null, "fullPolicy");
+		Assert.requiredArgument(out != null, "out");
+		int capacity = Integer.highestOneBit(bufferSize);
+		if (capacity < bufferSize) {
+			capacity = capacity << 1;
+		}
+
+		this.events = new LogEvent[capacity];
+		for (int i = 0; i < capacity; i++) {
+			events[i] = new LogEvent(i);
+		}
+		this.mask = capacity - 1;
+		this.fullPolicy = fullPolicy;
+		this.out = out;
+		this.thread = new Thread(() -> run(), AsyncLogAppender.class.getSimpleName());
+		this.thread.setDaemon(true);
+		this.thread.start();
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> shutdown(), "shutdown-" + thread.getName()));
+	}
+
+	public int getBufferSize() {
+		return events.length;
+	}
+
+	public AsyncFullPolicy getFullPolicy() {
+		return fullPolicy;
+	}
+
+	/**
+	 * 因缓冲区已满而丢弃的日志数量
+	 *
+	 * @return
+	 */
+	public long getDiscardCount() {
+		return discardCount.get();
+	}
+
+	public void append(long millis, Level level, String name, String format, Object[] args, Throwable thrown) {
+		if (!running || Thread.currentThread() == thread) {
+			// 写线程内部产生的日志(例如参数的toString中打印了日志)直接输出，防止死锁
+			write(millis, level, name, format, args, thrown);
+			return;
+		}
+
+		if (publish(millis, level, name, format, args, thrown)) {
+			return;
+		}
+
+		switch (fullPolicy) {
+		case DISCARD:
+			discardCount.incrementAndGet();
+			break;
+		case DISCARD_BELOW_WARN:
+			if (!CustomLevel.isGreaterOrEqual(level, CustomLevel.WARN)) {
+				discardCount.incrementAndGet();
+				break;
+			}
+			// WARN及以上的等级按BLOCK处理
+		case BLOCK:
+			while (!publish(millis, level, name, format, args, thrown)) {
+				if (!running) {
+					write(millis, level, name, format, args, thrown);
+					return;
+				}
+				LockSupport.unpark(thread);
+				LockSupport.parkNanos(this, 1000);
+			}
+			break;
+		default:
+			write(millis, level, name, format, args, thrown);
+			break;
+		}
+	}
+
+	private boolean publish(long millis, Level level, String name, String format, Object[] args, Throwable thrown) {
+		long position = tail.get();
+		while (true) {
+			LogEvent event = events[(int) (position & mask)];
+			long diff = event.sequence - position;
+			if (diff == 0) {
+				if (tail.compareAndSet(position, position + 1)) {
+					event.millis = millis;
+					event.level = level;
+					event.name = name;
+					event.format = format;
+					event.args = args;
+					event.thrown = thrown;
+					event.sequence = position + 1;
+					if (waiting) {
+						LockSupport.unpark(thread);
+					}
+					return true;
+				}
+				position = tail.get();
+			} else if (diff < 0) {
+				// full
+				return false;
+			} else {
+				position = tail.get();
+			}
+		}
+	}
+
+	private boolean isEmpty() {
+		return events[(int) (head & mask)].sequence != head + 1;
+	}
+
+	/**
+	 * 由写线程调用
+	 *
+	 * @return 写出的数量
+	 */
+	private int drain() {
+		int count = 0;
+		while (true) {
+			LogEvent event = events[(int) (head & mask)];
+			if (event.sequence != head + 1) {
+				break;
+			}
+
+			try {
+				write(event.millis, event.level, event.name, event.format, event.args, event.thrown);
+			} finally {
+				event.clear();
+				event.sequence = head + events.length;
+				head++;
+			}
+			count++;
+		}
+		return count;
+	}
+
+	private void write(long millis, Level level, String name, String format, Object[] args, Throwable thrown) {
+		StringBuilder sb;
+		if (Thread.currentThread() == thread) {
+			sb = builder;
+			sb.setLength(0);
+		} else {
+			sb = new StringBuilder(128);
+		}
+
+		try {
+			formatter.format(sb, millis, level, name, format, args, thrown);
+		} catch (RuntimeException e) {
+			sb.append(format).append(" [format error: ").append(e).append("]").append(System.lineSeparator());
+		}
+
+		synchronized (out) {
+			try {
+				out.append(sb);
+				if (Thread.currentThread() != thread) {
+					out.flush();
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+
+		if (sb == builder && sb.capacity() > MAX_BUILDER_CAPACITY) {
+			builder = new StringBuilder(256);
+		}
+	}
+
+	private void flush() {
+		long discard = discardCount.getAndSet(0);
+		if (discard > 0) {
+			write(System.currentTimeMillis(), CustomLevel.WARN, AsyncLogAppender.class.getName(),
+					"Buffer is full, discard {} log events", new Object[] { discard }, null);
+		}
+
+		synchronized (out) {
+			try {
+				out.flush();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	private void run() {
+		while (running || !isEmpty()) {
+			int count;
+			try {
+				count = drain();
+			} catch (Throwable e) {
+				e.printStackTrace();
+				continue;
+			}
+
+			if (count == 0) {
+				flush();
+				waiting = true;
+				if (running && isEmpty()) {
+					LockSupport.parkNanos(this, PARK_NANOS);
+				}
+				waiting = false;
+			}
+		}
+		flush();
+	}
+
+	/**
+	 * 停止写线程并输出缓冲区中剩余的日志
+	 */
+	public void shutdown() {
+		if (!running) {
+			return;
+		}
+
+		running = false;
+		LockSupport.unpark(thread);
+		try {
+			thread.join(3000);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static final class LogEvent {
+		private volatile long sequence;
+		private long millis;
+		private Level level;
+		private String name;
+		private String format;
+		private Object[] args;
+		private Throwable thrown;
+
+		LogEvent(long sequence) {
+			this.sequence = sequence;
+		}
+
+		void clear() {
+			this.level = null;
+			this.name = null;
+			this.format = null;
+			this.args = null;
+			this.thrown = null;
+		}
+	}
+}
@@ -0,0 +1,46 @@
+package scw.logger;
+
+import java.util.logging.Level;
+
+/**
+ * 异步日志记录器,只在调用线程中判断等级,格式化和输出由{@link AsyncLogAppender}完成
+ * 
+ * @author shuchaowen
+ *
+ */
+public class AsyncLogger extends CustomLogger {
+	private final String name;
+	private final AsyncLogAppender appender;
+	private final Level defaultLevel;
+
+	public AsyncLogger(String name, AsyncLogAppender appender, Level defaultLevel) {
+		this.name = name;
+		this.appender = appender;
+		this.defaultLevel = defaultLevel;
+		Level level = LoggerFactory.getLevelManager().get().getLevel(name);
+		if (level != null) {
+			setLevel(level);
+		}
+		registerListener();
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public Level getLevel() {
+		Level level = super.getLevel();
+		return level == null ? defaultLevel : level;
+	}
+
+	@Override
+	public void log(Level level, Throwable e, String format, Object... args) {
+		if (!isLoggable(level)) {
+			return;
+		}
+
+		appender.append(System.currentTimeMillis(), level, name, format, args, e);
+	}
+}
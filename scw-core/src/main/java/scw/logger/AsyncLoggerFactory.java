@@ -0,0 +1,53 @@
+package scw.logger;
+
+import java.util.logging.Level;
+
+import scw.value.PropertyFactory;
+import scw.value.support.SystemPropertyFactory;
+
+/**
+ * 异步日志工厂,可以通过spi启用或配置scw.logger.async.enable=true<br/>
+ * 
+ * scw.logger.async.bufferSize 缓冲区大小，默认8192<br/>
+ * scw.logger.async.fullPolicy 缓冲区已满时的策略{@link AsyncFullPolicy}，默认BLOCK<br/>
+ * scw.logger.async.level 默认的日志等级，默认INFO
+ * 
+ * @author shuchaowen
+ *
+ */
+public class AsyncLoggerFactory implements ILoggerFactory {
+	public static final String ENABLE_PROPERTY = "scw.logger.async.enable";
+	private final AsyncLogAppender appender;
+	private final Level defaultLevel;
+
+	public AsyncLoggerFactory() {
+		this(SystemPropertyFactory.INSTANCE);
+	}
+
+	public AsyncLoggerFactory(PropertyFactory propertyFactory) {
+		this(new AsyncLogAppender(propertyFactory.getValue("scw.logger.async.bufferSize", int.class, 8192),
+				AsyncFullPolicy.valueOf(propertyFactory
+						.getValue("scw.logger.async.fullPolicy", String.class, AsyncFullPolicy.BLOCK.name())
+						.toUpperCase())),
+				CustomLevel.parse(propertyFactory.getValue("scw.logger.async.level", String.class, Level.INFO.getName())));
+	}
+
+	public AsyncLoggerFactory(AsyncLogAppender appender, Level defaultLevel) {
+		this.appender = appender;
+		this.defaultLevel = defaultLevel;
+	}
+
+	public AsyncLogAppender getAppender() {
+		return appender;
+	}
+
+	@Override
+	public Logger getLogger(String name) {
+		return new AsyncLogger(name, appender, defaultLevel);
+	}
+
+	@Override
+	public String toString() {
+		return "async(bufferSize=" + appender.getBufferSize() + ", fullPolicy=" + appender.getFullPolicy() + ")";
+	}
+}
@@ -1,46 +1,99 @@
 package scw.logger;
 
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.util.logging.Formatter;
+import java.util.logging.Level;
 import java.util.logging.LogRecord;
 
 import scw.core.utils.XTime;
 import scw.util.FormatUtils;
 
 public class CustomFormatter extends Formatter {
-	private static final String TIME_FORMAT = "yyyy-MM-dd HH:mm:ss,SSS";
+	private static final String SECOND_FORMAT = "yyyy-MM-dd HH:mm:ss";
 	private static final String LINE_SEPARATOR = System.getProperty("line.separator");
 
+	/**
+	 * 同一秒内的时间前缀只格式化一次
+	 */
+	private volatile CachedTime cachedTime = new CachedTime(-1, null);
+
 	@Override
 	public String format(LogRecord record) {
+		StringBuilder sb = new StringBuilder(128);
 		String message = formatMessage(record);
-		message = FormatUtils.formatPlaceholder(message, null, record.getParameters());
-        String throwable = "";
-        if (record.getThrown() != null) {
-            StringWriter sw = new StringWriter();
-            PrintWriter pw = new PrintWriter(sw);
-            pw.println();
-            record.getThrown().printStackTrace(pw);
-            pw.close();
-            throwable = sw.toString();
-        }
-        
-        StringBuilder sb = new StringBuilder();
-        sb.append(XTime.format(record.getMillis(), TIME_FORMAT));
-        sb.append(" ");
-        sb.append(record.getLevel().getName());
-        String name = record.getLoggerName();
-        if(name != null) {
-        	sb.append(" ");
-        	sb.append("[").append(name).append("]");
-        }
-        
-        sb.append(" - ");
-        sb.append(message);
-        sb.append(throwable);
-        sb.append(LINE_SEPARATOR);
-        return sb.toString();
+		format(sb, record.getMillis(), record.getLevel(), record.getLoggerName(), message, record.getParameters(),
+				record.getThrown());
+		return sb.toString();
+	}
+
+	/**
+	 * 将日志格式化追加到sb中,参数的格式化在此时才会执行
+	 *
+	 * @param sb
+	 * @param millis
+	 * @param level
+	 * @param name
+	 * @param format
+	 * @param args
+	 * @param thrown
+	 */
+	public void format(StringBuilder sb, long millis, Level level, String name, String format, Object[] args,
+			Throwable thrown) {
+		appendTime(sb, millis);
+		sb.append(" ");
+		sb.append(level.getName());
+		if (name != null) {
+			sb.append(" ");
+			sb.append("[").append(name).append("]");
+		}
+
+		sb.append(" - ");
+		try {
+			FormatUtils.formatPlaceholder(sb, format, null, args);
+		} catch (IOException e) {
+			// StringBuilder不会出现此异常
+		}
+
+		if (thrown != null) {
+			StringWriter sw = new StringWriter();
+			PrintWriter pw = new PrintWriter(sw);
+			pw.println();
+			thrown.printStackTrace(pw);
+			pw.close();
+			sb.append(sw.getBuffer());
+		}
+		sb.append(LINE_SEPARATOR);
 	}
 
+	private void appendTime(StringBuilder sb, long millis) {
+		long second = millis / 1000;
+		CachedTime cachedTime = this.cachedTime;
+		if (cachedTime.second != second) {
+			cachedTime = new CachedTime(second, XTime.format(second * 1000, SECOND_FORMAT));
+			this.cachedTime = cachedTime;
+		}
+
+		sb.append(cachedTime.text).append(',');
+		int mills = (int) (millis % 1000);
+		if (mills < 100) {
+			sb.append('0');
+		}
+
+		if (mills < 10) {
+			sb.append('0');
+		}
+		sb.append(mills);
+	}
+
+	private static final class CachedTime {
+		private final long second;
+		private final String text;
+
+		CachedTime(long second, String text) {
+			this.second = second;
+			this.text = text;
+		}
+	}
 }
@@ -1,21 +1,53 @@
 package scw.logger;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
 import java.util.logging.Level;
 
 import scw.core.utils.ObjectUtils;
 import scw.event.ChangeEvent;
 import scw.event.EventListener;
-import scw.event.EventRegistration;
 import scw.lang.Nullable;
 
 public abstract class CustomLogger implements Logger, EventListener<ChangeEvent<LevelRegistry>> {
-	private EventRegistration eventRegistration;
+	/**
+	 * 所有的日志记录器共用一个监听，使用弱引用以便未被引用的日志记录器可以被回收
+	 */
+	private static final Set<CustomLogger> LISTENERS = Collections
+			.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<CustomLogger, Boolean>()));
+	private static volatile boolean listening = false;
 	private Level level;
 
-	public synchronized void registerListener() {
-		if(eventRegistration == null) {
-			eventRegistration = LoggerFactory.getLevelManager().registerListener(this);
+	private static void listen() {
+		if (listening) {
+			return;
 		}
+
+		synchronized (LISTENERS) {
+			if (listening) {
+				return;
+			}
+
+			LoggerFactory.getLevelManager().registerListener((event) -> {
+				List<CustomLogger> loggers;
+				synchronized (LISTENERS) {
+					loggers = new ArrayList<CustomLogger>(LISTENERS);
+				}
+
+				for (CustomLogger logger : loggers) {
+					logger.onEvent(event);
+				}
+			});
+			listening = true;
+		}
+	}
+
+	public void registerListener() {
+		listen();
+		LISTENERS.add(this);
 	}
 
 	@Override
@@ -32,30 +64,21 @@ public abstract class CustomLogger implements Logger, EventListener<ChangeEvent<
 	public Level getLevel() {
 		return level;
 	}
-	
+
 	@Override
 	public boolean isLoggable(Level level) {
 		Level acceptLevel = getLevel();
 		if(acceptLevel == null) {
 			return true;
 		}
-		
+
 		return CustomLevel.isGreaterOrEqual(level, acceptLevel);
 	}
 
 	public void setLevel(@Nullable Level level) {
 		this.level = level;
 	}
-	
-	@Override
-	protected void finalize() throws Throwable {
-		if (eventRegistration != null) {
-			eventRegistration.unregister();
-		}
-		eventRegistration = null;
-		super.finalize();
-	}
-	
+
 	@Override
 	public String toString() {
 		return "[" + getLevel() + "] " + getName();
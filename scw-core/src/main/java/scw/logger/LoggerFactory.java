@@ -19,8 +19,7 @@ public final class LoggerFactory {
 	private static final java.util.logging.Logger ROOT_LOGGER = java.util.logging.Logger
 			.getLogger(LoggerFactory.class.getName());
 	
-	private static final ILoggerFactory LOGGER_FACTORY = CollectionUtils
-			.first(ServiceLoader.load(ILoggerFactory.class));
+	private static final ILoggerFactory LOGGER_FACTORY = loadLoggerFactory();
 	private volatile static Map<String, Logger> loggerMap = new HashMap<String, Logger>();
 
 	private static final LevelManager LEVEL_MANAGER;
@@ -78,6 +77,15 @@ public final class LoggerFactory {
 		}
 	}
 
+	private static ILoggerFactory loadLoggerFactory() {
+		ILoggerFactory loggerFactory = CollectionUtils.first(ServiceLoader.load(ILoggerFactory.class));
+		if (loggerFactory == null && SystemPropertyFactory.INSTANCE.getValue(AsyncLoggerFactory.ENABLE_PROPERTY,
+				boolean.class, false)) {
+			loggerFactory = new AsyncLoggerFactory();
+		}
+		return loggerFactory;
+	}
+
 	public static LevelManager getLevelManager() {
 		return LEVEL_MANAGER;
 	}
@@ -43,6 +43,7 @@ public final class InetUtils {
 	private static final String INNER_IP_PATTERN = "((192\\.168|172\\.([1][6-9]|[2]\\d|3[01]))"
 			+ "(\\.([2][0-4]\\d|[2][5][0-5]|[01]?\\d?\\d)){2}|"
 			+ "^(\\D)*10(\\.([2][0-4]\\d|[2][5][0-5]|[01]?\\d?\\d)){3})";
+	private static final Pattern INNER_IP = Pattern.compile(INNER_IP_PATTERN);
 	private static final MultipartMessageResolver MULTIPART_MESSAGE_RESOLVER = Sys.env.getServiceLoader(MultipartMessageResolver.class).first();
 	
 	@Nullable
@@ -119,8 +120,7 @@ public final class InetUtils {
 	 * @return
 	 */
 	public static boolean isInnerIP(String ip) {
-		Pattern p = Pattern.compile(INNER_IP_PATTERN);
-		Matcher matcher = p.matcher(ip);
+		Matcher matcher = INNER_IP.matcher(ip);
 		return matcher.find();
 	}
 
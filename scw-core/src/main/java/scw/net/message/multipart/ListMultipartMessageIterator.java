@@ -0,0 +1,50 @@
+package scw.net.message.multipart;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * 使用已经解析好的part
+ * 
+ * @author shuchaowen
+ *
+ */
+public class ListMultipartMessageIterator implements MultipartMessageIterator {
+	private final Collection<? extends MultipartMessage> messages;
+	private final Iterator<? extends MultipartMessage> iterator;
+	private final boolean closeMessages;
+
+	/**
+	 * @param messages
+	 * @param closeMessages 关闭时是否关闭所有的part
+	 */
+	public ListMultipartMessageIterator(Collection<? extends MultipartMessage> messages, boolean closeMessages) {
+		this.messages = messages;
+		this.iterator = messages.iterator();
+		this.closeMessages = closeMessages;
+	}
+
+	@Override
+	public boolean hasNext() {
+		return iterator.hasNext();
+	}
+
+	@Override
+	public MultipartMessage next() {
+		if (!iterator.hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return iterator.next();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closeMessages) {
+			for (MultipartMessage message : messages) {
+				message.close();
+			}
+		}
+	}
+}
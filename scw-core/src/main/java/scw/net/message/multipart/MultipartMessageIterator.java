@@ -0,0 +1,18 @@
+package scw.net.message.multipart;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * 流式的读取multipart中的每一个part<br/>
+ * 返回的{@link MultipartMessage}只在下一次调用{@link #hasNext()}/{@link #next()}之前有效，
+ * 它的输入流直接读取请求体，不会被缓存到内存或临时文件
+ * 
+ * @author shuchaowen
+ *
+ */
+public interface MultipartMessageIterator extends Closeable {
+	boolean hasNext() throws IOException;
+
+	MultipartMessage next() throws IOException;
+}
@@ -18,4 +18,15 @@ public interface MultipartMessageResolver {
 	boolean isMultipart(InputMessage inputMessage);
 
 	List<MultipartMessage> resolve(InputMessage inputMessage) throws IOException;
+
+	/**
+	 * 流式解析，默认先全部解析再迭代
+	 * 
+	 * @param inputMessage
+	 * @return
+	 * @throws IOException
+	 */
+	default MultipartMessageIterator resolveIterator(InputMessage inputMessage) throws IOException {
+		return new ListMultipartMessageIterator(resolve(inputMessage), true);
+	}
 }
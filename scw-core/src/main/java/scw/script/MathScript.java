@@ -0,0 +1,493 @@
+package scw.script;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import scw.core.utils.StringUtils;
+import scw.mapper.Field;
+import scw.mapper.FieldFeature;
+import scw.mapper.Fields;
+import scw.mapper.MapperUtils;
+import scw.math.BigDecimalHolder;
+import scw.math.Calculators;
+import scw.math.NumberHolder;
+import scw.script.MathScriptEngine.Function;
+
+/**
+ * 编译后的数学表达式，只解析一次，可以重复执行<br/>
+ * 表达式中的变量在编译时被分配了固定的位置(slot)，执行时按位置取值
+ *
+ * @author shuchaowen
+ * @see MathScriptEngine#compile(String)
+ */
+public final class MathScript {
+	private static final String DELIMITERS = "+-*/%^(),[]{}|";
+	private static final Field[] EMPTY_FIELDS = new Field[0];
+
+	private final String script;
+	private final Node root;
+	private final String[] variables;
+	private final ConcurrentHashMap<Class<?>, Field[]> bindings = new ConcurrentHashMap<Class<?>, Field[]>(4);
+
+	MathScript(String script, Function[] customFunctions) {
+		this.script = script;
+		Parser parser = new Parser(script, customFunctions);
+		this.root = parser.parse();
+		this.variables = parser.variables.toArray(new String[0]);
+	}
+
+	public String getScript() {
+		return script;
+	}
+
+	/**
+	 * 表达式中使用的变量名，下标即变量的位置
+	 *
+	 * @return
+	 */
+	public String[] getVariables() {
+		return variables.clone();
+	}
+
+	/**
+	 * 使用高精度计算
+	 *
+	 * @param engine   用于解析未绑定的变量
+	 * @param instance 按字段名为变量取值，可以为空
+	 * @return
+	 * @throws ScriptException
+	 */
+	public NumberHolder eval(MathScriptEngine engine, Object instance) throws ScriptException {
+		return root.eval(new Context(engine, instance, getFields(instance)));
+	}
+
+	/**
+	 * 使用double计算，不需要高精度时使用此方法可以避免创建{@link BigDecimal}
+	 *
+	 * @param engine   用于解析未绑定的变量
+	 * @param instance 按字段名为变量取值，可以为空
+	 * @return
+	 * @throws ScriptException
+	 */
+	public double evalAsDouble(MathScriptEngine engine, Object instance) throws ScriptException {
+		return root.evalAsDouble(new Context(engine, instance, getFields(instance)));
+	}
+
+	private Field[] getFields(Object instance) {
+		if (instance == null || variables.length == 0) {
+			return EMPTY_FIELDS;
+		}
+
+		Class<?> clazz = instance.getClass();
+		Field[] fields = bindings.get(clazz);
+		if (fields == null) {
+			Fields getters = MapperUtils.getMapper().getFields(clazz).accept(FieldFeature.SUPPORT_GETTER);
+			fields = new Field[variables.length];
+			for (int i = 0; i < variables.length; i++) {
+				fields[i] = getters.find(variables[i], null);
+			}
+			Field[] old = bindings.putIfAbsent(clazz, fields);
+			if (old != null) {
+				fields = old;
+			}
+		}
+		return fields;
+	}
+
+	@Override
+	public String toString() {
+		return script;
+	}
+
+	private static final class Context {
+		private final MathScriptEngine engine;
+		private final Object instance;
+		private final Field[] fields;
+
+		Context(MathScriptEngine engine, Object instance, Field[] fields) {
+			this.engine = engine;
+			this.instance = instance;
+			this.fields = fields;
+		}
+
+		Object getValue(int slot, String name) {
+			Field field = slot < fields.length ? fields[slot] : null;
+			Object value;
+			if (field == null) {
+				if (engine == null) {
+					throw new ScriptException(name);
+				}
+				value = engine.resolveVariable(name);
+			} else {
+				value = field.getGetter().get(instance);
+			}
+
+			if (value == null) {
+				throw new ScriptException(name);
+			}
+			return value;
+		}
+	}
+
+	private static abstract class Node {
+		abstract NumberHolder eval(Context context);
+
+		abstract double evalAsDouble(Context context);
+	}
+
+	private static final class ConstantNode extends Node {
+		private final NumberHolder value;
+		private final double doubleValue;
+
+		ConstantNode(BigDecimal value) {
+			this.value = new BigDecimalHolder(value);
+			this.doubleValue = value.doubleValue();
+		}
+
+		@Override
+		NumberHolder eval(Context context) {
+			return value;
+		}
+
+		@Override
+		double evalAsDouble(Context context) {
+			return doubleValue;
+		}
+	}
+
+	private static final class VariableNode extends Node {
+		private final int slot;
+		private final String name;
+
+		VariableNode(int slot, String name) {
+			this.slot = slot;
+			this.name = name;
+		}
+
+		@Override
+		NumberHolder eval(Context context) {
+			Object value = context.getValue(slot, name);
+			if (value instanceof NumberHolder) {
+				return (NumberHolder) value;
+			} else if (value instanceof BigDecimal) {
+				return new BigDecimalHolder((BigDecimal) value);
+			}
+			return new BigDecimalHolder(value.toString());
+		}
+
+		@Override
+		double evalAsDouble(Context context) {
+			Object value = context.getValue(slot, name);
+			if (value instanceof Number) {
+				return ((Number) value).doubleValue();
+			} else if (value instanceof NumberHolder) {
+				return ((NumberHolder) value).toBigDecimal().doubleValue();
+			}
+			return Double.parseDouble(value.toString());
+		}
+	}
+
+	private static final class OperatorNode extends Node {
+		private final Calculators operator;
+		private final Node left;
+		private final Node right;
+
+		OperatorNode(Calculators operator, Node left, Node right) {
+			this.operator = operator;
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		NumberHolder eval(Context context) {
+			return operator.calculate(left.eval(context), right.eval(context));
+		}
+
+		@Override
+		double evalAsDouble(Context context) {
+			double l = left.evalAsDouble(context);
+			double r = right.evalAsDouble(context);
+			switch (operator) {
+			case ADD:
+				return l + r;
+			case SUBTRACT:
+				return l - r;
+			case MULTIPLY:
+				return l * r;
+			case DIVIDE:
+				return l / r;
+			case REMAINDER:
+				return l % r;
+			case POW:
+				return Math.pow(l, r);
+			default:
+				throw new ScriptException(operator.getOperator());
+			}
+		}
+	}
+
+	private static final class NegateNode extends Node {
+		private static final NumberHolder MINUS_ONE = new BigDecimalHolder(BigDecimal.ONE.negate());
+		private final Node node;
+
+		NegateNode(Node node) {
+			this.node = node;
+		}
+
+		@Override
+		NumberHolder eval(Context context) {
+			return node.eval(context).multiply(MINUS_ONE);
+		}
+
+		@Override
+		double evalAsDouble(Context context) {
+			return -node.evalAsDouble(context);
+		}
+	}
+
+	private static final class AbsoluteValueNode extends Node {
+		private final Node node;
+
+		AbsoluteValueNode(Node node) {
+			this.node = node;
+		}
+
+		@Override
+		NumberHolder eval(Context context) {
+			return node.eval(context).abs();
+		}
+
+		@Override
+		double evalAsDouble(Context context) {
+			return Math.abs(node.evalAsDouble(context));
+		}
+	}
+
+	private static final class CompareNode extends Node {
+		private final boolean max;
+		private final Node left;
+		private final Node right;
+
+		CompareNode(boolean max, Node left, Node right) {
+			this.max = max;
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		NumberHolder eval(Context context) {
+			NumberHolder leftValue = left.eval(context);
+			NumberHolder rightValue = right.eval(context);
+			int compare = leftValue.compareTo(rightValue);
+			return (max ? compare > 0 : compare < 0) ? leftValue : rightValue;
+		}
+
+		@Override
+		double evalAsDouble(Context context) {
+			double leftValue = left.evalAsDouble(context);
+			double rightValue = right.evalAsDouble(context);
+			return max ? Math.max(leftValue, rightValue) : Math.min(leftValue, rightValue);
+		}
+	}
+
+	/**
+	 * 无法编译的自定义函数，每次执行时将内容交给函数处理
+	 */
+	private static final class FunctionNode extends Node {
+		private final Function function;
+		private final String body;
+
+		FunctionNode(Function function, String body) {
+			this.function = function;
+			this.body = body;
+		}
+
+		@Override
+		NumberHolder eval(Context context) {
+			return function.eval(context.engine == null ? new MathScriptEngine() : context.engine, body);
+		}
+
+		@Override
+		double evalAsDouble(Context context) {
+			return eval(context).toBigDecimal().doubleValue();
+		}
+	}
+
+	private static final class Parser {
+		private final String script;
+		private final Function[] customFunctions;
+		private final List<String> variables = new ArrayList<String>();
+		private int position = 0;
+
+		Parser(String script, Function[] customFunctions) {
+			this.script = script;
+			this.customFunctions = customFunctions;
+		}
+
+		Node parse() {
+			Node node = parseExpression();
+			if (position != script.length()) {
+				throw new ScriptException(script);
+			}
+			return node;
+		}
+
+		private boolean accept(String text) {
+			if (script.startsWith(text, position)) {
+				position += text.length();
+				return true;
+			}
+			return false;
+		}
+
+		private void expect(String text) {
+			if (!accept(text)) {
+				throw new ScriptException(script);
+			}
+		}
+
+		private Node parseExpression() {
+			Node node = parseTerm();
+			while (true) {
+				if (accept(Calculators.ADD.getOperator())) {
+					node = new OperatorNode(Calculators.ADD, node, parseTerm());
+				} else if (accept(Calculators.SUBTRACT.getOperator())) {
+					node = new OperatorNode(Calculators.SUBTRACT, node, parseTerm());
+				} else {
+					return node;
+				}
+			}
+		}
+
+		private Node parseTerm() {
+			Node node = parsePower();
+			while (true) {
+				if (accept(Calculators.MULTIPLY.getOperator())) {
+					node = new OperatorNode(Calculators.MULTIPLY, node, parsePower());
+				} else if (accept(Calculators.DIVIDE.getOperator())) {
+					node = new OperatorNode(Calculators.DIVIDE, node, parsePower());
+				} else if (accept(Calculators.REMAINDER.getOperator())) {
+					node = new OperatorNode(Calculators.REMAINDER, node, parsePower());
+				} else {
+					return node;
+				}
+			}
+		}
+
+		private Node parsePower() {
+			Node node = parseUnary();
+			while (accept(Calculators.POW.getOperator())) {
+				node = new OperatorNode(Calculators.POW, node, parseUnary());
+			}
+			return node;
+		}
+
+		private Node parseUnary() {
+			if (accept(Calculators.SUBTRACT.getOperator())) {
+				return new NegateNode(parseUnary());
+			}
+
+			if (accept(Calculators.ADD.getOperator())) {
+				return parseUnary();
+			}
+			return parsePrimary();
+		}
+
+		private Node parsePrimary() {
+			for (Function function : customFunctions) {
+				if (accept(function.getPrefix())) {
+					int end = indexOfSuffix(function.getSuffix());
+					String body = script.substring(position, end);
+					position = end + function.getSuffix().length();
+					return new FunctionNode(function, body);
+				}
+			}
+
+			if (accept("max(")) {
+				return parseCompare(true);
+			}
+
+			if (accept("min(")) {
+				return parseCompare(false);
+			}
+
+			if (accept("|")) {
+				Node node = parseExpression();
+				expect("|");
+				return new AbsoluteValueNode(node);
+			}
+
+			if (accept("(")) {
+				Node node = parseExpression();
+				expect(")");
+				return node;
+			}
+
+			if (accept("[")) {
+				Node node = parseExpression();
+				expect("]");
+				return node;
+			}
+
+			if (accept("{")) {
+				Node node = parseExpression();
+				expect("}");
+				return node;
+			}
+			return parseAtom();
+		}
+
+		private Node parseCompare(boolean max) {
+			Node left = parseExpression();
+			expect(",");
+			Node right = parseExpression();
+			expect(")");
+			return new CompareNode(max, left, right);
+		}
+
+		private Node parseAtom() {
+			int begin = position;
+			while (position < script.length() && DELIMITERS.indexOf(script.charAt(position)) == -1) {
+				position++;
+			}
+
+			if (begin == position) {
+				throw new ScriptException(script);
+			}
+
+			String atom = script.substring(begin, position);
+			if (StringUtils.isNumeric(atom) && Character.isDigit(atom.charAt(atom.length() - 1))) {
+				return new ConstantNode(new BigDecimal(atom));
+			}
+
+			int slot = variables.indexOf(atom);
+			if (slot == -1) {
+				slot = variables.size();
+				variables.add(atom);
+			}
+			return new VariableNode(slot, atom);
+		}
+
+		/**
+		 * 查找与当前层级匹配的后缀
+		 */
+		private int indexOfSuffix(String suffix) {
+			int depth = 0;
+			for (int i = position; i < script.length(); i++) {
+				if (depth == 0 && script.startsWith(suffix, i)) {
+					return i;
+				}
+
+				char chr = script.charAt(i);
+				if (chr == '(' || chr == '[' || chr == '{') {
+					depth++;
+				} else if (chr == ')' || chr == ']' || chr == '}') {
+					depth--;
+				}
+			}
+			throw new ScriptException(script);
+		}
+	}
+}
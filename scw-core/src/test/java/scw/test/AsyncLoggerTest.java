@@ -0,0 +1,44 @@
+package scw.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+import scw.logger.AsyncFullPolicy;
+import scw.logger.AsyncLogAppender;
+import scw.logger.AsyncLogger;
+import scw.logger.CustomLevel;
+import scw.logger.Levels;
+
+public class AsyncLoggerTest {
+	@Test
+	public void test() throws InterruptedException {
+		StringWriter writer = new StringWriter();
+		AsyncLogAppender appender = new AsyncLogAppender(4, AsyncFullPolicy.BLOCK, writer);
+		AsyncLogger logger = new AsyncLogger(AsyncLoggerTest.class.getName(), appender, CustomLevel.INFO);
+		Thread[] threads = new Thread[4];
+		for (int i = 0; i < threads.length; i++) {
+			final int index = i;
+			threads[i] = new Thread(() -> {
+				for (int j = 0; j < 100; j++) {
+					logger.info("thread {} message {}", index, j);
+					logger.debug("ignore");
+				}
+			});
+			threads[i].start();
+		}
+
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		appender.shutdown();
+
+		String[] lines = writer.toString().split(System.lineSeparator());
+		assertEquals(400, lines.length);
+		assertTrue(lines[0].contains(Levels.INFO.getValue().getName()));
+		assertTrue(lines[0].contains("[" + AsyncLoggerTest.class.getName() + "] - thread "));
+	}
+}
@@ -0,0 +1,68 @@
+package scw.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import scw.io.BufferPool;
+import scw.io.JavaSerializer;
+import scw.io.Serializer;
+import scw.io.compact.CompactSerializer;
+
+public class BufferPoolTest {
+
+	@Test
+	public void pool() {
+		BufferPool pool = new BufferPool(16, 64, 2);
+		byte[] buffer = pool.acquire();
+		assertEquals(16, buffer.length);
+		// 嵌套获取时不能拿到同一个缓冲区
+		byte[] nested = pool.acquire();
+		assertNotSame(buffer, nested);
+		pool.release(nested);
+		pool.release(buffer);
+		assertSame(nested, pool.acquire());
+		assertSame(buffer, pool.acquire());
+
+		byte[] large = pool.acquire(128);
+		assertTrue(large.length >= 128);
+		pool.release(large);
+		assertNotSame(large, pool.acquire(128));
+	}
+
+	@Test
+	public void serialize() throws ClassNotFoundException {
+		for (Serializer serializer : Arrays.asList(JavaSerializer.INSTANCE, new CompactSerializer())) {
+			String value = "buffer pool test";
+			byte[] data = serializer.serialize(value);
+			assertArrayEquals(data, serializer.serialize(value, (buffer, offset, length) -> {
+				return Arrays.copyOfRange(buffer, offset, offset + length);
+			}));
+
+			ByteBuffer byteBuffer = ByteBuffer.allocate(data.length + 10);
+			byteBuffer.position(5);
+			assertEquals(data.length, serializer.serialize(value, byteBuffer));
+			byteBuffer.flip();
+			byteBuffer.position(5);
+			assertEquals(value, serializer.deserialize(byteBuffer));
+			assertEquals(0, byteBuffer.remaining());
+
+			byte[] padded = new byte[data.length + 3];
+			System.arraycopy(data, 0, padded, 3, data.length);
+			assertEquals(value, serializer.deserialize(padded, 3, data.length));
+		}
+	}
+
+	@Test(expected = BufferOverflowException.class)
+	public void overflow() {
+		new CompactSerializer().serialize("buffer pool test", ByteBuffer.allocate(2));
+	}
+}
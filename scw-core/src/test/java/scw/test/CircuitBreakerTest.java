@@ -0,0 +1,204 @@
+package scw.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import scw.aop.interceptor.Bulkhead;
+import scw.aop.interceptor.CallNotPermittedException;
+import scw.aop.interceptor.CallTimeoutException;
+import scw.aop.interceptor.CircuitBreaker;
+import scw.aop.interceptor.CircuitBreaker.State;
+import scw.aop.interceptor.CircuitBreakerInterceptor;
+import scw.core.reflect.DefaultMethodInvoker;
+import scw.core.reflect.MethodInvoker;
+
+public class CircuitBreakerTest {
+
+	@Test
+	public void stateTransition() throws InterruptedException {
+		CircuitBreaker circuitBreaker = new CircuitBreaker(10, 4, 50, 0, 100, 50, 2);
+		for (int i = 0; i < 3; i++) {
+			assertTrue(circuitBreaker.tryAcquirePermission());
+			circuitBreaker.onSuccess(0);
+		}
+		assertTrue(circuitBreaker.tryAcquirePermission());
+		circuitBreaker.onError(0);
+		assertEquals(State.CLOSED, circuitBreaker.getState());
+		assertEquals(25f, circuitBreaker.getFailureRate(), 0);
+
+		for (int i = 0; i < 2; i++) {
+			assertTrue(circuitBreaker.tryAcquirePermission());
+			circuitBreaker.onError(0);
+		}
+		assertEquals(State.OPEN, circuitBreaker.getState());
+		assertFalse(circuitBreaker.tryAcquirePermission());
+		assertEquals(1, circuitBreaker.getNumberOfNotPermittedCalls());
+
+		Thread.sleep(80);
+		assertTrue(circuitBreaker.tryAcquirePermission());
+		assertEquals(State.HALF_OPEN, circuitBreaker.getState());
+		assertTrue(circuitBreaker.tryAcquirePermission());
+		assertFalse(circuitBreaker.tryAcquirePermission());
+		circuitBreaker.onSuccess(0);
+		circuitBreaker.onSuccess(0);
+		assertEquals(State.CLOSED, circuitBreaker.getState());
+		assertEquals(0, circuitBreaker.getNumberOfBufferedCalls());
+	}
+
+	@Test
+	public void slowCall() {
+		CircuitBreaker circuitBreaker = new CircuitBreaker(4, 4, 50, 10, 50, 1000, 1);
+		for (int i = 0; i < 4; i++) {
+			assertTrue(circuitBreaker.tryAcquirePermission());
+			circuitBreaker.onSuccess(TimeUnit.MILLISECONDS.toNanos(i % 2 == 0 ? 20 : 1));
+		}
+		assertEquals(50f, circuitBreaker.getSlowCallRate(), 0);
+		assertEquals(State.OPEN, circuitBreaker.getState());
+	}
+
+	@Test
+	public void fallback() throws Throwable {
+		CircuitBreakerInterceptor interceptor = new CircuitBreakerInterceptor(
+				new CircuitBreaker(10, 2, 50, 0, 100, 60000, 1), null, 0);
+		interceptor.setFallback(new FallbackService());
+		Service service = new Service();
+		MethodInvoker invoker = invoker(service, "fail");
+		assertEquals("fallback", interceptor.intercept(invoker, new Object[0]));
+		assertEquals("fallback", interceptor.intercept(invoker, new Object[0]));
+		assertEquals(State.OPEN, interceptor.getCircuitBreaker().getState());
+
+		// 熔断后不会再调用原方法
+		assertEquals("fallback", interceptor.intercept(invoker, new Object[0]));
+		assertEquals(2, service.calls);
+	}
+
+	@Test
+	public void bulkhead() throws Throwable {
+		CircuitBreakerInterceptor interceptor = new CircuitBreakerInterceptor(null, new Bulkhead(1, 0), 0);
+		Service service = new Service();
+		MethodInvoker invoker = invoker(service, "await");
+		Thread thread = new Thread(() -> {
+			try {
+				interceptor.intercept(invoker, new Object[0]);
+			} catch (Throwable e) {
+				e.printStackTrace();
+			}
+		});
+		thread.start();
+		assertTrue(service.started.await(5, TimeUnit.SECONDS));
+		try {
+			interceptor.intercept(invoker, new Object[0]);
+			fail();
+		} catch (CallNotPermittedException e) {
+			// expected
+		}
+		assertEquals(1, interceptor.getBulkhead().getNumberOfRejectedCalls());
+		service.release.countDown();
+		thread.join();
+		assertEquals(1, interceptor.getBulkhead().getAvailableConcurrentCalls());
+	}
+
+	@Test
+	public void timeout() throws Throwable {
+		CircuitBreakerInterceptor interceptor = new CircuitBreakerInterceptor(null, null, 50);
+		interceptor.setInterruptOnTimeout(true);
+		long start = System.currentTimeMillis();
+		try {
+			interceptor.intercept(invoker(new Service(), "sleep"), new Object[0]);
+			fail();
+		} catch (CallTimeoutException e) {
+			// expected
+		}
+		assertTrue(System.currentTimeMillis() - start < 5000);
+		assertEquals(1, interceptor.getNumberOfTimeoutCalls());
+		assertFalse(Thread.currentThread().isInterrupted());
+	}
+
+	@Test
+	public void timeoutWithoutInterrupt() throws Throwable {
+		CircuitBreakerInterceptor interceptor = new CircuitBreakerInterceptor(null, null, 20);
+		assertFalse(interceptor.isInterruptOnTimeout());
+		Service service = new Service();
+		try {
+			interceptor.intercept(invoker(service, "sleepShort"), new Object[0]);
+			fail();
+		} catch (CallTimeoutException e) {
+			// 调用结束后才判断超时
+			assertEquals(null, e.getCause());
+		}
+		assertEquals(1, service.calls);
+		assertEquals(1, interceptor.getNumberOfTimeoutCalls());
+	}
+
+	@Test
+	public void timeoutRace() throws Throwable {
+		// 调用结束和超时几乎同时发生，不能残留中断状态
+		CircuitBreakerInterceptor interceptor = new CircuitBreakerInterceptor(null, null, 1);
+		interceptor.setInterruptOnTimeout(true);
+		MethodInvoker invoker = invoker(new Service(), "spin");
+		for (int i = 0; i < 500; i++) {
+			try {
+				interceptor.intercept(invoker, new Object[0]);
+			} catch (CallTimeoutException e) {
+				// expected
+			}
+			assertFalse(Thread.currentThread().isInterrupted());
+		}
+	}
+
+	private static MethodInvoker invoker(Object instance, String name) throws NoSuchMethodException {
+		Method method = Service.class.getMethod(name);
+		return new DefaultMethodInvoker(instance, Service.class, method);
+	}
+
+	public static class Service {
+		private int calls;
+		private final CountDownLatch started = new CountDownLatch(1);
+		private final CountDownLatch release = new CountDownLatch(1);
+
+		public String fail() {
+			calls++;
+			throw new IllegalStateException("fail");
+		}
+
+		public String await() throws InterruptedException {
+			started.countDown();
+			release.await();
+			return "ok";
+		}
+
+		public String sleepShort() throws InterruptedException {
+			calls++;
+			Thread.sleep(50);
+			return "ok";
+		}
+
+		public String spin() {
+			long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(1);
+			while (System.nanoTime() < end) {
+				// busy wait
+			}
+			return "ok";
+		}
+
+		public String sleep() throws InterruptedException {
+			Thread.sleep(10000);
+			return "ok";
+		}
+	}
+
+	public static class FallbackService extends Service {
+		@Override
+		public String fail() {
+			return "fallback";
+		}
+	}
+}
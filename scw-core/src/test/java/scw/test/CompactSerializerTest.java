@@ -0,0 +1,143 @@
+package scw.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import scw.io.JavaSerializer;
+import scw.io.compact.CompactSerializer;
+import scw.util.Pagination;
+import scw.util.Pair;
+
+public class CompactSerializerTest {
+	private final CompactSerializer serializer = new CompactSerializer();
+
+	private <T> T roundTrip(T value) throws ClassNotFoundException {
+		return serializer.deserialize(serializer.serialize(value));
+	}
+
+	@Test
+	public void simple() throws ClassNotFoundException {
+		assertNull(roundTrip(null));
+		assertEquals("中文abc", roundTrip("中文abc"));
+		assertEquals(Integer.MIN_VALUE, (int) roundTrip(Integer.MIN_VALUE));
+		assertEquals(Long.MAX_VALUE, (long) roundTrip(Long.MAX_VALUE));
+		assertEquals(-1.5d, roundTrip(-1.5d), 0);
+		assertEquals(new BigDecimal("-123.4500"), roundTrip(new BigDecimal("-123.4500")));
+		assertEquals(new Date(123456789L), roundTrip(new Date(123456789L)));
+		assertEquals(TimeUnit.SECONDS, roundTrip(TimeUnit.SECONDS));
+		assertArrayEquals(new byte[] { 1, 2, 3 }, roundTrip(new byte[] { 1, 2, 3 }));
+		assertArrayEquals(new int[] { 1, -2, 3 }, roundTrip(new int[] { 1, -2, 3 }));
+		assertEquals(Arrays.asList("a", null, 1), roundTrip(Arrays.asList("a", null, 1)));
+		assertEquals(Collections.singletonMap("a", 1), roundTrip(Collections.singletonMap("a", 1)));
+
+		TreeMap<String, Integer> treeMap = new TreeMap<String, Integer>(Collections.reverseOrder());
+		treeMap.put("a", 1);
+		treeMap.put("b", 2);
+		TreeMap<String, Integer> result = roundTrip(treeMap);
+		assertEquals("b", result.firstKey());
+	}
+
+	@Test
+	public void entity() throws ClassNotFoundException {
+		Pagination<Pair<String, Integer>> pagination = new Pagination<Pair<String, Integer>>(100, 10,
+				Arrays.asList(new Pair<String, Integer>("a", 1), new Pair<String, Integer>("b", null)));
+		Pagination<Pair<String, Integer>> result = roundTrip(pagination);
+		assertEquals(pagination.getLimit(), result.getLimit());
+		assertEquals(pagination.getLongTotalCount(), result.getLongTotalCount());
+		assertEquals(pagination.getData(), result.getData());
+
+		Entity entity = new Entity();
+		entity.id = 1;
+		entity.name = "name";
+		entity.tags = new ArrayList<String>(Arrays.asList("x", "y"));
+		entity.attributes = new LinkedHashMap<String, Object>();
+		entity.attributes.put("time", new Date());
+		entity.self = entity;
+		entity.child = new Entity();
+		entity.child.id = 2;
+		entity.child.self = entity;
+
+		Entity entityResult = roundTrip(entity);
+		assertEquals(entity.id, entityResult.id);
+		assertEquals(entity.name, entityResult.name);
+		assertEquals(entity.tags, entityResult.tags);
+		assertEquals(entity.attributes, entityResult.attributes);
+		assertSame(entityResult, entityResult.self);
+		assertSame(entityResult, entityResult.child.self);
+		assertEquals(0, entityResult.transientValue);
+	}
+
+	@Test
+	public void size() {
+		Entity entity = new Entity();
+		entity.id = 1;
+		entity.name = "name";
+		entity.tags = Arrays.asList("x", "y");
+		List<Entity> list = new ArrayList<Entity>();
+		for (int i = 0; i < 100; i++) {
+			list.add(entity);
+		}
+		assertTrue(serializer.serialize(list).length < JavaSerializer.INSTANCE.serialize(list).length);
+	}
+
+	@Test
+	public void javaCompatible() throws ClassNotFoundException {
+		Pair<String, Integer> pair = new Pair<String, Integer>("a", 1);
+		assertEquals(pair, serializer.deserialize(JavaSerializer.INSTANCE.serialize(pair)));
+	}
+
+	@Test
+	public void evolution() throws ClassNotFoundException {
+		CompactSerializer writer = new CompactSerializer().register(EntityV1.class, 100);
+		CompactSerializer reader = new CompactSerializer().register(EntityV2.class, 100);
+
+		EntityV1 v1 = new EntityV1();
+		v1.id = 10;
+		v1.name = "v1";
+		v1.removed = "removed";
+		EntityV2 v2 = reader.deserialize(writer.serialize(v1));
+		assertEquals(10L, v2.id);
+		assertEquals("v1", v2.name);
+		assertNull(v2.added);
+	}
+
+	public static class Entity implements Serializable {
+		private static final long serialVersionUID = 1L;
+		private int id;
+		private String name;
+		private List<String> tags;
+		private Map<String, Object> attributes;
+		private Entity self;
+		private Entity child;
+		private transient int transientValue = 5;
+	}
+
+	public static class EntityV1 {
+		private int id;
+		private String name;
+		private String removed;
+	}
+
+	public static class EntityV2 {
+		private long id;
+		private String name;
+		private String added;
+	}
+}
@@ -0,0 +1,92 @@
+package scw.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+
+import java.util.Properties;
+
+import org.junit.Test;
+
+import scw.env.DefaultEnvironment;
+import scw.event.AbstractObservable;
+import scw.event.ChangeEvent;
+import scw.event.EventType;
+import scw.value.StringValue;
+import scw.value.support.DefaultPropertyFactory;
+
+public class EnvironmentPropertyCacheTest {
+	@Test
+	public void put() {
+		DefaultEnvironment environment = new DefaultEnvironment();
+		environment.put("a", "1");
+		assertEquals(1, (int) environment.getValue("a", Integer.class, 0));
+		assertEquals("1", environment.getString("a"));
+		environment.put("a", "2");
+		assertEquals(2, (int) environment.getValue("a", Integer.class, 0));
+		assertEquals("2", environment.getString("a"));
+		environment.remove("a");
+		assertEquals(3, (int) environment.getValue("a", Integer.class, 3));
+		assertNull(environment.getString("a"));
+	}
+
+	@Test
+	public void placeholder() {
+		DefaultEnvironment environment = new DefaultEnvironment();
+		environment.put("host", "localhost");
+		environment.put("url", "http://${host}/");
+		assertEquals("http://localhost/", environment.getString("url"));
+		environment.put("host", "127.0.0.1");
+		assertEquals("http://127.0.0.1/", environment.getString("url"));
+	}
+
+	@Test
+	public void observableProperties() {
+		DefaultEnvironment environment = new DefaultEnvironment();
+		Properties properties = new Properties();
+		properties.put("b", "1");
+		AbstractObservable<Properties> observable = new AbstractObservable<Properties>() {
+
+			@Override
+			protected Properties forceGet() {
+				return properties;
+			}
+		};
+		environment.loadProperties(observable);
+		assertEquals(1L, (long) environment.getValue("b", Long.class, 0L));
+
+		Properties newProperties = new Properties();
+		newProperties.put("b", "2");
+		observable.publishEvent(new ChangeEvent<Properties>(EventType.UPDATE, newProperties));
+		assertEquals(2L, (long) environment.getValue("b", Long.class, 0L));
+
+		observable.publishEvent(new ChangeEvent<Properties>(EventType.UPDATE, new Properties()));
+		assertEquals(5L, (long) environment.getValue("b", Long.class, 5L));
+	}
+
+	@Test
+	public void mutable() {
+		DefaultEnvironment environment = new DefaultEnvironment();
+		environment.put("array", "a,b");
+		String[] array = environment.getObject("array", String[].class);
+		assertEquals(2, array.length);
+		array[0] = "c";
+		// 可变的对象不能在调用方之间共享
+		String[] other = environment.getObject("array", String[].class);
+		assertNotSame(array, other);
+		assertEquals("a", other[0]);
+	}
+
+	@Test
+	public void unobservablePlaceholder() {
+		DefaultEnvironment environment = new DefaultEnvironment();
+		// 不可观察的来源
+		DefaultPropertyFactory factory = new DefaultPropertyFactory(true);
+		factory.put("host", new StringValue("localhost"));
+		environment.addFactory(factory);
+		environment.put("url", "http://${host}/");
+		assertEquals("http://localhost/", environment.getString("url"));
+		factory.put("host", new StringValue("127.0.0.1"));
+		assertEquals("http://127.0.0.1/", environment.getString("url"));
+	}
+}
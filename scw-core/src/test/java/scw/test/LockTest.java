@@ -0,0 +1,95 @@
+package scw.test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import scw.locks.AbstractLock;
+
+public class LockTest {
+	@Test
+	public void timeout() throws InterruptedException {
+		AtomicBoolean state = new AtomicBoolean(true);
+		TestLock lock = new TestLock("timeout", state);
+		long t = System.currentTimeMillis();
+		assertFalse(lock.tryLock(200, TimeUnit.MILLISECONDS));
+		long use = System.currentTimeMillis() - t;
+		assertTrue(use >= 190 && use < 2000);
+		assertFalse(lock.tryLock(0, TimeUnit.MILLISECONDS));
+
+		state.set(false);
+		assertTrue(lock.tryLock(200, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	public void signal() throws InterruptedException {
+		AtomicBoolean state = new AtomicBoolean(false);
+		TestLock owner = new TestLock("signal", state);
+		assertTrue(owner.tryLock());
+
+		int size = 5;
+		CountDownLatch latch = new CountDownLatch(size);
+		AtomicInteger attempts = new AtomicInteger();
+		for (int i = 0; i < size; i++) {
+			Thread thread = new Thread(() -> {
+				TestLock lock = new TestLock("signal", state, attempts);
+				// 退避的时间很长，只有收到通知才能很快获取到锁
+				lock.setSleepTime(10000);
+				lock.setMaxSleepTime(10000);
+				lock.lock();
+				try {
+					latch.countDown();
+				} finally {
+					lock.unlock();
+				}
+			});
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		Thread.sleep(100);
+		// 同一个jvm中只有一个线程在轮询
+		assertTrue(attempts.get() <= size + 1);
+		owner.unlock();
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+	}
+
+	private static class TestLock extends AbstractLock {
+		private final String name;
+		private final AtomicBoolean state;
+		private final AtomicInteger attempts;
+
+		TestLock(String name, AtomicBoolean state) {
+			this(name, state, new AtomicInteger());
+		}
+
+		TestLock(String name, AtomicBoolean state, AtomicInteger attempts) {
+			this.name = name;
+			this.state = state;
+			this.attempts = attempts;
+		}
+
+		@Override
+		protected String getWaiterName() {
+			return TestLock.class.getName() + ":" + name;
+		}
+
+		@Override
+		public boolean tryLock() {
+			attempts.incrementAndGet();
+			return state.compareAndSet(false, true);
+		}
+
+		@Override
+		public void unlock() {
+			state.set(false);
+			signalUnlocked();
+		}
+	}
+}
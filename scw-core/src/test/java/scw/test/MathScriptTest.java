@@ -0,0 +1,42 @@
+package scw.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import scw.script.MathScriptEngine;
+
+public class MathScriptTest {
+	private final MathScriptEngine engine = new MathScriptEngine();
+
+	@Test
+	public void eval() {
+		assertEquals(14, engine.eval("2+3*4").toBigDecimal().intValue());
+		assertEquals(20, engine.eval("(2+3)*4").toBigDecimal().intValue());
+		assertEquals(4, engine.eval("max(2, 5) + min(0,|-1|) - 1").toBigDecimal().intValue());
+		assertEquals(-2, engine.eval("-[1+{1}]").toBigDecimal().intValue());
+		assertEquals(8, engine.eval("2^3").toBigDecimal().intValue());
+	}
+
+	@Test
+	public void instance() {
+		Bean bean = new Bean();
+		bean.setCount(3);
+		assertEquals(3000, engine.eval("count * 1000", bean).toBigDecimal().intValue());
+		assertTrue(engine.evalAsDouble("count / 2 + 0.5", bean) == 2.0d);
+		assertTrue(MathScriptEngine.compile("count*1000") == MathScriptEngine.compile("count * 1000"));
+	}
+
+	public static class Bean {
+		private int count;
+
+		public int getCount() {
+			return count;
+		}
+
+		public void setCount(int count) {
+			this.count = count;
+		}
+	}
+}
@@ -0,0 +1,166 @@
+package scw.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import scw.event.ChangeEvent;
+import scw.event.EventListener;
+import scw.event.EventType;
+import scw.io.FileSystemResource;
+import scw.io.Resource;
+import scw.io.event.EventTypeDebouncer;
+import scw.io.event.ResourcePollingScheduler;
+import scw.io.event.ResourcePollingScheduler.PollingTask;
+
+public class ResourceEventTest {
+	/**
+	 * 只记录任务，由测试线程执行
+	 */
+	private static final class ManualExecutor extends ScheduledThreadPoolExecutor {
+		private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+
+		ManualExecutor() {
+			super(1);
+		}
+
+		@Override
+		public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+			tasks.add(command);
+			return null;
+		}
+
+		int run() {
+			int count = 0;
+			Runnable task;
+			while ((task = tasks.poll()) != null) {
+				task.run();
+				count++;
+			}
+			return count;
+		}
+	}
+
+	@Test
+	public void debounce() {
+		ManualExecutor executor = new ManualExecutor();
+		List<EventType> events = new ArrayList<EventType>();
+		EventTypeDebouncer debouncer = new EventTypeDebouncer(executor, 0, (eventType) -> events.add(eventType));
+		try {
+			// 时间窗口内的多次变化只触发一次，创建后的修改仍然是创建
+			debouncer.onEvent(EventType.CREATE);
+			debouncer.onEvent(EventType.UPDATE);
+			debouncer.onEvent(EventType.UPDATE);
+			assertEquals(1, executor.run());
+			assertEquals(1, events.size());
+			assertEquals(EventType.CREATE, events.get(0));
+
+			// 触发期间发生的变化在下一个时间窗口触发，不会丢失
+			List<EventType> received = new ArrayList<EventType>();
+			EventTypeDebouncer[] holder = new EventTypeDebouncer[1];
+			holder[0] = new EventTypeDebouncer(executor, 0, (eventType) -> {
+				received.add(eventType);
+				if (received.size() == 1) {
+					holder[0].onEvent(EventType.DELETE);
+				}
+			});
+			holder[0].onEvent(EventType.UPDATE);
+			assertEquals(2, executor.run());
+			assertEquals(2, received.size());
+			assertEquals(EventType.UPDATE, received.get(0));
+			assertEquals(EventType.DELETE, received.get(1));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void polling() {
+		ResourcePollingScheduler scheduler = new ResourcePollingScheduler(TimeUnit.HOURS.toMillis(1));
+		try {
+			FileSystemResource broken = new FileSystemResource(new File("broken.properties")) {
+				@Override
+				public boolean exists() {
+					throw new IllegalStateException("broken");
+				}
+			};
+			FileSystemResource missing = new FileSystemResource(new File("missing.properties"));
+			List<String> polled = new ArrayList<String>();
+			scheduler.schedule(new PollingTask(broken, 0) {
+
+				@Override
+				protected void poll(boolean exists, long lastModified) {
+					polled.add("broken");
+				}
+			});
+			scheduler.schedule(new PollingTask(missing, 0) {
+
+				@Override
+				protected void poll(boolean exists, long lastModified) {
+					polled.add("missing:" + exists + ":" + lastModified);
+				}
+			});
+
+			// 一个资源读取状态失败不影响其他资源
+			scheduler.poll();
+			assertEquals(1, polled.size());
+			assertEquals("missing:false:-1", polled.get(0));
+		} finally {
+			scheduler.shutdown();
+		}
+	}
+
+	@Test
+	public void watch() throws Exception {
+		File directory = Files.createTempDirectory("resource-event").toFile();
+		File file = new File(directory, "a.properties");
+		File other = new File(directory, "b.properties");
+		Files.write(file.toPath(), "a=1".getBytes());
+		Files.write(other.toPath(), "b=1".getBytes());
+		try {
+			FileSystemResource resource = new FileSystemResource(file);
+			FileSystemResource otherResource = new FileSystemResource(other);
+			CountDownLatch latch = new CountDownLatch(1);
+			resource.registerListener(new EventListener<ChangeEvent<Resource>>() {
+
+				public void onEvent(ChangeEvent<Resource> event) {
+					latch.countDown();
+				}
+			});
+
+			CountDownLatch otherLatch = new CountDownLatch(1);
+			otherResource.registerListener(new EventListener<ChangeEvent<Resource>>() {
+
+				public void onEvent(ChangeEvent<Resource> event) {
+					otherLatch.countDown();
+				}
+			});
+
+			for (int i = 2; i < 7; i++) {
+				Files.write(file.toPath(), ("a=" + i).getBytes());
+			}
+
+			// WatchService和轮询的实现都应该在这个时间内感知到
+			assertTrue(latch.await(15, TimeUnit.SECONDS));
+			assertEquals(1, otherLatch.getCount());
+			Files.write(other.toPath(), "b=2".getBytes());
+			assertTrue(otherLatch.await(15, TimeUnit.SECONDS));
+		} finally {
+			file.delete();
+			other.delete();
+			directory.delete();
+		}
+	}
+}
@@ -22,6 +22,14 @@ public abstract class AbstractDataOperationsWrapper implements DataOperations {
 		getDataOperations().set(key, exp, value);
 	}
 
+	public void set(Map<String, ?> values) {
+		getDataOperations().set(values);
+	}
+
+	public void set(Map<String, ?> values, int exp) {
+		getDataOperations().set(values, exp);
+	}
+
 	public boolean add(String key, Object value) {
 		return getDataOperations().add(key, value);
 	}
@@ -0,0 +1,457 @@
+package scw.data;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import scw.core.Assert;
+import scw.core.utils.CollectionUtils;
+import scw.logger.Logger;
+import scw.logger.LoggerFactory;
+
+/**
+ * 支持加载的缓存<br/>
+ * <ul>
+ * <li>同一个key在一个jvm中同时只会有一个加载，其他的调用等待加载的结果</li>
+ * <li>过期前按概率提前刷新(越接近过期、加载越慢，刷新的概率越高)，避免同时过期</li>
+ * <li>可以设置过期后仍然使用旧值的时间，期间返回旧值并在后台刷新</li>
+ * <li>批量获取时缺失的key使用一次批量加载</li>
+ * </ul>
+ * 通过加载方法写入的值会包装后保存(包含过期时间)，{@link #get(String)}等方法会自动解包
+ *
+ * @author shuchaowen
+ *
+ */
+public class LoadingDataOperations extends AbstractDataOperationsWrapper {
+	private static Logger logger = LoggerFactory.getLogger(LoadingDataOperations.class);
+
+	private final DataOperations dataOperations;
+	private final ConcurrentMap<String, CompletableFuture<LoadingEntry>> loadingMap = new ConcurrentHashMap<String, CompletableFuture<LoadingEntry>>();
+	private volatile double beta = 1;
+	private volatile int staleTime = 0;
+	private volatile Executor executor;
+
+	public LoadingDataOperations(DataOperations dataOperations) {
+		Assert.requiredArgument(dataOperations != null, "dataOperations");
+		this.dataOperations = dataOperations;
+	}
+
+	@Override
+	public DataOperations getDataOperations() {
+		return dataOperations;
+	}
+
+	public double getBeta() {
+		return beta;
+	}
+
+	/**
+	 * 提前刷新的系数，越大越提前，0表示不提前刷新
+	 *
+	 * @param beta
+	 */
+	public void setBeta(double beta) {
+		Assert.requiredArgument(beta >= 0, "beta");
+		this.beta = beta;
+	}
+
+	public int getStaleTime() {
+		return staleTime;
+	}
+
+	/**
+	 * 过期后仍然可以使用旧值的时间(秒)，期间会在后台刷新，0表示过期后同步加载
+	 *
+	 * @param staleTime
+	 */
+	public void setStaleTime(int staleTime) {
+		Assert.requiredArgument(staleTime >= 0, "staleTime");
+		this.staleTime = staleTime;
+	}
+
+	public Executor getExecutor() {
+		Executor executor = this.executor;
+		return executor == null ? DefaultExecutor.INSTANCE : executor;
+	}
+
+	/**
+	 * 后台刷新使用的线程池
+	 *
+	 * @param executor
+	 */
+	public void setExecutor(Executor executor) {
+		this.executor = executor;
+	}
+
+	@Override
+	public <T> T get(String key) {
+		return unwrap(super.get(key));
+	}
+
+	@Override
+	public <T> T getAndTouch(String key, int newExp) {
+		return unwrap(super.getAndTouch(key, newExp));
+	}
+
+	@Override
+	public <T> Map<String, T> get(Collection<String> keyCollections) {
+		Map<String, Object> map = super.get(keyCollections);
+		if (CollectionUtils.isEmpty(map)) {
+			return Collections.emptyMap();
+		}
+
+		Map<String, T> result = new LinkedHashMap<String, T>(map.size());
+		for (Entry<String, Object> entry : map.entrySet()) {
+			T value = unwrap(entry.getValue());
+			if (value != null) {
+				result.put(entry.getKey(), value);
+			}
+		}
+		return result;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T unwrap(Object value) {
+		return (T) (value instanceof LoadingEntry ? ((LoadingEntry) value).value : value);
+	}
+
+	/**
+	 * 获取，不存在时加载(加载的结果为null也会缓存)
+	 *
+	 * @param key
+	 * @param exp    过期时间(秒)，小于等于0表示不过期
+	 * @param loader
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T get(String key, int exp, Function<String, ? extends T> loader) {
+		Assert.requiredArgument(key != null, "key");
+		Assert.requiredArgument(loader != null, "loader");
+		Object value = dataOperations.get(key);
+		if (value != null && !(value instanceof LoadingEntry)) {
+			// 不是通过加载写入的值
+			return (T) value;
+		}
+
+		LoadingEntry entry = (LoadingEntry) value;
+		if (entry != null) {
+			long now = System.currentTimeMillis();
+			if (entry.isFresh(now)) {
+				if (entry.shouldRefreshEarly(now, beta)) {
+					refresh(Collections.singletonList(key), exp, (keys) -> loadOne(keys, loader));
+				}
+				return (T) entry.value;
+			}
+
+			if (entry.isStale(now, staleTime)) {
+				refresh(Collections.singletonList(key), exp, (keys) -> loadOne(keys, loader));
+				return (T) entry.value;
+			}
+		}
+
+		return (T) load(Collections.singletonList(key), exp, (keys) -> loadOne(keys, loader)).get(key).value;
+	}
+
+	private static <T> Map<String, T> loadOne(Collection<String> keys, Function<String, ? extends T> loader) {
+		String key = keys.iterator().next();
+		return Collections.singletonMap(key, loader.apply(key));
+	}
+
+	/**
+	 * 批量获取，缺失的key使用一次批量加载，加载结果中不存在的key视为null并缓存
+	 *
+	 * @param keys
+	 * @param exp    过期时间(秒)，小于等于0表示不过期
+	 * @param loader 参数为缺失的key
+	 * @return 不包含值为null的key
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> Map<String, T> get(Collection<String> keys, int exp,
+			Function<Collection<String>, ? extends Map<String, ? extends T>> loader) {
+		Assert.requiredArgument(loader != null, "loader");
+		if (CollectionUtils.isEmpty(keys)) {
+			return Collections.emptyMap();
+		}
+
+		Map<String, Object> cacheMap = dataOperations.get(keys);
+		Map<String, T> result = new LinkedHashMap<String, T>(keys.size());
+		List<String> missingKeys = null;
+		List<String> refreshKeys = null;
+		long now = System.currentTimeMillis();
+		for (String key : keys) {
+			Object value = cacheMap == null ? null : cacheMap.get(key);
+			if (value != null && !(value instanceof LoadingEntry)) {
+				result.put(key, (T) value);
+				continue;
+			}
+
+			LoadingEntry entry = (LoadingEntry) value;
+			if (entry != null && (entry.isFresh(now) || entry.isStale(now, staleTime))) {
+				if (entry.value != null) {
+					result.put(key, (T) entry.value);
+				}
+
+				if (!entry.isFresh(now) || entry.shouldRefreshEarly(now, beta)) {
+					if (refreshKeys == null) {
+						refreshKeys = new ArrayList<String>();
+					}
+					refreshKeys.add(key);
+				}
+				continue;
+			}
+
+			if (missingKeys == null) {
+				missingKeys = new ArrayList<String>();
+			}
+			missingKeys.add(key);
+		}
+
+		if (refreshKeys != null) {
+			refresh(refreshKeys, exp, loader);
+		}
+
+		if (missingKeys != null) {
+			Map<String, LoadingEntry> loaded = load(missingKeys, exp, loader);
+			for (String key : keys) {
+				LoadingEntry entry = loaded.get(key);
+				if (entry != null && entry.value != null) {
+					result.put(key, (T) entry.value);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * 在后台刷新，已经在加载的key会被忽略
+	 */
+	private void refresh(Collection<String> keys, int exp,
+			Function<Collection<String>, ? extends Map<String, ?>> loader) {
+		Map<String, CompletableFuture<LoadingEntry>> owned = acquire(keys, null);
+		if (owned.isEmpty()) {
+			return;
+		}
+
+		try {
+			getExecutor().execute(() -> {
+				try {
+					loadAndComplete(owned, exp, loader);
+				} catch (Throwable e) {
+					logger.error(e, "refresh error: {}", owned.keySet());
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			// 线程池已满，在当前线程刷新
+			try {
+				loadAndComplete(owned, exp, loader);
+			} catch (RuntimeException e1) {
+				logger.error(e1, "refresh error: {}", owned.keySet());
+			}
+		}
+	}
+
+	/**
+	 * 同步加载，其他线程正在加载的key会等待其结果
+	 */
+	private Map<String, LoadingEntry> load(Collection<String> keys, int exp,
+			Function<Collection<String>, ? extends Map<String, ?>> loader) {
+		Map<String, CompletableFuture<LoadingEntry>> waiting = new LinkedHashMap<String, CompletableFuture<LoadingEntry>>();
+		Map<String, CompletableFuture<LoadingEntry>> owned = acquire(keys, waiting);
+		Map<String, LoadingEntry> result = new LinkedHashMap<String, LoadingEntry>(keys.size());
+		if (!owned.isEmpty()) {
+			result.putAll(loadAndComplete(owned, exp, loader));
+		}
+
+		for (Entry<String, CompletableFuture<LoadingEntry>> entry : waiting.entrySet()) {
+			result.put(entry.getKey(), join(entry.getValue()));
+		}
+		return result;
+	}
+
+	/**
+	 * 获取这些key的加载权
+	 *
+	 * @param keys
+	 * @param waiting 其他线程正在加载的key，为空表示忽略
+	 * @return 由当前线程加载的key
+	 */
+	private Map<String, CompletableFuture<LoadingEntry>> acquire(Collection<String> keys,
+			Map<String, CompletableFuture<LoadingEntry>> waiting) {
+		Map<String, CompletableFuture<LoadingEntry>> owned = new LinkedHashMap<String, CompletableFuture<LoadingEntry>>(
+				keys.size());
+		for (String key : keys) {
+			if (owned.containsKey(key) || (waiting != null && waiting.containsKey(key))) {
+				continue;
+			}
+
+			CompletableFuture<LoadingEntry> future = new CompletableFuture<LoadingEntry>();
+			CompletableFuture<LoadingEntry> old = loadingMap.putIfAbsent(key, future);
+			if (old == null) {
+				owned.put(key, future);
+			} else if (waiting != null) {
+				waiting.put(key, old);
+			}
+		}
+		return owned;
+	}
+
+	private Map<String, LoadingEntry> loadAndComplete(Map<String, CompletableFuture<LoadingEntry>> owned, int exp,
+			Function<Collection<String>, ? extends Map<String, ?>> loader) {
+		Map<String, LoadingEntry> entries;
+		try {
+			List<String> keys = new ArrayList<String>(owned.keySet());
+			long start = System.currentTimeMillis();
+			Map<String, ?> values = loader.apply(Collections.unmodifiableList(keys));
+			long now = System.currentTimeMillis();
+			entries = new LinkedHashMap<String, LoadingEntry>(keys.size());
+			for (String key : keys) {
+				entries.put(key, new LoadingEntry(values == null ? null : values.get(key),
+						exp > 0 ? now + TimeUnit.SECONDS.toMillis(exp) : 0, now - start));
+			}
+		} catch (RuntimeException e) {
+			complete(owned, null, e);
+			throw e;
+		} catch (Error e) {
+			complete(owned, null, e);
+			throw e;
+		}
+
+		RuntimeException error = null;
+		try {
+			if (exp > 0) {
+				dataOperations.set(entries, exp + staleTime);
+			} else {
+				dataOperations.set(entries);
+			}
+		} catch (RuntimeException e) {
+			error = e;
+		}
+
+		// 写入缓存失败不影响加载的结果
+		complete(owned, entries, null);
+		if (error != null) {
+			logger.error(error, "set cache error: {}", entries.keySet());
+		}
+		return entries;
+	}
+
+	private void complete(Map<String, CompletableFuture<LoadingEntry>> owned, Map<String, LoadingEntry> entries,
+			Throwable error) {
+		for (Entry<String, CompletableFuture<LoadingEntry>> entry : owned.entrySet()) {
+			loadingMap.remove(entry.getKey(), entry.getValue());
+			if (error == null) {
+				entry.getValue().complete(entries.get(entry.getKey()));
+			} else {
+				entry.getValue().completeExceptionally(error);
+			}
+		}
+	}
+
+	private static LoadingEntry join(CompletableFuture<LoadingEntry> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new StorageException(e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof CompletionException && cause.getCause() != null) {
+				cause = cause.getCause();
+			}
+
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new StorageException(cause);
+		}
+	}
+
+	/**
+	 * 正在加载的key的数量
+	 *
+	 * @return
+	 */
+	public int getLoadingCount() {
+		return loadingMap.size();
+	}
+
+	static final class LoadingEntry implements Serializable {
+		private static final long serialVersionUID = 1L;
+		private final Object value;
+		/**
+		 * 为0表示不过期
+		 */
+		private final long expireTime;
+		/**
+		 * 加载耗时(毫秒)
+		 */
+		private final long delta;
+
+		LoadingEntry(Object value, long expireTime, long delta) {
+			this.value = value;
+			this.expireTime = expireTime;
+			this.delta = delta;
+		}
+
+		boolean isFresh(long now) {
+			return expireTime == 0 || now < expireTime;
+		}
+
+		/**
+		 * 已经过期但还在可以使用旧值的时间内
+		 */
+		boolean isStale(long now, int staleTime) {
+			return expireTime != 0 && now >= expireTime && now < expireTime + TimeUnit.SECONDS.toMillis(staleTime);
+		}
+
+		/**
+		 * 按概率提前刷新 now - delta * beta * ln(random) >= expireTime
+		 */
+		boolean shouldRefreshEarly(long now, double beta) {
+			if (expireTime == 0 || beta <= 0) {
+				return false;
+			}
+
+			double random = ThreadLocalRandom.current().nextDouble();
+			if (random == 0) {
+				return true;
+			}
+			return now - Math.max(delta, 1) * beta * Math.log(random) >= expireTime;
+		}
+	}
+
+	private static final class DefaultExecutor {
+		static final ThreadPoolExecutor INSTANCE;
+
+		static {
+			INSTANCE = new ThreadPoolExecutor(4, 4, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(1024),
+					(runnable) -> {
+						Thread thread = new Thread(runnable, LoadingDataOperations.class.getSimpleName() + "-refresh");
+						thread.setDaemon(true);
+						return thread;
+					});
+			INSTANCE.allowCoreThreadTimeOut(true);
+		}
+	}
+}
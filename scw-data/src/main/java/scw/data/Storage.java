@@ -2,6 +2,7 @@ package scw.data;
 
 import java.util.Collection;
 import java.util.Map;
+import java.util.Map.Entry;
 
 /**
  * 存储管理
@@ -24,6 +25,16 @@ public interface Storage {
 
 	void set(String key, Object value);
 
+	/**
+	 * 批量设置
+	 * @param values
+	 */
+	default void set(Map<String, ?> values) {
+		for (Entry<String, ?> entry : values.entrySet()) {
+			set(entry.getKey(), entry.getValue());
+		}
+	}
+
 	boolean isExist(String key);
 	
 	boolean delete(String key);
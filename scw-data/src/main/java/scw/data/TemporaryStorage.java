@@ -1,5 +1,7 @@
 package scw.data;
 
+import java.util.Map;
+import java.util.Map.Entry;
 
 /**
  * 临时存储
@@ -34,4 +36,15 @@ public interface TemporaryStorage extends Storage{
 	 * @param value
 	 */
 	void set(String key, int exp, Object value);
+
+	/**
+	 * 批量设置
+	 * @param values
+	 * @param exp 过期时间(秒)
+	 */
+	default void set(Map<String, ?> values, int exp) {
+		for (Entry<String, ?> entry : values.entrySet()) {
+			set(entry.getKey(), exp, entry.getValue());
+		}
+	}
 }
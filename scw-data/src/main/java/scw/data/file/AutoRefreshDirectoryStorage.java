@@ -6,6 +6,12 @@ import scw.convert.Converter;
 import scw.io.Serializer;
 import scw.io.SerializerUtils;
 
+/**
+ * 每个key一个文件，大量小数据时会耗尽inode且过期扫描缓慢
+ * 
+ * @deprecated 使用{@link AutoRefreshSegmentDataOperations}
+ */
+@Deprecated
 public class AutoRefreshDirectoryStorage extends DirectoryStorage {
 	private final Converter<String, ?> converter;
 
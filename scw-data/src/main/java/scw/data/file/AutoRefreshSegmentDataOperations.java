@@ -0,0 +1,111 @@
+package scw.data.file;
+
+import java.io.File;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import scw.convert.Converter;
+import scw.core.Assert;
+import scw.core.utils.StringUtils;
+import scw.io.Serializer;
+import scw.io.SerializerUtils;
+import scw.logger.Logger;
+import scw.logger.LoggerFactory;
+
+/**
+ * 数据不存在时使用converter同步加载，如{@link HttpGetBodyCacheConvert}<br/>
+ * 数据过期后继续返回过期的数据，同时在后台使用converter刷新，刷新失败时保留过期的数据等待下次刷新
+ *
+ * @author shuchaowen
+ *
+ */
+public class AutoRefreshSegmentDataOperations extends SegmentDataOperations {
+	private static Logger logger = LoggerFactory.getLogger(AutoRefreshSegmentDataOperations.class);
+	// 刷新可能很慢(如http请求)，不能占用清理线程，守望线程，自动退出
+	private static final ExecutorService REFRESH_EXECUTOR = Executors
+			.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()), (runnable) -> {
+				Thread thread = new Thread(runnable, AutoRefreshSegmentDataOperations.class.getSimpleName());
+				thread.setDaemon(true);
+				return thread;
+			});
+
+	private final Converter<String, ?> converter;
+	/**
+	 * 正在刷新的key，同一个key同时只有一个刷新任务
+	 */
+	private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+	private volatile Executor executor = REFRESH_EXECUTOR;
+
+	/**
+	 * @param exp            单位:秒
+	 * @param cacheDirectory
+	 * @param converter
+	 */
+	public AutoRefreshSegmentDataOperations(int exp, String cacheDirectory, Converter<String, ?> converter) {
+		this(exp, SerializerUtils.getSerializer(), new File(StringUtils.cleanPath(cacheDirectory)), converter);
+	}
+
+	/**
+	 * @param exp        单位:秒
+	 * @param serializer
+	 * @param directory
+	 * @param converter
+	 */
+	public AutoRefreshSegmentDataOperations(int exp, Serializer serializer, File directory,
+			Converter<String, ?> converter) {
+		super(exp, serializer, directory);
+		this.converter = converter;
+	}
+
+	public Executor getExecutor() {
+		return executor;
+	}
+
+	/**
+	 * 执行后台刷新的线程池
+	 * 
+	 * @param executor
+	 */
+	public void setExecutor(Executor executor) {
+		Assert.requiredArgument(executor != null, "executor");
+		this.executor = executor;
+	}
+
+	private Object refresh(String key) {
+		Object value = converter.convert(key);
+		if (value != null) {
+			set(key, value);
+		}
+		return value;
+	}
+
+	@Override
+	protected boolean retainExpired(String key) {
+		if (refreshing.add(key)) {
+			try {
+				executor.execute(() -> {
+					try {
+						refresh(key);
+					} catch (Throwable e) {
+						logger.error(e, "Refresh [{}] error", key);
+					} finally {
+						refreshing.remove(key);
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				refreshing.remove(key);
+				logger.error(e, "Refresh [{}] rejected", key);
+			}
+		}
+		return true;
+	}
+
+	@Override
+	protected Object getNotFound(String key) {
+		return refresh(key);
+	}
+}
@@ -21,6 +21,12 @@ import scw.logger.Logger;
 import scw.logger.LoggerFactory;
 import scw.net.uri.UriUtils;
 
+/**
+ * 每个key一个文件，大量小数据时会耗尽inode且过期扫描缓慢
+ * 
+ * @deprecated 使用{@link SegmentDataOperations}
+ */
+@Deprecated
 @SuppressWarnings("unchecked")
 public class DirectoryStorage extends TimerTask implements Storage {
 	private static Logger logger = LoggerFactory.getLogger(DirectoryStorage.class);
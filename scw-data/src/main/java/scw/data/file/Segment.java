@@ -0,0 +1,193 @@
+package scw.data.file;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 一个只能追加的段文件<br/>
+ * 写满后封存，封存后使用mmap读取，未封存时使用文件通道读取
+ *
+ * @author shuchaowen
+ *
+ */
+final class Segment implements Closeable {
+	static final String SUFFIX = ".seg";
+
+	private final long id;
+	private final File file;
+	private final FileChannel channel;
+	private volatile long size;
+	private volatile MappedByteBuffer buffer;
+	/**
+	 * 仍然被索引引用的字节数
+	 */
+	private final AtomicLong liveBytes = new AtomicLong();
+
+	Segment(File directory, long id) throws IOException {
+		this.id = id;
+		this.file = new File(directory, getFileName(id));
+		this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		this.size = channel.size();
+	}
+
+	static String getFileName(long id) {
+		return String.format("%020d", id) + SUFFIX;
+	}
+
+	static long getId(File file) {
+		String name = file.getName();
+		if (!name.endsWith(SUFFIX)) {
+			return -1;
+		}
+
+		try {
+			return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public long getSize() {
+		return size;
+	}
+
+	public long getLiveBytes() {
+		return liveBytes.get();
+	}
+
+	void addLiveBytes(long bytes) {
+		liveBytes.addAndGet(bytes);
+	}
+
+	public boolean isSealed() {
+		return buffer != null;
+	}
+
+	/**
+	 * 追加数据，调用方需要保证串行写入
+	 *
+	 * @param data
+	 * @return 写入的位置
+	 * @throws IOException
+	 */
+	long append(ByteBuffer data) throws IOException {
+		long position = size;
+		long writePosition = position;
+		while (data.hasRemaining()) {
+			writePosition += channel.write(data, writePosition);
+		}
+		size = writePosition;
+		return position;
+	}
+
+	/**
+	 * 截断到指定的长度，用于丢弃恢复时发现的不完整的尾部
+	 *
+	 * @param size
+	 * @throws IOException
+	 */
+	void truncate(long size) throws IOException {
+		channel.truncate(size);
+		this.size = size;
+	}
+
+	void force() throws IOException {
+		channel.force(false);
+	}
+
+	/**
+	 * 封存，之后不能再写入
+	 *
+	 * @throws IOException
+	 */
+	void seal() throws IOException {
+		if (buffer == null) {
+			channel.force(false);
+			buffer = channel.map(MapMode.READ_ONLY, 0, size);
+		}
+	}
+
+	/**
+	 * 读取指定范围的数据
+	 *
+	 * @param position
+	 * @param length
+	 * @return 只读的数据
+	 * @throws IOException
+	 */
+	ByteBuffer read(long position, int length) throws IOException {
+		MappedByteBuffer buffer = this.buffer;
+		if (buffer != null) {
+			ByteBuffer slice = buffer.duplicate();
+			slice.limit((int) (position + length));
+			slice.position((int) position);
+			return slice.slice();
+		}
+
+		ByteBuffer data = ByteBuffer.allocate(length);
+		long readPosition = position;
+		while (data.hasRemaining()) {
+			int len = channel.read(data, readPosition);
+			if (len < 0) {
+				throw new IOException("Unexpected end of segment " + file + " at " + readPosition);
+			}
+			readPosition += len;
+		}
+		data.flip();
+		return data;
+	}
+
+	/**
+	 * 获取整个文件的数据，用于顺序扫描
+	 *
+	 * @return
+	 * @throws IOException
+	 */
+	ByteBuffer map() throws IOException {
+		MappedByteBuffer buffer = this.buffer;
+		if (buffer != null) {
+			return buffer.duplicate();
+		}
+		return channel.map(MapMode.READ_ONLY, 0, size);
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	 * 关闭并删除文件，已经映射的数据在被回收前仍然可以读取
+	 *
+	 * @return
+	 */
+	boolean delete() {
+		try {
+			close();
+		} catch (IOException e) {
+			// ignore
+		}
+		return file.delete();
+	}
+
+	@Override
+	public String toString() {
+		return file.getPath() + "(size=" + size + ", live=" + liveBytes + ")";
+	}
+}
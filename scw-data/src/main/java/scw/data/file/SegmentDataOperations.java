@@ -0,0 +1,764 @@
+package scw.data.file;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import scw.core.Assert;
+import scw.core.Constants;
+import scw.core.utils.CollectionUtils;
+import scw.core.utils.StringUtils;
+import scw.core.utils.XTime;
+import scw.data.DataOperations;
+import scw.data.StorageException;
+import scw.io.Serializer;
+import scw.io.SerializerUtils;
+import scw.logger.Logger;
+import scw.logger.LoggerFactory;
+
+/**
+ * 基于只追加段文件的本地持久化存储<br/>
+ * 值追加写入到段文件中，所有的key、位置和过期时间保存在内存索引中，启动时顺序扫描段文件重建索引<br/>
+ * 写满的段文件封存后使用mmap读取，后台定期清理过期的索引并合并存活数据较少的段文件
+ *
+ * @author shuchaowen
+ *
+ */
+@SuppressWarnings("unchecked")
+public class SegmentDataOperations implements DataOperations, Closeable {
+	private static Logger logger = LoggerFactory.getLogger(SegmentDataOperations.class);
+	// 守望线程，自动退出
+	private static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+		Thread thread = new Thread(runnable, SegmentDataOperations.class.getSimpleName());
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	public static final long DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+	private static final byte PUT = 1;
+	private static final byte DELETE = 2;
+	/**
+	 * length(4) + crc(4) + type(1) + expireTime(8) + keyLength(4)
+	 */
+	private static final int HEADER_SIZE = 21;
+
+	private final int exp;// 0表示不过期
+	private final Serializer serializer;
+	private final File directory;
+	private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<Long, Segment>();
+	private final ConcurrentHashMap<String, IndexEntry> index = new ConcurrentHashMap<String, IndexEntry>();
+	/**
+	 * 所有的写入和索引变更都是串行的
+	 */
+	private final Object writeLock = new Object();
+	private volatile Segment active;
+	private volatile long segmentSize = DEFAULT_SEGMENT_SIZE;
+	private volatile double minLiveRatio = 0.5;
+	private volatile boolean closed;
+	private final ScheduledFuture<?> maintenance;
+
+	/**
+	 * @param exp       单位:秒
+	 * @param directory
+	 */
+	public SegmentDataOperations(int exp, String directory) {
+		this(exp, SerializerUtils.getSerializer(), new File(StringUtils.cleanPath(directory)));
+	}
+
+	/**
+	 * @param exp        默认的过期时间，单位:秒
+	 * @param serializer
+	 * @param directory
+	 */
+	public SegmentDataOperations(int exp, Serializer serializer, File directory) {
+		Assert.requiredArgument(serializer != null, "serializer");
+		Assert.requiredArgument(directory != null, "directory");
+		this.exp = exp;
+		this.serializer = serializer;
+		this.directory = directory;
+		if (!directory.exists() && !directory.mkdirs() && !directory.exists()) {
+			throw new StorageException("Unable to create directory: " + directory);
+		}
+
+		try {
+			recover();
+		} catch (IOException e) {
+			throw new StorageException("Recovery failed: " + directory, e);
+		}
+
+		long period = exp > 0 ? Math.min(exp * 1000L, XTime.ONE_MINUTE) : XTime.ONE_MINUTE;
+		this.maintenance = EXECUTOR.scheduleWithFixedDelay(() -> {
+			try {
+				maintain();
+			} catch (Throwable e) {
+				logger.error(e, "Maintenance error: {}", directory);
+			}
+		}, period, period, TimeUnit.MILLISECONDS);
+		logger.info("{} exp is {}s use directory: {}, recovered {} keys from {} segments", getClass().getName(), exp,
+				directory, index.size(), segments.size());
+	}
+
+	public final Serializer getSerializer() {
+		return serializer;
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+
+	public int getMaxExpirationDate() {
+		return exp;
+	}
+
+	public long getSegmentSize() {
+		return segmentSize;
+	}
+
+	/**
+	 * 单个段文件的最大大小，超过后写入新的段文件
+	 *
+	 * @param segmentSize
+	 */
+	public void setSegmentSize(long segmentSize) {
+		Assert.requiredArgument(segmentSize > HEADER_SIZE && segmentSize <= Integer.MAX_VALUE, "segmentSize");
+		this.segmentSize = segmentSize;
+	}
+
+	public double getMinLiveRatio() {
+		return minLiveRatio;
+	}
+
+	/**
+	 * 封存的段文件中存活数据的比例低于此值时会被合并
+	 *
+	 * @param minLiveRatio
+	 */
+	public void setMinLiveRatio(double minLiveRatio) {
+		Assert.requiredArgument(minLiveRatio >= 0 && minLiveRatio <= 1, "minLiveRatio");
+		this.minLiveRatio = minLiveRatio;
+	}
+
+	/**
+	 * 索引中key的数量(可能包含还未清理的过期数据)
+	 *
+	 * @return
+	 */
+	public int size() {
+		return index.size();
+	}
+
+	public int getSegmentCount() {
+		return segments.size();
+	}
+
+	/**
+	 * 所有段文件的大小
+	 *
+	 * @return
+	 */
+	public long getDiskSize() {
+		long size = 0;
+		for (Segment segment : segments.values()) {
+			size += segment.getSize();
+		}
+		return size;
+	}
+
+	private long getExpireTime(int exp) {
+		return exp > 0 ? (System.currentTimeMillis() + exp * 1000L) : 0;
+	}
+
+	private void recover() throws IOException {
+		List<Long> ids = new ArrayList<Long>();
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				long id = Segment.getId(file);
+				if (id >= 0) {
+					ids.add(id);
+				}
+			}
+		}
+		Collections.sort(ids);
+
+		long now = System.currentTimeMillis();
+		for (Long id : ids) {
+			Segment segment = new Segment(directory, id);
+			segments.put(id, segment);
+			long validSize = scan(segment, (type, key, expireTime, position, size, keyLength) -> {
+				if (type == PUT && (expireTime == 0 || expireTime > now)) {
+					put(key, new IndexEntry(segment, position, size, keyLength, expireTime));
+				} else {
+					remove(key);
+				}
+			});
+
+			if (validSize < segment.getSize()) {
+				logger.warn("Truncate segment {} from {} to {}", segment.getFile(), segment.getSize(), validSize);
+				segment.truncate(validSize);
+			}
+		}
+
+		Entry<Long, Segment> last = segments.lastEntry();
+		if (last == null || last.getValue().getSize() >= segmentSize) {
+			Segment segment = new Segment(directory, last == null ? 0 : (last.getKey() + 1));
+			segments.put(segment.getId(), segment);
+			this.active = segment;
+		} else {
+			this.active = last.getValue();
+		}
+
+		for (Segment segment : segments.values()) {
+			if (segment != active) {
+				segment.seal();
+			}
+		}
+	}
+
+	@FunctionalInterface
+	private static interface RecordHandler {
+		void handle(byte type, String key, long expireTime, long position, int size, int keyLength)
+				throws IOException;
+	}
+
+	/**
+	 * 顺序扫描段文件中的记录
+	 *
+	 * @return 有效数据的长度
+	 */
+	private static long scan(Segment segment, RecordHandler handler) throws IOException {
+		ByteBuffer buffer = segment.map();
+		CRC32 crc = new CRC32();
+		int position = 0;
+		while (buffer.limit() - position >= HEADER_SIZE) {
+			int length = buffer.getInt(position);
+			int keyLength = buffer.getInt(position + 17);
+			if (length < HEADER_SIZE - 4 || length > buffer.limit() - position - 4 || keyLength < 0
+					|| keyLength > length - (HEADER_SIZE - 4)) {
+				break;
+			}
+
+			ByteBuffer body = buffer.duplicate();
+			body.limit(position + 4 + length);
+			body.position(position + 8);
+			crc.reset();
+			crc.update(body);
+			if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+				break;
+			}
+
+			byte[] key = new byte[keyLength];
+			ByteBuffer keyBuffer = buffer.duplicate();
+			keyBuffer.position(position + HEADER_SIZE);
+			keyBuffer.get(key);
+			handler.handle(buffer.get(position + 8), new String(key, Constants.UTF_8), buffer.getLong(position + 9),
+					position, length + 4, keyLength);
+			position += length + 4;
+		}
+		return position;
+	}
+
+	private static ByteBuffer encode(byte type, String key, long expireTime, ByteBuffer value) {
+		byte[] keyBytes = key.getBytes(Constants.UTF_8);
+		int size = HEADER_SIZE + keyBytes.length + (value == null ? 0 : value.remaining());
+		ByteBuffer buffer = ByteBuffer.allocate(size);
+		buffer.putInt(size - 4);
+		buffer.putInt(0);
+		buffer.put(type);
+		buffer.putLong(expireTime);
+		buffer.putInt(keyBytes.length);
+		buffer.put(keyBytes);
+		if (value != null) {
+			buffer.put(value);
+		}
+
+		CRC32 crc = new CRC32();
+		crc.update(buffer.array(), 8, size - 8);
+		buffer.putInt(4, (int) crc.getValue());
+		buffer.flip();
+		return buffer;
+	}
+
+	private ByteBuffer encode(String key, long expireTime, Object value) {
+		return serializer.serialize(value,
+				(data, offset, length) -> encode(PUT, key, expireTime, ByteBuffer.wrap(data, offset, length)));
+	}
+
+	/**
+	 * 追加一条记录，必须在写锁中调用
+	 */
+	private IndexEntry append(ByteBuffer record) {
+		if (closed) {
+			throw new StorageException("Storage is closed: " + directory);
+		}
+
+		try {
+			Segment segment = active;
+			if (segment.getSize() > 0 && segment.getSize() + record.remaining() > segmentSize) {
+				segment.seal();
+				segment = new Segment(directory, segment.getId() + 1);
+				segments.put(segment.getId(), segment);
+				active = segment;
+			}
+
+			int size = record.remaining();
+			int keyLength = record.getInt(record.position() + 17);
+			long expireTime = record.getLong(record.position() + 9);
+			long position = segment.append(record);
+			return new IndexEntry(segment, position, size, keyLength, expireTime);
+		} catch (IOException e) {
+			throw new StorageException("Append to " + directory + " error", e);
+		}
+	}
+
+	private void put(String key, IndexEntry entry) {
+		entry.segment.addLiveBytes(entry.size);
+		IndexEntry old = index.put(key, entry);
+		if (old != null) {
+			old.segment.addLiveBytes(-old.size);
+		}
+	}
+
+	private IndexEntry remove(String key) {
+		IndexEntry old = index.remove(key);
+		if (old != null) {
+			old.segment.addLiveBytes(-old.size);
+		}
+		return old;
+	}
+
+	/**
+	 * 获取未过期的索引，过期的会被移除
+	 */
+	private IndexEntry getEntry(String key) {
+		return getEntry(key, false);
+	}
+
+	/**
+	 * @param retainable 是否可以返回{@link #retainExpired(String)}保留的过期索引
+	 */
+	private IndexEntry getEntry(String key, boolean retainable) {
+		IndexEntry entry = index.get(key);
+		if (entry == null) {
+			return null;
+		}
+
+		if (entry.isExpired(System.currentTimeMillis())) {
+			if (retainable && retainExpired(key)) {
+				return entry;
+			}
+
+			synchronized (writeLock) {
+				if (index.remove(key, entry)) {
+					entry.segment.addLiveBytes(-entry.size);
+				}
+			}
+			return null;
+		}
+		return entry;
+	}
+
+	private ByteBuffer read(IndexEntry entry) {
+		try {
+			return entry.segment.read(entry.getValuePosition(), entry.getValueLength());
+		} catch (IOException e) {
+			throw new StorageException("Read " + entry.segment + " error", e);
+		}
+	}
+
+	private <T> T deserialize(ByteBuffer data) {
+		try {
+			return (T) serializer.deserialize(data);
+		} catch (ClassNotFoundException e) {
+			throw new StorageException(e);
+		}
+	}
+
+	protected Object getNotFound(String key) {
+		return null;
+	}
+
+	/**
+	 * 后台清理过期数据时会调用此函数
+	 *
+	 * @param key
+	 */
+	protected void onExpired(String key) {
+	}
+
+	/**
+	 * 读取到过期数据或后台清理过期数据时会调用此函数<br/>
+	 * 返回true时继续保留过期的数据，{@link #get(String)}会返回过期的数据直到被重新写入，不能在此函数中阻塞
+	 *
+	 * @param key
+	 * @return 默认返回false，移除过期的数据
+	 */
+	protected boolean retainExpired(String key) {
+		return false;
+	}
+
+	@Override
+	public <T> T get(String key) {
+		IndexEntry entry = getEntry(key, true);
+		if (entry == null) {
+			return (T) getNotFound(key);
+		}
+		return deserialize(read(entry));
+	}
+
+	@Override
+	public <T> Map<String, T> get(Collection<String> keys) {
+		if (CollectionUtils.isEmpty(keys)) {
+			return Collections.EMPTY_MAP;
+		}
+
+		Map<String, T> map = new HashMap<String, T>(keys.size());
+		for (String key : keys) {
+			T value = get(key);
+			if (value == null) {
+				continue;
+			}
+
+			map.put(key, value);
+		}
+		return map;
+	}
+
+	@Override
+	public <T> T getAndTouch(String key, int exp) {
+		ByteBuffer data;
+		synchronized (writeLock) {
+			IndexEntry entry = getEntry(key);
+			if (entry == null) {
+				data = null;
+			} else {
+				data = read(entry);
+				put(key, append(encode(PUT, key, getExpireTime(exp), data.duplicate())));
+			}
+		}
+
+		if (data == null) {
+			return (T) getNotFound(key);
+		}
+		return deserialize(data);
+	}
+
+	public <T> T getAndTouch(String key) {
+		return getAndTouch(key, exp);
+	}
+
+	@Override
+	public boolean touch(String key, int exp) {
+		synchronized (writeLock) {
+			IndexEntry entry = getEntry(key);
+			if (entry == null) {
+				return false;
+			}
+
+			put(key, append(encode(PUT, key, getExpireTime(exp), read(entry))));
+			return true;
+		}
+	}
+
+	public boolean touch(String key) {
+		return touch(key, exp);
+	}
+
+	@Override
+	public void set(String key, Object value) {
+		set(key, exp, value);
+	}
+
+	@Override
+	public void set(String key, int exp, Object value) {
+		ByteBuffer record = encode(key, getExpireTime(exp), value);
+		synchronized (writeLock) {
+			put(key, append(record));
+		}
+	}
+
+	@Override
+	public boolean add(String key, Object value) {
+		return add(key, exp, value);
+	}
+
+	@Override
+	public boolean add(String key, int exp, Object value) {
+		if (getEntry(key) != null) {
+			return false;
+		}
+
+		ByteBuffer record = encode(key, getExpireTime(exp), value);
+		synchronized (writeLock) {
+			if (getEntry(key) != null) {
+				return false;
+			}
+
+			put(key, append(record));
+			return true;
+		}
+	}
+
+	@Override
+	public boolean isExist(String key) {
+		return getEntry(key) != null;
+	}
+
+	@Override
+	public boolean delete(String key) {
+		synchronized (writeLock) {
+			IndexEntry entry = remove(key);
+			if (entry == null) {
+				return false;
+			}
+
+			append(encode(DELETE, key, 0, null));
+			return !entry.isExpired(System.currentTimeMillis());
+		}
+	}
+
+	@Override
+	public void delete(Collection<String> keys) {
+		if (CollectionUtils.isEmpty(keys)) {
+			return;
+		}
+
+		for (String key : keys) {
+			delete(key);
+		}
+	}
+
+	@Override
+	public long incr(String key, long delta) {
+		return incr(key, delta, 0);
+	}
+
+	@Override
+	public long incr(String key, long delta, long initialValue) {
+		return incr(key, delta, initialValue, exp);
+	}
+
+	@Override
+	public long incr(String key, long delta, long initialValue, int exp) {
+		synchronized (writeLock) {
+			IndexEntry entry = getEntry(key);
+			long value;
+			if (entry == null) {
+				value = initialValue;
+			} else {
+				Number number = deserialize(read(entry));
+				value = number.longValue() + delta;
+			}
+
+			put(key, append(encode(key, getExpireTime(exp), value)));
+			return value;
+		}
+	}
+
+	@Override
+	public long decr(String key, long delta) {
+		return decr(key, delta, 0);
+	}
+
+	@Override
+	public long decr(String key, long delta, long initialValue) {
+		return decr(key, delta, initialValue, exp);
+	}
+
+	@Override
+	public long decr(String key, long delta, long initialValue, int exp) {
+		return incr(key, -delta, initialValue, exp);
+	}
+
+	/**
+	 * 将写入的数据刷到磁盘
+	 */
+	public void flush() {
+		synchronized (writeLock) {
+			try {
+				active.force();
+			} catch (IOException e) {
+				throw new StorageException("Flush " + directory + " error", e);
+			}
+		}
+	}
+
+	/**
+	 * 清理过期数据并合并段文件，后台会定期执行
+	 */
+	public void maintain() {
+		if (closed) {
+			return;
+		}
+
+		purgeExpired();
+		compact();
+	}
+
+	/**
+	 * 从索引中移除所有过期的数据
+	 */
+	public void purgeExpired() {
+		long now = System.currentTimeMillis();
+		for (Entry<String, IndexEntry> entry : index.entrySet()) {
+			if (!entry.getValue().isExpired(now) || retainExpired(entry.getKey())) {
+				continue;
+			}
+
+			boolean removed;
+			synchronized (writeLock) {
+				removed = index.remove(entry.getKey(), entry.getValue());
+				if (removed) {
+					entry.getValue().segment.addLiveBytes(-entry.getValue().size);
+				}
+			}
+
+			if (removed) {
+				try {
+					onExpired(entry.getKey());
+				} catch (Exception e) {
+					logger.error(e, "处理[{}]异常", entry.getKey());
+				}
+			}
+		}
+	}
+
+	/**
+	 * 合并存活数据比例低于{@link #getMinLiveRatio()}的封存段文件
+	 */
+	public void compact() {
+		for (Segment segment : segments.values()) {
+			if (closed) {
+				return;
+			}
+
+			if (segment == active || segment.getSize() == 0) {
+				continue;
+			}
+
+			if (segment.getLiveBytes() >= segment.getSize() * minLiveRatio) {
+				continue;
+			}
+
+			try {
+				compact(segment);
+			} catch (IOException e) {
+				logger.error(e, "Compact segment {} error", segment);
+			}
+		}
+	}
+
+	/**
+	 * 将段文件中存活的数据复制到当前的段文件后删除<br/>
+	 * 被删除或过期的key如果在更早的段文件中可能还有数据，需要写入删除标记，防止恢复时重新出现
+	 */
+	private void compact(Segment segment) throws IOException {
+		long now = System.currentTimeMillis();
+		Set<String> deleted = new HashSet<String>();
+		ByteBuffer buffer = segment.map();
+		scan(segment, (type, key, expireTime, position, size, keyLength) -> {
+			synchronized (writeLock) {
+				IndexEntry entry = index.get(key);
+				if (entry != null) {
+					if (entry.segment != segment || entry.position != position) {
+						// 更新的数据在其他位置
+						return;
+					}
+
+					if (!entry.isExpired(now) || retainExpired(key)) {
+						ByteBuffer record = buffer.duplicate();
+						record.limit((int) position + size);
+						record.position((int) position);
+						put(key, append(record));
+						return;
+					}
+
+					index.remove(key, entry);
+					entry.segment.addLiveBytes(-entry.size);
+				}
+
+				if (segments.lowerKey(segment.getId()) != null && deleted.add(key)) {
+					append(encode(DELETE, key, 0, null));
+				}
+			}
+		});
+
+		synchronized (writeLock) {
+			active.force();
+			segments.remove(segment.getId());
+		}
+
+		if (!segment.delete()) {
+			logger.warn("Unable to delete segment {}", segment.getFile());
+		}
+		logger.debug("Compacted segment {}", segment);
+	}
+
+	@Override
+	public void close() {
+		maintenance.cancel(false);
+		synchronized (writeLock) {
+			if (closed) {
+				return;
+			}
+
+			closed = true;
+			for (Segment segment : segments.values()) {
+				try {
+					if (segment == active) {
+						segment.force();
+					}
+					segment.close();
+				} catch (IOException e) {
+					logger.error(e, "Close segment {} error", segment);
+				}
+			}
+		}
+	}
+
+	private static final class IndexEntry {
+		private final Segment segment;
+		private final long position;
+		private final int size;
+		private final int keyLength;
+		private final long expireTime;
+
+		IndexEntry(Segment segment, long position, int size, int keyLength, long expireTime) {
+			this.segment = segment;
+			this.position = position;
+			this.size = size;
+			this.keyLength = keyLength;
+			this.expireTime = expireTime;
+		}
+
+		long getValuePosition() {
+			return position + HEADER_SIZE + keyLength;
+		}
+
+		int getValueLength() {
+			return size - HEADER_SIZE - keyLength;
+		}
+
+		boolean isExpired(long now) {
+			return expireTime > 0 && now >= expireTime;
+		}
+	}
+}
@@ -0,0 +1,47 @@
+package scw.data.geo;
+
+/**
+ * 地理位置计算，{@link Point#getX()}为经度，{@link Point#getY()}为纬度
+ * 
+ * @author shuchaowen
+ *
+ */
+public final class GeoUtils {
+	private GeoUtils() {
+	}
+
+	/**
+	 * 计算两点之间的球面距离(haversine)
+	 * 
+	 * @param first
+	 * @param second
+	 * @return 标准化的距离(弧度)，乘以{@link Metric#getMultiplier()}得到对应单位的距离
+	 */
+	public static double getNormalizedDistance(Point first, Point second) {
+		double lat1 = Math.toRadians(first.getY());
+		double lat2 = Math.toRadians(second.getY());
+		double sinLat = Math.sin((lat2 - lat1) / 2);
+		double sinLon = Math.sin(Math.toRadians(second.getX() - first.getX()) / 2);
+		double a = sinLat * sinLat + Math.cos(lat1) * Math.cos(lat2) * sinLon * sinLon;
+		return 2 * Math.asin(Math.min(1, Math.sqrt(a)));
+	}
+
+	public static Distance getDistance(Point first, Point second, Metric metric) {
+		return new Distance(getNormalizedDistance(first, second) * metric.getMultiplier(), metric);
+	}
+
+	/**
+	 * 点是否在矩形内(包含边界)，不支持跨越180度经线的矩形
+	 * 
+	 * @param box
+	 * @param point
+	 * @return
+	 */
+	public static boolean contains(Box box, Point point) {
+		double minX = Math.min(box.getFirst().getX(), box.getSecond().getX());
+		double maxX = Math.max(box.getFirst().getX(), box.getSecond().getX());
+		double minY = Math.min(box.getFirst().getY(), box.getSecond().getY());
+		double maxY = Math.max(box.getFirst().getY(), box.getSecond().getY());
+		return point.getX() >= minX && point.getX() <= maxX && point.getY() >= minY && point.getY() <= maxY;
+	}
+}
@@ -0,0 +1,323 @@
+package scw.data.geo;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import scw.core.Assert;
+import scw.util.comparator.Sort;
+
+/**
+ * 基于内存均匀网格索引的{@link MarkerManager}，适用于可以全部放入内存的数据(如门店位置)<br/>
+ * {@link Point#getX()}为经度，{@link Point#getY()}为纬度，按固定大小(度)将地球划分为网格，查询时只检查覆盖查询范围的网格<br/>
+ * 支持并发更新，查询是弱一致的(同一个标记在查询过程中被移动时可能返回移动前的位置)
+ *
+ * @author shuchaowen
+ *
+ * @param <K>
+ */
+public class GridMarkerManager<K> implements MarkerManager<K> {
+	/**
+	 * 默认的网格大小(度)，在赤道上约5.5公里
+	 */
+	public static final double DEFAULT_CELL_SIZE = 0.05;
+	/**
+	 * 计算网格范围时的误差
+	 */
+	private static final double EPSILON = 1e-9;
+
+	private final double cellSize;
+	private final int columns;
+	private final int rows;
+	private final ConcurrentMap<K, Marker<K>> markers = new ConcurrentHashMap<K, Marker<K>>();
+	private final ConcurrentMap<Long, Set<K>> cells = new ConcurrentHashMap<Long, Set<K>>();
+
+	public GridMarkerManager() {
+		this(DEFAULT_CELL_SIZE);
+	}
+
+	/**
+	 * @param cellSize 网格的大小(度)，应该和常用的查询半径相近
+	 */
+	public GridMarkerManager(double cellSize) {
+		Assert.requiredArgument(cellSize > 0 && cellSize <= 180, "cellSize");
+		this.cellSize = cellSize;
+		this.columns = (int) Math.ceil(360 / cellSize);
+		this.rows = (int) Math.ceil(180 / cellSize);
+	}
+
+	public double getCellSize() {
+		return cellSize;
+	}
+
+	public int size() {
+		return markers.size();
+	}
+
+	private int getColumn(double x) {
+		int column = (int) Math.floor((x + 180) / cellSize) % columns;
+		return column < 0 ? column + columns : column;
+	}
+
+	private int getRow(double y) {
+		int row = (int) Math.floor((y + 90) / cellSize);
+		return Math.max(0, Math.min(rows - 1, row));
+	}
+
+	private long getCell(int row, int column) {
+		return (long) row * columns + column;
+	}
+
+	private long getCell(Point point) {
+		return getCell(getRow(point.getY()), getColumn(point.getX()));
+	}
+
+	private void addToCell(long cell, K key) {
+		cells.compute(cell, (c, keys) -> {
+			if (keys == null) {
+				keys = ConcurrentHashMap.newKeySet();
+			}
+			keys.add(key);
+			return keys;
+		});
+	}
+
+	private void removeFromCell(long cell, K key) {
+		cells.computeIfPresent(cell, (c, keys) -> {
+			keys.remove(key);
+			return keys.isEmpty() ? null : keys;
+		});
+	}
+
+	@Override
+	public void report(Marker<K> marker) {
+		Assert.requiredArgument(marker != null && marker.getName() != null, "marker");
+		Assert.requiredArgument(marker.getX() >= -180 && marker.getX() <= 180, "longitude");
+		Assert.requiredArgument(marker.getY() >= -90 && marker.getY() <= 90, "latitude");
+		long cell = getCell(marker);
+		markers.compute(marker.getName(), (key, old) -> {
+			// 先加入新的网格再从旧的网格移除，查询时按名称去重
+			addToCell(cell, key);
+			if (old != null) {
+				long oldCell = getCell(old);
+				if (oldCell != cell) {
+					removeFromCell(oldCell, key);
+				}
+			}
+			return marker;
+		});
+	}
+
+	@Override
+	public Marker<K> getMarker(K key) {
+		return markers.get(key);
+	}
+
+	@Override
+	public boolean remove(K key) {
+		boolean[] removed = new boolean[1];
+		markers.computeIfPresent(key, (k, old) -> {
+			removeFromCell(getCell(old), k);
+			removed[0] = true;
+			return null;
+		});
+		return removed[0];
+	}
+
+	@Override
+	public boolean exists(K key) {
+		return markers.containsKey(key);
+	}
+
+	public void clear() {
+		for (K key : markers.keySet()) {
+			remove(key);
+		}
+	}
+
+	/**
+	 * 获取所有标记的快照
+	 *
+	 * @return
+	 */
+	public List<Marker<K>> snapshot() {
+		return new ArrayList<Marker<K>>(markers.values());
+	}
+
+	/**
+	 * 使用快照替换当前所有的标记
+	 *
+	 * @param snapshot
+	 */
+	public void restore(Collection<? extends Marker<K>> snapshot) {
+		clear();
+		for (Marker<K> marker : snapshot) {
+			report(marker);
+		}
+	}
+
+	/**
+	 * 查询附近的点
+	 *
+	 * @param count 小于等于0表示不限制数量，限制数量且未指定排序时返回最近的点
+	 * @param sort  按距离排序，为空时不排序
+	 */
+	@Override
+	public List<Marker<K>> getNearbyMarkers(Point point, Distance radius, int count, Sort sort) {
+		Assert.requiredArgument(point != null, "point");
+		Assert.requiredArgument(radius != null, "radius");
+		double r = radius.getNormalizedValue();
+		double dy = Math.toDegrees(r) + EPSILON;
+		double minY = point.getY() - dy;
+		double maxY = point.getY() + dy;
+		double dx;
+		if (minY <= -90 || maxY >= 90) {
+			// 包含了极点
+			dx = 180;
+		} else {
+			double sin = Math.sin(r) / Math.cos(Math.toRadians(point.getY()));
+			dx = sin >= 1 ? 180 : (Math.toDegrees(Math.asin(sin)) + EPSILON);
+		}
+
+		List<MarkerDistance<K>> results = new ArrayList<MarkerDistance<K>>();
+		for (Marker<K> marker : getCandidates(point.getX() - dx, point.getX() + dx, minY, maxY)) {
+			double distance = GeoUtils.getNormalizedDistance(point, marker);
+			if (distance <= r) {
+				results.add(new MarkerDistance<K>(marker, distance));
+			}
+		}
+		return sort(results, count, sort);
+	}
+
+	public List<Marker<K>> getNearbyMarkers(Circle circle, int count, Sort sort) {
+		return getNearbyMarkers(circle.getPoint(), circle.getRadius(), count, sort);
+	}
+
+	public List<Marker<K>> getNearbyMarkers(QueryNearby queryNearby) {
+		return getNearbyMarkers(queryNearby, queryNearby.getDistance(), queryNearby.getCount(),
+				queryNearby.getOrderBy());
+	}
+
+	/**
+	 * 查询矩形范围内的点，不支持跨越180度经线的矩形
+	 *
+	 * @param box
+	 * @return
+	 */
+	public List<Marker<K>> getMarkers(Box box) {
+		Assert.requiredArgument(box != null, "box");
+		double minX = Math.min(box.getFirst().getX(), box.getSecond().getX());
+		double maxX = Math.max(box.getFirst().getX(), box.getSecond().getX());
+		double minY = Math.min(box.getFirst().getY(), box.getSecond().getY());
+		double maxY = Math.max(box.getFirst().getY(), box.getSecond().getY());
+		List<Marker<K>> results = new ArrayList<Marker<K>>();
+		for (Marker<K> marker : getCandidates(minX, maxX, minY, maxY)) {
+			if (GeoUtils.contains(box, marker)) {
+				results.add(marker);
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * 获取覆盖范围内所有网格中的标记，需要检查的网格比标记还多时直接返回所有标记
+	 */
+	private Collection<Marker<K>> getCandidates(double minX, double maxX, double minY, double maxY) {
+		int minRow = getRow(minY);
+		int maxRow = getRow(maxY);
+		long minColumn = (long) Math.floor((minX + 180) / cellSize);
+		long maxColumn = (long) Math.floor((maxX + 180) / cellSize);
+		if (maxColumn - minColumn + 1 >= columns) {
+			minColumn = 0;
+			maxColumn = columns - 1;
+		}
+
+		long cellCount = (maxRow - minRow + 1) * (maxColumn - minColumn + 1);
+		if (cellCount >= markers.size()) {
+			return markers.values();
+		}
+
+		Set<K> keys = new HashSet<K>();
+		List<Marker<K>> candidates = new ArrayList<Marker<K>>();
+		for (int row = minRow; row <= maxRow; row++) {
+			for (long c = minColumn; c <= maxColumn; c++) {
+				int column = (int) (c % columns);
+				if (column < 0) {
+					column += columns;
+				}
+
+				Set<K> cellKeys = cells.get(getCell(row, column));
+				if (cellKeys == null) {
+					continue;
+				}
+
+				for (K key : cellKeys) {
+					if (!keys.add(key)) {
+						continue;
+					}
+
+					Marker<K> marker = markers.get(key);
+					if (marker != null) {
+						candidates.add(marker);
+					}
+				}
+			}
+		}
+		return candidates;
+	}
+
+	private static <K> List<Marker<K>> sort(List<MarkerDistance<K>> results, int count, Sort sort) {
+		if (results.isEmpty()) {
+			return Collections.emptyList();
+		}
+
+		if (count > 0 && sort == null) {
+			sort = Sort.ASC;
+		}
+
+		if (sort != null) {
+			Comparator<MarkerDistance<K>> comparator = (a, b) -> Double.compare(a.distance, b.distance);
+			if (sort == Sort.DESC) {
+				comparator = comparator.reversed();
+			}
+
+			if (count > 0 && count < results.size()) {
+				// 只保留前count个
+				PriorityQueue<MarkerDistance<K>> queue = new PriorityQueue<MarkerDistance<K>>(count + 1,
+						comparator.reversed());
+				for (MarkerDistance<K> result : results) {
+					queue.offer(result);
+					if (queue.size() > count) {
+						queue.poll();
+					}
+				}
+				results = new ArrayList<MarkerDistance<K>>(queue);
+			}
+			results.sort(comparator);
+		}
+
+		int size = count > 0 ? Math.min(count, results.size()) : results.size();
+		List<Marker<K>> markers = new ArrayList<Marker<K>>(size);
+		for (int i = 0; i < size; i++) {
+			markers.add(results.get(i).marker);
+		}
+		return markers;
+	}
+
+	private static final class MarkerDistance<K> {
+		private final Marker<K> marker;
+		private final double distance;
+
+		MarkerDistance(Marker<K> marker, double distance) {
+			this.marker = marker;
+			this.distance = distance;
+		}
+	}
+}
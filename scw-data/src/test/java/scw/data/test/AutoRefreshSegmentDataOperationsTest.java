@@ -0,0 +1,83 @@
+package scw.data.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import scw.data.file.AutoRefreshSegmentDataOperations;
+import scw.io.FileUtils;
+import scw.io.SerializerUtils;
+import scw.util.XUtils;
+
+public class AutoRefreshSegmentDataOperationsTest {
+	private final AtomicInteger loads = new AtomicInteger();
+	private volatile String value = "a";
+	/**
+	 * 后台刷新任务，由测试线程执行
+	 */
+	private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+
+	private AutoRefreshSegmentDataOperations open() {
+		File directory = new File(FileUtils.getTempDirectory(), "auto_refresh_test_" + XUtils.getUUID());
+		AutoRefreshSegmentDataOperations operations = new AutoRefreshSegmentDataOperations(1,
+				SerializerUtils.getSerializer(), directory, (key) -> {
+					loads.incrementAndGet();
+					return value;
+				});
+		operations.setExecutor((task) -> tasks.add(task));
+		return operations;
+	}
+
+	private int runTasks() {
+		int count = 0;
+		Runnable task;
+		while ((task = tasks.poll()) != null) {
+			task.run();
+			count++;
+		}
+		return count;
+	}
+
+	@Test
+	public void refresh() throws InterruptedException {
+		AutoRefreshSegmentDataOperations operations = open();
+		try {
+			// 不存在时同步加载
+			assertEquals("a", operations.get("key"));
+			assertEquals(1, loads.get());
+			assertEquals("a", operations.get("key"));
+			assertEquals(1, loads.get());
+
+			value = "b";
+			Thread.sleep(1100);
+			// 过期后返回过期的数据，只提交一个后台刷新
+			assertEquals("a", operations.get("key"));
+			assertEquals("a", operations.get("key"));
+			operations.purgeExpired();
+			assertEquals(1, loads.get());
+			assertEquals(1, runTasks());
+			assertEquals(2, loads.get());
+			assertEquals("b", operations.get("key"));
+			assertTrue(tasks.isEmpty());
+
+			// 刷新失败时保留过期的数据，下次读取时重新刷新
+			value = null;
+			Thread.sleep(1100);
+			assertEquals("b", operations.get("key"));
+			assertEquals(1, runTasks());
+			assertEquals(3, loads.get());
+			assertEquals("b", operations.get("key"));
+			assertEquals(1, runTasks());
+			assertEquals(4, loads.get());
+			assertEquals(1, operations.size());
+		} finally {
+			operations.close();
+		}
+	}
+}
@@ -0,0 +1,164 @@
+package scw.data.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+import scw.data.geo.Box;
+import scw.data.geo.Distance;
+import scw.data.geo.GeoUtils;
+import scw.data.geo.GridMarkerManager;
+import scw.data.geo.Marker;
+import scw.data.geo.Metrics;
+import scw.data.geo.Point;
+import scw.util.comparator.Sort;
+
+public class GridMarkerManagerTest {
+	private final Random random = new Random(1);
+
+	private Point randomPoint(double x, double y, double range) {
+		double lon = Math.max(-180, Math.min(180, x + (random.nextDouble() * 2 - 1) * range));
+		double lat = Math.max(-90, Math.min(90, y + (random.nextDouble() * 2 - 1) * range));
+		return new Point(lon, lat);
+	}
+
+	private GridMarkerManager<Integer> create(List<Marker<Integer>> markers) {
+		GridMarkerManager<Integer> manager = new GridMarkerManager<Integer>();
+		for (int i = 0; i < 5000; i++) {
+			// 一半集中在同一个城市，一半分布在全球
+			Point point = i % 2 == 0 ? randomPoint(120.15, 30.28, 0.5) : randomPoint(0, 0, 180);
+			Marker<Integer> marker = new Marker<Integer>(i, point);
+			markers.add(marker);
+			manager.report(marker);
+		}
+		return manager;
+	}
+
+	private static Set<Integer> names(List<Marker<Integer>> markers) {
+		Set<Integer> names = new HashSet<Integer>();
+		for (Marker<Integer> marker : markers) {
+			names.add(marker.getName());
+		}
+		return names;
+	}
+
+	@Test
+	public void nearby() {
+		List<Marker<Integer>> markers = new ArrayList<Marker<Integer>>();
+		GridMarkerManager<Integer> manager = create(markers);
+		for (int i = 0; i < 200; i++) {
+			Point point = i % 2 == 0 ? randomPoint(120.15, 30.28, 0.5) : randomPoint(0, 0, 180);
+			Distance radius = new Distance(random.nextDouble() * (i % 10 == 0 ? 2000 : 20), Metrics.KILOMETERS);
+
+			// 暴力计算
+			List<Marker<Integer>> expected = new ArrayList<Marker<Integer>>();
+			for (Marker<Integer> marker : markers) {
+				if (GeoUtils.getDistance(point, marker, Metrics.KILOMETERS).compareTo(radius) <= 0) {
+					expected.add(marker);
+				}
+			}
+
+			List<Marker<Integer>> actual = manager.getNearbyMarkers(point, radius, 0, null);
+			assertEquals(names(expected), names(actual));
+			assertEquals(expected.size(), actual.size());
+
+			expected.sort((a, b) -> Double.compare(GeoUtils.getNormalizedDistance(point, a),
+					GeoUtils.getNormalizedDistance(point, b)));
+			int count = 5;
+			List<Marker<Integer>> nearest = manager.getNearbyMarkers(point, radius, count, Sort.ASC);
+			assertEquals(Math.min(count, expected.size()), nearest.size());
+			for (int j = 0; j < nearest.size(); j++) {
+				assertEquals(GeoUtils.getNormalizedDistance(point, expected.get(j)),
+						GeoUtils.getNormalizedDistance(point, nearest.get(j)), 0);
+			}
+
+			List<Marker<Integer>> farthest = manager.getNearbyMarkers(point, radius, count, Sort.DESC);
+			for (int j = 0; j < farthest.size(); j++) {
+				assertEquals(GeoUtils.getNormalizedDistance(point, expected.get(expected.size() - 1 - j)),
+						GeoUtils.getNormalizedDistance(point, farthest.get(j)), 0);
+			}
+		}
+	}
+
+	@Test
+	public void box() {
+		List<Marker<Integer>> markers = new ArrayList<Marker<Integer>>();
+		GridMarkerManager<Integer> manager = create(markers);
+		for (int i = 0; i < 200; i++) {
+			Point center = i % 2 == 0 ? randomPoint(120.15, 30.28, 0.5) : randomPoint(0, 0, 180);
+			Box box = new Box(center, randomPoint(center.getX(), center.getY(), i % 10 == 0 ? 30 : 0.3));
+			Set<Integer> expected = new HashSet<Integer>();
+			for (Marker<Integer> marker : markers) {
+				if (GeoUtils.contains(box, marker)) {
+					expected.add(marker.getName());
+				}
+			}
+			assertEquals(expected, names(manager.getMarkers(box)));
+		}
+	}
+
+	@Test
+	public void updateAndSnapshot() {
+		List<Marker<Integer>> markers = new ArrayList<Marker<Integer>>();
+		GridMarkerManager<Integer> manager = create(markers);
+		Point point = new Point(120.15, 30.28);
+		Distance radius = new Distance(1, Metrics.KILOMETERS);
+
+		manager.report(new Marker<Integer>(0, point));
+		assertTrue(names(manager.getNearbyMarkers(point, radius, 0, null)).contains(0));
+		// 移动到很远的位置
+		manager.report(new Marker<Integer>(0, -120.15, -30.28));
+		assertFalse(names(manager.getNearbyMarkers(point, radius, 0, null)).contains(0));
+		assertTrue(manager.exists(0));
+
+		List<Marker<Integer>> snapshot = manager.snapshot();
+		assertTrue(manager.remove(0));
+		assertFalse(manager.remove(0));
+		assertEquals(markers.size() - 1, manager.size());
+
+		manager.restore(snapshot);
+		assertEquals(markers.size(), manager.size());
+		assertEquals(-120.15, manager.getMarker(0).getX(), 0);
+	}
+
+	@Test
+	public void concurrent() throws InterruptedException {
+		GridMarkerManager<Integer> manager = new GridMarkerManager<Integer>();
+		int threads = 8;
+		CountDownLatch latch = new CountDownLatch(threads);
+		for (int t = 0; t < threads; t++) {
+			long seed = t;
+			new Thread(() -> {
+				try {
+					Random random = new Random(seed);
+					for (int i = 0; i < 10000; i++) {
+						int key = random.nextInt(10000);
+						if (random.nextInt(4) == 0) {
+							manager.remove(key);
+						} else {
+							manager.report(new Marker<Integer>(key, 120 + random.nextDouble(), 30 + random.nextDouble()));
+						}
+					}
+				} finally {
+					latch.countDown();
+				}
+			}).start();
+		}
+		latch.await();
+
+		// 索引和标记保持一致(需要检查的网格比标记少，会使用索引)
+		List<Marker<Integer>> all = manager.getNearbyMarkers(new Point(120.5, 30.5),
+				new Distance(100, Metrics.KILOMETERS), 0, null);
+		assertEquals(manager.size(), all.size());
+		assertEquals(names(manager.snapshot()), names(all));
+	}
+}
@@ -0,0 +1,234 @@
+package scw.data.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import scw.data.AbstractDataOperationsWrapper;
+import scw.data.DataOperations;
+import scw.data.LoadingDataOperations;
+import scw.data.StorageException;
+import scw.data.memory.MemoryDataOperations;
+
+public class LoadingDataOperationsTest {
+
+	@Test
+	public void singleFlight() throws Exception {
+		LoadingDataOperations operations = new LoadingDataOperations(new MemoryDataOperations());
+		AtomicInteger count = new AtomicInteger();
+		CountDownLatch loading = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<String>> futures = new ArrayList<Future<String>>();
+			for (int i = 0; i < 8; i++) {
+				futures.add(executor.submit(() -> operations.get("key", 10, (key) -> {
+					count.incrementAndGet();
+					loading.countDown();
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+						throw new StorageException(e);
+					}
+					return "value";
+				})));
+			}
+
+			assertTrue(loading.await(5, TimeUnit.SECONDS));
+			// 等待其他线程进入等待
+			Thread.sleep(200);
+			release.countDown();
+			for (Future<String> future : futures) {
+				assertEquals("value", future.get(5, TimeUnit.SECONDS));
+			}
+			assertEquals(1, count.get());
+			assertEquals(0, operations.getLoadingCount());
+			assertEquals("value", operations.get("key"));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void batchCoalescing() throws Exception {
+		LoadingDataOperations operations = new LoadingDataOperations(new MemoryDataOperations());
+		List<Collection<String>> calls = new CopyOnWriteArrayList<Collection<String>>();
+		CountDownLatch loading = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<Map<String, String>> first = executor.submit(() -> operations.get(Arrays.asList("a", "b"), 10,
+					(keys) -> {
+						calls.add(new ArrayList<String>(keys));
+						loading.countDown();
+						try {
+							release.await();
+						} catch (InterruptedException e) {
+							throw new StorageException(e);
+						}
+						return values(keys);
+					}));
+			assertTrue(loading.await(5, TimeUnit.SECONDS));
+
+			// b正在被加载，只加载c，并等待b的结果
+			CountDownLatch second = new CountDownLatch(1);
+			new Thread(() -> {
+				try {
+					Thread.sleep(200);
+				} catch (InterruptedException e) {
+				}
+				release.countDown();
+				second.countDown();
+			}).start();
+			Map<String, String> result = operations.get(Arrays.asList("b", "c"), 10, (keys) -> {
+				calls.add(new ArrayList<String>(keys));
+				return values(keys);
+			});
+			assertTrue(second.await(5, TimeUnit.SECONDS));
+			assertEquals("b-value", result.get("b"));
+			assertEquals("c-value", result.get("c"));
+			assertEquals("a-value", first.get(5, TimeUnit.SECONDS).get("a"));
+			assertEquals(Arrays.asList(Arrays.asList("a", "b"), Arrays.asList("c")), calls);
+
+			// 已缓存的key不再加载，加载结果中不存在的key缓存为null
+			calls.clear();
+			result = operations.get(Arrays.asList("a", "b", "c", "d", "e"), 10, (keys) -> {
+				calls.add(new ArrayList<String>(keys));
+				return Collections.singletonMap("d", "d-value");
+			});
+			assertEquals(Arrays.asList(Arrays.asList("d", "e")), calls);
+			assertEquals(4, result.size());
+			assertEquals("d-value", result.get("d"));
+			assertNull(result.get("e"));
+
+			calls.clear();
+			operations.get(Arrays.asList("e"), 10, (keys) -> {
+				calls.add(new ArrayList<String>(keys));
+				return values(keys);
+			});
+			assertTrue(calls.isEmpty());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void earlyRefresh() {
+		LoadingDataOperations operations = new LoadingDataOperations(new MemoryDataOperations());
+		operations.setExecutor((runnable) -> runnable.run());
+		AtomicInteger count = new AtomicInteger();
+		assertEquals("1", operations.get("key", 60, (key) -> String.valueOf(count.incrementAndGet())));
+
+		// beta为0时不提前刷新
+		operations.setBeta(0);
+		for (int i = 0; i < 10; i++) {
+			assertEquals("1", operations.get("key", 60, (key) -> String.valueOf(count.incrementAndGet())));
+		}
+		assertEquals(1, count.get());
+
+		// 系数足够大时一定会提前刷新，当前调用仍然返回旧值
+		operations.setBeta(1000000000);
+		assertEquals("1", operations.get("key", 60, (key) -> String.valueOf(count.incrementAndGet())));
+		assertEquals(2, count.get());
+		assertEquals("2", operations.get("key"));
+	}
+
+	@Test
+	public void staleWhileRevalidate() throws InterruptedException {
+		LoadingDataOperations operations = new LoadingDataOperations(new MemoryDataOperations());
+		List<Runnable> tasks = new ArrayList<Runnable>();
+		operations.setExecutor((runnable) -> tasks.add(runnable));
+		operations.setBeta(0);
+		operations.setStaleTime(60);
+		AtomicInteger count = new AtomicInteger();
+		assertEquals("1", operations.get("key", 1, (key) -> String.valueOf(count.incrementAndGet())));
+		Thread.sleep(1100);
+
+		// 过期后返回旧值并在后台刷新，刷新中的key不会重复提交
+		assertEquals("1", operations.get("key", 1, (key) -> String.valueOf(count.incrementAndGet())));
+		assertEquals("1", operations.get("key", 1, (key) -> String.valueOf(count.incrementAndGet())));
+		assertEquals(1, tasks.size());
+		assertEquals(1, count.get());
+		tasks.get(0).run();
+		assertEquals(2, count.get());
+		assertEquals("2", operations.get("key", 1, (key) -> String.valueOf(count.incrementAndGet())));
+
+		// 不使用旧值时同步加载
+		operations.setStaleTime(0);
+		Thread.sleep(1100);
+		assertEquals("3", operations.get("key", 1, (key) -> String.valueOf(count.incrementAndGet())));
+		assertEquals(1, tasks.size());
+	}
+
+	@Test
+	public void rejectedRefresh() throws InterruptedException {
+		LoadingDataOperations operations = new LoadingDataOperations(new MemoryDataOperations());
+		operations.setExecutor((runnable) -> {
+			throw new RejectedExecutionException();
+		});
+		operations.setBeta(0);
+		operations.setStaleTime(60);
+		AtomicInteger count = new AtomicInteger();
+		assertEquals("1", operations.get("key", 1, (key) -> String.valueOf(count.incrementAndGet())));
+		Thread.sleep(1100);
+
+		// 线程池拒绝时在当前线程刷新
+		assertEquals("1", operations.get("key", 1, (key) -> String.valueOf(count.incrementAndGet())));
+		assertEquals(2, count.get());
+		assertEquals(0, operations.getLoadingCount());
+		assertEquals("2", operations.get("key"));
+	}
+
+	@Test
+	public void setError() {
+		AtomicInteger sets = new AtomicInteger();
+		DataOperations failing = new AbstractDataOperationsWrapper() {
+			private final DataOperations dataOperations = new MemoryDataOperations();
+
+			@Override
+			public DataOperations getDataOperations() {
+				return dataOperations;
+			}
+
+			@Override
+			public void set(Map<String, ?> values, int exp) {
+				sets.incrementAndGet();
+				throw new StorageException("set error");
+			}
+		};
+		LoadingDataOperations operations = new LoadingDataOperations(failing);
+		// 写入缓存失败时仍然返回加载的值，批量加载只写入一次
+		assertEquals("value", operations.get("key", 10, (key) -> "value"));
+		Map<String, String> result = operations.get(Arrays.asList("a", "b", "c"), 10, (keys) -> values(keys));
+		assertEquals(3, result.size());
+		assertEquals("a-value", result.get("a"));
+		assertEquals(2, sets.get());
+		assertEquals(0, operations.getLoadingCount());
+	}
+
+	private static Map<String, String> values(Collection<String> keys) {
+		Map<String, String> map = new HashMap<String, String>();
+		for (String key : keys) {
+			map.put(key, key + "-value");
+		}
+		return map;
+	}
+}
@@ -0,0 +1,142 @@
+package scw.data.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import org.junit.Test;
+
+import scw.data.file.SegmentDataOperations;
+import scw.io.FileUtils;
+import scw.io.SerializerUtils;
+import scw.util.XUtils;
+
+public class SegmentDataOperationsTest {
+
+	private static File createDirectory() {
+		return new File(FileUtils.getTempDirectory(), "segment_test_" + XUtils.getUUID());
+	}
+
+	private static SegmentDataOperations open(File directory) {
+		SegmentDataOperations operations = new SegmentDataOperations(0, SerializerUtils.getSerializer(), directory);
+		operations.setSegmentSize(4096);
+		operations.setMinLiveRatio(0.5);
+		return operations;
+	}
+
+	@Test
+	public void operations() throws InterruptedException {
+		SegmentDataOperations operations = open(createDirectory());
+		try {
+			operations.set("a", "1");
+			assertEquals("1", operations.get("a"));
+			assertFalse(operations.add("a", "2"));
+			assertTrue(operations.add("b", "2"));
+			assertEquals("2", operations.get("b"));
+			assertTrue(operations.delete("b"));
+			assertNull(operations.get("b"));
+			assertFalse(operations.delete("b"));
+
+			assertEquals(10, operations.incr("counter", 1, 10));
+			assertEquals(11, operations.incr("counter", 1, 10));
+			assertEquals(9, operations.decr("counter", 2));
+
+			operations.set("exp", 1, "value");
+			assertTrue(operations.isExist("exp"));
+			Thread.sleep(1100);
+			assertNull(operations.get("exp"));
+			assertFalse(operations.touch("exp", 10));
+		} finally {
+			operations.close();
+		}
+	}
+
+	@Test
+	public void recovery() {
+		File directory = createDirectory();
+		SegmentDataOperations operations = open(directory);
+		for (int i = 0; i < 200; i++) {
+			operations.set("key" + i, "value" + i);
+		}
+		for (int i = 0; i < 200; i += 2) {
+			operations.delete("key" + i);
+		}
+		operations.set("key1", "update");
+		assertTrue(operations.getSegmentCount() > 1);
+		operations.close();
+
+		operations = open(directory);
+		try {
+			assertEquals(100, operations.size());
+			assertNull(operations.get("key0"));
+			assertEquals("update", operations.get("key1"));
+			assertEquals("value3", operations.get("key3"));
+		} finally {
+			operations.close();
+		}
+	}
+
+	@Test
+	public void compact() {
+		File directory = createDirectory();
+		SegmentDataOperations operations = open(directory);
+		for (int round = 0; round < 10; round++) {
+			for (int i = 0; i < 50; i++) {
+				operations.set("key" + i, "value" + round);
+			}
+		}
+		for (int i = 0; i < 50; i += 2) {
+			operations.delete("key" + i);
+		}
+
+		long before = operations.getDiskSize();
+		operations.compact();
+		assertTrue(operations.getDiskSize() < before);
+		assertEquals("value9", operations.get("key1"));
+		assertNull(operations.get("key0"));
+		operations.close();
+
+		// 合并后恢复，删除的数据不会重新出现
+		operations = open(directory);
+		try {
+			assertEquals(25, operations.size());
+			assertNull(operations.get("key0"));
+			assertEquals("value9", operations.get("key49"));
+		} finally {
+			operations.close();
+		}
+	}
+
+	@Test
+	public void truncate() throws Exception {
+		File directory = createDirectory();
+		SegmentDataOperations operations = open(directory);
+		operations.set("a", "1");
+		operations.set("b", "2");
+		operations.close();
+
+		// 模拟写入一半时进程退出
+		File[] files = directory.listFiles();
+		assertEquals(1, files.length);
+		RandomAccessFile file = new RandomAccessFile(files[0], "rw");
+		try {
+			file.setLength(file.length() - 1);
+		} finally {
+			file.close();
+		}
+
+		operations = open(directory);
+		try {
+			assertEquals("1", operations.get("a"));
+			assertNull(operations.get("b"));
+			operations.set("c", "3");
+			assertEquals("3", operations.get("c"));
+		} finally {
+			operations.close();
+		}
+	}
+}
@@ -35,6 +35,11 @@ public class Configurable implements Serializable {
 	 */
 	private String sqlDialect;
 
+	/**
+	 * 每个连接缓存的PreparedStatement数量
+	 */
+	private int statementCacheSize;
+
 	public String getDriverClassName() {
 		return driverClassName;
 	}
@@ -114,4 +119,12 @@ public class Configurable implements Serializable {
 	public void setSqlDialect(String sqlDialect) {
 		this.sqlDialect = sqlDialect;
 	}
+
+	public int getStatementCacheSize() {
+		return statementCacheSize;
+	}
+
+	public void setStatementCacheSize(int statementCacheSize) {
+		this.statementCacheSize = statementCacheSize;
+	}
 }
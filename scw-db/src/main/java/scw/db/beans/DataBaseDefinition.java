@@ -54,7 +54,8 @@ public class DataBaseDefinition extends DefaultBeanDefinition {
 			sqlDialect = beanFactory.getInstance(SqlDialect.class);
 		}
 
-		DB db = new DefaultDB(connectionFactory, sqlDialect);
+		DefaultDB db = new DefaultDB(connectionFactory, sqlDialect);
+		db.setStatementCacheSize(configurable.getStatementCacheSize());
 		if (StringUtils.isNotEmpty(configurable.getAutoCreateTables())) {
 			db.createTables(configurable.getAutoCreateTables(), configurable.isRegisterManager());
 		}
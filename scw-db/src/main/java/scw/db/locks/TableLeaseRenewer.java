@@ -0,0 +1,86 @@
+package scw.db.locks;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import scw.db.DB;
+import scw.locks.LeaseRenewer;
+import scw.locks.RenewableLock;
+import scw.sql.SimpleSql;
+import scw.sql.Sql;
+
+/**
+ * 使用一条update语句批量续期，只有更新的行数不一致时才会再查询是哪些锁丢失了
+ * 
+ * @author shuchaowen
+ *
+ */
+final class TableLeaseRenewer implements LeaseRenewer {
+	private final DB db;
+
+	TableLeaseRenewer(DB db) {
+		this.db = db;
+	}
+
+	@Override
+	public Collection<? extends RenewableLock> renewal(List<? extends RenewableLock> locks, long time,
+			TimeUnit unit) {
+		List<String> names = new ArrayList<String>(locks.size());
+		StringBuilder sb = new StringBuilder();
+		sb.append("update ").append(TableLock.TABLE_NAME).append(" set expirationTime=? where name in (");
+		for (int i = 0; i < locks.size(); i++) {
+			if (i != 0) {
+				sb.append(",");
+			}
+			sb.append("?");
+			names.add(((TableLock) locks.get(i)).getName());
+		}
+		// value是uuid，不会出现name和value交叉匹配的情况
+		sb.append(") and value in (");
+		Object[] params = new Object[locks.size() * 2 + 1];
+		params[0] = System.currentTimeMillis() + unit.toMillis(time);
+		for (int i = 0; i < locks.size(); i++) {
+			if (i != 0) {
+				sb.append(",");
+			}
+			sb.append("?");
+			params[i + 1] = names.get(i);
+			params[i + 1 + locks.size()] = ((TableLock) locks.get(i)).getValue();
+		}
+		sb.append(")");
+
+		Sql sql = new SimpleSql(sb.toString(), params);
+		if (db.update(sql) == locks.size()) {
+			return Collections.emptyList();
+		}
+
+		Map<String, LockTable> tables = db.getInIds(LockTable.class, names);
+		List<RenewableLock> lost = new ArrayList<RenewableLock>();
+		for (RenewableLock lock : locks) {
+			TableLock tableLock = (TableLock) lock;
+			LockTable table = tables == null ? null : tables.get(tableLock.getName());
+			if (table == null || !tableLock.getValue().equals(table.getValue())) {
+				lost.add(lock);
+			}
+		}
+		return lost;
+	}
+
+	@Override
+	public int hashCode() {
+		return System.identityHashCode(db);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+
+		return obj instanceof TableLeaseRenewer && ((TableLeaseRenewer) obj).db == db;
+	}
+}
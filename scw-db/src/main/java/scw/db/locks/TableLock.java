@@ -3,6 +3,7 @@ package scw.db.locks;
 import java.util.concurrent.TimeUnit;
 
 import scw.db.DB;
+import scw.locks.LeaseRenewer;
 import scw.locks.RenewableLock;
 import scw.sql.SimpleSql;
 import scw.sql.Sql;
@@ -13,13 +14,33 @@ class TableLock extends RenewableLock {
 	private final DB db;
 	private final String name;
 	private final String value;
+	private final TableLeaseRenewer leaseRenewer;
 
 	public TableLock(DB db, String name, String value, TimeUnit timeUnit,
 			long timeout) {
+		this(db, name, value, timeUnit, timeout, new TableLeaseRenewer(db));
+	}
+
+	TableLock(DB db, String name, String value, TimeUnit timeUnit,
+			long timeout, TableLeaseRenewer leaseRenewer) {
 		super(timeUnit, timeout);
 		this.db = db;
 		this.name = name;
 		this.value = value;
+		this.leaseRenewer = leaseRenewer;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getValue() {
+		return value;
+	}
+
+	@Override
+	protected LeaseRenewer getLeaseRenewer() {
+		return leaseRenewer;
 	}
 
 	private boolean tryLock(long cts) {
@@ -46,6 +67,11 @@ class TableLock extends RenewableLock {
 		return false;
 	}
 
+	@Override
+	protected String getWaiterName() {
+		return TableLock.class.getName() + ":" + System.identityHashCode(db) + ":" + name;
+	}
+
 	public boolean tryLock() {
 		if (tryLock(System.currentTimeMillis())) {
 			autoRenewal();
@@ -59,6 +85,7 @@ class TableLock extends RenewableLock {
 		Sql sql = new SimpleSql("delete from " + TABLE_NAME
 				+ " where name=? and value=?", name, value);
 		db.update(sql);
+		signalUnlocked();
 	}
 
 	@Override
@@ -66,8 +93,8 @@ class TableLock extends RenewableLock {
 		Sql sql = new SimpleSql(
 				"update "
 						+ TABLE_NAME
-						+ " set expirationTime=expirationTime+? where name=? and value = ?",
-				unit.toMillis(time), name, value);
+						+ " set expirationTime=? where name=? and value = ?",
+				System.currentTimeMillis() + unit.toMillis(time), name, value);
 		return db.update(sql) > 0;
 	}
 
@@ -9,15 +9,17 @@ import scw.util.XUtils;
 
 public class TableLockFactory extends RenewableLockFactory {
 	private final DB db;
+	private final TableLeaseRenewer leaseRenewer;
 
 	public TableLockFactory(DB db) {
 		this.db = db;
+		this.leaseRenewer = new TableLeaseRenewer(db);
 		db.createTable(LockTable.class);
 	}
 
 	@Override
 	public RenewableLock getLock(String name, TimeUnit timeUnit, long timeout) {
-		return new TableLock(db, name, XUtils.getUUID(), timeUnit, timeout);
+		return new TableLock(db, name, XUtils.getUUID(), timeUnit, timeout, leaseRenewer);
 	}
 
 }
@@ -10,7 +10,7 @@ import scw.logger.Logger;
 import scw.logger.LoggerFactory;
 import freemarker.cache.TemplateLoader;
 import freemarker.template.Configuration;
-import freemarker.template.DefaultObjectWrapper;
+import freemarker.template.DefaultObjectWrapperBuilder;
 import freemarker.template.TemplateExceptionHandler;
 import freemarker.template.TemplateModel;
 import freemarker.template.TemplateModelException;
@@ -22,16 +22,31 @@ public class DefaultConfiguration extends Configuration {
 	public DefaultConfiguration(BeanFactory beanFactory) throws IOException {
 		super(Configuration.DEFAULT_INCOMPATIBLE_IMPROVEMENTS);
 		setDefaultEncoding(beanFactory.getEnvironment().getCharsetName());
+		TemplateLoader templateLoader;
 		if (beanFactory.isInstance(TemplateLoader.class)) {
-			setTemplateLoader(beanFactory.getInstance(TemplateLoader.class));
+			templateLoader = beanFactory.getInstance(TemplateLoader.class);
 		} else {
-			setTemplateLoader(new DefaultTemplateLoader(beanFactory.getEnvironment()));
+			templateLoader = new DefaultTemplateLoader(beanFactory.getEnvironment());
+		}
+		setTemplateLoader(templateLoader);
+
+		if (templateLoader instanceof DefaultTemplateLoader) {
+			// 模板的变更由资源事件通知，不需要在每次获取模板时检查是否过期
+			((DefaultTemplateLoader) templateLoader).setChangeListener((event) -> {
+				logger.info("Template changed: {}", event.getSource().getDescription());
+				clearTemplateCache();
+			});
+			setTemplateUpdateDelayMilliseconds(Long.MAX_VALUE);
 		}
 		if (beanFactory.isInstance(TemplateExceptionHandler.class)) {
 			setTemplateExceptionHandler(beanFactory.getInstance(TemplateExceptionHandler.class));
 		}
 
-		setObjectWrapper(new DefaultObjectWrapper(Configuration.DEFAULT_INCOMPATIBLE_IMPROVEMENTS));
+		// 使用适配器包装集合，不再在每次渲染时复制Map/List
+		DefaultObjectWrapperBuilder objectWrapperBuilder = new DefaultObjectWrapperBuilder(
+				Configuration.DEFAULT_INCOMPATIBLE_IMPROVEMENTS);
+		objectWrapperBuilder.setUseAdaptersForContainers(true);
+		setObjectWrapper(objectWrapperBuilder.build());
 		for (Class<?> clz : beanFactory.getContextClassesLoader()) {
 			SharedVariable sharedVariable = clz.getAnnotation(SharedVariable.class);
 			if (sharedVariable == null) {
@@ -3,8 +3,13 @@ package scw.freemarker;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import freemarker.cache.TemplateLoader;
+import scw.event.ChangeEvent;
+import scw.event.EventListener;
+import scw.event.EventRegistration;
 import scw.io.Resource;
 import scw.io.ResourceLoader;
 import scw.io.ResourceUtils;
@@ -15,16 +20,50 @@ import scw.logger.LoggerFactory;
 public class DefaultTemplateLoader implements TemplateLoader {
 	private static Logger logger = LoggerFactory.getLogger(DefaultTemplateLoader.class);
 	private final ResourceLoader resourceLoader;
+	/**
+	 * 已经监听的模板名称
+	 */
+	private final Set<String> observed = ConcurrentHashMap.newKeySet();
+	private volatile EventListener<ChangeEvent<Resource>> changeListener;
 	
 	public DefaultTemplateLoader(ResourceLoader resourceLoader){
 		this.resourceLoader = resourceLoader;
 	}
 
+	public EventListener<ChangeEvent<Resource>> getChangeListener() {
+		return changeListener;
+	}
+
+	/**
+	 * 设置模板资源变更的监听，查找过的模板(包括不存在的)都会被监听<br/>
+	 * 无法监听的资源(如jar包中的资源)认为是不会变更的
+	 * 
+	 * @param changeListener
+	 */
+	public void setChangeListener(EventListener<ChangeEvent<Resource>> changeListener) {
+		this.changeListener = changeListener;
+	}
+
 	public Object findTemplateSource(String name) throws IOException {
 		Resource resource = resourceLoader.getResource(name);
+		if (resource != null) {
+			observe(name, resource);
+		}
 		return (resource == null || !resource.exists()) ? null : resource;
 	}
 
+	private void observe(String name, Resource resource) {
+		EventListener<ChangeEvent<Resource>> changeListener = this.changeListener;
+		if (changeListener == null || observed.contains(name) || !observed.add(name)) {
+			return;
+		}
+
+		EventRegistration registration = resource.registerListener(changeListener);
+		if (registration == EventRegistration.EMPTY && logger.isDebugEnabled()) {
+			logger.debug("Template [{}] is not observable: {}", name, resource.getDescription());
+		}
+	}
+
 	public long getLastModified(Object templateSource) {
 		if (templateSource instanceof Resource) {
 			try {
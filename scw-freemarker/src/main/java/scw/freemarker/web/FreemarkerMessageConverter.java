@@ -1,13 +1,16 @@
 package scw.freemarker.web;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 
 import freemarker.template.Configuration;
 import freemarker.template.Template;
 import freemarker.template.TemplateException;
 import scw.context.annotation.Provider;
 import scw.convert.TypeDescriptor;
+import scw.core.Assert;
 import scw.core.Ordered;
 import scw.core.utils.StringUtils;
 import scw.http.HttpHeaders;
@@ -28,11 +31,45 @@ import scw.web.model.PageMessageConverter;
 @Provider(order = Ordered.LOWEST_PRECEDENCE)
 public class FreemarkerMessageConverter extends PageMessageConverter implements WebMessageConverter, MessageConverter {
 	private final Configuration configuration;
+	private int bufferSize = 8192;
 
 	public FreemarkerMessageConverter(Configuration configuration) {
 		this.configuration = configuration;
 	}
 
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	/**
+	 * 渲染时输出缓冲区的大小(字符数)，缓冲区满时写出到响应中
+	 * 
+	 * @param bufferSize
+	 */
+	public void setBufferSize(int bufferSize) {
+		Assert.requiredArgument(bufferSize > 0, "bufferSize");
+		this.bufferSize = bufferSize;
+	}
+
+	/**
+	 * 渲染页面，输出经过缓冲，渲染完成后刷新
+	 * 
+	 * @param template
+	 * @param page
+	 * @param writer
+	 * @throws IOException
+	 * @throws TemplateException
+	 */
+	protected void process(Template template, Page page, Writer writer) throws IOException, TemplateException {
+		Writer bufferedWriter = new BufferedWriter(writer, bufferSize);
+		template.process(new PageTemplateModel(page, template.getObjectWrapper()), bufferedWriter);
+		bufferedWriter.flush();
+	}
+
+	private String getCharsetName(String charsetName) {
+		return StringUtils.isEmpty(charsetName) ? configuration.getDefaultEncoding() : charsetName;
+	}
+
 	@Override
 	public MimeTypes getSupportMimeTypes() {
 		return MimeTypes.EMPTY;
@@ -56,9 +93,10 @@ public class FreemarkerMessageConverter extends PageMessageConverter implements
 			outputMessage.setContentType(MimeTypeUtils.TEXT_HTML);
 		}
 
-		Template template = configuration.getTemplate(page.getName(), outputMessage.getCharacterEncoding());
+		String charsetName = getCharsetName(outputMessage.getCharacterEncoding());
+		Template template = configuration.getTemplate(page.getName(), charsetName);
 		try {
-			template.process(page, new PrintWriter(outputMessage.getOutputStream()));
+			process(template, page, new OutputStreamWriter(outputMessage.getOutputStream(), charsetName));
 		} catch (TemplateException e) {
 			throw new MessageConvertException(page.getName(), e);
 		}
@@ -79,9 +117,9 @@ public class FreemarkerMessageConverter extends PageMessageConverter implements
 	@Override
 	protected void writePage(TypeDescriptor type, Page page, ServerHttpRequest request, ServerHttpResponse response)
 			throws IOException, WebMessagelConverterException {
-		Template template = configuration.getTemplate(page.getName(), response.getCharacterEncoding());
+		Template template = configuration.getTemplate(page.getName(), getCharsetName(response.getCharacterEncoding()));
 		try {
-			template.process(page, response.getWriter());
+			process(template, page, response.getWriter());
 		} catch (TemplateException e) {
 			throw new WebMessagelConverterException(page.getName(), e);
 		}
@@ -0,0 +1,83 @@
+package scw.freemarker.web;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import freemarker.ext.util.WrapperTemplateModel;
+import freemarker.template.AdapterTemplateModel;
+import freemarker.template.ObjectWrapper;
+import freemarker.template.SimpleCollection;
+import freemarker.template.TemplateCollectionModel;
+import freemarker.template.TemplateHashModelEx;
+import freemarker.template.TemplateModel;
+import freemarker.template.TemplateModelException;
+import freemarker.template.WrappingTemplateModel;
+import scw.web.model.Page;
+
+/**
+ * {@link Page}的模板模型<br/>
+ * 不会复制Page，每个值在第一次访问时包装，之后重复使用包装后的结果
+ * 
+ * @author shuchaowen
+ *
+ */
+public class PageTemplateModel extends WrappingTemplateModel
+		implements TemplateHashModelEx, AdapterTemplateModel, WrapperTemplateModel {
+	private final Page page;
+	private final Map<String, TemplateModel> models;
+
+	public PageTemplateModel(Page page, ObjectWrapper objectWrapper) {
+		super(objectWrapper);
+		this.page = page;
+		this.models = new HashMap<String, TemplateModel>(Math.max(16, page.size() * 2));
+	}
+
+	public Page getPage() {
+		return page;
+	}
+
+	@Override
+	public TemplateModel get(String key) throws TemplateModelException {
+		TemplateModel model = models.get(key);
+		if (model == null) {
+			Object value = page.get(key);
+			if (value == null) {
+				return null;
+			}
+
+			model = wrap(value);
+			models.put(key, model);
+		}
+		return model;
+	}
+
+	@Override
+	public boolean isEmpty() throws TemplateModelException {
+		return page.isEmpty();
+	}
+
+	@Override
+	public int size() throws TemplateModelException {
+		return page.size();
+	}
+
+	@Override
+	public TemplateCollectionModel keys() throws TemplateModelException {
+		return new SimpleCollection(page.keySet(), getObjectWrapper());
+	}
+
+	@Override
+	public TemplateCollectionModel values() throws TemplateModelException {
+		return new SimpleCollection(page.values(), getObjectWrapper());
+	}
+
+	@Override
+	public Object getAdaptedObject(@SuppressWarnings("rawtypes") Class hint) {
+		return page;
+	}
+
+	@Override
+	public Object getWrappedObject() {
+		return page;
+	}
+}
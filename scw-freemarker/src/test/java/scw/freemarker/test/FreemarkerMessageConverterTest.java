@@ -0,0 +1,105 @@
+package scw.freemarker.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStream;
+
+import org.junit.Test;
+
+import scw.beans.support.DefaultBeanFactory;
+import scw.convert.TypeDescriptor;
+import scw.freemarker.DefaultConfiguration;
+import scw.freemarker.web.FreemarkerMessageConverter;
+import scw.http.HttpHeaders;
+import scw.io.FileUtils;
+import scw.net.MimeType;
+import scw.net.message.OutputMessage;
+import scw.util.XUtils;
+import scw.web.model.Page;
+
+public class FreemarkerMessageConverterTest {
+	static {
+		// 加快资源变更的轮询
+		System.setProperty("resource.listener.period", "1");
+	}
+
+	@Test
+	public void templateChanged() throws Throwable {
+		DefaultBeanFactory beanFactory = new DefaultBeanFactory();
+		beanFactory.init();
+		DefaultConfiguration configuration = new DefaultConfiguration(beanFactory);
+		// 不依赖过期检查，只依赖资源变更事件
+		assertEquals(Long.MAX_VALUE, configuration.getTemplateUpdateDelayMilliseconds());
+		FreemarkerMessageConverter converter = new FreemarkerMessageConverter(configuration);
+
+		String name = "freemarker_test_" + XUtils.getUUID() + ".ftl";
+		File file = new File(beanFactory.getEnvironment().getWorkPath(), name);
+		try {
+			FileUtils.writeStringToFile(file, "v1 ${name}", configuration.getDefaultEncoding());
+			Page page = new Page(name);
+			page.put("name", "中文");
+			assertEquals("v1 中文", render(converter, configuration, page));
+
+			FileUtils.writeStringToFile(file, "v2 ${name}", configuration.getDefaultEncoding());
+			file.setLastModified(System.currentTimeMillis() + 2000);
+			String result = null;
+			long deadline = System.currentTimeMillis() + 15000;
+			while (System.currentTimeMillis() < deadline) {
+				result = render(converter, configuration, page);
+				if (!result.startsWith("v1")) {
+					break;
+				}
+				Thread.sleep(100);
+			}
+			assertEquals("v2 中文", result);
+		} finally {
+			file.delete();
+			beanFactory.destroy();
+		}
+	}
+
+	private static String render(FreemarkerMessageConverter converter, DefaultConfiguration configuration,
+			Page page) throws Exception {
+		TestOutputMessage message = new TestOutputMessage();
+		converter.write(TypeDescriptor.forObject(page), page, null, message);
+		// 没有设置编码时使用配置中的默认编码
+		return new String(message.out.toByteArray(), configuration.getDefaultEncoding());
+	}
+
+	private static class TestOutputMessage implements OutputMessage {
+		private final HttpHeaders headers = new HttpHeaders();
+		private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		private MimeType contentType;
+
+		@Override
+		public HttpHeaders getHeaders() {
+			return headers;
+		}
+
+		@Override
+		public MimeType getContentType() {
+			return contentType;
+		}
+
+		@Override
+		public long getContentLength() {
+			return out.size();
+		}
+
+		@Override
+		public OutputStream getOutputStream() {
+			return out;
+		}
+
+		@Override
+		public void setContentType(MimeType contentType) {
+			this.contentType = contentType;
+		}
+
+		@Override
+		public void setContentLength(long contentLength) {
+		}
+	}
+}
@@ -5,43 +5,99 @@ import java.io.InputStream;
 import java.io.OutputStream;
 
 import scw.io.Serializer;
+import scw.lang.NamedThreadLocal;
 
 import com.caucho.hessian.io.Hessian2Input;
 import com.caucho.hessian.io.Hessian2Output;
 import com.caucho.hessian.io.SerializerFactory;
 
+/**
+ * 每个线程复用{@link Hessian2Output}和{@link Hessian2Input}(包括其内部的缓冲区)，嵌套调用时会创建新的对象
+ * 
+ * @author shuchaowen
+ *
+ */
 public class Hessian2Serializer implements Serializer {
 	private final SerializerFactory serializerFactory;
-	
-	public Hessian2Serializer(){
+	private final ThreadLocal<Hessian2Output> outputLocal = new NamedThreadLocal<Hessian2Output>(
+			Hessian2Serializer.class.getSimpleName() + "-output") {
+		protected Hessian2Output initialValue() {
+			return createOutput();
+		};
+	};
+	private final ThreadLocal<Hessian2Input> inputLocal = new NamedThreadLocal<Hessian2Input>(
+			Hessian2Serializer.class.getSimpleName() + "-input") {
+		protected Hessian2Input initialValue() {
+			return createInput();
+		};
+	};
+
+	public Hessian2Serializer() {
 		this(new DefaultSerializerFactory());
 	}
-	
+
 	public Hessian2Serializer(SerializerFactory serializerFactory) {
 		this.serializerFactory = serializerFactory;
 	}
 
+	private Hessian2Output createOutput() {
+		Hessian2Output output = new Hessian2Output();
+		output.setSerializerFactory(serializerFactory);
+		return output;
+	}
+
+	private Hessian2Input createInput() {
+		Hessian2Input input = new Hessian2Input();
+		input.setSerializerFactory(serializerFactory);
+		return input;
+	}
+
 	@Override
 	public void serialize(OutputStream out, Object data) throws IOException {
-		Hessian2Output output = new Hessian2Output(out);
-		output.setSerializerFactory(serializerFactory);
+		// 取出后置为null，嵌套调用时会发现正在使用中
+		Hessian2Output output = outputLocal.get();
+		boolean reuse = output != null;
+		if (reuse) {
+			outputLocal.set(null);
+		} else {
+			output = createOutput();
+		}
+
 		try {
+			output.init(out);
 			output.writeObject(data);
 			output.completeMessage();
+			output.flush();
 		} finally {
-			output.close();
+			// 释放对流和对象引用的持有
+			output.init(null);
+			if (reuse) {
+				outputLocal.set(output);
+			}
 		}
 	}
 
 	@SuppressWarnings("unchecked")
 	@Override
 	public <T> T deserialize(InputStream input) throws IOException, ClassNotFoundException {
-		Hessian2Input hi = new Hessian2Input(input);
-		hi.setSerializerFactory(serializerFactory);
+		Hessian2Input hi = inputLocal.get();
+		boolean reuse = hi != null;
+		if (reuse) {
+			inputLocal.set(null);
+		} else {
+			hi = createInput();
+		}
+
 		try {
+			hi.init(input);
+			// init不会清除上一次预读的数据
+			hi.resetBuffer();
 			return (T) hi.readObject();
 		} finally {
-			hi.close();
+			hi.init(null);
+			if (reuse) {
+				inputLocal.set(hi);
+			}
 		}
 	}
 }
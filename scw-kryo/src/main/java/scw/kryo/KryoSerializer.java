@@ -9,11 +9,24 @@ import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
 
 import scw.convert.TypeDescriptor;
+import scw.io.BufferProcessor;
 import scw.io.CrossLanguageSerializer;
 import scw.io.Serializer;
 import scw.lang.NamedThreadLocal;
 
+/**
+ * 每个线程复用{@link Kryo}、{@link Output}和{@link Input}
+ * 
+ * @author shuchaowen
+ *
+ */
 public class KryoSerializer implements Serializer, CrossLanguageSerializer {
+	/**
+	 * 线程中保留的输出缓冲区的最大长度，超过后会被替换为初始大小，避免一次大对象的序列化长期占用内存
+	 */
+	private static final int MAX_RETAINED_BUFFER_SIZE = 64 * 1024;
+	private static final int INITIAL_BUFFER_SIZE = 1024;
+
 	private static final ThreadLocal<Kryo> kryoLocal = new NamedThreadLocal<Kryo>(KryoSerializer.class.getSimpleName() + "-kryo") {
 		protected Kryo initialValue() {
 			Kryo kryo = new Kryo();
@@ -28,7 +41,7 @@ public class KryoSerializer implements Serializer, CrossLanguageSerializer {
 	private static final ThreadLocal<Output> outputLocal = new NamedThreadLocal<Output>(KryoSerializer.class.getSimpleName() + "-output") {
 		protected Output initialValue() {
 			Output output = new Output();
-			output.setBuffer(new byte[1024], -1);
+			output.setBuffer(new byte[INITIAL_BUFFER_SIZE], -1);
 			return output;
 		};
 	};
@@ -41,7 +54,11 @@ public class KryoSerializer implements Serializer, CrossLanguageSerializer {
 
 	public static Output getOutput() {
 		Output output = outputLocal.get();
-		output.clear();
+		if (output.getBuffer().length > MAX_RETAINED_BUFFER_SIZE) {
+			output.setBuffer(new byte[INITIAL_BUFFER_SIZE], -1);
+		}
+		// 不能写入到上一次使用的输出流中
+		output.setOutputStream(null);
 		return output;
 	}
 
@@ -63,6 +80,38 @@ public class KryoSerializer implements Serializer, CrossLanguageSerializer {
 		return input;
 	}
 
+	public static Input getInput(byte[] data, int offset, int length) {
+		Input input = inputLocal.get();
+		input.setBuffer(data, offset, length);
+		return input;
+	}
+
+	@Override
+	public byte[] serialize(Object data) {
+		Output output = getOutput();
+		getKryo().writeClassAndObject(output, data);
+		return output.toBytes();
+	}
+
+	@Override
+	public <T, E extends Throwable> T serialize(Object data, BufferProcessor<T, E> processor) throws E {
+		Output output = getOutput();
+		getKryo().writeClassAndObject(output, data);
+		return processor.process(output.getBuffer(), 0, output.position());
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public <T> T deserialize(byte[] data) {
+		return (T) getKryo().readClassAndObject(getInput(data));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public <T> T deserialize(byte[] data, int offset, int length) {
+		return (T) getKryo().readClassAndObject(getInput(data, offset, length));
+	}
+
 	public void serialize(OutputStream out, Object data) {
 		Output output = getOutput(out);
 		getKryo().writeClassAndObject(output, data);
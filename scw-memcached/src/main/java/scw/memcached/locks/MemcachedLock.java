@@ -18,6 +18,11 @@ public final class MemcachedLock extends RenewableLock {
 		this.id = id;
 	}
 
+	@Override
+	protected String getWaiterName() {
+		return MemcachedLock.class.getName() + ":" + key;
+	}
+
 	public boolean tryLock() {
 		boolean b = memcached.add(key, (int)getTimeout(TimeUnit.SECONDS), id);
 		if(b){
@@ -29,14 +34,15 @@ public final class MemcachedLock extends RenewableLock {
 	public void unlock() {
 		cancelAutoRenewal();
 		CAS<String> cas = memcached.getCASOperations().get(key);
-		if (id.equals(cas.getValue())) {
+		if (cas != null && id.equals(cas.getValue())) {
 			memcached.getCASOperations().delete(key, cas.getCas());
 		}
+		signalUnlocked();
 	}
 
 	public boolean renewal(long time, TimeUnit unit) {
 		CAS<String> cas = memcached.getCASOperations().get(key);
-		if(!id.equals(cas.getValue())){
+		if(cas == null || !id.equals(cas.getValue())){
 			return false;
 		}
 		return memcached.getCASOperations().cas(key, id, (int)unit.toSeconds(time), cas.getCas());
@@ -10,13 +10,11 @@ import java.sql.Time;
 import java.sql.Timestamp;
 import java.time.Year;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map.Entry;
 
-import scw.convert.TypeDescriptor;
 import scw.core.utils.ArrayUtils;
 import scw.core.utils.ClassUtils;
 import scw.core.utils.CollectionUtils;
@@ -29,6 +27,7 @@ import scw.mapper.Fields;
 import scw.orm.sql.AbstractSqlDialect;
 import scw.orm.sql.IndexInfo;
 import scw.orm.sql.PaginationSql;
+import scw.orm.sql.PreparedEntitySql;
 import scw.orm.sql.SqlDialectException;
 import scw.orm.sql.SqlType;
 import scw.orm.sql.TableStructureMapping;
@@ -86,8 +85,16 @@ public class MysqlDialect extends AbstractSqlDialect {
 	@Override
 	public Sql toSelectByIdsSql(String tableName, Class<?> entityClass,
 			Object... ids) throws SqlDialectException {
+		return getPreparedSql("selectByIds", entityClass, tableName,
+				ids.length,
+				() -> prepareSelectByIdsSql(tableName, entityClass, ids.length))
+				.toSqlByValues(this, ids);
+	}
+
+	protected PreparedEntitySql prepareSelectByIdsSql(String tableName,
+			Class<?> entityClass, int size) throws SqlDialectException {
 		Fields primaryKeys = getPrimaryKeys(entityClass).shared();
-		if (ids.length > primaryKeys.size()) {
+		if (size > primaryKeys.size()) {
 			throw new SqlDialectException(
 					"Wrong number of primary key parameters");
 		}
@@ -95,35 +102,36 @@ public class MysqlDialect extends AbstractSqlDialect {
 		StringBuilder sb = new StringBuilder();
 		sb.append(SELECT_ALL_PREFIX);
 		keywordProcessing(sb, tableName);
-		Iterator<Field> iterator = primaryKeys.iterator();
-		Iterator<Object> valueIterator = Arrays.asList(ids).iterator();
-		if (iterator.hasNext() && valueIterator.hasNext()) {
+		if (size > 0 && primaryKeys.size() > 0) {
 			sb.append(WHERE);
 		}
 
-		Object[] params = new Object[ids.length];
-		int i = 0;
-		while (iterator.hasNext() && valueIterator.hasNext()) {
+		Iterator<Field> iterator = primaryKeys.iterator();
+		for (int i = 0; i < size && iterator.hasNext(); i++) {
 			Field column = iterator.next();
-			Object value = valueIterator.next();
-			params[i++] = toDataBaseValue(value,
-					TypeDescriptor.forObject(value));
 			appendFieldName(sb, column.getGetter());
 			sb.append("=?");
-			if (iterator.hasNext() && valueIterator.hasNext()) {
+			if (iterator.hasNext() && i < size - 1) {
 				sb.append(AND);
 			}
 		}
-		return new SimpleSql(sb.toString(), params);
+		return new PreparedEntitySql(sb.toString());
 	}
 
 	@Override
 	public <T> Sql save(String tableName, Class<? extends T> entityClass,
 			T entity) throws SqlDialectException {
+		return getPreparedSql("save", entityClass, tableName, 0,
+				() -> prepareSaveSql(tableName, entityClass)).toSql(this,
+				entity);
+	}
+
+	protected PreparedEntitySql prepareSaveSql(String tableName,
+			Class<?> entityClass) throws SqlDialectException {
 		StringBuilder cols = new StringBuilder();
 		StringBuilder values = new StringBuilder();
 		StringBuilder sql = new StringBuilder();
-		List<Object> params = new ArrayList<Object>();
+		List<Field> fields = new ArrayList<Field>();
 		Iterator<Field> iterator = getFields(entityClass).iterator();
 		while (iterator.hasNext()) {
 			Field column = iterator.next();
@@ -138,7 +146,7 @@ public class MysqlDialect extends AbstractSqlDialect {
 
 			appendFieldName(cols, column.getGetter());
 			values.append("?");
-			params.add(getDataBaseValue(entity, column));
+			fields.add(column);
 		}
 		sql.append(INSERT_INTO_PREFIX);
 		keywordProcessing(sql, tableName);
@@ -147,18 +155,25 @@ public class MysqlDialect extends AbstractSqlDialect {
 		sql.append(VALUES);
 		sql.append(values);
 		sql.append(")");
-		return new SimpleSql(sql.toString(), params.toArray());
+		return new PreparedEntitySql(sql.toString(), fields);
 	}
 
 	@Override
 	public <T> Sql delete(String tableName, Class<? extends T> entityClass,
 			T entity) throws SqlDialectException {
+		return getPreparedSql("delete", entityClass, tableName, 0,
+				() -> prepareDeleteSql(tableName, entityClass)).toSql(this,
+				entity);
+	}
+
+	protected PreparedEntitySql prepareDeleteSql(String tableName,
+			Class<?> entityClass) throws SqlDialectException {
 		Fields primaryKeys = getPrimaryKeys(entityClass).shared();
 		if (primaryKeys.size() == 0) {
 			throw new NullPointerException("not found primary key");
 		}
 
-		List<Object> params = new ArrayList<Object>(primaryKeys.size());
+		List<Field> fields = new ArrayList<Field>(primaryKeys.size());
 		StringBuilder sql = new StringBuilder();
 		sql.append(DELETE_PREFIX);
 		keywordProcessing(sql, tableName);
@@ -168,23 +183,31 @@ public class MysqlDialect extends AbstractSqlDialect {
 			Field column = iterator.next();
 			appendFieldName(sql, column.getGetter());
 			sql.append("=?");
-			params.add(getDataBaseValue(entity, column));
+			fields.add(column);
 			if (iterator.hasNext()) {
 				sql.append(AND);
 			}
 		}
-		return new SimpleSql(sql.toString(), params.toArray());
+		return new PreparedEntitySql(sql.toString(), fields);
 	}
 
 	@Override
 	public Sql deleteById(String tableName, Class<?> entityClass, Object... ids)
 			throws SqlDialectException {
+		return getPreparedSql("deleteById", entityClass, tableName,
+				ids.length,
+				() -> prepareDeleteByIdSql(tableName, entityClass, ids.length))
+				.toSqlByValues(this, ids);
+	}
+
+	protected PreparedEntitySql prepareDeleteByIdSql(String tableName,
+			Class<?> entityClass, int size) throws SqlDialectException {
 		Fields primaryKeys = getPrimaryKeys(entityClass);
 		if (primaryKeys.size() == 0) {
 			throw new NullPointerException("not found primary key");
 		}
 
-		if (primaryKeys.size() != ids.length) {
+		if (primaryKeys.size() != size) {
 			throw new ParameterException("主键数量不一致:" + tableName);
 		}
 
@@ -193,70 +216,238 @@ public class MysqlDialect extends AbstractSqlDialect {
 		keywordProcessing(sql, tableName);
 		sql.append(WHERE);
 
-		int i = 0;
-		Object[] params = new Object[ids.length];
 		Iterator<Field> iterator = primaryKeys.iterator();
 		while (iterator.hasNext()) {
 			Field column = iterator.next();
 			appendFieldName(sql, column.getGetter());
 			sql.append("=?");
-			params[i] = toDataBaseValue(ids[i]);
-			i++;
 			if (iterator.hasNext()) {
 				sql.append(AND);
 			}
 		}
-		return new SimpleSql(sql.toString(), params);
+		return new PreparedEntitySql(sql.toString());
 	}
 
 	@Override
 	public <T> Sql update(String tableName, Class<? extends T> entityClass,
 			T entity) throws SqlDialectException {
+		return getPreparedSql("update", entityClass, tableName, 0,
+				() -> prepareUpdateSql(tableName, entityClass)).toSql(this,
+				entity);
+	}
+
+	protected PreparedEntitySql prepareUpdateSql(String tableName,
+			Class<?> entityClass) throws SqlDialectException {
+		return prepareUpdateSql(tableName, entityClass, null);
+	}
+
+	@Override
+	public <T> Sql update(String tableName, Class<? extends T> entityClass,
+			T entity, Collection<String> changedFieldNames)
+			throws SqlDialectException {
+		if (changedFieldNames == null) {
+			return update(tableName, entityClass, entity);
+		}
+
+		// 使用字段顺序作为缓存的key，相同的修改组合共享一个sql模板
+		StringBuilder name = new StringBuilder("update:");
+		for (Field column : getNotPrimaryKeys(entityClass)) {
+			if (changedFieldNames.contains(column.getGetter().getName())) {
+				name.append(column.getGetter().getName()).append(",");
+			}
+		}
+
+		if (name.length() == 7) {
+			// 没有可以更新的字段
+			return update(tableName, entityClass, entity);
+		}
+		return getPreparedSql(name.toString(), entityClass, tableName, 0,
+				() -> prepareUpdateSql(tableName, entityClass,
+						changedFieldNames)).toSql(this, entity);
+	}
+
+	/**
+	 * 只在更新发生变化的字段时处理版本号字段:
+	 * set version=coalesce(version,0)+1 where (version=? or (version is null and ? is null))<br/>
+	 * 更新所有字段时版本号和其他字段一样直接覆盖
+	 * 
+	 * @param tableName
+	 * @param entityClass
+	 * @param changedFieldNames 为空时更新所有字段
+	 * @return
+	 * @throws SqlDialectException
+	 */
+	protected PreparedEntitySql prepareUpdateSql(String tableName,
+			Class<?> entityClass, Collection<String> changedFieldNames)
+			throws SqlDialectException {
 		Fields primaryKeys = getPrimaryKeys(entityClass).shared();
 		if (primaryKeys.size() == 0) {
 			throw new NullPointerException(tableName + " not found primary key");
 		}
 
 		Fields notPrimaryKeys = getNotPrimaryKeys(entityClass).shared();
+		List<Field> versionFields = new ArrayList<Field>(4);
 		StringBuilder sb = new StringBuilder(512);
 		sb.append(UPDATE_PREFIX);
 		keywordProcessing(sb, tableName);
 		sb.append(SET);
-		List<Object> params = new ArrayList<Object>(notPrimaryKeys.size());
-		Iterator<Field> iterator = notPrimaryKeys.iterator();
-		while (iterator.hasNext()) {
-			Field column = iterator.next();
-			appendFieldName(sb, column.getGetter());
-			sb.append("=?");
-			params.add(getDataBaseValue(entity, column));
-			if (iterator.hasNext()) {
+		List<Field> fields = new ArrayList<Field>(notPrimaryKeys.size()
+				+ primaryKeys.size());
+		boolean first = true;
+		for (Field column : notPrimaryKeys) {
+			boolean version = changedFieldNames != null
+					&& isVersionField(column);
+			if (!version
+					&& changedFieldNames != null
+					&& !changedFieldNames.contains(column.getGetter()
+							.getName())) {
+				continue;
+			}
+
+			if (!first) {
 				sb.append(",");
 			}
+			first = false;
+
+			appendFieldName(sb, column.getGetter());
+			sb.append("=");
+			if (version) {
+				versionFields.add(column);
+				sb.append("coalesce(");
+				appendFieldName(sb, column.getGetter());
+				sb.append(",0)+1");
+			} else {
+				sb.append("?");
+				fields.add(column);
+			}
 		}
 
 		sb.append(WHERE);
-		iterator = primaryKeys.iterator();
+		Iterator<Field> iterator = primaryKeys.iterator();
 		while (iterator.hasNext()) {
 			Field column = iterator.next();
 			appendFieldName(sb, column.getGetter());
 			sb.append("=?");
-			params.add(getDataBaseValue(entity, column));
+			fields.add(column);
 			if (iterator.hasNext()) {
 				sb.append(AND);
 			}
 		}
-		return new SimpleSql(sb.toString(), params.toArray());
+
+		for (Field column : versionFields) {
+			sb.append(AND);
+			sb.append("(");
+			appendFieldName(sb, column.getGetter());
+			sb.append("=? or (");
+			appendFieldName(sb, column.getGetter());
+			sb.append(" is null and ? is null))");
+			fields.add(column);
+			fields.add(column);
+		}
+		return new PreparedEntitySql(sb.toString(), fields);
 	}
 
 	@Override
 	public <T> Sql toSaveOrUpdateSql(String tableName,
 			Class<? extends T> entityClass, T entity)
 			throws SqlDialectException {
+		PreparedEntitySql preparedSql = getPreparedSql("saveOrUpdate",
+				entityClass, tableName, 0,
+				() -> prepareSaveOrUpdateSql(tableName, entityClass));
+		if (preparedSql.isSupported(entity)) {
+			return preparedSql.toSql(this, entity);
+		}
+		return toSaveOrUpdateSqlWithNullCounter(tableName, entityClass, entity);
+	}
+
+	/**
+	 * 计数器字段使用参数: col=IF(col+?>=min and col+?<=max,col+?,col)
+	 * 
+	 * @param tableName
+	 * @param entityClass
+	 * @return
+	 * @throws SqlDialectException
+	 */
+	protected PreparedEntitySql prepareSaveOrUpdateSql(String tableName,
+			Class<?> entityClass) throws SqlDialectException {
 		Fields primaryKeys = getPrimaryKeys(entityClass);
 		if (primaryKeys.size() == 0) {
 			throw new NullPointerException("not found primary key");
 		}
 
+		StringBuilder sb = new StringBuilder(512);
+		StringBuilder cols = new StringBuilder();
+		StringBuilder values = new StringBuilder();
+		List<Field> params = new ArrayList<Field>();
+		List<Field> counters = new ArrayList<Field>();
+		Fields fields = getFields(entityClass).shared();
+		Iterator<Field> iterator = fields.iterator();
+		while (iterator.hasNext()) {
+			Field column = iterator.next();
+			appendFieldName(cols, column.getGetter());
+			values.append("?");
+			params.add(column);
+
+			if (iterator.hasNext()) {
+				cols.append(",");
+				values.append(",");
+			}
+		}
+
+		sb.append(INSERT_INTO_PREFIX);
+		keywordProcessing(sb, tableName);
+		sb.append("(");
+		sb.append(cols);
+		sb.append(VALUES);
+		sb.append(values);
+		sb.append(")");
+		sb.append(DUPLICATE_KEY);
+
+		iterator = fields.iterator();
+		while (iterator.hasNext()) {
+			Field column = iterator.next();
+			Counter counter = getCounter(column.getGetter());
+			if (counter == null) {
+				appendFieldName(sb, column.getGetter());
+				sb.append("=?");
+				params.add(column);
+			} else {
+				counters.add(column);
+				appendFieldName(sb, column.getGetter());
+				sb.append("=");
+				sb.append(IF);
+				appendFieldName(sb, column.getGetter());
+				sb.append("+?");
+				params.add(column);
+				sb.append(">=").append(counter.min());
+				sb.append(AND);
+				appendFieldName(sb, column.getGetter());
+				sb.append("+?");
+				params.add(column);
+				sb.append("<=").append(counter.max());
+				sb.append(",");
+				appendFieldName(sb, column.getGetter());
+				sb.append("+?");
+				params.add(column);
+				sb.append(",");
+				appendFieldName(sb, column.getGetter());
+				sb.append(")");
+			}
+
+			if (iterator.hasNext()) {
+				sb.append(",");
+			}
+		}
+		return new PreparedEntitySql(sb.toString(),
+				params.toArray(new Field[0]), counters.toArray(new Field[0]));
+	}
+
+	/**
+	 * 计数器字段的值为空时直接覆盖
+	 */
+	private <T> Sql toSaveOrUpdateSqlWithNullCounter(String tableName,
+			Class<? extends T> entityClass, T entity)
+			throws SqlDialectException {
 		StringBuilder sb = new StringBuilder(512);
 		StringBuilder cols = new StringBuilder();
 		StringBuilder values = new StringBuilder();
@@ -289,35 +480,33 @@ public class MysqlDialect extends AbstractSqlDialect {
 			Field column = iterator.next();
 			Object v = getDataBaseValue(entity, column);
 			Counter counter = getCounter(column.getGetter());
-			if (counter == null) {
+			if (counter == null || v == null) {
+				if (counter != null) {
+					logger.warn("{}中计数器字段{}的值为空", entityClass, column);
+				}
 				appendFieldName(sb, column.getGetter());
 				sb.append("=?");
 				params.add(v);
 			} else {
-				if (v == null) {
-					logger.warn("{}中计数器字段{}的值为空", entityClass, column);
-					appendFieldName(sb, column.getGetter());
-					sb.append("=?");
-					params.add(v);
-				} else {
-					appendFieldName(sb, column.getGetter());
-					sb.append("=");
-					sb.append(IF);
-					appendFieldName(sb, column.getGetter());
-					sb.append("+").append(v);
-					sb.append(">=").append(counter.min());
-					sb.append(AND);
-					appendFieldName(sb, column.getGetter());
-					sb.append("+").append(v);
-					sb.append("<=").append(counter.max());
-					sb.append(",");
-					appendFieldName(sb, column.getGetter());
-					sb.append("+?");
-					params.add(v);
-					sb.append(",");
-					appendFieldName(sb, column.getGetter());
-					sb.append(")");
-				}
+				appendFieldName(sb, column.getGetter());
+				sb.append("=");
+				sb.append(IF);
+				appendFieldName(sb, column.getGetter());
+				sb.append("+?");
+				params.add(v);
+				sb.append(">=").append(counter.min());
+				sb.append(AND);
+				appendFieldName(sb, column.getGetter());
+				sb.append("+?");
+				params.add(v);
+				sb.append("<=").append(counter.max());
+				sb.append(",");
+				appendFieldName(sb, column.getGetter());
+				sb.append("+?");
+				params.add(v);
+				sb.append(",");
+				appendFieldName(sb, column.getGetter());
+				sb.append(")");
 			}
 
 			if (iterator.hasNext()) {
@@ -1,5 +1,9 @@
 package scw.netflix.hystrix;
 
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 import scw.core.reflect.MethodInvoker;
 import scw.instance.NoArgsInstanceFactory;
 import scw.netflix.hystrix.annotation.Hystrix;
@@ -11,8 +15,16 @@ import com.netflix.hystrix.HystrixCommandKey;
 import com.netflix.hystrix.HystrixCommandProperties;
 import com.netflix.hystrix.HystrixThreadPoolProperties;
 
+/**
+ * 每个方法的{@link Setter}和fallback只创建一次
+ * 
+ * @author shuchaowen
+ * @see scw.context.circuitbreaker.CircuitBreakerMethodInterceptor 不切换线程的实现
+ */
 public class DefaultHystrixCommandFactory implements HystrixCommandFactory {
+	private static final CommandDefinition NONE = new CommandDefinition(null, null);
 	private NoArgsInstanceFactory instanceFactory;
+	private final ConcurrentMap<Class<?>, ConcurrentMap<Method, CommandDefinition>> definitionMap = new ConcurrentHashMap<Class<?>, ConcurrentMap<Method, CommandDefinition>>();
 
 	public DefaultHystrixCommandFactory(NoArgsInstanceFactory instanceFactory) {
 		this.instanceFactory = instanceFactory;
@@ -20,9 +32,39 @@ public class DefaultHystrixCommandFactory implements HystrixCommandFactory {
 
 	public HystrixCommand<?> getHystrixCommandFactory(MethodInvoker invoker, Object[] args)
 			throws Exception {
+		CommandDefinition definition = getDefinition(invoker);
+		if (definition == NONE) {
+			return null;
+		}
+		return new HystrixFilterCommand(definition.setter, definition.fallback, invoker, args);
+	}
+
+	private CommandDefinition getDefinition(MethodInvoker invoker) {
+		ConcurrentMap<Method, CommandDefinition> map = definitionMap.get(invoker.getDeclaringClass());
+		if (map == null) {
+			map = new ConcurrentHashMap<Method, CommandDefinition>();
+			ConcurrentMap<Method, CommandDefinition> old = definitionMap.putIfAbsent(invoker.getDeclaringClass(),
+					map);
+			if (old != null) {
+				map = old;
+			}
+		}
+
+		CommandDefinition definition = map.get(invoker.getMethod());
+		if (definition == null) {
+			definition = createDefinition(invoker);
+			CommandDefinition old = map.putIfAbsent(invoker.getMethod(), definition);
+			if (old != null) {
+				definition = old;
+			}
+		}
+		return definition;
+	}
+
+	private CommandDefinition createDefinition(MethodInvoker invoker) {
 		Hystrix hystrix = invoker.getDeclaringClass().getAnnotation(Hystrix.class);
 		if (hystrix == null) {
-			return null;
+			return NONE;
 		}
 
 		Setter setter = Setter.withGroupKey(HystrixCommandGroupKey.Factory.asKey(invoker.getDeclaringClass().getName()))
@@ -30,7 +72,7 @@ public class DefaultHystrixCommandFactory implements HystrixCommandFactory {
 		afterSetter(setter);
 		Object fallback = invoker.getDeclaringClass().isAssignableFrom(hystrix.fallback())
 				? instanceFactory.getInstance(hystrix.fallback()) : null;
-		return new HystrixFilterCommand(setter, fallback, invoker, args);
+		return new CommandDefinition(setter, fallback);
 	}
 
 	protected void afterSetter(Setter setter) {
@@ -41,4 +83,14 @@ public class DefaultHystrixCommandFactory implements HystrixCommandFactory {
 						.withExecutionTimeoutEnabled(true))
 				.andThreadPoolPropertiesDefaults(HystrixThreadPoolProperties.Setter().withCoreSize(10));// 使用线程池，并设置核心线程数为10
 	}
+
+	private static final class CommandDefinition {
+		private final Setter setter;
+		private final Object fallback;
+
+		CommandDefinition(Setter setter, Object fallback) {
+			this.setter = setter;
+			this.fallback = fallback;
+		}
+	}
 }
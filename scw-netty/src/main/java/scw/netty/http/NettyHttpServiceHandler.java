@@ -0,0 +1,77 @@
+package scw.netty.http;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.DecoderResult;
+import io.netty.handler.codec.http.FullHttpRequest;
+import scw.http.HttpStatus;
+import scw.logger.Logger;
+import scw.logger.LoggerFactory;
+import scw.web.HttpService;
+
+/**
+ * 在io线程中完成解码, 在worker线程中执行{@link HttpService}
+ *
+ * @author shuchaowen
+ *
+ */
+@Sharable
+public class NettyHttpServiceHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
+	private static Logger logger = LoggerFactory.getLogger(NettyHttpServiceHandler.class);
+	private final HttpService httpService;
+	private final Executor executor;
+	private final String contextPath;
+	private final String charsetName;
+
+	public NettyHttpServiceHandler(HttpService httpService, Executor executor, String contextPath,
+			String charsetName) {
+		// 请求的释放由response负责
+		super(false);
+		this.httpService = httpService;
+		this.executor = executor;
+		this.contextPath = contextPath;
+		this.charsetName = charsetName;
+	}
+
+	@Override
+	protected void channelRead0(ChannelHandlerContext ctx, FullHttpRequest msg) throws Exception {
+		NettyServerHttpRequest request = new NettyServerHttpRequest(ctx, msg, contextPath, charsetName);
+		NettyServerHttpResponse response = new NettyServerHttpResponse(ctx, msg, charsetName);
+		DecoderResult decoderResult = msg.decoderResult();
+		if (decoderResult.isFailure()) {
+			response.sendError(HttpStatus.BAD_REQUEST.value(), HttpStatus.BAD_REQUEST.getReasonPhrase());
+			return;
+		}
+
+		try {
+			executor.execute(() -> service(request, response));
+		} catch (RejectedExecutionException e) {
+			logger.warn("Too many requests, reject {}", request);
+			response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value(), HttpStatus.SERVICE_UNAVAILABLE.getReasonPhrase());
+		}
+	}
+
+	protected void service(NettyServerHttpRequest request, NettyServerHttpResponse response) {
+		try {
+			httpService.service(request, response);
+		} catch (Throwable e) {
+			logger.error(e, "service error: {}", request);
+			try {
+				response.sendError(HttpStatus.INTERNAL_SERVER_ERROR.value(),
+						HttpStatus.INTERNAL_SERVER_ERROR.getReasonPhrase());
+			} catch (Throwable e1) {
+				logger.error(e1, "send error response error: {}", request);
+			}
+		}
+	}
+
+	@Override
+	public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+		logger.error(cause, "channel error: {}", ctx.channel());
+		ctx.close();
+	}
+}
@@ -0,0 +1,112 @@
+package scw.netty.http;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.HttpServerExpectContinueHandler;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import scw.beans.BeanFactory;
+import scw.boot.ConfigurableApplication;
+import scw.boot.Main;
+import scw.boot.support.ApplicationUtils;
+import scw.context.Destroy;
+import scw.env.Environment;
+import scw.env.MainArgs;
+import scw.logger.Logger;
+import scw.logger.LoggerFactory;
+import scw.web.HttpService;
+import scw.web.support.DefaultHttpService;
+
+/**
+ * 使用netty启动,不依赖servlet
+ *
+ * @author shuchaowen
+ *
+ */
+public class NettyHttpStart implements Main, Destroy {
+	private static Logger logger = LoggerFactory.getLogger(NettyHttpStart.class);
+	private EventLoopGroup bossGroup;
+	private EventLoopGroup ioGroup;
+	private ThreadPoolExecutor workerExecutor;
+	private Channel channel;
+
+	protected HttpService createHttpService(BeanFactory beanFactory) {
+		return new DefaultHttpService(beanFactory);
+	}
+
+	protected ThreadPoolExecutor createWorkerExecutor(Environment environment) {
+		int workerThreads = NettyHttpUtils.getWorkerThreads(environment);
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(workerThreads, workerThreads, 60, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(NettyHttpUtils.getWorkerQueueSize(environment)),
+				new DefaultThreadFactory("netty-http-worker"));
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	protected void configurePipeline(ChannelPipeline pipeline, NettyHttpServiceHandler handler,
+			Environment environment) {
+		pipeline.addLast(new HttpServerCodec());
+		pipeline.addLast(new HttpServerExpectContinueHandler());
+		pipeline.addLast(new HttpObjectAggregator(NettyHttpUtils.getMaxContentLength(environment)));
+		pipeline.addLast(handler);
+	}
+
+	public void main(ConfigurableApplication application, Class<?> mainClass, MainArgs args) throws Throwable {
+		Environment environment = application.getEnvironment();
+		int port = ApplicationUtils.getApplicationPort(application);
+		logger.info("The boot port is {}", port);
+
+		this.workerExecutor = createWorkerExecutor(environment);
+		NettyHttpServiceHandler handler = new NettyHttpServiceHandler(
+				createHttpService(application.getBeanFactory()), workerExecutor,
+				NettyHttpUtils.getContextPath(environment), environment.getCharsetName());
+
+		this.bossGroup = new NioEventLoopGroup(NettyHttpUtils.getBossThreads(environment),
+				new DefaultThreadFactory("netty-http-boss"));
+		this.ioGroup = new NioEventLoopGroup(NettyHttpUtils.getIoThreads(environment),
+				new DefaultThreadFactory("netty-http-io"));
+		ServerBootstrap bootstrap = new ServerBootstrap();
+		bootstrap.group(bossGroup, ioGroup).channel(NioServerSocketChannel.class)
+				.option(ChannelOption.SO_BACKLOG, 1024).childOption(ChannelOption.TCP_NODELAY, true)
+				.childOption(ChannelOption.SO_KEEPALIVE, true).childHandler(new ChannelInitializer<SocketChannel>() {
+
+					@Override
+					protected void initChannel(SocketChannel ch) throws Exception {
+						configurePipeline(ch.pipeline(), handler, environment);
+					}
+				});
+		this.channel = bootstrap.bind(port).sync().channel();
+	}
+
+	public void destroy() throws Throwable {
+		try {
+			if (channel != null) {
+				channel.close().syncUninterruptibly();
+			}
+		} finally {
+			if (bossGroup != null) {
+				bossGroup.shutdownGracefully();
+			}
+
+			if (ioGroup != null) {
+				ioGroup.shutdownGracefully();
+			}
+
+			if (workerExecutor != null) {
+				workerExecutor.shutdown();
+			}
+		}
+	}
+}
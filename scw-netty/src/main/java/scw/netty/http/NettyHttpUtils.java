@@ -0,0 +1,69 @@
+package scw.netty.http;
+
+import scw.core.utils.StringUtils;
+import scw.env.Environment;
+
+public final class NettyHttpUtils {
+	private NettyHttpUtils() {
+	};
+
+	private static String getProperty(Environment environment, String name) {
+		return environment.getString("netty.http." + name);
+	}
+
+	public static String getContextPath(Environment environment) {
+		String contextPath = getProperty(environment, "contextPath");
+		return StringUtils.isEmpty(contextPath) ? "" : contextPath;
+	}
+
+	/**
+	 * 接收连接的线程数量
+	 *
+	 * @param environment
+	 * @return
+	 */
+	public static int getBossThreads(Environment environment) {
+		return environment.getValue("netty.http.bossThreads", int.class, 1);
+	}
+
+	/**
+	 * 处理网络读写的线程数量，0表示使用netty的默认值(cpu*2)
+	 *
+	 * @param environment
+	 * @return
+	 */
+	public static int getIoThreads(Environment environment) {
+		return environment.getValue("netty.http.ioThreads", int.class, 0);
+	}
+
+	/**
+	 * 执行{@link scw.web.HttpService}的线程数量，业务代码可能会阻塞，所以不在io线程中执行
+	 *
+	 * @param environment
+	 * @return
+	 */
+	public static int getWorkerThreads(Environment environment) {
+		return environment.getValue("netty.http.workerThreads", int.class,
+				Math.max(8, Runtime.getRuntime().availableProcessors() * 8));
+	}
+
+	/**
+	 * 等待执行的请求队列大小，超出后直接响应503
+	 *
+	 * @param environment
+	 * @return
+	 */
+	public static int getWorkerQueueSize(Environment environment) {
+		return environment.getValue("netty.http.workerQueueSize", int.class, 1024);
+	}
+
+	/**
+	 * 请求内容的最大长度,默认10M
+	 *
+	 * @param environment
+	 * @return
+	 */
+	public static int getMaxContentLength(Environment environment) {
+		return environment.getValue("netty.http.maxContentLength", int.class, 10 * 1024 * 1024);
+	}
+}
@@ -0,0 +1,115 @@
+package scw.netty.http;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import io.netty.channel.ChannelHandlerContext;
+import scw.core.Assert;
+import scw.http.HttpStatus;
+import scw.logger.Logger;
+import scw.logger.LoggerFactory;
+import scw.web.ServerHttpAsyncControl;
+import scw.web.ServerHttpAsyncEvent;
+import scw.web.ServerHttpAsyncListener;
+
+/**
+ * netty本身就是异步的，所以这里只需要延迟发送响应即可
+ *
+ * @author shuchaowen
+ *
+ */
+public class NettyServerHttpAsyncControl implements ServerHttpAsyncControl {
+	private static Logger logger = LoggerFactory.getLogger(NettyServerHttpAsyncControl.class);
+	private static final long NO_TIMEOUT_VALUE = Long.MIN_VALUE;
+	private final ChannelHandlerContext context;
+	private final NettyServerHttpResponse response;
+	private final List<ServerHttpAsyncListener> listeners = new CopyOnWriteArrayList<ServerHttpAsyncListener>();
+	private final AtomicBoolean started = new AtomicBoolean(false);
+	private final AtomicBoolean completed = new AtomicBoolean(false);
+	private volatile ScheduledFuture<?> timeoutFuture;
+
+	public NettyServerHttpAsyncControl(ChannelHandlerContext context, NettyServerHttpResponse response) {
+		this.context = context;
+		this.response = response;
+	}
+
+	public void start() {
+		start(NO_TIMEOUT_VALUE);
+	}
+
+	public void start(long timeout) {
+		Assert.state(!isCompleted(), "Async processing has already completed");
+		if (!started.compareAndSet(false, true)) {
+			return;
+		}
+
+		if (timeout != NO_TIMEOUT_VALUE && timeout > 0) {
+			this.timeoutFuture = context.executor().schedule(() -> onTimeout(), timeout, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	public boolean isStarted() {
+		return started.get() && !isCompleted();
+	}
+
+	public void complete() {
+		if (!started.get() || !completed.compareAndSet(false, true)) {
+			return;
+		}
+
+		ScheduledFuture<?> timeoutFuture = this.timeoutFuture;
+		if (timeoutFuture != null) {
+			timeoutFuture.cancel(false);
+		}
+
+		ServerHttpAsyncEvent event = new ServerHttpAsyncEvent(this, null);
+		for (ServerHttpAsyncListener listener : listeners) {
+			try {
+				listener.onComplete(event);
+			} catch (IOException e) {
+				logger.error(e, "async complete listener error");
+			}
+		}
+
+		try {
+			response.close();
+		} catch (IOException e) {
+			logger.error(e, "close response error");
+		}
+	}
+
+	private void onTimeout() {
+		if (isCompleted()) {
+			return;
+		}
+
+		ServerHttpAsyncEvent event = new ServerHttpAsyncEvent(this, null);
+		for (ServerHttpAsyncListener listener : listeners) {
+			try {
+				listener.onTimeout(event);
+			} catch (IOException e) {
+				logger.error(e, "async timeout listener error");
+			}
+		}
+
+		// 监听器没有处理超时
+		if (!isCompleted()) {
+			if (!response.isCommitted()) {
+				response.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+			}
+			complete();
+		}
+	}
+
+	public boolean isCompleted() {
+		return completed.get();
+	}
+
+	public void addListener(ServerHttpAsyncListener serverHttpAsyncListener) {
+		listeners.add(serverHttpAsyncListener);
+	}
+}
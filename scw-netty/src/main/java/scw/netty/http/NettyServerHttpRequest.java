@@ -0,0 +1,293 @@
+package scw.netty.http;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.security.Principal;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.QueryStringDecoder;
+import io.netty.handler.codec.http.cookie.Cookie;
+import io.netty.handler.codec.http.cookie.ServerCookieDecoder;
+import scw.core.utils.CollectionUtils;
+import scw.core.utils.StringUtils;
+import scw.http.HttpCookie;
+import scw.http.HttpHeaders;
+import scw.http.HttpMethod;
+import scw.http.MediaType;
+import scw.net.uri.UriUtils;
+import scw.security.session.Session;
+import scw.util.Decorator;
+import scw.util.LinkedMultiValueMap;
+import scw.util.MultiValueMap;
+import scw.util.XUtils;
+import scw.web.ServerHttpAsyncControl;
+import scw.web.ServerHttpRequest;
+import scw.web.ServerHttpResponse;
+
+/**
+ * 直接基于{@link FullHttpRequest}的实现,请求体不会被复制
+ *
+ * @author shuchaowen
+ *
+ */
+public class NettyServerHttpRequest implements ServerHttpRequest, Decorator {
+	private final ChannelHandlerContext context;
+	private final FullHttpRequest request;
+	private final String contextPath;
+	private final String charsetName;
+	private final QueryStringDecoder queryStringDecoder;
+	private HttpHeaders headers;
+	private MultiValueMap<String, String> parameterMap;
+	private Map<String, Object> attributeMap;
+	private NettyServerHttpAsyncControl asyncControl;
+
+	public NettyServerHttpRequest(ChannelHandlerContext context, FullHttpRequest request, String contextPath,
+			String charsetName) {
+		this.context = context;
+		this.request = request;
+		this.contextPath = contextPath;
+		this.charsetName = charsetName;
+		this.queryStringDecoder = new QueryStringDecoder(request.uri(), Charset.forName(charsetName));
+	}
+
+	public FullHttpRequest getFullHttpRequest() {
+		return request;
+	}
+
+	public ChannelHandlerContext getChannelHandlerContext() {
+		return context;
+	}
+
+	public <T> T getDelegate(Class<T> targetType) {
+		return XUtils.getDelegate(request, targetType);
+	}
+
+	public String getPath() {
+		String path = queryStringDecoder.path();
+		if (StringUtils.isNotEmpty(contextPath)) {
+			int length = contextPath.endsWith("/") ? contextPath.length() - 1 : contextPath.length();
+			// 只在路径边界处去掉contextPath，例如/app不能匹配/application
+			if (path.regionMatches(0, contextPath, 0, length)
+					&& (path.length() == length || path.charAt(length) == '/')) {
+				path = path.substring(length);
+			}
+		}
+		return StringUtils.isEmpty(path) ? "/" : path;
+	}
+
+	public String getContextPath() {
+		return contextPath;
+	}
+
+	public String getRawMethod() {
+		return request.method().name();
+	}
+
+	public HttpMethod getMethod() {
+		return HttpMethod.resolve(getRawMethod());
+	}
+
+	public URI getURI() {
+		return UriUtils.toUri(queryStringDecoder.rawPath());
+	}
+
+	public HttpHeaders getHeaders() {
+		if (headers == null) {
+			HttpHeaders headers = new HttpHeaders();
+			for (Entry<String, String> entry : request.headers()) {
+				headers.add(entry.getKey(), entry.getValue());
+			}
+
+			MediaType contentType = headers.getContentType();
+			if (contentType != null && contentType.getCharset() == null) {
+				headers.setContentType(new MediaType(contentType, charsetName));
+			}
+
+			if (headers.getContentLength() < 0) {
+				headers.setContentLength(request.content().readableBytes());
+			}
+			this.headers = headers;
+		}
+		return headers;
+	}
+
+	@Override
+	public long getContentLength() {
+		return request.content().readableBytes();
+	}
+
+	@Override
+	public String getCharacterEncoding() {
+		String charsetName = ServerHttpRequest.super.getCharacterEncoding();
+		return charsetName == null ? this.charsetName : charsetName;
+	}
+
+	public InputStream getInputStream() throws IOException {
+		// 使用duplicate保证可以多次读取
+		return new ByteBufInputStream(request.content().duplicate());
+	}
+
+	public BufferedReader getReader() throws IOException {
+		return new BufferedReader(new InputStreamReader(getInputStream(), getCharacterEncoding()));
+	}
+
+	public HttpCookie[] getCookies() {
+		String value = request.headers().get(HttpHeaderNames.COOKIE);
+		if (value == null) {
+			return new HttpCookie[0];
+		}
+
+		Set<Cookie> cookies = ServerCookieDecoder.LAX.decode(value);
+		HttpCookie[] values = new HttpCookie[cookies.size()];
+		int index = 0;
+		for (Cookie cookie : cookies) {
+			values[index++] = new HttpCookie(cookie.name(), cookie.value()).setDomain(cookie.domain())
+					.setPath(cookie.path()).setSecure(cookie.isSecure()).readyOnly();
+		}
+		return values;
+	}
+
+	/**
+	 * netty不提供会话管理
+	 */
+	public Session getSession() {
+		return null;
+	}
+
+	/**
+	 * netty不提供会话管理
+	 */
+	public Session getSession(boolean create) {
+		return null;
+	}
+
+	public Principal getPrincipal() {
+		return null;
+	}
+
+	public InetSocketAddress getLocalAddress() {
+		return toInetSocketAddress(context.channel().localAddress());
+	}
+
+	public InetSocketAddress getRemoteAddress() {
+		return toInetSocketAddress(context.channel().remoteAddress());
+	}
+
+	private static InetSocketAddress toInetSocketAddress(SocketAddress address) {
+		return address instanceof InetSocketAddress ? (InetSocketAddress) address : null;
+	}
+
+	public String getIp() {
+		String ip = getHeaders().getIp();
+		if (ip == null) {
+			InetSocketAddress address = getRemoteAddress();
+			if (address != null) {
+				ip = address.getAddress() == null ? address.getHostString() : address.getAddress().getHostAddress();
+			}
+		}
+		return ip;
+	}
+
+	public MultiValueMap<String, String> getParameterMap() {
+		if (parameterMap == null) {
+			MultiValueMap<String, String> map = new LinkedMultiValueMap<String, String>();
+			appendParameters(map, queryStringDecoder.parameters());
+			if (getHeaders().isFormContentType() && request.content().isReadable()) {
+				Charset charset = Charset.forName(getCharacterEncoding());
+				QueryStringDecoder bodyDecoder = new QueryStringDecoder(request.content().toString(charset), charset,
+						false);
+				appendParameters(map, bodyDecoder.parameters());
+			}
+			this.parameterMap = map.isEmpty() ? CollectionUtils.emptyMultiValueMap()
+					: CollectionUtils.unmodifiableMultiValueMap(map);
+		}
+		return parameterMap;
+	}
+
+	private static void appendParameters(MultiValueMap<String, String> target, Map<String, List<String>> parameters) {
+		for (Entry<String, List<String>> entry : parameters.entrySet()) {
+			for (String value : entry.getValue()) {
+				target.add(entry.getKey(), value);
+			}
+		}
+	}
+
+	public Object getAttribute(String name) {
+		return attributeMap == null ? null : attributeMap.get(name);
+	}
+
+	public Enumeration<String> getAttributeNames() {
+		if (attributeMap == null) {
+			return Collections.emptyEnumeration();
+		}
+		return Collections.enumeration(attributeMap.keySet());
+	}
+
+	public void setAttribute(String name, Object o) {
+		if (o == null) {
+			removeAttribute(name);
+			return;
+		}
+
+		if (attributeMap == null) {
+			attributeMap = new LinkedHashMap<String, Object>(8);
+		}
+		attributeMap.put(name, o);
+	}
+
+	public void removeAttribute(String name) {
+		if (attributeMap != null) {
+			attributeMap.remove(name);
+		}
+	}
+
+	public boolean isSupportAsyncControl() {
+		return true;
+	}
+
+	public ServerHttpAsyncControl getAsyncControl(ServerHttpResponse response) {
+		if (asyncControl == null) {
+			if (response instanceof NettyServerHttpResponse) {
+				this.asyncControl = new NettyServerHttpAsyncControl(context, (NettyServerHttpResponse) response);
+			} else {
+				throw new IllegalArgumentException("Response must be a NettyServerHttpResponse: " + response.getClass());
+			}
+		}
+		return asyncControl;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(getRawMethod());
+		sb.append(" ").append(getPath());
+		sb.append(" ").append(request.protocolVersion());
+
+		String contentType = request.headers().get(HttpHeaderNames.CONTENT_TYPE);
+		if (StringUtils.isNotEmpty(contentType)) {
+			sb.append(" ").append(contentType);
+		}
+
+		MultiValueMap<String, String> parameters = getParameterMap();
+		if (!CollectionUtils.isEmpty(parameters)) {
+			sb.append(" parameters->").append(parameters);
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,247 @@
+package scw.netty.http;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.URI;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.DefaultFileRegion;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.handler.codec.http.cookie.DefaultCookie;
+import io.netty.handler.codec.http.cookie.ServerCookieEncoder;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.util.ReferenceCountUtil;
+import scw.http.HttpCookie;
+import scw.http.HttpHeaders;
+import scw.http.HttpStatus;
+import scw.http.MediaType;
+import scw.web.SendfileServerHttpResponse;
+
+/**
+ * 响应内容会写入一个池化的{@link ByteBuf}, 在{@link #close()}时一次性发送<br/>
+ * 使用{@link #sendfile(File, long, long)}时在{@link #close()}时使用{@link DefaultFileRegion}发送文件(零拷贝)
+ *
+ * @author shuchaowen
+ *
+ */
+public class NettyServerHttpResponse implements SendfileServerHttpResponse {
+	private final ChannelHandlerContext context;
+	private final FullHttpRequest request;
+	private final String charsetName;
+	private final HttpHeaders headers = new HttpHeaders();
+	private final AtomicBoolean committed = new AtomicBoolean(false);
+	private int status = HttpStatus.OK.value();
+	private ByteBuf content;
+	private ByteBufOutputStream outputStream;
+	private PrintWriter writer;
+	private File file;
+	private long filePosition;
+	private long fileCount;
+
+	public NettyServerHttpResponse(ChannelHandlerContext context, FullHttpRequest request, String charsetName) {
+		this.context = context;
+		this.request = request;
+		this.charsetName = charsetName;
+	}
+
+	public HttpHeaders getHeaders() {
+		return headers;
+	}
+
+	@Override
+	public String getCharacterEncoding() {
+		String charsetName = SendfileServerHttpResponse.super.getCharacterEncoding();
+		return charsetName == null ? this.charsetName : charsetName;
+	}
+
+	private ByteBuf getContent() {
+		if (content == null) {
+			content = context.alloc().buffer();
+		}
+		return content;
+	}
+
+	public OutputStream getOutputStream() throws IOException {
+		if (outputStream == null) {
+			outputStream = new ByteBufOutputStream(getContent());
+		}
+		return outputStream;
+	}
+
+	/**
+	 * 使用SSL时无法零拷贝，返回false
+	 */
+	public boolean sendfile(File file, long position, long count) throws IOException {
+		if (isCommitted() || context.pipeline().get(SslHandler.class) != null) {
+			return false;
+		}
+
+		resetBuffer();
+		this.file = file;
+		this.filePosition = position;
+		this.fileCount = count;
+		return true;
+	}
+
+	public PrintWriter getWriter() throws IOException {
+		if (writer == null) {
+			writer = new PrintWriter(new OutputStreamWriter(getOutputStream(), getCharacterEncoding()));
+		}
+		return writer;
+	}
+
+	public void addCookie(HttpCookie cookie) {
+		DefaultCookie c = new DefaultCookie(cookie.getName(), cookie.getValue());
+		if (cookie.getMaxAge() >= 0) {
+			c.setMaxAge(cookie.getMaxAge());
+		}
+
+		if (cookie.getPath() != null) {
+			c.setPath(cookie.getPath());
+		}
+
+		if (cookie.getDomain() != null) {
+			c.setDomain(cookie.getDomain());
+		}
+		c.setSecure(cookie.isSecure());
+		headers.add(HttpHeaders.SET_COOKIE, ServerCookieEncoder.LAX.encode(c));
+	}
+
+	public void addCookie(String name, String value) {
+		headers.add(HttpHeaders.SET_COOKIE, ServerCookieEncoder.LAX.encode(name, value));
+	}
+
+	public void sendError(int sc) throws IOException {
+		sendError(sc, null);
+	}
+
+	public void sendError(int sc, String msg) throws IOException {
+		if (isCommitted()) {
+			return;
+		}
+
+		resetBuffer();
+		setStatus(sc);
+		if (msg != null) {
+			setContentType(new MediaType(MediaType.TEXT_PLAIN, getCharacterEncoding()));
+			getWriter().write(msg);
+		}
+		close();
+	}
+
+	public void sendRedirect(String location) throws IOException {
+		if (isCommitted()) {
+			return;
+		}
+
+		resetBuffer();
+		setStatus(HttpStatus.FOUND.value());
+		headers.setLocation(URI.create(location));
+		close();
+	}
+
+	private void resetBuffer() {
+		file = null;
+		writer = null;
+		outputStream = null;
+		if (content != null) {
+			content.clear();
+		}
+	}
+
+	public void setStatusCode(HttpStatus httpStatus) {
+		setStatus(httpStatus.value());
+	}
+
+	public void setStatus(int sc) {
+		this.status = sc;
+	}
+
+	public int getStatus() {
+		return status;
+	}
+
+	public boolean isCommitted() {
+		return committed.get();
+	}
+
+	/**
+	 * 只会刷新到缓冲区,真正的发送是在{@link #close()}
+	 */
+	public void flush() throws IOException {
+		if (writer != null) {
+			writer.flush();
+		}
+	}
+
+	public void close() throws IOException {
+		if (!committed.compareAndSet(false, true)) {
+			return;
+		}
+
+		try {
+			flush();
+		} finally {
+			ReferenceCountUtil.release(request);
+		}
+
+		HttpResponse response;
+		long contentLength;
+		if (file == null) {
+			ByteBuf body = content == null ? Unpooled.EMPTY_BUFFER : content;
+			response = new DefaultFullHttpResponse(request.protocolVersion(), HttpResponseStatus.valueOf(status), body);
+			contentLength = body.readableBytes();
+		} else {
+			if (content != null) {
+				content.release();
+			}
+			response = new DefaultHttpResponse(request.protocolVersion(), HttpResponseStatus.valueOf(status));
+			contentLength = fileCount;
+		}
+
+		for (Entry<String, List<String>> entry : headers.entrySet()) {
+			response.headers().add(entry.getKey(), entry.getValue());
+		}
+		response.headers().set(HttpHeaderNames.CONTENT_LENGTH, contentLength);
+
+		boolean keepAlive = HttpUtil.isKeepAlive(request);
+		if (keepAlive) {
+			if (!request.protocolVersion().isKeepAliveDefault()) {
+				response.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.KEEP_ALIVE);
+			}
+		} else {
+			response.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.CLOSE);
+		}
+
+		ChannelFuture future;
+		if (file == null) {
+			future = context.writeAndFlush(response);
+		} else {
+			context.write(response);
+			context.write(new DefaultFileRegion(file, filePosition, fileCount));
+			future = context.writeAndFlush(LastHttpContent.EMPTY_LAST_CONTENT);
+		}
+		if (!keepAlive) {
+			future.addListener(ChannelFutureListener.CLOSE);
+		}
+	}
+}
@@ -1,5 +1,6 @@
 /**
- * TODO 还未开始
+ * netty的相关实现
+ * 
  * @author shuchaowen
  *
  */
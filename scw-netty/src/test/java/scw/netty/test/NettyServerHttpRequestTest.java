@@ -0,0 +1,35 @@
+package scw.netty.test;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpVersion;
+import scw.netty.http.NettyServerHttpRequest;
+
+public class NettyServerHttpRequestTest {
+
+	@Test
+	public void contextPath() {
+		assertEquals("/", getPath("/app", "/app"));
+		assertEquals("/", getPath("/app", "/app/"));
+		assertEquals("/a/b", getPath("/app", "/app/a/b?c=d"));
+		// 不在路径边界上时不能去掉contextPath
+		assertEquals("/application", getPath("/app", "/application"));
+		assertEquals("/appx/a", getPath("/app", "/appx/a"));
+		assertEquals("/a", getPath("/app/", "/app/a"));
+		assertEquals("/a", getPath("/", "/a"));
+		assertEquals("/a", getPath("", "/a"));
+	}
+
+	private static String getPath(String contextPath, String uri) {
+		DefaultFullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, uri);
+		try {
+			return new NettyServerHttpRequest(null, request, contextPath, "UTF-8").getPath();
+		} finally {
+			request.release();
+		}
+	}
+}
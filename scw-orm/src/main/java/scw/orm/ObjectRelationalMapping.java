@@ -82,6 +82,11 @@ public interface ObjectRelationalMapping {
 
 	boolean isVersionField(FieldDescriptor fieldDescriptor);
 
+	default boolean isVersionField(Field field) {
+		return (field.isSupportGetter() && isVersionField(field.getGetter()))
+				|| (field.isSupportSetter() && isVersionField(field.getSetter()));
+	}
+
 	default Accept<Field> getEntityAccept() {
 		return new Accept<Field>() {
 
@@ -123,4 +128,21 @@ public interface ObjectRelationalMapping {
 	default Fields getNotPrimaryKeys(Class<?> clazz) {
 		return getFields(clazz).accept(getPrimaryKeyAccept().negate());
 	}
+
+	/**
+	 * 版本号字段
+	 * 
+	 * @see scw.orm.annotation.Version
+	 * @param clazz
+	 * @return
+	 */
+	default Fields getVersionFields(Class<?> clazz) {
+		return getFields(clazz).accept(new Accept<Field>() {
+
+			@Override
+			public boolean accept(Field field) {
+				return isVersionField(field);
+			}
+		});
+	}
 }
@@ -0,0 +1,46 @@
+package scw.orm.cache;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 实体的缓存配置，时间单位都为秒，小于0表示使用{@link DefaultCacheManager}的默认值
+ * 
+ * @author shuchaowen
+ *
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+@Inherited
+public @interface CacheConfig {
+	/**
+	 * 是否缓存此实体
+	 * 
+	 * @return
+	 */
+	boolean enable() default true;
+
+	/**
+	 * 远程缓存的过期时间，0表示不过期
+	 * 
+	 * @return
+	 */
+	int exp() default -1;
+
+	/**
+	 * 本地缓存的过期时间，0表示不使用本地缓存
+	 * 
+	 * @return
+	 */
+	int nearExp() default -1;
+
+	/**
+	 * 不存在的数据的缓存时间，0表示不缓存不存在的数据
+	 * 
+	 * @return
+	 */
+	int notFoundExp() default -1;
+}
@@ -0,0 +1,35 @@
+package scw.orm.cache;
+
+import java.util.Collection;
+
+import scw.event.BasicEvent;
+
+/**
+ * 缓存失效事件，用于通知其他节点清除本地缓存
+ * 
+ * @author shuchaowen
+ *
+ */
+public class CacheInvalidationEvent extends BasicEvent {
+	private static final long serialVersionUID = 1L;
+	private final String source;
+	private final Collection<String> keys;
+
+	public CacheInvalidationEvent(String source, Collection<String> keys) {
+		this.source = source;
+		this.keys = keys;
+	}
+
+	/**
+	 * 发出事件的节点
+	 * 
+	 * @return
+	 */
+	public String getSource() {
+		return source;
+	}
+
+	public Collection<String> getKeys() {
+		return keys;
+	}
+}
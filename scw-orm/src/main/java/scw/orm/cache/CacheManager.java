@@ -1,5 +1,9 @@
 package scw.orm.cache;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+
 import scw.orm.EntityOperations;
 
 public interface CacheManager extends EntityOperations {
@@ -11,4 +15,36 @@ public interface CacheManager extends EntityOperations {
 	 * @return
 	 */
 	boolean isKeepLooking(Class<?> entityClass, Object... ids);
+
+	/**
+	 * 批量从缓存中获取，只返回缓存中存在的数据
+	 * 
+	 * @param entityClass
+	 * @param inPrimaryKeys
+	 * @param primaryKeys
+	 * @return
+	 */
+	default <K, V> Map<K, V> getInIds(Class<? extends V> entityClass, Collection<? extends K> inPrimaryKeys,
+			Object... primaryKeys) {
+		return Collections.emptyMap();
+	}
+
+	/**
+	 * 从数据库中加载了数据后回调，用于填充缓存
+	 * 
+	 * @param entityClass
+	 * @param entity
+	 */
+	default <T> void loaded(Class<? extends T> entityClass, T entity) {
+		save(entityClass, entity);
+	}
+
+	/**
+	 * 数据库中也不存在此数据时回调，可用于缓存不存在的结果
+	 * 
+	 * @param entityClass
+	 * @param ids
+	 */
+	default void notFound(Class<?> entityClass, Object... ids) {
+	}
 }
@@ -0,0 +1,518 @@
+package scw.orm.cache;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import scw.core.Assert;
+import scw.core.LRULinkedHashMap;
+import scw.data.DataOperations;
+import scw.event.EventDispatcher;
+import scw.event.EventListener;
+import scw.lang.Nullable;
+import scw.logger.Logger;
+import scw.logger.LoggerFactory;
+import scw.mapper.Copy;
+import scw.orm.ObjectKeyFormat;
+import scw.util.XUtils;
+
+/**
+ * 二级缓存<br/>
+ * 一级为本地的LRU缓存，二级为远程缓存(redis/memcached)，都可以缓存不存在的数据<br/>
+ * 数据发生变更时清除两级缓存，并通过{@link EventDispatcher}通知其他节点清除本地缓存<br/>
+ * 可以在实体上使用{@link CacheConfig}单独配置
+ *
+ * @author shuchaowen
+ *
+ */
+public class DefaultCacheManager implements CacheManager, EventListener<CacheInvalidationEvent> {
+	private static Logger logger = LoggerFactory.getLogger(DefaultCacheManager.class);
+	private static final int SEGMENTS = 16;
+
+	private final String id = XUtils.getUUID();
+	private final ObjectKeyFormat objectKeyFormat;
+	private final DataOperations dataOperations;
+	private final EventDispatcher<CacheInvalidationEvent> eventDispatcher;
+	private final NearCache[] nearCaches;
+	private final ConcurrentMap<Class<?>, EntityCacheConfig> configMap = new ConcurrentHashMap<Class<?>, EntityCacheConfig>();
+	private String keyPrefix = "orm:";
+	private int exp = 86400;
+	private int nearExp = 60;
+	private int notFoundExp = 30;
+	private boolean copyOnRead = true;
+
+	public DefaultCacheManager(ObjectKeyFormat objectKeyFormat, @Nullable DataOperations dataOperations) {
+		this(objectKeyFormat, dataOperations, null, 10000);
+	}
+
+	/**
+	 * @param objectKeyFormat
+	 * @param dataOperations  远程缓存，为空时只使用本地缓存
+	 * @param eventDispatcher 用于节点间同步失效的事件，为空时不通知其他节点
+	 * @param nearMaxSize     本地缓存的最大数量，小于等于0表示不使用本地缓存
+	 */
+	public DefaultCacheManager(ObjectKeyFormat objectKeyFormat, @Nullable DataOperations dataOperations,
+			@Nullable EventDispatcher<CacheInvalidationEvent> eventDispatcher, int nearMaxSize) {
+		Assert.requiredArgument(objectKeyFormat != null, "objectKeyFormat");
+		this.objectKeyFormat = objectKeyFormat;
+		this.dataOperations = dataOperations;
+		this.eventDispatcher = eventDispatcher;
+		if (nearMaxSize > 0) {
+			int segmentSize = Math.max(1, nearMaxSize / SEGMENTS);
+			this.nearCaches = new NearCache[SEGMENTS];
+			for (int i = 0; i < SEGMENTS; i++) {
+				nearCaches[i] = new NearCache(segmentSize);
+			}
+		} else {
+			this.nearCaches = null;
+		}
+
+		if (eventDispatcher != null) {
+			eventDispatcher.registerListener(this);
+		}
+	}
+
+	public String getKeyPrefix() {
+		return keyPrefix;
+	}
+
+	public void setKeyPrefix(String keyPrefix) {
+		this.keyPrefix = keyPrefix == null ? "" : keyPrefix;
+	}
+
+	public int getExp() {
+		return exp;
+	}
+
+	/**
+	 * 远程缓存的默认过期时间(秒)，0表示不过期
+	 *
+	 * @param exp
+	 */
+	public void setExp(int exp) {
+		this.exp = exp;
+		configMap.clear();
+	}
+
+	public int getNearExp() {
+		return nearExp;
+	}
+
+	/**
+	 * 本地缓存的默认过期时间(秒)，0表示不使用本地缓存
+	 *
+	 * @param nearExp
+	 */
+	public void setNearExp(int nearExp) {
+		this.nearExp = nearExp;
+		configMap.clear();
+	}
+
+	public int getNotFoundExp() {
+		return notFoundExp;
+	}
+
+	/**
+	 * 不存在的数据的默认缓存时间(秒)，0表示不缓存
+	 *
+	 * @param notFoundExp
+	 */
+	public void setNotFoundExp(int notFoundExp) {
+		this.notFoundExp = notFoundExp;
+		configMap.clear();
+	}
+
+	public boolean isCopyOnRead() {
+		return copyOnRead;
+	}
+
+	/**
+	 * 本地缓存是否复制(浅复制)后返回，关闭后调用方不能修改返回的对象
+	 *
+	 * @param copyOnRead
+	 */
+	public void setCopyOnRead(boolean copyOnRead) {
+		this.copyOnRead = copyOnRead;
+	}
+
+	public final ObjectKeyFormat getObjectKeyFormat() {
+		return objectKeyFormat;
+	}
+
+	@Nullable
+	public final DataOperations getDataOperations() {
+		return dataOperations;
+	}
+
+	protected EntityCacheConfig getConfig(Class<?> entityClass) {
+		Class<?> userClass = getUserClass(entityClass);
+		EntityCacheConfig config = configMap.get(userClass);
+		if (config == null) {
+			config = new EntityCacheConfig(userClass.getAnnotation(CacheConfig.class));
+			EntityCacheConfig old = configMap.putIfAbsent(userClass, config);
+			if (old != null) {
+				config = old;
+			}
+		}
+		return config;
+	}
+
+	protected String getKey(Class<?> entityClass, Object... ids) {
+		return keyPrefix + objectKeyFormat.getObjectKeyByIds(getUserClass(entityClass), Arrays.asList(ids));
+	}
+
+	protected <T> String getKey(Class<? extends T> entityClass, T entity) {
+		return keyPrefix + objectKeyFormat.getObjectKey(getUserClass(entityClass), entity);
+	}
+
+	@Override
+	public <T> boolean save(Class<? extends T> entityClass, T entity) {
+		EntityCacheConfig config = getConfig(entityClass);
+		if (!config.enable) {
+			return true;
+		}
+
+		String key = getKey(entityClass, entity);
+		put(config, key, entity);
+		// 其他节点可能缓存了不存在的结果
+		publish(Arrays.asList(key));
+		return true;
+	}
+
+	@Override
+	public <T> void loaded(Class<? extends T> entityClass, T entity) {
+		EntityCacheConfig config = getConfig(entityClass);
+		if (!config.enable) {
+			return;
+		}
+
+		put(config, getKey(entityClass, entity), entity);
+	}
+
+	@Override
+	public void notFound(Class<?> entityClass, Object... ids) {
+		EntityCacheConfig config = getConfig(entityClass);
+		if (!config.enable || config.notFoundExp <= 0) {
+			return;
+		}
+
+		String key = getKey(entityClass, ids);
+		if (config.nearExp > 0) {
+			putNear(key, NotFound.INSTANCE, Math.min(config.nearExp, config.notFoundExp));
+		}
+
+		if (dataOperations != null) {
+			dataOperations.set(key, config.notFoundExp, NotFound.INSTANCE);
+		}
+	}
+
+	@Override
+	public <T> boolean delete(Class<? extends T> entityClass, T entity) {
+		EntityCacheConfig config = getConfig(entityClass);
+		if (!config.enable) {
+			return true;
+		}
+
+		invalidate(getKey(entityClass, entity));
+		return true;
+	}
+
+	@Override
+	public boolean deleteById(Class<?> entityClass, Object... ids) {
+		EntityCacheConfig config = getConfig(entityClass);
+		if (!config.enable) {
+			return true;
+		}
+
+		invalidate(getKey(entityClass, ids));
+		return true;
+	}
+
+	@Override
+	public <T> boolean update(Class<? extends T> entityClass, T entity) {
+		return delete(entityClass, entity);
+	}
+
+	@Override
+	public <T> boolean saveOrUpdate(Class<? extends T> entityClass, T entity) {
+		return delete(entityClass, entity);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public <T> T getById(Class<? extends T> entityClass, Object... ids) {
+		EntityCacheConfig config = getConfig(entityClass);
+		if (!config.enable) {
+			return null;
+		}
+
+		String key = getKey(entityClass, ids);
+		Object value = getNear(key);
+		if (value == null && dataOperations != null) {
+			value = dataOperations.get(key);
+			if (value != null && config.nearExp > 0) {
+				putNear(key, value, value == NotFound.INSTANCE ? Math.min(config.nearExp, config.notFoundExp)
+						: config.nearExp);
+			}
+		}
+		return value == null || value == NotFound.INSTANCE ? null : (T) copy(value);
+	}
+
+	@Override
+	public boolean isKeepLooking(Class<?> entityClass, Object... ids) {
+		EntityCacheConfig config = getConfig(entityClass);
+		if (!config.enable || config.notFoundExp <= 0) {
+			return true;
+		}
+
+		String key = getKey(entityClass, ids);
+		Object value = getNear(key);
+		if (value == null && dataOperations != null) {
+			// 本地缓存中没有时再检查远程缓存，可能是其他节点写入的
+			value = dataOperations.get(key);
+			if (value == NotFound.INSTANCE && config.nearExp > 0) {
+				putNear(key, value, Math.min(config.nearExp, config.notFoundExp));
+			}
+		}
+		return value != NotFound.INSTANCE;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public <K, V> Map<K, V> getInIds(Class<? extends V> entityClass, Collection<? extends K> inPrimaryKeys,
+			Object... primaryKeys) {
+		EntityCacheConfig config = getConfig(entityClass);
+		if (!config.enable) {
+			return Collections.emptyMap();
+		}
+
+		Map<String, K> keyMap = objectKeyFormat.getInIdsKeyMap(getUserClass(entityClass), inPrimaryKeys,
+				primaryKeys);
+		if (keyMap.isEmpty()) {
+			return Collections.emptyMap();
+		}
+
+		Map<String, Object> valueMap = new LinkedHashMap<String, Object>(keyMap.size());
+		List<String> missKeys = null;
+		for (String objectKey : keyMap.keySet()) {
+			String key = keyPrefix + objectKey;
+			Object value = getNear(key);
+			if (value == null) {
+				if (missKeys == null) {
+					missKeys = new ArrayList<String>();
+				}
+				missKeys.add(key);
+			} else {
+				valueMap.put(key, value);
+			}
+		}
+
+		if (missKeys != null && dataOperations != null) {
+			Map<String, Object> remoteMap = dataOperations.get(missKeys);
+			if (remoteMap != null) {
+				for (Entry<String, Object> entry : remoteMap.entrySet()) {
+					Object value = entry.getValue();
+					if (value == null) {
+						continue;
+					}
+
+					valueMap.put(entry.getKey(), value);
+					if (config.nearExp > 0) {
+						putNear(entry.getKey(), value, value == NotFound.INSTANCE
+								? Math.min(config.nearExp, config.notFoundExp) : config.nearExp);
+					}
+				}
+			}
+		}
+
+		Map<K, V> map = new LinkedHashMap<K, V>(valueMap.size());
+		for (Entry<String, K> entry : keyMap.entrySet()) {
+			Object value = valueMap.get(keyPrefix + entry.getKey());
+			if (value != null && value != NotFound.INSTANCE) {
+				map.put(entry.getValue(), (V) copy(value));
+			}
+		}
+		return map;
+	}
+
+	/**
+	 * 收到其他节点的失效通知
+	 */
+	@Override
+	public void onEvent(CacheInvalidationEvent event) {
+		if (id.equals(event.getSource()) || event.getKeys() == null) {
+			return;
+		}
+
+		for (String key : event.getKeys()) {
+			removeNear(key);
+		}
+	}
+
+	/**
+	 * 清除所有的本地缓存
+	 */
+	public void clearNear() {
+		if (nearCaches == null) {
+			return;
+		}
+
+		for (NearCache nearCache : nearCaches) {
+			synchronized (nearCache) {
+				nearCache.clear();
+			}
+		}
+	}
+
+	protected void invalidate(String key) {
+		removeNear(key);
+		if (dataOperations != null) {
+			dataOperations.delete(key);
+		}
+		publish(Arrays.asList(key));
+	}
+
+	private void publish(Collection<String> keys) {
+		if (eventDispatcher == null) {
+			return;
+		}
+
+		try {
+			eventDispatcher.publishEvent(new CacheInvalidationEvent(id, keys));
+		} catch (Throwable e) {
+			logger.error(e, "publish cache invalidation error: {}", keys);
+		}
+	}
+
+	private void put(EntityCacheConfig config, String key, Object entity) {
+		if (config.nearExp > 0) {
+			putNear(key, copy(entity), config.nearExp);
+		}
+
+		if (dataOperations != null) {
+			if (config.exp > 0) {
+				dataOperations.set(key, config.exp, entity);
+			} else {
+				dataOperations.set(key, entity);
+			}
+		}
+	}
+
+	private Object copy(Object value) {
+		// 代理对象(如FieldSetterListen)复制为原始类型
+		return copyOnRead ? Copy.copy(getUserClass(value.getClass()), value) : value;
+	}
+
+	private NearCache getNearCache(String key) {
+		return nearCaches[(key.hashCode() & 0x7fffffff) % nearCaches.length];
+	}
+
+	private Object getNear(String key) {
+		if (nearCaches == null) {
+			return null;
+		}
+
+		NearCache nearCache = getNearCache(key);
+		synchronized (nearCache) {
+			NearEntry entry = nearCache.get(key);
+			if (entry == null) {
+				return null;
+			}
+
+			if (entry.expireTime < System.currentTimeMillis()) {
+				nearCache.remove(key);
+				return null;
+			}
+			return entry.value;
+		}
+	}
+
+	private void putNear(String key, Object value, int exp) {
+		if (nearCaches == null) {
+			return;
+		}
+
+		NearEntry entry = new NearEntry(value, System.currentTimeMillis() + exp * 1000L);
+		NearCache nearCache = getNearCache(key);
+		synchronized (nearCache) {
+			nearCache.put(key, entry);
+		}
+	}
+
+	private void removeNear(String key) {
+		if (nearCaches == null) {
+			return;
+		}
+
+		NearCache nearCache = getNearCache(key);
+		synchronized (nearCache) {
+			nearCache.remove(key);
+		}
+	}
+
+	protected final class EntityCacheConfig {
+		private final boolean enable;
+		private final int exp;
+		private final int nearExp;
+		private final int notFoundExp;
+
+		EntityCacheConfig(@Nullable CacheConfig cacheConfig) {
+			this.enable = cacheConfig == null || cacheConfig.enable();
+			this.exp = (cacheConfig == null || cacheConfig.exp() < 0) ? DefaultCacheManager.this.exp
+					: cacheConfig.exp();
+			this.nearExp = (cacheConfig == null || cacheConfig.nearExp() < 0) ? DefaultCacheManager.this.nearExp
+					: cacheConfig.nearExp();
+			this.notFoundExp = (cacheConfig == null || cacheConfig.notFoundExp() < 0)
+					? DefaultCacheManager.this.notFoundExp : cacheConfig.notFoundExp();
+		}
+
+		public boolean isEnable() {
+			return enable;
+		}
+
+		public int getExp() {
+			return exp;
+		}
+
+		public int getNearExp() {
+			return nearExp;
+		}
+
+		public int getNotFoundExp() {
+			return notFoundExp;
+		}
+	}
+
+	private static final class NearEntry {
+		private final Object value;
+		private final long expireTime;
+
+		NearEntry(Object value, long expireTime) {
+			this.value = value;
+			this.expireTime = expireTime;
+		}
+	}
+
+	private static final class NearCache extends LRULinkedHashMap<String, NearEntry> {
+		private static final long serialVersionUID = 1L;
+
+		NearCache(int maxCapacity) {
+			super(maxCapacity, Math.min(maxCapacity, 256), 0.75f, true);
+		}
+	}
+
+	/**
+	 * 不存在的数据的标记
+	 */
+	private static enum NotFound implements Serializable {
+		INSTANCE
+	}
+}
@@ -8,6 +8,7 @@ import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
 
 import scw.convert.ConversionService;
 import scw.convert.TypeDescriptor;
@@ -19,6 +20,7 @@ import scw.mapper.FieldDescriptor;
 import scw.mapper.FieldFeature;
 import scw.mapper.Fields;
 import scw.orm.DefaultObjectRelationalMapping;
+import scw.util.ConcurrentReferenceHashMap;
 
 public abstract class AbstractSqlDialect extends DefaultObjectRelationalMapping implements SqlDialect {
 	protected static final String UPDATE_PREFIX = "update ";
@@ -36,6 +38,7 @@ public abstract class AbstractSqlDialect extends DefaultObjectRelationalMapping
 
 	private String escapeCharacter = "`";
 	private ConversionService conversionService;
+	private final ConcurrentReferenceHashMap<PreparedEntitySqlKey, PreparedEntitySql> preparedSqlCache = new ConcurrentReferenceHashMap<PreparedEntitySqlKey, PreparedEntitySql>();
 
 	public ConversionService getConversionService() {
 		return conversionService == null ? Sys.env.getConversionService() : conversionService;
@@ -118,9 +121,9 @@ public abstract class AbstractSqlDialect extends DefaultObjectRelationalMapping
 			if (primaryKeys == null || primaryKeys.length == 0) {
 				ids = new Object[] { k };
 			} else {
-				ids = new Object[primaryKeys.length];
+				ids = new Object[primaryKeys.length + 1];
 				System.arraycopy(primaryKeys, 0, ids, 0, primaryKeys.length);
-				ids[ids.length - 1] = k;
+				ids[primaryKeys.length] = k;
 			}
 			keyMap.put(getObjectKeyByIds(clazz, Arrays.asList(ids)), k);
 		}
@@ -133,6 +136,38 @@ public abstract class AbstractSqlDialect extends DefaultObjectRelationalMapping
 
 	public void setEscapeCharacter(String escapeCharacter) {
 		this.escapeCharacter = escapeCharacter;
+		clearPreparedSqlCache();
+	}
+
+	/**
+	 * 获取缓存的实体sql模板，不存在时创建
+	 * 
+	 * @param name        sql的类型
+	 * @param entityClass
+	 * @param tableName
+	 * @param size        影响sql结构的参数数量(如主键的数量)
+	 * @param creator
+	 * @return
+	 */
+	protected PreparedEntitySql getPreparedSql(String name, Class<?> entityClass, String tableName, int size,
+			Supplier<PreparedEntitySql> creator) {
+		PreparedEntitySqlKey key = new PreparedEntitySqlKey(name, entityClass, tableName, size);
+		PreparedEntitySql preparedSql = preparedSqlCache.get(key);
+		if (preparedSql == null) {
+			preparedSql = creator.get();
+			PreparedEntitySql old = preparedSqlCache.putIfAbsent(key, preparedSql);
+			if (old != null) {
+				preparedSql = old;
+			}
+		}
+		return preparedSql;
+	}
+
+	/**
+	 * 修改了影响sql生成的配置后应该清除缓存
+	 */
+	public void clearPreparedSqlCache() {
+		preparedSqlCache.clear();
 	}
 
 	public void appendFieldName(StringBuilder sb, FieldDescriptor fieldDescriptor) {
@@ -193,4 +228,43 @@ public abstract class AbstractSqlDialect extends DefaultObjectRelationalMapping
 	public String getCharsetName(FieldDescriptor fieldDescriptor) {
 		return AnnotatedElementUtils.getCharsetName(fieldDescriptor, null);
 	}
+
+	private static final class PreparedEntitySqlKey {
+		private final String name;
+		private final Class<?> entityClass;
+		private final String tableName;
+		private final int size;
+		private final int hashCode;
+
+		PreparedEntitySqlKey(String name, Class<?> entityClass, String tableName, int size) {
+			this.name = name;
+			this.entityClass = entityClass;
+			this.tableName = tableName;
+			this.size = size;
+			int hash = name.hashCode();
+			hash = 31 * hash + entityClass.hashCode();
+			hash = 31 * hash + (tableName == null ? 0 : tableName.hashCode());
+			this.hashCode = 31 * hash + size;
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+
+			if (!(obj instanceof PreparedEntitySqlKey)) {
+				return false;
+			}
+
+			PreparedEntitySqlKey other = (PreparedEntitySqlKey) obj;
+			return size == other.size && entityClass == other.entityClass && name.equals(other.name)
+					&& (tableName == null ? other.tableName == null : tableName.equals(other.tableName));
+		}
+	}
 }
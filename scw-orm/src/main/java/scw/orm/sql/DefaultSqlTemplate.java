@@ -9,9 +9,12 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
+import scw.aop.support.FieldSetterListen;
+import scw.aop.support.FieldSetterListenUtils;
 import scw.aop.support.ProxyUtils;
 import scw.convert.ConversionService;
 import scw.convert.TypeDescriptor;
@@ -21,6 +24,7 @@ import scw.json.JSONUtils;
 import scw.lang.Nullable;
 import scw.logger.Logger;
 import scw.logger.LoggerFactory;
+import scw.mapper.Copy;
 import scw.mapper.Field;
 import scw.mapper.Fields;
 import scw.orm.cache.CacheManager;
@@ -30,6 +34,10 @@ import scw.orm.sql.convert.SmartMapperProcessor;
 import scw.sql.ConnectionFactory;
 import scw.sql.DefaultSqlOperations;
 import scw.sql.Sql;
+import scw.transaction.DefaultTransactionLifecycle;
+import scw.transaction.Transaction;
+import scw.transaction.TransactionUtils;
+import scw.util.ConcurrentReferenceHashMap;
 import scw.util.Pagination;
 import scw.util.stream.Cursor;
 import scw.util.stream.Processor;
@@ -40,6 +48,8 @@ public class DefaultSqlTemplate extends DefaultSqlOperations implements SqlTempl
 	private ConversionService conversionService;
 	private CacheManager cacheManager;
 	private GeneratorProcessor generatorProcessor;
+	private boolean trackChanges = false;
+	private final ConcurrentReferenceHashMap<Class<?>, Field[]> versionFieldsCache = new ConcurrentReferenceHashMap<Class<?>, Field[]>();
 
 	public DefaultSqlTemplate(ConnectionFactory connectionFactory, SqlDialect sqlDialect) {
 		super(connectionFactory);
@@ -59,6 +69,71 @@ public class DefaultSqlTemplate extends DefaultSqlOperations implements SqlTempl
 		return sqlDialect;
 	}
 
+	public boolean isTrackChanges() {
+		return trackChanges;
+	}
+
+	/**
+	 * 是否跟踪实体的修改，默认不跟踪<br/>
+	 * 开启后getById/getByIdList/getInIds返回的实体是{@link FieldSetterListen}代理，update时只更新调用过set方法的字段，
+	 * 没有修改时不执行sql<br/>
+	 * 也可以不开启，自行使用{@link FieldSetterListenUtils}创建实体
+	 * 
+	 * @param trackChanges
+	 */
+	public void setTrackChanges(boolean trackChanges) {
+		this.trackChanges = trackChanges;
+	}
+
+	/**
+	 * 如果开启了修改跟踪，将实体转为{@link FieldSetterListen}代理
+	 * 
+	 * @param entityClass
+	 * @param entity
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	protected <T> T trackChanges(Class<? extends T> entityClass, T entity) {
+		if (!trackChanges || entity == null || entity instanceof FieldSetterListen) {
+			return entity;
+		}
+
+		Class<?> clazz = getUserEntityClass(entityClass);
+		T proxy = (T) FieldSetterListenUtils.getFieldSetterListenProxy(ProxyUtils.getFactory(), clazz).create();
+		Copy.copy(proxy, entity);
+		((FieldSetterListen) proxy).clear_field_setter_listen();
+		return proxy;
+	}
+
+	private Field[] getVersionFields(Class<?> clazz) {
+		Field[] fields = versionFieldsCache.get(clazz);
+		if (fields == null) {
+			List<Field> list = new ArrayList<Field>(2);
+			for (Field field : sqlDialect.getVersionFields(clazz)) {
+				list.add(field);
+			}
+			fields = list.toArray(new Field[0]);
+			Field[] old = versionFieldsCache.putIfAbsent(clazz, fields);
+			if (old != null) {
+				fields = old;
+			}
+		}
+		return fields;
+	}
+
+	/**
+	 * 更新成功后版本号加1，和数据库中的版本号保持一致，为空时数据库中的版本号是1
+	 */
+	private void incrementVersion(Class<?> clazz, Object entity) {
+		for (Field field : getVersionFields(clazz)) {
+			Object value = field.getGetter().get(entity);
+			long version = value == null ? 1 : ((Number) getConversionService().convert(value,
+					TypeDescriptor.forObject(value), TypeDescriptor.valueOf(Long.class))).longValue() + 1;
+			field.getSetter().set(entity, getConversionService().convert(version, TypeDescriptor.valueOf(Long.class),
+					new TypeDescriptor(field.getSetter())));
+		}
+	}
+
 	public CacheManager getCacheManager() {
 		return cacheManager;
 	}
@@ -67,6 +142,73 @@ public class DefaultSqlTemplate extends DefaultSqlOperations implements SqlTempl
 		this.cacheManager = cacheManager;
 	}
 
+	/**
+	 * 在sql执行成功后更新缓存，存在事务时在事务提交后更新，回滚时不会更新
+	 * 
+	 * @param cacheManager
+	 * @param action
+	 */
+	private void updateCache(CacheManager cacheManager, Runnable action) {
+		Transaction transaction = TransactionUtils.getManager().getTransaction();
+		if (transaction == null) {
+			runCacheAction(action);
+			return;
+		}
+
+		CacheSynchronization synchronization = new CacheSynchronization();
+		CacheSynchronization resource = transaction.bindResource(cacheManager, synchronization);
+		if (resource == synchronization) {
+			transaction.addLifecycle(synchronization);
+		}
+		resource.add(action);
+	}
+
+	/**
+	 * 当前事务中修改过数据时缓存可能和事务中看到的数据不一致，也不能使用未提交的数据填充缓存，直接查询数据库
+	 * 
+	 * @param cacheManager
+	 * @return
+	 */
+	private boolean isCacheUsable(@Nullable CacheManager cacheManager) {
+		if (cacheManager == null) {
+			return false;
+		}
+
+		Transaction transaction = TransactionUtils.getManager().getTransaction();
+		return transaction == null || transaction.getResource(cacheManager) == null;
+	}
+
+	private static void runCacheAction(Runnable action) {
+		try {
+			action.run();
+		} catch (Throwable e) {
+			logger.error(e, "update cache error");
+		}
+	}
+
+	/**
+	 * 一个事务中所有需要在提交后执行的缓存操作
+	 */
+	private static final class CacheSynchronization extends DefaultTransactionLifecycle {
+		private final List<Runnable> actions = new LinkedList<Runnable>();
+
+		synchronized void add(Runnable action) {
+			actions.add(action);
+		}
+
+		@Override
+		public void afterCommit() {
+			List<Runnable> actions;
+			synchronized (this) {
+				actions = new ArrayList<Runnable>(this.actions);
+			}
+
+			for (Runnable action : actions) {
+				runCacheAction(action);
+			}
+		}
+	}
+
 	public ConversionService getConversionService() {
 		return conversionService == null ? Sys.env.getConversionService() : conversionService;
 	}
@@ -125,108 +267,152 @@ public class DefaultSqlTemplate extends DefaultSqlOperations implements SqlTempl
 	@Override
 	public <T> boolean save(String tableName, Class<? extends T> entityClass, T entity) {
 		generatorProcessor.process(entityClass, entity);
-		CacheManager cacheManager = getCacheManager();
-		if (cacheManager != null) {
-			if (!cacheManager.save(entityClass, entity)) {
-				logger.error("save [{}] to cache error: {}", entityClass,
-						JSONUtils.getJsonSupport().toJSONString(entity));
-				return false;
-			}
-		}
-
 		String tName = getTableName(tableName, entityClass, entity);
 		Sql sql = sqlDialect.save(tName, entityClass, entity);
-		return prepare(sql).process((ps) -> {
+		if (prepare(sql).process((ps) -> {
 			int updateCount = ps.executeUpdate();
 			setAutoIncrementLastId(updateCount, sql, ps.getConnection(), tName, entityClass, entity);
 			return updateCount;
-		}) > 0;
+		}) > 0) {
+			FieldSetterListenUtils.clearFieldSetterListen(entity);
+			CacheManager cacheManager = getCacheManager();
+			if (cacheManager != null) {
+				// 保存执行sql后的快照(包含自增id)，避免提交前调用方修改了实体
+				@SuppressWarnings("unchecked")
+				T snapshot = (T) Copy.copy(getUserEntityClass(entity.getClass()), entity);
+				updateCache(cacheManager, () -> {
+					if (!cacheManager.save(entityClass, snapshot)) {
+						logger.error("save [{}] to cache error: {}", entityClass,
+								JSONUtils.getJsonSupport().toJSONString(snapshot));
+					}
+				});
+			}
+			return true;
+		}
+		return false;
 	}
 
 	@Override
 	public <T> boolean saveOrUpdate(String tableName, Class<? extends T> entityClass, T entity) {
 		generatorProcessor.process(entityClass, entity);
-		CacheManager cacheManager = getCacheManager();
-		if (cacheManager != null) {
-			if (!cacheManager.saveOrUpdate(entityClass, entity)) {
-				logger.error("saveOrUpdate [{}] to cache error: {}", entityClass,
-						JSONUtils.getJsonSupport().toJSONString(entity));
-				return false;
-			}
-		}
-
 		String tName = getTableName(tableName, entityClass, entity);
 		Sql sql = sqlDialect.toSaveOrUpdateSql(tName, entityClass, entity);
-		return prepare(sql).process((ps) -> {
+		if (prepare(sql).process((ps) -> {
 			int updateCount = ps.executeUpdate();
 			setAutoIncrementLastId(updateCount, sql, ps.getConnection(), tName, entityClass, entity);
 			return updateCount;
-		}) > 0;
+		}) > 0) {
+			FieldSetterListenUtils.clearFieldSetterListen(entity);
+			CacheManager cacheManager = getCacheManager();
+			if (cacheManager != null) {
+				updateCache(cacheManager, () -> {
+					if (!cacheManager.saveOrUpdate(entityClass, entity)) {
+						logger.error("saveOrUpdate [{}] to cache error: {}", entityClass,
+								JSONUtils.getJsonSupport().toJSONString(entity));
+					}
+				});
+			}
+			return true;
+		}
+		return false;
 	}
 
 	@Override
 	public <T> boolean delete(String tableName, Class<? extends T> entityClass, T entity) {
-		CacheManager cacheManager = getCacheManager();
-		if (cacheManager != null) {
-			if (!cacheManager.delete(entity)) {
-				logger.error("delete [{}] to cache error: {}", entityClass,
-						JSONUtils.getJsonSupport().toJSONString(entity));
-				return false;
-			}
-		}
-
 		Class<?> clazz = getUserEntityClass(entity.getClass());
 		Sql sql = sqlDialect.delete(getTableName(tableName, clazz, entity), clazz, entity);
-		return prepare(sql).update() > 0;
+		if (prepare(sql).update() > 0) {
+			CacheManager cacheManager = getCacheManager();
+			if (cacheManager != null) {
+				updateCache(cacheManager, () -> {
+					if (!cacheManager.delete(entity)) {
+						logger.error("delete [{}] to cache error: {}", entityClass,
+								JSONUtils.getJsonSupport().toJSONString(entity));
+					}
+				});
+			}
+			return true;
+		}
+		return false;
 	}
 
 	@Override
 	public boolean deleteById(String tableName, Class<?> entityClass, Object... ids) {
-		CacheManager cacheManager = getCacheManager();
-		if (cacheManager != null) {
-			if (!cacheManager.deleteById(entityClass, ids)) {
-				logger.error("deleteById [{}] to cache error: {}", entityClass, Arrays.toString(ids));
-				return false;
-			}
-		}
-
 		Class<?> clazz = getUserEntityClass(entityClass);
 		Sql sql = sqlDialect.deleteById(getTableName(tableName, clazz, null), clazz, ids);
-		return prepare(sql).update() > 0;
+		if (prepare(sql).update() > 0) {
+			CacheManager cacheManager = getCacheManager();
+			if (cacheManager != null) {
+				updateCache(cacheManager, () -> {
+					if (!cacheManager.deleteById(entityClass, ids)) {
+						logger.error("deleteById [{}] to cache error: {}", entityClass, Arrays.toString(ids));
+					}
+				});
+			}
+			return true;
+		}
+		return false;
 	}
 
 	@Override
 	public <T> boolean update(String tableName, Class<? extends T> entityClass, T entity) {
-		CacheManager cacheManager = getCacheManager();
-		if (cacheManager != null) {
-			if (!cacheManager.update(entityClass, entity)) {
-				logger.error("update [{}] to cache error: {}", entityClass, entity);
-				return false;
+		Map<String, Object> changeMap = null;
+		if (entity instanceof FieldSetterListen) {
+			changeMap = ((FieldSetterListen) entity).get_field_setter_map();
+			if (changeMap == null || changeMap.isEmpty()) {
+				// 没有修改
+				return true;
 			}
 		}
 
 		Class<?> clazz = getUserEntityClass(entity.getClass());
-		Sql sql = sqlDialect.update(getTableName(tableName, clazz, entity), clazz, entity);
-		return prepare(sql).update() > 0;
+		String tName = getTableName(tableName, clazz, entity);
+		Sql sql = changeMap == null ? sqlDialect.update(tName, clazz, entity)
+				: sqlDialect.update(tName, clazz, entity, changeMap.keySet());
+		if (prepare(sql).update() > 0) {
+			if (changeMap != null) {
+				incrementVersion(clazz, entity);
+			}
+			FieldSetterListenUtils.clearFieldSetterListen(entity);
+			CacheManager cacheManager = getCacheManager();
+			if (cacheManager != null) {
+				updateCache(cacheManager, () -> {
+					if (!cacheManager.update(entityClass, entity)) {
+						logger.error("update [{}] to cache error: {}", entityClass, entity);
+					}
+				});
+			}
+			return true;
+		}
+
+		if (changeMap != null && getVersionFields(clazz).length != 0) {
+			throw new VersionConflictException(clazz, entity);
+		}
+		return false;
 	}
 
 	@Override
 	public <T> T getById(String tableName, Class<? extends T> entityClass, Object... ids) {
 		CacheManager cacheManager = getCacheManager();
+		boolean useCache = isCacheUsable(cacheManager);
 		T value = null;
-		if (cacheManager != null) {
+		if (useCache) {
 			value = cacheManager.getById(entityClass, ids);
 		}
 
-		if (cacheManager == null || (value == null && cacheManager.isKeepLooking(entityClass, ids))) {
+		if (!useCache || (value == null && cacheManager.isKeepLooking(entityClass, ids))) {
 			Class<?> clazz = getUserEntityClass(entityClass);
 			Sql sql = sqlDialect.toSelectByIdsSql(getTableName(tableName, clazz, null), clazz, ids);
 			value = query(entityClass, sql).first();
-			if (value != null && cacheManager != null) {
-				cacheManager.save(value);
+			if (useCache) {
+				if (value == null) {
+					cacheManager.notFound(entityClass, ids);
+				} else {
+					cacheManager.loaded(entityClass, value);
+				}
 			}
 		}
-		return value;
+		return trackChanges(entityClass, value);
 	}
 	
 	@Override
@@ -290,15 +476,113 @@ public class DefaultSqlTemplate extends DefaultSqlOperations implements SqlTempl
 
 	@Override
 	public <T> List<T> getByIdList(String tableName, Class<? extends T> entityClass, Object... ids) {
+		if (getCacheManager() != null && ids.length == sqlDialect.getPrimaryKeys(entityClass).size()) {
+			// 完整的主键最多只有一条数据，可以使用缓存
+			T value = getById(tableName, entityClass, ids);
+			if (value == null) {
+				return Collections.emptyList();
+			}
+			return Arrays.asList(value);
+		}
+
 		String tName = getTableName(tableName, entityClass, null);
 		Sql sql = sqlDialect.toSelectByIdsSql(tName, entityClass, ids);
 		Cursor<T> cursor = query(entityClass, sql);
-		return cursor.shared();
+		List<T> list = cursor.shared();
+		if (trackChanges && list != null) {
+			list = new ArrayList<T>(list);
+			for (int i = 0; i < list.size(); i++) {
+				list.set(i, trackChanges(entityClass, list.get(i)));
+			}
+		}
+		return list;
 	}
 
 	@Override
 	public <K, V> Map<K, V> getInIds(String tableName, Class<? extends V> entityClass,
 			Collection<? extends K> inPrimaryKeys, Object... primaryKeys) {
+		Map<K, V> map = getInIdsInternal(tableName, entityClass, inPrimaryKeys, primaryKeys);
+		if (trackChanges && !map.isEmpty()) {
+			map = new LinkedHashMap<K, V>(map);
+			for (Map.Entry<K, V> entry : map.entrySet()) {
+				entry.setValue(trackChanges(entityClass, entry.getValue()));
+			}
+		}
+		return map;
+	}
+
+	private <K, V> Map<K, V> getInIdsInternal(String tableName, Class<? extends V> entityClass,
+			Collection<? extends K> inPrimaryKeys, Object... primaryKeys) {
+		CacheManager cacheManager = getCacheManager();
+		if (!isCacheUsable(cacheManager) || (primaryKeys == null ? 0 : primaryKeys.length) + 1 != sqlDialect
+				.getPrimaryKeys(entityClass).size()) {
+			// 只有in条件是最后一个主键时才能使用缓存
+			return getInIdsFromDataBase(tableName, entityClass, inPrimaryKeys, primaryKeys);
+		}
+
+		if (inPrimaryKeys == null || inPrimaryKeys.isEmpty()) {
+			return Collections.emptyMap();
+		}
+
+		Map<K, V> cacheMap = cacheManager.getInIds(entityClass, inPrimaryKeys, primaryKeys);
+		List<K> missKeys = new ArrayList<K>();
+		for (K k : inPrimaryKeys) {
+			if (cacheMap.containsKey(k)) {
+				continue;
+			}
+
+			Object[] ids = getIds(k, primaryKeys);
+			if (cacheManager.isKeepLooking(entityClass, ids)) {
+				missKeys.add(k);
+			}
+		}
+
+		if (missKeys.isEmpty()) {
+			return cacheMap;
+		}
+
+		Map<K, V> dbMap = getInIdsFromDataBase(tableName, entityClass, missKeys, primaryKeys);
+		for (K k : missKeys) {
+			V value = dbMap.get(k);
+			if (value == null) {
+				cacheManager.notFound(entityClass, getIds(k, primaryKeys));
+			} else {
+				cacheManager.loaded(entityClass, value);
+			}
+		}
+
+		if (cacheMap.isEmpty()) {
+			return dbMap;
+		}
+
+		// 按传入的顺序合并
+		Map<K, V> map = new LinkedHashMap<K, V>(inPrimaryKeys.size());
+		for (K k : inPrimaryKeys) {
+			V value = cacheMap.get(k);
+			if (value == null) {
+				value = dbMap.get(k);
+			}
+
+			if (value != null) {
+				map.put(k, value);
+			}
+		}
+		return map;
+	}
+
+	private static Object[] getIds(Object inPrimaryKey, Object[] primaryKeys) {
+		if (primaryKeys == null || primaryKeys.length == 0) {
+			return new Object[] { inPrimaryKey };
+		}
+
+		Object[] ids = new Object[primaryKeys.length + 1];
+		System.arraycopy(primaryKeys, 0, ids, 0, primaryKeys.length);
+		ids[primaryKeys.length] = inPrimaryKey;
+		return ids;
+	}
+
+	private <K, V> Map<K, V> getInIdsFromDataBase(String tableName, Class<? extends V> entityClass,
+			Collection<? extends K> inPrimaryKeys, Object... primaryKeys) {
 		String tName = getTableName(tableName, entityClass, null);
 		Sql sql = sqlDialect.getInIds(tName, entityClass, primaryKeys, inPrimaryKeys);
 		Cursor<V> cursor = query(entityClass, sql);
@@ -0,0 +1,101 @@
+package scw.orm.sql;
+
+import java.util.List;
+
+import scw.convert.TypeDescriptor;
+import scw.mapper.Field;
+import scw.sql.SimpleSql;
+import scw.sql.Sql;
+
+/**
+ * 预编译的实体sql模板<br/>
+ * sql语句只生成一次，每次调用只需要按顺序取出参数
+ *
+ * @author shuchaowen
+ *
+ */
+public final class PreparedEntitySql {
+	private static final Field[] EMPTY_FIELDS = new Field[0];
+
+	private final String sql;
+	private final Field[] fields;
+	private final TypeDescriptor[] types;
+	private final Field[] requiredFields;
+
+	public PreparedEntitySql(String sql) {
+		this(sql, EMPTY_FIELDS, EMPTY_FIELDS);
+	}
+
+	public PreparedEntitySql(String sql, List<Field> fields) {
+		this(sql, fields.toArray(EMPTY_FIELDS), EMPTY_FIELDS);
+	}
+
+	/**
+	 * @param sql
+	 * @param fields         参数对应的字段，按参数顺序
+	 * @param requiredFields 这些字段的值为空时不能使用此模板
+	 */
+	public PreparedEntitySql(String sql, Field[] fields, Field[] requiredFields) {
+		this.sql = sql;
+		this.fields = fields;
+		this.requiredFields = requiredFields;
+		this.types = new TypeDescriptor[fields.length];
+		for (int i = 0; i < fields.length; i++) {
+			types[i] = new TypeDescriptor(fields[i].getGetter());
+		}
+	}
+
+	public String getSql() {
+		return sql;
+	}
+
+	/**
+	 * 实体是否可以使用此模板
+	 *
+	 * @param entity
+	 * @return
+	 */
+	public boolean isSupported(Object entity) {
+		for (Field field : requiredFields) {
+			if (field.getGetter().get(entity) == null) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * 从实体中获取参数
+	 *
+	 * @param dialect
+	 * @param entity
+	 * @return
+	 */
+	public Sql toSql(AbstractSqlDialect dialect, Object entity) {
+		Object[] params = new Object[fields.length];
+		for (int i = 0; i < fields.length; i++) {
+			params[i] = dialect.toDataBaseValue(fields[i].getGetter().get(entity), types[i]);
+		}
+		return new SimpleSql(sql, params);
+	}
+
+	/**
+	 * 参数直接使用传入的值
+	 *
+	 * @param dialect
+	 * @param values
+	 * @return
+	 */
+	public Sql toSqlByValues(AbstractSqlDialect dialect, Object... values) {
+		Object[] params = new Object[values.length];
+		for (int i = 0; i < values.length; i++) {
+			params[i] = dialect.toDataBaseValue(values[i]);
+		}
+		return new SimpleSql(sql, params);
+	}
+
+	@Override
+	public String toString() {
+		return sql;
+	}
+}
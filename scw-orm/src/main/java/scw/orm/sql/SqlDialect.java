@@ -62,6 +62,22 @@ public interface SqlDialect extends ObjectKeyFormat, ObjectRelationalMapping{
 
 	<T> Sql update(String tableName, Class<? extends T> entityClass, T entity) throws SqlDialectException;
 
+	/**
+	 * 只更新发生变化的字段，不支持时更新所有字段<br/>
+	 * 支持时应该检查并递增版本号字段({@link scw.orm.annotation.Version})，{@link #update(String, Class, Object)}不检查版本号
+	 * 
+	 * @param tableName
+	 * @param entityClass
+	 * @param entity
+	 * @param changedFieldNames 发生变化的字段名
+	 * @return
+	 * @throws SqlDialectException
+	 */
+	default <T> Sql update(String tableName, Class<? extends T> entityClass, T entity,
+			Collection<String> changedFieldNames) throws SqlDialectException {
+		return update(tableName, entityClass, entity);
+	}
+
 	<T> Sql toSaveOrUpdateSql(String tableName, Class<? extends T> entityClass, T entity) throws SqlDialectException;
 
 	Sql toCreateTableSql(String tableName, Class<?> entityClass) throws SqlDialectException;
@@ -0,0 +1,29 @@
+package scw.orm.sql;
+
+import scw.sql.SqlException;
+
+/**
+ * 只更新发生变化的字段时，由于数据不存在或版本号不一致({@link scw.orm.annotation.Version})没有更新任何数据
+ * 
+ * @author shuchaowen
+ *
+ */
+public class VersionConflictException extends SqlException {
+	private static final long serialVersionUID = 1L;
+	private final Class<?> entityClass;
+	private final transient Object entity;
+
+	public VersionConflictException(Class<?> entityClass, Object entity) {
+		super("Version conflict [" + entityClass.getName() + "]: " + entity);
+		this.entityClass = entityClass;
+		this.entity = entity;
+	}
+
+	public Class<?> getEntityClass() {
+		return entityClass;
+	}
+
+	public Object getEntity() {
+		return entity;
+	}
+}
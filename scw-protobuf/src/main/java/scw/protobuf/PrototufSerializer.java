@@ -3,6 +3,9 @@ package scw.protobuf;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import com.dyuproject.protostuff.LinkedBuffer;
 import com.dyuproject.protostuff.ProtostuffIOUtil;
@@ -20,14 +23,29 @@ public class PrototufSerializer implements CrossLanguageSerializer {
 		};
 	};
 
+	private static final ConcurrentMap<Type, Schema<?>> schemaCache = new ConcurrentHashMap<Type, Schema<?>>();
+
 	public static LinkedBuffer getLinkedBuffer() {
 		return bufferLocal.get().clear();
 	}
+
+	@SuppressWarnings("unchecked")
+	public static <T> Schema<T> getSchema(Class<T> type) {
+		Schema<?> schema = schemaCache.get(type);
+		if (schema == null) {
+			schema = RuntimeSchema.getSchema(type);
+			Schema<?> old = schemaCache.putIfAbsent(type, schema);
+			if (old != null) {
+				schema = old;
+			}
+		}
+		return (Schema<T>) schema;
+	}
 	
 	@SuppressWarnings("unchecked")
 	@Override
 	public void serialize(OutputStream out, TypeDescriptor type, Object data) throws IOException {
-		Schema<Object> schema = (Schema<Object>) RuntimeSchema.getSchema(type.getType());
+		Schema<Object> schema = (Schema<Object>) getSchema(type.getType());
 		ProtostuffIOUtil.writeTo(out, data, schema, getLinkedBuffer());
 		out.flush();
 	}
@@ -35,7 +53,7 @@ public class PrototufSerializer implements CrossLanguageSerializer {
 	@SuppressWarnings("unchecked")
 	@Override
 	public <T> T deserialize(InputStream input, TypeDescriptor type) throws IOException {
-		Schema<T> schema = (Schema<T>) RuntimeSchema.getSchema(type.getType());
+		Schema<T> schema = (Schema<T>) getSchema(type.getType());
 		T t = schema.newMessage();
 		ProtostuffIOUtil.mergeFrom(input, t, schema, getLinkedBuffer());
 		return t;
@@ -1,6 +1,10 @@
 package scw.rabbitmq;
 
 import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import com.rabbitmq.client.Channel;
 
@@ -11,13 +15,33 @@ import scw.amqp.MessageProperties;
 import scw.amqp.QueueDeclare;
 import scw.amqp.support.AbstractExchange;
 import scw.context.Init;
+import scw.core.Assert;
 import scw.io.Serializer;
 import scw.json.JSONUtils;
+import scw.util.concurrent.ListenableFuture;
+import scw.util.concurrent.ListenableFutureCallback;
+import scw.util.concurrent.SettableListenableFuture;
 
 public abstract class AbstractRabbitmqExchange extends AbstractExchange implements Init {
 	static final String DIX_ROUTING_KEY = "scw.dix.routingKey";
 	static final String X_DEAD_LETTER_EXCHANGE = "x-dead-letter-exchange";
 	static final String DELAY_ROUTING_KEY = "scw.delay.routingKey";
+	/**
+	 * 发布确认的回调在连接的IO线程中执行，不能在回调中阻塞，重新发布交给此线程执行
+	 */
+	private static final ScheduledExecutorService REPUBLISH_EXECUTOR = Executors
+			.newSingleThreadScheduledExecutor((runnable) -> {
+				Thread thread = new Thread(runnable, AbstractRabbitmqExchange.class.getSimpleName() + "-republish");
+				thread.setDaemon(true);
+				return thread;
+			});
+
+	private int prefetchCount = 0;
+	private int concurrentConsumers = 1;
+	private int ackBatchSize = 1;
+	private long ackBatchTimeout = 100;
+	private long republishDelay = 1000;
+	private int maxRepublishAttempts = 3;
 
 	public AbstractRabbitmqExchange(Serializer serializer, ExchangeDeclare exchangeDeclare) {
 		super(serializer, exchangeDeclare);
@@ -53,8 +77,113 @@ public abstract class AbstractRabbitmqExchange extends AbstractExchange implemen
 		queueBind(getDelayExchangeDeclare(), delayQueueDeclare, DELAY_ROUTING_KEY, null);
 	}
 
+	/**
+	 * 每个消费者预取的消息数量(basicQos)，0表示不限制
+	 * 
+	 * @return
+	 */
+	public int getPrefetchCount() {
+		return prefetchCount;
+	}
+
+	public void setPrefetchCount(int prefetchCount) {
+		Assert.requiredArgument(prefetchCount >= 0, "prefetchCount");
+		this.prefetchCount = prefetchCount;
+	}
+
+	/**
+	 * 每个队列的消费者数量，每个消费者使用独立的通道
+	 * 
+	 * @return
+	 */
+	public int getConcurrentConsumers() {
+		return concurrentConsumers;
+	}
+
+	public void setConcurrentConsumers(int concurrentConsumers) {
+		Assert.requiredArgument(concurrentConsumers > 0, "concurrentConsumers");
+		this.concurrentConsumers = concurrentConsumers;
+	}
+
+	/**
+	 * 合并确认的消息数量，1表示每条消息单独确认<br/>
+	 * 在设置了prefetchCount时不会超过prefetchCount，否则消费者会因为等待确认而停止接收消息
+	 * 
+	 * @return
+	 */
+	public int getAckBatchSize() {
+		return ackBatchSize;
+	}
+
+	public void setAckBatchSize(int ackBatchSize) {
+		Assert.requiredArgument(ackBatchSize > 0, "ackBatchSize");
+		this.ackBatchSize = ackBatchSize;
+	}
+
+	/**
+	 * 未满一批的确认最长等待时间(毫秒)
+	 * 
+	 * @return
+	 */
+	public long getAckBatchTimeout() {
+		return ackBatchTimeout;
+	}
+
+	public void setAckBatchTimeout(long ackBatchTimeout) {
+		Assert.requiredArgument(ackBatchTimeout > 0, "ackBatchTimeout");
+		this.ackBatchTimeout = ackBatchTimeout;
+	}
+
+	/**
+	 * 未被确认的消息延迟多久(毫秒)后重新发布
+	 * 
+	 * @return
+	 */
+	public long getRepublishDelay() {
+		return republishDelay;
+	}
+
+	public void setRepublishDelay(long republishDelay) {
+		Assert.requiredArgument(republishDelay >= 0, "republishDelay");
+		this.republishDelay = republishDelay;
+	}
+
+	/**
+	 * 未被确认的消息最多重新发布的次数，超过后交给{@link #onPublishFailure(String, MessageProperties, byte[], Throwable)}处理
+	 * 
+	 * @return
+	 */
+	public int getMaxRepublishAttempts() {
+		return maxRepublishAttempts;
+	}
+
+	public void setMaxRepublishAttempts(int maxRepublishAttempts) {
+		Assert.requiredArgument(maxRepublishAttempts >= 0, "maxRepublishAttempts");
+		this.maxRepublishAttempts = maxRepublishAttempts;
+	}
+
 	protected abstract Channel getChannel() throws IOException;
 
+	/**
+	 * 创建消费者使用的通道，默认使用当前线程的通道
+	 * 
+	 * @return
+	 * @throws IOException
+	 */
+	protected Channel createConsumerChannel() throws IOException {
+		return getChannel();
+	}
+
+	/**
+	 * 当前线程发布消息使用的发布确认，返回空表示不开启发布确认
+	 * 
+	 * @return
+	 * @throws IOException
+	 */
+	protected PublisherConfirms getPublisherConfirms() throws IOException {
+		return null;
+	}
+
 	private final void declare(ExchangeDeclare exchangeDeclare, QueueDeclare queueDeclare) throws IOException {
 		if (exchangeDeclare != null) {
 			getChannel().exchangeDeclare(exchangeDeclare.getName(), exchangeDeclare.getType(),
@@ -76,8 +205,15 @@ public abstract class AbstractRabbitmqExchange extends AbstractExchange implemen
 
 		getChannel().queueBind(queueDeclare.getName(), exchangeDeclare.getName(), routingKey);
 		if (messageListener != null) {
-			getChannel().basicConsume(queueDeclare.getName(), false,
-					new RabbitmqMessageListener(getChannel(), messageListener, isMultiple()));
+			int ackBatchSize = prefetchCount > 0 ? Math.min(prefetchCount, this.ackBatchSize) : this.ackBatchSize;
+			for (int i = 0; i < concurrentConsumers; i++) {
+				Channel channel = createConsumerChannel();
+				if (prefetchCount > 0) {
+					channel.basicQos(prefetchCount);
+				}
+				channel.basicConsume(queueDeclare.getName(), false, new RabbitmqMessageListener(channel,
+						messageListener, isMultiple(), ackBatchSize, ackBatchTimeout));
+			}
 		}
 	}
 
@@ -89,9 +225,16 @@ public abstract class AbstractRabbitmqExchange extends AbstractExchange implemen
 		queueBind(getExchangeDeclare(), queueDeclare, routingKey, messageListener);
 	}
 	
-	@Override
-	public void basicPublish(String routingKey,
-			MessageProperties messageProperties, byte[] body)
+	/**
+	 * 发布消息，如果开启了发布确认在broker确认后完成，否则在发送后立即完成
+	 * 
+	 * @param routingKey
+	 * @param messageProperties
+	 * @param body
+	 * @return
+	 * @throws ExchangeException
+	 */
+	public ListenableFuture<Void> publish(String routingKey, MessageProperties messageProperties, byte[] body)
 			throws ExchangeException {
 		ExchangeDeclare exchangeDeclare = messageProperties.getDelay() > 0 ? getDelayExchangeDeclare()
 				: getExchangeDeclare();
@@ -104,14 +247,92 @@ public abstract class AbstractRabbitmqExchange extends AbstractExchange implemen
 			messageProperties.setDeliveryMode(2);// 消息持久化
 		}
 
-		Channel channel;
 		try {
-			channel = getChannel();
-			channel.basicPublish(exchangeDeclare.getName(), routingKey,
+			PublisherConfirms publisherConfirms = getPublisherConfirms();
+			if (publisherConfirms != null) {
+				return publisherConfirms.publish(exchangeDeclare.getName(), routingKey,
+						RabbitmqUitls.toBasicProperties(messageProperties), body);
+			}
+
+			getChannel().basicPublish(exchangeDeclare.getName(), routingKey,
 					RabbitmqUitls.toBasicProperties(messageProperties), body);
 		} catch (IOException e) {
 			throw new ExchangeException(e);
 		}
+
+		SettableListenableFuture<Void> future = new SettableListenableFuture<Void>();
+		future.set(null);
+		return future;
+	}
+
+	/**
+	 * 开启了发布确认时不会等待确认，被拒绝或通道关闭的消息会在{@link #getRepublishDelay()}后重新发布，
+	 * 最多重新发布{@link #getMaxRepublishAttempts()}次
+	 */
+	@Override
+	public void basicPublish(final String routingKey, final MessageProperties messageProperties, final byte[] body)
+			throws ExchangeException {
+		basicPublish(routingKey, messageProperties, body, 0);
+	}
+
+	private void basicPublish(final String routingKey, final MessageProperties messageProperties, final byte[] body,
+			final int attempts) throws ExchangeException {
+		// 已经完成(未开启发布确认或已经被确认/拒绝)的future会立即回调
+		publish(routingKey, messageProperties, body).addCallback(new ListenableFutureCallback<Void>() {
+
+			public void onSuccess(Void result) {
+			}
+
+			public void onFailure(Throwable ex) {
+				if (attempts >= maxRepublishAttempts) {
+					onPublishFailure(routingKey, messageProperties, body, ex);
+					return;
+				}
+
+				logger.error(ex, "publish not confirmed, republish routingKey={}, properties={}", routingKey,
+						JSONUtils.getJsonSupport().toJSONString(messageProperties));
+				// 在连接的IO线程中回调，不能在这里执行阻塞的通道操作
+				try {
+					REPUBLISH_EXECUTOR.schedule(() -> republish(routingKey, messageProperties, body, attempts + 1),
+							republishDelay, TimeUnit.MILLISECONDS);
+				} catch (RejectedExecutionException e) {
+					onPublishFailure(routingKey, messageProperties, body, e);
+				}
+			}
+		});
+	}
+
+	/**
+	 * 重新发布未被确认的消息
+	 * 
+	 * @param routingKey
+	 * @param messageProperties
+	 * @param body
+	 * @param attempts          第几次重新发布
+	 */
+	protected void republish(String routingKey, MessageProperties messageProperties, byte[] body, int attempts) {
+		try {
+			getRetryOperations().execute((context) -> {
+				basicPublish(routingKey, messageProperties, body, attempts);
+				return null;
+			});
+		} catch (RuntimeException e) {
+			onPublishFailure(routingKey, messageProperties, body, e);
+		}
+	}
+
+	/**
+	 * 消息最终发布失败(超过重新发布次数)，默认只记录日志，可以重写此方法将消息保存到其他地方
+	 * 
+	 * @param routingKey
+	 * @param messageProperties
+	 * @param body
+	 * @param cause
+	 */
+	protected void onPublishFailure(String routingKey, MessageProperties messageProperties, byte[] body,
+			Throwable cause) {
+		logger.error(cause, "publish failure routingKey={}, properties={}", routingKey,
+				JSONUtils.getJsonSupport().toJSONString(messageProperties));
 	}
 
 	protected boolean isMultiple() {
@@ -0,0 +1,109 @@
+package scw.rabbitmq;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import com.rabbitmq.client.AMQP.BasicProperties;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ConfirmListener;
+import com.rabbitmq.client.ShutdownListener;
+import com.rabbitmq.client.ShutdownSignalException;
+
+import scw.amqp.ExchangeException;
+import scw.util.concurrent.ListenableFuture;
+import scw.util.concurrent.SettableListenableFuture;
+
+/**
+ * 异步的发布确认<br/>
+ * 未确认的消息按发布序号记录，broker的批量确认(multiple)会一次完成多个发布，通道关闭时所有未确认的发布都会失败<br/>
+ * 一个通道只应该由一个线程发布
+ *
+ * @author shuchaowen
+ *
+ */
+public class PublisherConfirms implements ConfirmListener, ShutdownListener {
+	private final Channel channel;
+	private final ConcurrentNavigableMap<Long, SettableListenableFuture<Void>> outstandingConfirms = new ConcurrentSkipListMap<Long, SettableListenableFuture<Void>>();
+
+	public PublisherConfirms(Channel channel) throws IOException {
+		this.channel = channel;
+		channel.confirmSelect();
+		channel.addConfirmListener(this);
+		channel.addShutdownListener(this);
+	}
+
+	public Channel getChannel() {
+		return channel;
+	}
+
+	/**
+	 * 还未确认的发布数量
+	 *
+	 * @return
+	 */
+	public int getOutstandingCount() {
+		return outstandingConfirms.size();
+	}
+
+	public ListenableFuture<Void> publish(String exchange, String routingKey, BasicProperties properties, byte[] body)
+			throws IOException {
+		SettableListenableFuture<Void> future = new SettableListenableFuture<Void>();
+		long sequence = channel.getNextPublishSeqNo();
+		outstandingConfirms.put(sequence, future);
+		try {
+			channel.basicPublish(exchange, routingKey, properties, body);
+		} catch (IOException e) {
+			outstandingConfirms.remove(sequence);
+			throw e;
+		} catch (RuntimeException e) {
+			outstandingConfirms.remove(sequence);
+			throw e;
+		}
+		return future;
+	}
+
+	public void handleAck(long deliveryTag, boolean multiple) throws IOException {
+		complete(deliveryTag, multiple, null);
+	}
+
+	public void handleNack(long deliveryTag, boolean multiple) throws IOException {
+		complete(deliveryTag, multiple, new ExchangeException("Publish nack: " + deliveryTag));
+	}
+
+	public void shutdownCompleted(ShutdownSignalException cause) {
+		while (true) {
+			Map.Entry<Long, SettableListenableFuture<Void>> entry = outstandingConfirms.pollFirstEntry();
+			if (entry == null) {
+				break;
+			}
+			entry.getValue().setException(cause);
+		}
+	}
+
+	private void complete(long deliveryTag, boolean multiple, Throwable error) {
+		if (multiple) {
+			ConcurrentNavigableMap<Long, SettableListenableFuture<Void>> confirmed = outstandingConfirms
+					.headMap(deliveryTag, true);
+			for (SettableListenableFuture<Void> future : confirmed.values()) {
+				complete(future, error);
+			}
+			confirmed.clear();
+		} else {
+			complete(outstandingConfirms.remove(deliveryTag), error);
+		}
+	}
+
+	private static void complete(SettableListenableFuture<Void> future, Throwable error) {
+		if (future == null) {
+			return;
+		}
+
+		if (error == null) {
+			future.set(null);
+		} else {
+			future.setException(error);
+		}
+	}
+}
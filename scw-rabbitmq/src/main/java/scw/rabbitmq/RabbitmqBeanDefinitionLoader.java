@@ -17,6 +17,7 @@ import scw.beans.BeansException;
 import scw.beans.ConfigurableBeanFactory;
 import scw.beans.support.DefaultBeanDefinition;
 import scw.context.annotation.Provider;
+import scw.core.utils.StringUtils;
 import scw.io.ResourceUtils;
 import scw.io.SerializerUtils;
 import scw.orm.convert.MapToEntityConversionService;
@@ -101,8 +102,33 @@ public class RabbitmqBeanDefinitionLoader implements BeanDefinitionLoader {
 		}
 
 		public Object create() throws BeansException {
-			return new RabbitmqExchange(SerializerUtils.getSerializer(), beanFactory.getInstance(Connection.class),
-					beanFactory.getInstance(ExchangeDeclare.class));
+			RabbitmqExchange exchange = new RabbitmqExchange(SerializerUtils.getSerializer(),
+					beanFactory.getInstance(Connection.class), beanFactory.getInstance(ExchangeDeclare.class));
+			if (beanFactory.getEnvironment().exists(DEFAULT_CONFIG)) {
+				Properties properties = beanFactory.getEnvironment().getProperties(DEFAULT_CONFIG).get();
+				exchange.setPublisherConfirms(
+						Boolean.parseBoolean(properties.getProperty("publisher.confirms", "false")));
+				exchange.setPrefetchCount(getInt(properties, "consumer.prefetchCount", exchange.getPrefetchCount()));
+				exchange.setConcurrentConsumers(
+						getInt(properties, "consumer.concurrentConsumers", exchange.getConcurrentConsumers()));
+				exchange.setAckBatchSize(getInt(properties, "consumer.ackBatchSize", exchange.getAckBatchSize()));
+				exchange.setAckBatchTimeout(
+						getLong(properties, "consumer.ackBatchTimeout", exchange.getAckBatchTimeout()));
+				exchange.setRepublishDelay(getLong(properties, "publisher.republishDelay", exchange.getRepublishDelay()));
+				exchange.setMaxRepublishAttempts(
+						getInt(properties, "publisher.maxRepublishAttempts", exchange.getMaxRepublishAttempts()));
+			}
+			return exchange;
+		}
+
+		private static int getInt(Properties properties, String key, int defaultValue) {
+			String value = properties.getProperty(key);
+			return StringUtils.isEmpty(value) ? defaultValue : Integer.parseInt(value.trim());
+		}
+
+		private static long getLong(Properties properties, String key, long defaultValue) {
+			String value = properties.getProperty(key);
+			return StringUtils.isEmpty(value) ? defaultValue : Long.parseLong(value.trim());
 		}
 	}
 
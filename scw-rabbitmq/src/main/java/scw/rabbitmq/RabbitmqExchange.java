@@ -23,6 +23,9 @@ public class RabbitmqExchange extends AbstractRabbitmqExchange {
 	private final Connection connection;
 	private final ExchangeDeclare dixExchangeDeclare;
 	private final QueueDeclare dixQueueDeclare;
+	private final ThreadLocal<PublisherConfirms> publisherConfirmsThreadLocal = new NamedThreadLocal<PublisherConfirms>(
+			RabbitmqExchange.class.getSimpleName() + "-publisher-confirms");
+	private boolean publisherConfirms = false;
 
 	public RabbitmqExchange(Serializer serializer, Connection connection,
 			ExchangeDeclare exchangeDeclare) {
@@ -60,6 +63,42 @@ public class RabbitmqExchange extends AbstractRabbitmqExchange {
 		return channel;
 	}
 
+	/**
+	 * 是否开启发布确认
+	 * 
+	 * @return
+	 */
+	public boolean isPublisherConfirms() {
+		return publisherConfirms;
+	}
+
+	public void setPublisherConfirms(boolean publisherConfirms) {
+		this.publisherConfirms = publisherConfirms;
+	}
+
+	@Override
+	protected PublisherConfirms getPublisherConfirms() throws IOException {
+		if (!publisherConfirms) {
+			return null;
+		}
+
+		Channel channel = getChannel();
+		PublisherConfirms confirms = publisherConfirmsThreadLocal.get();
+		if (confirms == null || confirms.getChannel() != channel) {
+			confirms = new PublisherConfirms(channel);
+			publisherConfirmsThreadLocal.set(confirms);
+		}
+		return confirms;
+	}
+
+	/**
+	 * 每个消费者使用独立的通道，这样prefetch和确认互不影响
+	 */
+	@Override
+	protected Channel createConsumerChannel() throws IOException {
+		return connection.createChannel();
+	}
+
 	@Override
 	public ExchangeDeclare getDixExchangeDeclare() {
 		return dixExchangeDeclare;
@@ -1,38 +1,161 @@
 package scw.rabbitmq;
 
 import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import com.rabbitmq.client.AMQP;
 import com.rabbitmq.client.Channel;
 import com.rabbitmq.client.DefaultConsumer;
 import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.ShutdownSignalException;
 
 import scw.amqp.Message;
 import scw.amqp.MessageListener;
 import scw.logger.Logger;
 import scw.logger.LoggerFactory;
 
+/**
+ * 消费者<br/>
+ * 当ackBatchSize大于1时消费成功的消息会合并为一次multiple确认，未满一批的确认会在ackBatchTimeout后被刷新
+ *
+ * @author shuchaowen
+ *
+ */
 public class RabbitmqMessageListener extends DefaultConsumer {
 	private static Logger logger = LoggerFactory.getLogger(RabbitmqMessageListener.class);
+	private static final ScheduledExecutorService SCHEDULED_EXECUTOR_SERVICE = Executors
+			.newSingleThreadScheduledExecutor((runnable) -> {
+				Thread thread = new Thread(runnable, RabbitmqMessageListener.class.getSimpleName() + "-ack");
+				thread.setDaemon(true);
+				return thread;
+			});
+
 	private final MessageListener messageListener;
 	private final boolean multiple;
+	private final int ackBatchSize;
+	private final Object ackLock = new Object();
+	/**
+	 * 已消费成功但还未确认的最大deliveryTag
+	 */
+	private long pendingDeliveryTag = 0;
+	private int pendingCount = 0;
+	private volatile ScheduledFuture<?> flushFuture;
 
 	public RabbitmqMessageListener(Channel channel, MessageListener messageListener, boolean multiple) {
+		this(channel, messageListener, multiple, 1, 0);
+	}
+
+	/**
+	 * @param channel
+	 * @param messageListener
+	 * @param multiple
+	 * @param ackBatchSize      合并确认的数量, 小于等于1表示每条消息单独确认
+	 * @param ackBatchTimeout   未满一批的确认最长等待时间(毫秒)
+	 */
+	public RabbitmqMessageListener(Channel channel, MessageListener messageListener, boolean multiple,
+			int ackBatchSize, long ackBatchTimeout) {
 		super(channel);
 		this.messageListener = messageListener;
 		this.multiple = multiple;
+		this.ackBatchSize = Math.max(1, ackBatchSize);
+		if (this.ackBatchSize > 1) {
+			long period = Math.max(1, ackBatchTimeout);
+			this.flushFuture = SCHEDULED_EXECUTOR_SERVICE.scheduleWithFixedDelay(() -> {
+				try {
+					flushAck();
+				} catch (Throwable e) {
+					logger.error(e, "flush ack error: {}", getConsumerTag());
+				}
+			}, period, period, TimeUnit.MILLISECONDS);
+		}
 	}
- 
+
+	public int getAckBatchSize() {
+		return ackBatchSize;
+	}
+
 	@Override
 	public void handleDelivery(String consumerTag, Envelope envelope, AMQP.BasicProperties properties, byte[] body)
 			throws IOException {
 		Message message = RabbitmqUitls.toMessage(properties, body);
 		try {
 			messageListener.onMessage(envelope.getExchange(), envelope.getRoutingKey(), message);
-			getChannel().basicAck(envelope.getDeliveryTag(), multiple);
+			ack(envelope.getDeliveryTag());
 		} catch (IOException e) {
 			logger.error(e, "consumerTag={}, envelope={}, properties={}, body={}", consumerTag, envelope, properties, body);
-			getChannel().basicReject(envelope.getDeliveryTag(), true);//将消息分配给其他消费者
+			synchronized (ackLock) {
+				// 先确认之前已成功的消息，拒绝不会影响其他的deliveryTag
+				flushAck();
+				getChannel().basicReject(envelope.getDeliveryTag(), true);//将消息分配给其他消费者
+			}
+		}
+	}
+
+	private void ack(long deliveryTag) throws IOException {
+		if (ackBatchSize <= 1) {
+			getChannel().basicAck(deliveryTag, multiple);
+			return;
+		}
+
+		synchronized (ackLock) {
+			pendingDeliveryTag = deliveryTag;
+			if (++pendingCount >= ackBatchSize) {
+				flushAck();
+			}
+		}
+	}
+
+	/**
+	 * 确认所有已消费成功的消息
+	 *
+	 * @throws IOException
+	 */
+	public void flushAck() throws IOException {
+		synchronized (ackLock) {
+			if (pendingCount == 0) {
+				return;
+			}
+
+			long deliveryTag = pendingDeliveryTag;
+			pendingCount = 0;
+			if (getChannel().isOpen()) {
+				getChannel().basicAck(deliveryTag, true);
+			}
+		}
+	}
+
+	private void cancelFlush() {
+		ScheduledFuture<?> flushFuture = this.flushFuture;
+		if (flushFuture != null) {
+			flushFuture.cancel(false);
+			this.flushFuture = null;
+		}
+	}
+
+	@Override
+	public void handleCancelOk(String consumerTag) {
+		try {
+			flushAck();
+		} catch (IOException e) {
+			logger.error(e, "flush ack error: {}", consumerTag);
+		} finally {
+			cancelFlush();
+		}
+	}
+
+	@Override
+	public void handleCancel(String consumerTag) throws IOException {
+		handleCancelOk(consumerTag);
+	}
+
+	@Override
+	public void handleShutdownSignal(String consumerTag, ShutdownSignalException sig) {
+		// 通道已关闭，未确认的消息会被broker重新投递(自动恢复后此消费者会继续使用，所以不取消刷新任务)
+		synchronized (ackLock) {
+			pendingCount = 0;
 		}
 	}
 }
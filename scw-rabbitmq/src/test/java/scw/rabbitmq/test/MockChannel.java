@@ -0,0 +1,102 @@
+package scw.rabbitmq.test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.LongConsumer;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ConfirmListener;
+import com.rabbitmq.client.ShutdownListener;
+
+/**
+ * 记录调用的通道，只实现了测试使用的方法
+ */
+public class MockChannel implements InvocationHandler {
+	private final Channel channel = (Channel) Proxy.newProxyInstance(MockChannel.class.getClassLoader(),
+			new Class<?>[] { Channel.class }, this);
+	/**
+	 * 调用记录，如: basicPublish:1, basicAck:3:true
+	 */
+	public final List<String> calls = new CopyOnWriteArrayList<String>();
+	private long nextPublishSeqNo = 1;
+	private volatile ConfirmListener confirmListener;
+	private volatile ShutdownListener shutdownListener;
+	/**
+	 * 发布时执行，参数为发布序号
+	 */
+	private volatile LongConsumer onPublish;
+
+	public Channel getChannel() {
+		return channel;
+	}
+
+	public ConfirmListener getConfirmListener() {
+		return confirmListener;
+	}
+
+	public ShutdownListener getShutdownListener() {
+		return shutdownListener;
+	}
+
+	public void setOnPublish(LongConsumer onPublish) {
+		this.onPublish = onPublish;
+	}
+
+	public int count(String name) {
+		int count = 0;
+		for (String call : calls) {
+			if (call.equals(name) || call.startsWith(name + ":")) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	@Override
+	public synchronized Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		String name = method.getName();
+		switch (name) {
+		case "getNextPublishSeqNo":
+			return nextPublishSeqNo;
+		case "basicPublish":
+			long sequence = nextPublishSeqNo++;
+			calls.add(name + ":" + sequence);
+			LongConsumer onPublish = this.onPublish;
+			if (onPublish != null) {
+				onPublish.accept(sequence);
+			}
+			return null;
+		case "basicAck":
+		case "basicReject":
+			calls.add(name + ":" + args[0] + ":" + args[1]);
+			return null;
+		case "addConfirmListener":
+			confirmListener = (ConfirmListener) args[0];
+			return null;
+		case "addShutdownListener":
+			shutdownListener = (ShutdownListener) args[0];
+			return null;
+		case "isOpen":
+			return true;
+		case "hashCode":
+			return System.identityHashCode(proxy);
+		case "equals":
+			return proxy == args[0];
+		case "toString":
+			return "MockChannel";
+		default:
+			Class<?> type = method.getReturnType();
+			if (type == boolean.class) {
+				return false;
+			} else if (type == int.class) {
+				return 0;
+			} else if (type == long.class) {
+				return 0L;
+			}
+			return null;
+		}
+	}
+}
@@ -0,0 +1,187 @@
+package scw.rabbitmq.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ShutdownSignalException;
+
+import scw.amqp.ExchangeDeclare;
+import scw.amqp.MessageProperties;
+import scw.amqp.QueueDeclare;
+import scw.io.JavaSerializer;
+import scw.rabbitmq.AbstractRabbitmqExchange;
+import scw.rabbitmq.PublisherConfirms;
+import scw.util.concurrent.ListenableFuture;
+
+public class PublisherConfirmsTest {
+
+	@Test
+	public void ackAndNack() throws Exception {
+		MockChannel channel = new MockChannel();
+		PublisherConfirms confirms = new PublisherConfirms(channel.getChannel());
+		ListenableFuture<Void> first = publish(confirms);
+		ListenableFuture<Void> second = publish(confirms);
+		ListenableFuture<Void> third = publish(confirms);
+		assertEquals(3, confirms.getOutstandingCount());
+
+		// 批量确认
+		channel.getConfirmListener().handleAck(2, true);
+		assertTrue(first.isDone());
+		assertTrue(second.isDone());
+		assertFalse(third.isDone());
+		first.get();
+		second.get();
+
+		channel.getConfirmListener().handleNack(3, false);
+		assertFailed(third);
+		assertEquals(0, confirms.getOutstandingCount());
+	}
+
+	@Test
+	public void shutdown() throws Exception {
+		MockChannel channel = new MockChannel();
+		PublisherConfirms confirms = new PublisherConfirms(channel.getChannel());
+		ListenableFuture<Void> first = publish(confirms);
+		ListenableFuture<Void> second = publish(confirms);
+
+		// 通道关闭时所有未确认的发布都失败
+		channel.getShutdownListener().shutdownCompleted(new ShutdownSignalException(false, false, null, null));
+		assertFailed(first);
+		assertFailed(second);
+		assertEquals(0, confirms.getOutstandingCount());
+	}
+
+	@Test
+	public void republish() throws Exception {
+		MockChannel channel = new MockChannel();
+		TestExchange exchange = new TestExchange(channel);
+		AtomicInteger published = new AtomicInteger();
+		// 第一次发布被拒绝，重新发布后被确认
+		channel.setOnPublish((sequence) -> {
+			try {
+				if (published.incrementAndGet() == 1) {
+					channel.getConfirmListener().handleNack(sequence, false);
+				} else {
+					channel.getConfirmListener().handleAck(sequence, false);
+				}
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		});
+		exchange.basicPublish("test", new MessageProperties(), new byte[0]);
+		awaitPublish(channel, 2);
+		Thread.sleep(100);
+		assertEquals(2, channel.count("basicPublish"));
+		assertTrue(exchange.failures.isEmpty());
+	}
+
+	@Test
+	public void republishLimit() throws Exception {
+		MockChannel channel = new MockChannel();
+		TestExchange exchange = new TestExchange(channel);
+		exchange.setMaxRepublishAttempts(2);
+		// 在返回future之前已经被拒绝，也要重新发布
+		channel.setOnPublish((sequence) -> {
+			try {
+				channel.getConfirmListener().handleNack(sequence, false);
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		});
+		exchange.basicPublish("test", new MessageProperties(), new byte[0]);
+		assertTrue(exchange.failed.await(5, TimeUnit.SECONDS));
+		Thread.sleep(100);
+		// 第一次发布加上两次重新发布
+		assertEquals(3, channel.count("basicPublish"));
+		assertEquals(1, exchange.failures.size());
+	}
+
+	private static ListenableFuture<Void> publish(PublisherConfirms confirms) throws IOException {
+		return confirms.publish("exchange", "routingKey", new AMQP.BasicProperties(), new byte[0]);
+	}
+
+	private static void assertFailed(ListenableFuture<Void> future) throws InterruptedException {
+		assertTrue(future.isDone());
+		try {
+			future.get();
+			throw new AssertionError("expected failure");
+		} catch (ExecutionException e) {
+			// expected
+		}
+	}
+
+	private static void awaitPublish(MockChannel channel, int count) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (channel.count("basicPublish") < count && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+	}
+
+	private static class TestExchange extends AbstractRabbitmqExchange {
+		private final MockChannel channel;
+		private final PublisherConfirms publisherConfirms;
+		private final List<Throwable> failures = new CopyOnWriteArrayList<Throwable>();
+		private final CountDownLatch failed = new CountDownLatch(1);
+
+		TestExchange(MockChannel channel) throws IOException {
+			super(JavaSerializer.INSTANCE, new ExchangeDeclare("test"));
+			this.channel = channel;
+			this.publisherConfirms = new PublisherConfirms(channel.getChannel());
+			setRepublishDelay(10);
+		}
+
+		@Override
+		protected void checkName(String name) {
+		}
+
+		@Override
+		protected Channel getChannel() throws IOException {
+			return channel.getChannel();
+		}
+
+		@Override
+		protected PublisherConfirms getPublisherConfirms() throws IOException {
+			return publisherConfirms;
+		}
+
+		@Override
+		protected void onPublishFailure(String routingKey, MessageProperties messageProperties, byte[] body,
+				Throwable cause) {
+			failures.add(cause);
+			failed.countDown();
+		}
+
+		@Override
+		public ExchangeDeclare getDixExchangeDeclare() {
+			return null;
+		}
+
+		@Override
+		public QueueDeclare getDixQueueDeclare() {
+			return null;
+		}
+
+		@Override
+		public ExchangeDeclare getDelayExchangeDeclare() {
+			return null;
+		}
+
+		@Override
+		public QueueDeclare getDelayQueueDeclare() {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,97 @@
+package scw.rabbitmq.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Envelope;
+
+import scw.rabbitmq.RabbitmqMessageListener;
+
+public class RabbitmqMessageListenerTest {
+
+	@Test
+	public void ack() throws Exception {
+		MockChannel channel = new MockChannel();
+		RabbitmqMessageListener listener = new RabbitmqMessageListener(channel.getChannel(),
+				(exchange, routingKey, message) -> {
+				}, false);
+		deliver(listener, 1);
+		deliver(listener, 2);
+		assertEquals(Arrays.asList("basicAck:1:false", "basicAck:2:false"), channel.calls);
+	}
+
+	@Test
+	public void batchAck() throws Exception {
+		MockChannel channel = new MockChannel();
+		RabbitmqMessageListener listener = new RabbitmqMessageListener(channel.getChannel(),
+				(exchange, routingKey, message) -> {
+				}, false, 3, 60000);
+		try {
+			deliver(listener, 1);
+			deliver(listener, 2);
+			assertEquals(Collections.emptyList(), channel.calls);
+			// 满一批后合并确认
+			deliver(listener, 3);
+			assertEquals(Arrays.asList("basicAck:3:true"), channel.calls);
+		} finally {
+			listener.handleCancelOk("test");
+		}
+	}
+
+	@Test
+	public void timeout() throws Exception {
+		MockChannel channel = new MockChannel();
+		RabbitmqMessageListener listener = new RabbitmqMessageListener(channel.getChannel(),
+				(exchange, routingKey, message) -> {
+				}, false, 10, 50);
+		try {
+			deliver(listener, 1);
+			deliver(listener, 2);
+			// 未满一批的确认在超时后刷新
+			long deadline = System.currentTimeMillis() + 5000;
+			while (channel.calls.isEmpty() && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			assertEquals(Arrays.asList("basicAck:2:true"), channel.calls);
+		} finally {
+			listener.handleCancelOk("test");
+		}
+	}
+
+	@Test
+	public void nack() throws Exception {
+		MockChannel channel = new MockChannel();
+		RabbitmqMessageListener listener = new RabbitmqMessageListener(channel.getChannel(),
+				(exchange, routingKey, message) -> {
+					if (message.getBody().length == 0) {
+						throw new IOException("error");
+					}
+				}, false, 10, 60000);
+		try {
+			deliver(listener, 1);
+			deliver(listener, 2);
+			listener.handleDelivery("test", new Envelope(3, false, "exchange", "routingKey"),
+					new AMQP.BasicProperties(), new byte[0]);
+			// 拒绝前先确认之前已成功的消息
+			assertEquals(Arrays.asList("basicAck:2:true", "basicReject:3:true"), channel.calls);
+
+			// 关闭时确认剩余的消息
+			deliver(listener, 4);
+			listener.handleCancelOk("test");
+			assertEquals(Arrays.asList("basicAck:2:true", "basicReject:3:true", "basicAck:4:true"), channel.calls);
+		} finally {
+			listener.handleCancelOk("test");
+		}
+	}
+
+	private static void deliver(RabbitmqMessageListener listener, long deliveryTag) throws IOException {
+		listener.handleDelivery("test", new Envelope(deliveryTag, false, "exchange", "routingKey"),
+				new AMQP.BasicProperties(), new byte[] { 1 });
+	}
+}
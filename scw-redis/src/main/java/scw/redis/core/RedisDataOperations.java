@@ -79,6 +79,14 @@ public class RedisDataOperations implements DataOperations {
 		redisTemplete.getObjectCommands().set(key, value);
 	}
 
+	@Override
+	public void set(Map<String, ?> values) {
+		if (CollectionUtils.isEmpty(values)) {
+			return;
+		}
+		redisTemplete.getObjectCommands().mset(new LinkedHashMap<String, Object>(values));
+	}
+
 	@Override
 	public boolean isExist(String key) {
 		return redisTemplete.exists(key) == 1;
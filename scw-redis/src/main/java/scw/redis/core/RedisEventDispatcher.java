@@ -0,0 +1,106 @@
+package scw.redis.core;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import scw.core.Assert;
+import scw.event.Event;
+import scw.event.EventListener;
+import scw.event.EventRegistration;
+import scw.event.support.DefaultEventDispatcher;
+import scw.logger.Logger;
+import scw.logger.LoggerFactory;
+
+/**
+ * 使用redis的发布/订阅实现的跨节点事件分发<br/>
+ * 发布的事件会发送到channel，所有订阅了此channel的节点(包括自己)收到后再分发给本地的监听者<br/>
+ * 订阅会阻塞连接，所以在第一次注册监听时启动一个守护线程订阅，连接断开后会重新订阅
+ * 
+ * @author shuchaowen
+ *
+ * @param <T>
+ */
+public class RedisEventDispatcher<T extends Event> extends DefaultEventDispatcher<T>
+		implements MessageListener<String, Object> {
+	private static Logger logger = LoggerFactory.getLogger(RedisEventDispatcher.class);
+	private final RedisCommands<String, Object> commands;
+	private final String channel;
+	private final AtomicBoolean subscribed = new AtomicBoolean(false);
+	private long retryInterval = 5000L;
+
+	public RedisEventDispatcher(Redis redis, String channel) {
+		this(redis.getObjectCommands(), channel);
+	}
+
+	public RedisEventDispatcher(RedisCommands<String, Object> commands, String channel) {
+		super(true);
+		Assert.requiredArgument(commands != null, "commands");
+		Assert.requiredArgument(channel != null, "channel");
+		this.commands = commands;
+		this.channel = channel;
+	}
+
+	public String getChannel() {
+		return channel;
+	}
+
+	public long getRetryInterval() {
+		return retryInterval;
+	}
+
+	/**
+	 * 订阅断开后重新订阅的间隔(毫秒)
+	 * 
+	 * @param retryInterval
+	 */
+	public void setRetryInterval(long retryInterval) {
+		this.retryInterval = retryInterval;
+	}
+
+	@Override
+	public EventRegistration registerListener(EventListener<T> eventListener) {
+		EventRegistration registration = super.registerListener(eventListener);
+		if (!subscribed.get() && subscribed.compareAndSet(false, true)) {
+			Thread thread = new Thread(() -> subscribe(), getClass().getSimpleName() + "-" + channel);
+			thread.setDaemon(true);
+			thread.start();
+		}
+		return registration;
+	}
+
+	private void subscribe() {
+		while (!Thread.currentThread().isInterrupted()) {
+			try {
+				commands.subscribe(this, channel);
+			} catch (Throwable e) {
+				logger.error(e, "subscribe channel [{}] error", channel);
+			}
+
+			try {
+				Thread.sleep(retryInterval);
+			} catch (InterruptedException e) {
+				break;
+			}
+		}
+	}
+
+	@Override
+	public void publishEvent(T event) {
+		Assert.requiredArgument(event != null, "event");
+		commands.publish(channel, event);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public void onMessage(Message<String, Object> message, String pattern) {
+		Object body = message.getBody();
+		if (body == null) {
+			return;
+		}
+
+		try {
+			super.publishEvent((T) body);
+		} catch (Throwable e) {
+			logger.error(e, "dispatch event error: {}", body);
+		}
+	}
+}
@@ -0,0 +1,145 @@
+package scw.redis.core.locks;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import scw.core.Constants;
+import scw.io.ResourceUtils;
+import scw.locks.LeaseRenewer;
+import scw.locks.RenewableLock;
+import scw.logger.Logger;
+import scw.logger.LoggerFactory;
+import scw.redis.core.Redis;
+import scw.redis.core.RedisConnectionFailureException;
+import scw.redis.core.RedisSystemException;
+import scw.value.AnyValue;
+
+/**
+ * 使用一个lua脚本批量续期，一次往返完成一批锁的续期<br/>
+ * redis集群中一个脚本的key必须在同一个slot，跨slot的批量续期失败后改为每个slot执行一次脚本
+ * 
+ * @author shuchaowen
+ *
+ */
+final class RedisLeaseRenewer implements LeaseRenewer {
+	private static final String RENEWAL_SCRIPT = ResourceUtils
+			.getContent(ResourceUtils.getSystemResource("/scw/redis/core/lock_renewal.script"), Constants.UTF_8);
+	private static Logger logger = LoggerFactory.getLogger(RedisLeaseRenewer.class);
+	private static final int SLOTS = 16384;
+	private final Redis redis;
+	/**
+	 * 是否需要按slot分批续期(redis集群)
+	 */
+	private volatile boolean crossSlot;
+
+	RedisLeaseRenewer(Redis redis) {
+		this.redis = redis;
+	}
+
+	@Override
+	public Collection<? extends RenewableLock> renewal(List<? extends RenewableLock> locks, long time,
+			TimeUnit unit) {
+		String expire = String.valueOf(Math.max(1, unit.toSeconds(time)));
+		Map<Integer, List<RenewableLock>> slots = groupBySlot(locks);
+		if (slots.size() == 1) {
+			return renewal(locks, expire);
+		}
+
+		if (!crossSlot) {
+			try {
+				return renewal(locks, expire);
+			} catch (RedisConnectionFailureException e) {
+				throw e;
+			} catch (RedisSystemException e) {
+				// 可能是redis集群不支持跨slot的key
+				logger.debug(e, "renewal {} locks error, retry by slot", locks.size());
+			}
+		}
+
+		List<RenewableLock> lost = new ArrayList<RenewableLock>();
+		for (List<RenewableLock> group : slots.values()) {
+			lost.addAll(renewal(group, expire));
+		}
+		// 按slot分批成功了，之后直接分批
+		crossSlot = true;
+		return lost;
+	}
+
+	private Collection<? extends RenewableLock> renewal(List<? extends RenewableLock> locks, String expire) {
+		List<String> keys = new ArrayList<String>(locks.size());
+		List<String> args = new ArrayList<String>(locks.size() + 1);
+		args.add(expire);
+		for (RenewableLock lock : locks) {
+			RedisLock redisLock = (RedisLock) lock;
+			keys.add(redisLock.getKey());
+			args.add(redisLock.getId());
+		}
+
+		List<?> indexs = redis.eval(RENEWAL_SCRIPT, keys, args);
+		if (indexs == null || indexs.isEmpty()) {
+			return Collections.emptyList();
+		}
+
+		List<RenewableLock> lost = new ArrayList<RenewableLock>(indexs.size());
+		for (Object index : indexs) {
+			// lua的下标从1开始
+			lost.add(locks.get(new AnyValue(index).getAsIntValue() - 1));
+		}
+		return lost;
+	}
+
+	private static Map<Integer, List<RenewableLock>> groupBySlot(List<? extends RenewableLock> locks) {
+		Map<Integer, List<RenewableLock>> slots = new LinkedHashMap<Integer, List<RenewableLock>>();
+		for (RenewableLock lock : locks) {
+			Integer slot = getSlot(((RedisLock) lock).getKey());
+			List<RenewableLock> group = slots.get(slot);
+			if (group == null) {
+				group = new ArrayList<RenewableLock>();
+				slots.put(slot, group);
+			}
+			group.add(lock);
+		}
+		return slots;
+	}
+
+	/**
+	 * redis集群的slot: CRC16(key) mod 16384，存在hash tag({...})时只计算hash tag
+	 */
+	static int getSlot(String key) {
+		int start = key.indexOf('{');
+		if (start != -1) {
+			int end = key.indexOf('}', start + 1);
+			if (end > start + 1) {
+				key = key.substring(start + 1, end);
+			}
+		}
+
+		int crc = 0;
+		for (byte b : key.getBytes(Constants.UTF_8)) {
+			crc ^= (b & 0xff) << 8;
+			for (int i = 0; i < 8; i++) {
+				crc = (crc & 0x8000) != 0 ? (crc << 1) ^ 0x1021 : crc << 1;
+			}
+		}
+		return (crc & 0xffff) % SLOTS;
+	}
+
+	@Override
+	public int hashCode() {
+		return System.identityHashCode(redis);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+
+		return obj instanceof RedisLeaseRenewer && ((RedisLeaseRenewer) obj).redis == redis;
+	}
+}
@@ -1,27 +1,69 @@
 package scw.redis.core.locks;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.concurrent.TimeUnit;
 
 import scw.core.Constants;
 import scw.io.ResourceUtils;
+import scw.lang.Nullable;
+import scw.locks.LeaseRenewer;
 import scw.locks.RenewableLock;
 import scw.redis.core.Redis;
 import scw.redis.core.RedisStringCommands.ExpireOption;
 import scw.redis.core.SetOption;
 
 public final class RedisLock extends RenewableLock {
-	private static final String UNLOCK_SCRIPT = ResourceUtils.getContent(ResourceUtils.getSystemResource("/scw/data/redis/lock.script"),
+	private static final String UNLOCK_SCRIPT = ResourceUtils.getContent(ResourceUtils.getSystemResource("/scw/redis/core/lock.script"),
 			Constants.UTF_8);
 	private final Redis redis;
 	private final String key;
 	private final String id;
+	private final String unlockChannel;
+	private final RedisLeaseRenewer leaseRenewer;
 
 	public RedisLock(Redis redis, String key, String id, TimeUnit timeUnit, long timeout) {
+		this(redis, key, id, timeUnit, timeout, null);
+	}
+
+	/**
+	 * @param unlockChannel 解锁成功后会将key发布到此channel, 为空不发布
+	 */
+	public RedisLock(Redis redis, String key, String id, TimeUnit timeUnit, long timeout,
+			@Nullable String unlockChannel) {
+		this(redis, key, id, timeUnit, timeout, unlockChannel, new RedisLeaseRenewer(redis));
+	}
+
+	RedisLock(Redis redis, String key, String id, TimeUnit timeUnit, long timeout, @Nullable String unlockChannel,
+			RedisLeaseRenewer leaseRenewer) {
 		super(timeUnit, timeout);
 		this.redis = redis;
 		this.key = key;
 		this.id = id;
+		this.unlockChannel = unlockChannel;
+		this.leaseRenewer = leaseRenewer;
+	}
+
+	public String getKey() {
+		return key;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	static String getWaiterName(String key) {
+		return RedisLock.class.getName() + ":" + key;
+	}
+
+	@Override
+	protected String getWaiterName() {
+		return getWaiterName(key);
+	}
+
+	@Override
+	protected LeaseRenewer getLeaseRenewer() {
+		return leaseRenewer;
 	}
 
 	public boolean tryLock() {
@@ -35,8 +77,9 @@ public final class RedisLock extends RenewableLock {
 	public void unlock() {
 		cancelAutoRenewal();
 		redis.eval(UNLOCK_SCRIPT, Collections.singletonList(key),
-				Collections.singletonList(id));
+				unlockChannel == null ? Collections.singletonList(id) : Arrays.asList(id, unlockChannel));
 		//boolean b = values.length == 0 ? false : values[0].getAsBooleanValue();
+		signalUnlocked();
 	}
 
 	public boolean renewal(long time, TimeUnit unit) {
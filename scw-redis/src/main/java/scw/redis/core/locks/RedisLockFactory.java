@@ -1,24 +1,123 @@
 package scw.redis.core.locks;
 
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import scw.context.annotation.Provider;
+import scw.lang.Nullable;
 import scw.locks.LockFactory;
+import scw.locks.LockWaiter;
 import scw.locks.RenewableLock;
 import scw.locks.RenewableLockFactory;
+import scw.logger.Logger;
+import scw.logger.LoggerFactory;
+import scw.redis.core.Message;
+import scw.redis.core.MessageListener;
 import scw.redis.core.Redis;
 import scw.util.XUtils;
 
+/**
+ * 解锁时会通过redis的发布/订阅通知所有节点，等待的线程收到通知后立即重试，不需要频繁轮询
+ * 
+ * @author shuchaowen
+ *
+ */
 @Provider(value = LockFactory.class)
-public final class RedisLockFactory extends RenewableLockFactory {
+public final class RedisLockFactory extends RenewableLockFactory implements MessageListener<String, String> {
+	private static Logger logger = LoggerFactory.getLogger(RedisLockFactory.class);
+	public static final String DEFAULT_UNLOCK_CHANNEL = "scw:locks:unlock";
+
 	private final Redis redis;
+	/**
+	 * 共享同一个续期器，记住是否需要按slot分批
+	 */
+	private final RedisLeaseRenewer leaseRenewer;
+	private final AtomicBoolean subscribed = new AtomicBoolean(false);
+	private String unlockChannel = DEFAULT_UNLOCK_CHANNEL;
+	private long maxSleepTime = 1000L;
+	private long retryInterval = 5000L;
 
 	public RedisLockFactory(Redis redis) {
 		this.redis = redis;
+		this.leaseRenewer = new RedisLeaseRenewer(redis);
+	}
+
+	public String getUnlockChannel() {
+		return unlockChannel;
+	}
+
+	/**
+	 * 解锁通知的channel，为空表示不使用通知
+	 * 
+	 * @param unlockChannel
+	 */
+	public void setUnlockChannel(@Nullable String unlockChannel) {
+		this.unlockChannel = unlockChannel;
+	}
+
+	public long getMaxSleepTime() {
+		return maxSleepTime;
+	}
+
+	/**
+	 * 使用通知时退避的最大等待时间(毫秒)，只有在锁过期等未收到通知时才会等待这么久
+	 * 
+	 * @param maxSleepTime
+	 */
+	public void setMaxSleepTime(long maxSleepTime) {
+		this.maxSleepTime = maxSleepTime;
+	}
+
+	public long getRetryInterval() {
+		return retryInterval;
+	}
+
+	/**
+	 * 订阅断开后重新订阅的间隔(毫秒)
+	 * 
+	 * @param retryInterval
+	 */
+	public void setRetryInterval(long retryInterval) {
+		this.retryInterval = retryInterval;
 	}
 
 	@Override
 	public RenewableLock getLock(String name, TimeUnit timeUnit, long timeout) {
-		return new RedisLock(redis, name, XUtils.getUUID(), timeUnit, timeout);
+		String channel = this.unlockChannel;
+		RedisLock lock = new RedisLock(redis, name, XUtils.getUUID(), timeUnit, timeout, channel, leaseRenewer);
+		if (channel != null) {
+			lock.setMaxSleepTime(Math.max(lock.getMaxSleepTime(), maxSleepTime));
+			if (!subscribed.get() && subscribed.compareAndSet(false, true)) {
+				Thread thread = new Thread(() -> subscribe(channel), getClass().getSimpleName() + "-" + channel);
+				thread.setDaemon(true);
+				thread.start();
+			}
+		}
+		return lock;
+	}
+
+	private void subscribe(String channel) {
+		// 订阅会阻塞连接
+		while (!Thread.currentThread().isInterrupted()) {
+			try {
+				redis.subscribe(this, channel);
+			} catch (Throwable e) {
+				logger.error(e, "subscribe channel [{}] error", channel);
+			}
+
+			try {
+				Thread.sleep(retryInterval);
+			} catch (InterruptedException e) {
+				break;
+			}
+		}
+	}
+
+	@Override
+	public void onMessage(Message<String, String> message, String pattern) {
+		String key = message.getBody();
+		if (key != null) {
+			LockWaiter.signal(RedisLock.getWaiterName(key));
+		}
 	}
 }
@@ -0,0 +1,511 @@
+package scw.rpc.remote;
+
+import java.io.DataInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.CipherOutputStream;
+import javax.crypto.Mac;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import scw.codec.support.CharsetCodec;
+import scw.core.Assert;
+import scw.http.HttpRequest;
+import scw.io.IOUtils;
+import scw.io.PooledByteArrayOutputStream;
+import scw.io.Serializer;
+import scw.io.SerializerUtils;
+import scw.lang.Nullable;
+import scw.net.message.InputMessage;
+import scw.net.message.OutputMessage;
+
+/**
+ * 二进制的编解码方式，序列化的数据以长度前缀分块的方式直接写入消息体，不需要先在内存中生成完整的数据<br/>
+ * 数据格式: magic(2) | version(1) | mode(1) | [iv(12)] | chunk... | 0 | [hmac(32)]<br/>
+ * {@link Mode#HMAC}只签名，{@link Mode#AES_GCM}加密并认证，认证通过后才会反序列化<br/>
+ * <br/>
+ * 通过消息头协商格式，兼容旧的对端(如{@link SignerRemoteMessageCodec}、{@link DefaultRemoteMessageCodec}):
+ * <ul>
+ * <li>服务端: 没有{@link #CODEC_HEADER_NAME}的请求交给fallback解码，请求声明了{@link #ACCEPT_CODEC_HEADER_NAME}时使用二进制格式响应，否则使用fallback响应</li>
+ * <li>客户端: 存在fallback时先使用fallback编码请求，收到二进制格式的响应后发往同一个目标({@link #getTarget(OutputMessage)})的请求都使用二进制格式，
+ * 收到fallback格式的响应或二进制格式解码失败时(如滚动升级时负载均衡到了旧的节点)重新使用fallback格式，请求中总是声明支持二进制格式</li>
+ * <li>二进制格式的请求被旧的节点拒绝(fallback格式的响应中是{@link RemoteMessageCodecException})时抛出{@link UnsupportedCodecException}，
+ * 此时请求没有被执行，调用方可以重试一次，重试时会使用fallback格式</li>
+ * </ul>
+ *
+ * @author shuchaowen
+ *
+ */
+public class BinaryRemoteMessageCodec implements RemoteMessageCodec {
+	public static final String CODEC_HEADER_NAME = "X-Rpc-Codec";
+	public static final String ACCEPT_CODEC_HEADER_NAME = "X-Rpc-Accept-Codec";
+	public static final String CODEC_NAME = "binary/1";
+	public static final int DEFAULT_CHUNK_SIZE = 8192;
+	/**
+	 * 允许读取的最大的块，防止错误的数据导致分配过大的内存
+	 */
+	public static final int MAX_CHUNK_SIZE = 16 * 1024 * 1024;
+	/**
+	 * 默认允许读取的最大的数据长度，需要认证的数据在认证前会读取到内存中
+	 */
+	public static final long DEFAULT_MAX_FRAME_SIZE = 64 * 1024 * 1024;
+
+	private static final int MAGIC = 0x5357;
+	private static final int VERSION = 1;
+	private static final String MODE_ATTRIBUTE_NAME = BinaryRemoteMessageCodec.class.getName() + ".mode";
+	/**
+	 * 客户端发送请求的目标和格式，在写入后设置，读取响应时移除，不会被序列化到请求中
+	 */
+	private static final String TARGET_ATTRIBUTE_NAME = BinaryRemoteMessageCodec.class.getName() + ".target";
+	private static final String BINARY_ATTRIBUTE_NAME = BinaryRemoteMessageCodec.class.getName() + ".binary";
+	private static final String DEFAULT_TARGET = "";
+	private static final String HMAC_ALGORITHM = "HmacSHA256";
+	private static final String GCM_TRANSFORMATION = "AES/GCM/NoPadding";
+	private static final int GCM_IV_LENGTH = 12;
+	private static final int GCM_TAG_BITS = 128;
+	private static final SecureRandom RANDOM = new SecureRandom();
+
+	public static enum Mode {
+		/**
+		 * 不认证
+		 */
+		NONE,
+		/**
+		 * 使用HmacSHA256签名
+		 */
+		HMAC,
+		/**
+		 * 使用AES-GCM加密并认证
+		 */
+		AES_GCM
+	}
+
+	private final Serializer serializer;
+	private final Mode mode;
+	private final SecretKeySpec hmacKey;
+	private final SecretKeySpec aesKey;
+	private final RemoteMessageCodec fallback;
+	private int chunkSize = DEFAULT_CHUNK_SIZE;
+	private long maxFrameSize = DEFAULT_MAX_FRAME_SIZE;
+	private boolean negotiate;
+	/**
+	 * 已经确认支持二进制格式的目标
+	 */
+	private final Set<String> supportedTargets = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * 使用{@link Mode#HMAC}, 兼容{@link SignerRemoteMessageCodec}
+	 *
+	 * @param secretKey
+	 */
+	public BinaryRemoteMessageCodec(String secretKey) {
+		this(null, secretKey);
+	}
+
+	/**
+	 * 使用{@link Mode#HMAC}, 兼容{@link SignerRemoteMessageCodec}
+	 *
+	 * @param serializer
+	 * @param secretKey
+	 */
+	public BinaryRemoteMessageCodec(@Nullable Serializer serializer, String secretKey) {
+		this(serializer, secretKey, Mode.HMAC, new SignerRemoteMessageCodec(serializer, secretKey));
+	}
+
+	public BinaryRemoteMessageCodec(@Nullable Serializer serializer, @Nullable String secretKey, Mode mode,
+			@Nullable RemoteMessageCodec fallback) {
+		this(serializer, secretKey == null ? null : CharsetCodec.UTF_8.encode(secretKey), mode, fallback);
+	}
+
+	/**
+	 * @param serializer
+	 * @param secretKey  除了{@link Mode#NONE}外都是必须的
+	 * @param mode       发送时使用的认证方式
+	 * @param fallback   用于和旧的对端交互，为空时只支持二进制格式
+	 */
+	public BinaryRemoteMessageCodec(@Nullable Serializer serializer, @Nullable byte[] secretKey, Mode mode,
+			@Nullable RemoteMessageCodec fallback) {
+		Assert.requiredArgument(mode != null, "mode");
+		Assert.requiredArgument(mode == Mode.NONE || (secretKey != null && secretKey.length > 0), "secretKey");
+		this.serializer = serializer == null ? SerializerUtils.getSerializer() : serializer;
+		this.mode = mode;
+		if (secretKey == null || secretKey.length == 0) {
+			this.hmacKey = null;
+			this.aesKey = null;
+		} else {
+			this.hmacKey = new SecretKeySpec(deriveKey(secretKey, "hmac", 32), HMAC_ALGORITHM);
+			this.aesKey = new SecretKeySpec(deriveKey(secretKey, "aes", 16), "AES");
+		}
+		this.fallback = fallback;
+		this.negotiate = fallback != null;
+	}
+
+	private static byte[] deriveKey(byte[] secretKey, String label, int length) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			digest.update(CharsetCodec.UTF_8.encode(label));
+			digest.update(secretKey);
+			return Arrays.copyOf(digest.digest(), length);
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public Mode getMode() {
+		return mode;
+	}
+
+	public RemoteMessageCodec getFallback() {
+		return fallback;
+	}
+
+	public int getChunkSize() {
+		return chunkSize;
+	}
+
+	public void setChunkSize(int chunkSize) {
+		Assert.requiredArgument(chunkSize > 0 && chunkSize <= MAX_CHUNK_SIZE, "chunkSize");
+		this.chunkSize = chunkSize;
+	}
+
+	public long getMaxFrameSize() {
+		return maxFrameSize;
+	}
+
+	/**
+	 * 读取时允许的最大的数据长度(不包含头部和分块长度)，超过时解码失败
+	 * 
+	 * @param maxFrameSize
+	 */
+	public void setMaxFrameSize(long maxFrameSize) {
+		Assert.requiredArgument(maxFrameSize > 0, "maxFrameSize");
+		this.maxFrameSize = maxFrameSize;
+	}
+
+	public boolean isNegotiate() {
+		return negotiate;
+	}
+
+	/**
+	 * 客户端是否需要先协商，默认存在fallback时需要协商<br/>
+	 * 设置为false时总是使用二进制格式发送请求(对端必须支持)
+	 *
+	 * @param negotiate
+	 */
+	public void setNegotiate(boolean negotiate) {
+		Assert.requiredArgument(!negotiate || fallback != null, "negotiate");
+		this.negotiate = negotiate;
+	}
+
+	private static boolean isBinary(InputMessage input) {
+		return CODEC_NAME.equals(input.getHeaders().getFirst(CODEC_HEADER_NAME));
+	}
+
+	/**
+	 * 是否可以接收此认证方式的数据，有密钥时不接收未认证的数据
+	 */
+	private boolean isAcceptable(Mode mode) {
+		return mode == Mode.NONE ? this.mode == Mode.NONE : hmacKey != null;
+	}
+
+	private byte[] createHeader(Mode mode) {
+		byte[] header = new byte[mode == Mode.AES_GCM ? 4 + GCM_IV_LENGTH : 4];
+		header[0] = (byte) (MAGIC >>> 8);
+		header[1] = (byte) MAGIC;
+		header[2] = (byte) VERSION;
+		header[3] = (byte) mode.ordinal();
+		if (mode == Mode.AES_GCM) {
+			byte[] iv = new byte[GCM_IV_LENGTH];
+			RANDOM.nextBytes(iv);
+			System.arraycopy(iv, 0, header, 4, GCM_IV_LENGTH);
+		}
+		return header;
+	}
+
+	public void write(OutputMessage output, Object message, Mode mode)
+			throws IOException, RemoteMessageCodecException {
+		Assert.requiredArgument(isAcceptable(mode), "mode");
+		byte[] header = createHeader(mode);
+		output.getHeaders().set(CODEC_HEADER_NAME, CODEC_NAME);
+		OutputStream os = output.getOutputStream();
+		try {
+			os.write(header);
+			ChunkedOutputStream chunked = new ChunkedOutputStream(os, chunkSize);
+			switch (mode) {
+			case HMAC:
+				Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+				mac.init(hmacKey);
+				mac.update(header);
+				MacOutputStream macOutput = new MacOutputStream(chunked, mac);
+				serializer.serialize(macOutput, message);
+				macOutput.close();
+				os.write(mac.doFinal());
+				break;
+			case AES_GCM:
+				Cipher cipher = Cipher.getInstance(GCM_TRANSFORMATION);
+				cipher.init(Cipher.ENCRYPT_MODE, aesKey,
+						new GCMParameterSpec(GCM_TAG_BITS, header, 4, GCM_IV_LENGTH));
+				cipher.updateAAD(header);
+				CipherOutputStream cipherOutput = new CipherOutputStream(chunked, cipher);
+				serializer.serialize(cipherOutput, message);
+				cipherOutput.close();
+				break;
+			default:
+				serializer.serialize(chunked, message);
+				chunked.close();
+				break;
+			}
+		} catch (GeneralSecurityException e) {
+			throw new RemoteMessageCodecException(e);
+		} finally {
+			os.close();
+		}
+	}
+
+	public Object read(InputMessage input) throws IOException, RemoteMessageCodecException {
+		return readFrame(input).message;
+	}
+
+	private Frame readFrame(InputMessage input) throws IOException, RemoteMessageCodecException {
+		InputStream is = input.getInputStream();
+		try {
+			DataInputStream in = new DataInputStream(is);
+			int magic = in.readUnsignedShort();
+			int version = in.readUnsignedByte();
+			if (magic != MAGIC || version != VERSION) {
+				throw new RemoteMessageCodecException(
+						"Unsupported frame magic=" + Integer.toHexString(magic) + ", version=" + version);
+			}
+
+			int ordinal = in.readUnsignedByte();
+			Mode[] modes = Mode.values();
+			if (ordinal >= modes.length || !isAcceptable(modes[ordinal])) {
+				throw new RemoteMessageCodecException("Unacceptable frame mode: " + ordinal);
+			}
+
+			Mode mode = modes[ordinal];
+			byte[] header = new byte[mode == Mode.AES_GCM ? 4 + GCM_IV_LENGTH : 4];
+			header[0] = (byte) (magic >>> 8);
+			header[1] = (byte) magic;
+			header[2] = (byte) version;
+			header[3] = (byte) ordinal;
+			in.readFully(header, 4, header.length - 4);
+
+			ChunkedInputStream chunked = new ChunkedInputStream(in, MAX_CHUNK_SIZE, maxFrameSize);
+			if (mode == Mode.NONE) {
+				return new Frame(mode, serializer.deserialize(chunked));
+			}
+
+			// 需要认证的数据先读取到缓冲区，认证通过后再反序列化
+			PooledByteArrayOutputStream buffer = new PooledByteArrayOutputStream();
+			try {
+				IOUtils.copy(chunked, buffer);
+				if (mode == Mode.HMAC) {
+					Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+					mac.init(hmacKey);
+					mac.update(header);
+					mac.update(buffer.getBuffer(), 0, buffer.size());
+					byte[] sign = new byte[mac.getMacLength()];
+					in.readFully(sign);
+					if (!MessageDigest.isEqual(mac.doFinal(), sign)) {
+						throw new RemoteMessageCodecException("sign verify fail");
+					}
+					return new Frame(mode, serializer.deserialize(buffer.getBuffer(), 0, buffer.size()));
+				}
+
+				Cipher cipher = Cipher.getInstance(GCM_TRANSFORMATION);
+				cipher.init(Cipher.DECRYPT_MODE, aesKey, new GCMParameterSpec(GCM_TAG_BITS, header, 4, GCM_IV_LENGTH));
+				cipher.updateAAD(header);
+				byte[] data;
+				try {
+					data = cipher.doFinal(buffer.getBuffer(), 0, buffer.size());
+				} catch (AEADBadTagException e) {
+					throw new RemoteMessageCodecException("authentication fail");
+				}
+				return new Frame(mode, serializer.deserialize(data));
+			} finally {
+				buffer.release();
+			}
+		} catch (GeneralSecurityException e) {
+			throw new RemoteMessageCodecException(e);
+		} catch (ClassNotFoundException e) {
+			throw new RemoteMessageCodecException(e);
+		} finally {
+			is.close();
+		}
+	}
+
+	private RemoteMessageCodec requiredFallback() {
+		if (fallback == null) {
+			throw new RemoteMessageCodecException("Not a " + CODEC_NAME + " message");
+		}
+		return fallback;
+	}
+
+	/**
+	 * 协商的目标，默认是http请求的scheme和authority
+	 * 
+	 * @param output
+	 * @return
+	 */
+	protected String getTarget(OutputMessage output) {
+		if (output instanceof HttpRequest) {
+			URI uri = ((HttpRequest) output).getURI();
+			if (uri != null) {
+				return uri.getScheme() + "://" + uri.getRawAuthority();
+			}
+		}
+		return DEFAULT_TARGET;
+	}
+
+	/**
+	 * 是否已经确认目标支持二进制格式
+	 * 
+	 * @param target
+	 * @return
+	 */
+	public boolean isSupported(String target) {
+		return supportedTargets.contains(target);
+	}
+
+	public void encode(OutputMessage output, RemoteRequestMessage requestMessage)
+			throws IOException, RemoteMessageCodecException {
+		if (fallback == null) {
+			write(output, requestMessage, mode);
+			return;
+		}
+
+		// 对端可能是多个节点，总是声明支持二进制格式以便重新协商
+		output.getHeaders().set(ACCEPT_CODEC_HEADER_NAME, CODEC_NAME);
+		requestMessage.removeAttribute(TARGET_ATTRIBUTE_NAME);
+		requestMessage.removeAttribute(BINARY_ATTRIBUTE_NAME);
+		String target = getTarget(output);
+		boolean binary = !negotiate || supportedTargets.contains(target);
+		if (binary) {
+			write(output, requestMessage, mode);
+		} else {
+			fallback.encode(output, requestMessage);
+		}
+
+		requestMessage.setAttribute(TARGET_ATTRIBUTE_NAME, target);
+		if (binary) {
+			requestMessage.setAttribute(BINARY_ATTRIBUTE_NAME, true);
+		}
+	}
+
+	public RemoteResponseMessage decode(InputMessage input, RemoteRequestMessage requestMessage)
+			throws IOException, RemoteMessageCodecException {
+		String target = DEFAULT_TARGET;
+		boolean binary = false;
+		if (requestMessage != null) {
+			Object attribute = requestMessage.getAttribute(TARGET_ATTRIBUTE_NAME);
+			if (attribute instanceof String) {
+				target = (String) attribute;
+			}
+			binary = requestMessage.getAttribute(BINARY_ATTRIBUTE_NAME) != null;
+			requestMessage.removeAttribute(TARGET_ATTRIBUTE_NAME);
+			requestMessage.removeAttribute(BINARY_ATTRIBUTE_NAME);
+		}
+
+		if (isBinary(input)) {
+			RemoteResponseMessage responseMessage;
+			try {
+				responseMessage = (RemoteResponseMessage) read(input);
+			} catch (IOException e) {
+				supportedTargets.remove(target);
+				throw e;
+			} catch (RuntimeException e) {
+				supportedTargets.remove(target);
+				throw e;
+			}
+			supportedTargets.add(target);
+			return responseMessage;
+		}
+
+		// 对端(或负载均衡后的某个节点)不支持二进制格式
+		RemoteMessageCodec fallback = requiredFallback();
+		supportedTargets.remove(target);
+		RemoteResponseMessage responseMessage = fallback.decode(input, requestMessage);
+		if (binary && responseMessage != null
+				&& responseMessage.getThrowable() instanceof RemoteMessageCodecException) {
+			// 旧的节点无法解码二进制格式的请求
+			throw new UnsupportedCodecException(target + " does not support " + CODEC_NAME,
+					responseMessage.getThrowable());
+		}
+		return responseMessage;
+	}
+
+	public RemoteRequestMessage decode(InputMessage input) throws IOException, RemoteMessageCodecException {
+		if (isBinary(input)) {
+			Frame frame = readFrame(input);
+			RemoteRequestMessage requestMessage = (RemoteRequestMessage) frame.message;
+			// 使用和请求相同的方式响应
+			requestMessage.setAttribute(MODE_ATTRIBUTE_NAME, frame.mode);
+			return requestMessage;
+		}
+
+		RemoteRequestMessage requestMessage = requiredFallback().decode(input);
+		if (requestMessage != null && CODEC_NAME.equals(input.getHeaders().getFirst(ACCEPT_CODEC_HEADER_NAME))) {
+			requestMessage.setAttribute(MODE_ATTRIBUTE_NAME, mode);
+		}
+		return requestMessage;
+	}
+
+	public void encode(OutputMessage output, RemoteResponseMessage responseMessage,
+			@Nullable RemoteRequestMessage requestMessage) throws IOException, RemoteMessageCodecException {
+		Object responseMode = requestMessage == null ? null : requestMessage.getAttribute(MODE_ATTRIBUTE_NAME);
+		if (responseMode instanceof Mode) {
+			write(output, responseMessage, (Mode) responseMode);
+		} else if (fallback != null) {
+			fallback.encode(output, responseMessage, requestMessage);
+		} else {
+			write(output, responseMessage, mode);
+		}
+	}
+
+	private static final class Frame {
+		private final Mode mode;
+		private final Object message;
+
+		Frame(Mode mode, Object message) {
+			this.mode = mode;
+			this.message = message;
+		}
+	}
+
+	/**
+	 * 写入时同时计算签名
+	 */
+	private static final class MacOutputStream extends FilterOutputStream {
+		private final Mac mac;
+
+		MacOutputStream(OutputStream out, Mac mac) {
+			super(out);
+			this.mac = mac;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			mac.update((byte) b);
+			out.write(b);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			mac.update(b, off, len);
+			out.write(b, off, len);
+		}
+	}
+}
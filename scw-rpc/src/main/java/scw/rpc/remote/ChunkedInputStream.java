@@ -0,0 +1,110 @@
+package scw.rpc.remote;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 读取{@link ChunkedOutputStream}写出的数据，读到结束标记后返回-1，不会继续读取底层的流
+ * 
+ * @author shuchaowen
+ *
+ */
+class ChunkedInputStream extends InputStream {
+	private final DataInputStream in;
+	private final int maxChunkSize;
+	private final long maxLength;
+	private long length;
+	private int remaining;
+	private boolean finished;
+
+	/**
+	 * @param in
+	 * @param maxChunkSize 允许的最大的块
+	 * @param maxLength    允许的所有块的总长度
+	 */
+	ChunkedInputStream(DataInputStream in, int maxChunkSize, long maxLength) {
+		this.in = in;
+		this.maxChunkSize = maxChunkSize;
+		this.maxLength = maxLength;
+	}
+
+	/**
+	 * @return 是否还有数据
+	 * @throws IOException
+	 */
+	private boolean nextChunk() throws IOException {
+		while (!finished && remaining == 0) {
+			int length = in.readInt();
+			if (length < 0 || length > maxChunkSize) {
+				throw new IOException("Illegal chunk length: " + length);
+			}
+
+			if (length == 0) {
+				finished = true;
+			}
+
+			this.length += length;
+			if (this.length > maxLength) {
+				throw new IOException("Frame too large, max length: " + maxLength);
+			}
+			remaining = length;
+		}
+		return !finished;
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (!nextChunk()) {
+			return -1;
+		}
+
+		int b = in.read();
+		if (b < 0) {
+			throw new EOFException();
+		}
+		remaining--;
+		return b;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+
+		if (!nextChunk()) {
+			return -1;
+		}
+
+		int size = in.read(b, off, Math.min(len, remaining));
+		if (size < 0) {
+			throw new EOFException();
+		}
+		remaining -= size;
+		return size;
+	}
+
+	@Override
+	public int available() throws IOException {
+		return finished ? 0 : Math.min(remaining, in.available());
+	}
+
+	/**
+	 * 跳过剩余的数据直到结束标记
+	 * 
+	 * @throws IOException
+	 */
+	public void finish() throws IOException {
+		byte[] buffer = new byte[256];
+		while (read(buffer, 0, buffer.length) >= 0) {
+			// ignore
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		finish();
+	}
+}
@@ -0,0 +1,87 @@
+package scw.rpc.remote;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import scw.io.Bits;
+
+/**
+ * 以长度前缀分块的方式写出数据，长度为0的块表示结束<br/>
+ * 事先不需要知道数据的总长度，close时只写入结束标记不会关闭底层的流
+ * 
+ * @author shuchaowen
+ *
+ */
+class ChunkedOutputStream extends OutputStream {
+	private final OutputStream out;
+	private final byte[] buffer;
+	private int count = 4;
+	private boolean closed;
+
+	ChunkedOutputStream(OutputStream out, int chunkSize) {
+		this.out = out;
+		this.buffer = new byte[chunkSize + 4];
+	}
+
+	private void writeChunk() throws IOException {
+		int length = count - 4;
+		if (length > 0) {
+			Bits.putInt(buffer, 0, length);
+			out.write(buffer, 0, count);
+			count = 4;
+		}
+	}
+
+	private void ensureOpen() throws IOException {
+		if (closed) {
+			throw new IOException("Stream closed");
+		}
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		ensureOpen();
+		if (count == buffer.length) {
+			writeChunk();
+		}
+		buffer[count++] = (byte) b;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		ensureOpen();
+		while (len > 0) {
+			if (count == buffer.length) {
+				writeChunk();
+			}
+
+			int size = Math.min(len, buffer.length - count);
+			System.arraycopy(b, off, buffer, count, size);
+			count += size;
+			off += size;
+			len -= size;
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		if (closed) {
+			return;
+		}
+
+		writeChunk();
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+
+		writeChunk();
+		Bits.putInt(buffer, 0, 0);
+		out.write(buffer, 0, 4);
+		closed = true;
+	}
+}
@@ -108,7 +108,7 @@ public class DefaultRemoteMessageCodec implements RemoteMessageCodec {
 			RemoteResponseMessage responseMessage,
 			RemoteRequestMessage requestMessage) throws IOException,
 			RemoteMessageCodecException {
-		encode(output, responseMessage, requestMessage);
+		write(output, responseMessage);
 	}
 
 }
@@ -12,4 +12,8 @@ public class RemoteMessageCodecException extends NestedRuntimeException{
 	public RemoteMessageCodecException(Throwable cause) {
 		super(cause);
 	}
+
+	public RemoteMessageCodecException(String msg, Throwable cause) {
+		super(msg, cause);
+	}
 }
@@ -0,0 +1,15 @@
+package scw.rpc.remote;
+
+/**
+ * 对端不支持请求使用的编码格式，对端没有执行请求，可以使用其他格式重试
+ * 
+ * @author shuchaowen
+ *
+ */
+public class UnsupportedCodecException extends RemoteMessageCodecException {
+	private static final long serialVersionUID = 1L;
+
+	public UnsupportedCodecException(String msg, Throwable cause) {
+		super(msg, cause);
+	}
+}
@@ -13,6 +13,7 @@ import scw.rpc.RemoteException;
 import scw.rpc.remote.RemoteMessageCodec;
 import scw.rpc.remote.RemoteRequestMessage;
 import scw.rpc.remote.RemoteResponseMessage;
+import scw.rpc.remote.UnsupportedCodecException;
 
 public class HttpCallable implements Callable<Object> {
 	private final ClientHttpRequestFactory requestFactory;
@@ -31,6 +32,15 @@ public class HttpCallable implements Callable<Object> {
 	}
 
 	public Object call() throws Exception {
+		try {
+			return execute();
+		} catch (UnsupportedCodecException e) {
+			// 滚动升级时请求到了不支持此格式的旧节点，请求没有被执行，使用旧的格式重试一次
+			return execute();
+		}
+	}
+
+	private Object execute() throws Exception {
 		ClientHttpRequest httpRequest = requestFactory.createRequest(uri, HttpMethod.POST);
 		if(httpHeaders != null){
 			httpRequest.getHeaders().putAll(httpHeaders);
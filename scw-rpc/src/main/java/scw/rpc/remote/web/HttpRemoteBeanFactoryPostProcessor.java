@@ -19,6 +19,7 @@ import scw.http.client.SimpleClientHttpRequestFactory;
 import scw.io.Serializer;
 import scw.lang.NotSupportedException;
 import scw.rpc.CallableFactory;
+import scw.rpc.remote.BinaryRemoteMessageCodec;
 import scw.rpc.remote.RemoteMessageCodec;
 import scw.rpc.remote.SignerRemoteMessageCodec;
 import scw.rpc.support.RemoteCallableBeanDefinition;
@@ -94,7 +95,9 @@ public class HttpRemoteBeanFactoryPostProcessor implements BeanFactoryPostProces
 			if(StringUtils.isNotEmpty(serializer) || StringUtils.isNotEmpty(secretKey)){
 				Serializer ser = StringUtils.isEmpty(serializer) ? null
 						: (Serializer) beanFactory.getInstance(serializer);
-				codec = new SignerRemoteMessageCodec(ser, secretKey);
+				// 有密钥时先使用签名方式通信，对端支持时切换到二进制格式
+				codec = StringUtils.isEmpty(secretKey) ? new SignerRemoteMessageCodec(ser, secretKey)
+						: new BinaryRemoteMessageCodec(ser, secretKey);
 			}
 			
 			String codecName = DomUtils.getNodeAttributeValue(beanFactory.getEnvironment(), node, "codec");
@@ -5,7 +5,9 @@ import scw.beans.BeansException;
 import scw.beans.ConfigurableBeanFactory;
 import scw.beans.support.DefaultBeanDefinition;
 import scw.context.annotation.Provider;
+import scw.core.utils.StringUtils;
 import scw.instance.InstanceException;
+import scw.rpc.remote.BinaryRemoteMessageCodec;
 import scw.rpc.remote.RemoteMessageCodec;
 import scw.rpc.remote.SignerRemoteMessageCodec;
 
@@ -53,7 +55,9 @@ public class WebBeanFactoryPostProcessor implements BeanFactoryPostProcessor {
 						String.class,
 						beanFactory.getEnvironment().getString(
 								WEB_RPC_SECRET_KEY));
-				messageCodec = new SignerRemoteMessageCodec(secretKey);
+				// 有密钥时兼容只支持签名方式的旧客户端
+				messageCodec = StringUtils.isEmpty(secretKey) ? new SignerRemoteMessageCodec(secretKey)
+						: new BinaryRemoteMessageCodec(secretKey);
 			}
 
 			String path = beanFactory.getEnvironment().getValue(
@@ -0,0 +1,422 @@
+package scw.rpc.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import scw.http.HttpHeaders;
+import scw.http.HttpMethod;
+import scw.http.client.ClientHttpRequest;
+import scw.http.client.ClientHttpRequestFactory;
+import scw.http.client.ClientHttpResponse;
+import scw.net.MimeType;
+import scw.net.message.Headers;
+import scw.net.message.InputMessage;
+import scw.net.message.OutputMessage;
+import scw.rpc.remote.BinaryRemoteMessageCodec;
+import scw.rpc.remote.BinaryRemoteMessageCodec.Mode;
+import scw.rpc.remote.DefaultRemoteMessageCodec;
+import scw.rpc.remote.DefaultRemoteRequestMessage;
+import scw.rpc.remote.DefaultRemoteResponseMessage;
+import scw.rpc.remote.RemoteMessageCodec;
+import scw.rpc.remote.RemoteMessageCodecException;
+import scw.rpc.remote.RemoteRequestMessage;
+import scw.rpc.remote.SignerRemoteMessageCodec;
+import scw.rpc.remote.UnsupportedCodecException;
+import scw.rpc.remote.web.HttpCallable;
+
+public class BinaryRemoteMessageCodecTest {
+	private static final String SECRET_KEY = "secret";
+
+	private static String text(int length) {
+		StringBuilder sb = new StringBuilder(length);
+		for (int i = 0; i < length; i++) {
+			sb.append((char) ('a' + i % 26));
+		}
+		return sb.toString();
+	}
+
+	private static RemoteRequestMessage request(String arg) throws NoSuchMethodException {
+		return new DefaultRemoteRequestMessage(String.class, String.class.getMethod("concat", String.class),
+				new Object[] { arg });
+	}
+
+	/**
+	 * 模拟一次调用，服务端返回参数的大写
+	 */
+	private static Object call(RemoteMessageCodec client, RemoteMessageCodec server, String arg) throws Exception {
+		RemoteRequestMessage requestMessage = request(arg);
+		Message request = new Message();
+		client.encode(request, requestMessage);
+
+		RemoteRequestMessage serverRequest = server.decode(request.toInput());
+		DefaultRemoteResponseMessage responseMessage = new DefaultRemoteResponseMessage();
+		responseMessage.setBody(((String) serverRequest.getArgs()[0]).toUpperCase());
+		Message response = new Message();
+		server.encode(response, responseMessage, serverRequest);
+		return client.decode(response.toInput(), requestMessage).getBody();
+	}
+
+	private static boolean isBinary(Message message) {
+		return BinaryRemoteMessageCodec.CODEC_NAME
+				.equals(message.getHeaders().getFirst(BinaryRemoteMessageCodec.CODEC_HEADER_NAME));
+	}
+
+	private static Message encode(RemoteMessageCodec codec, String arg) throws Exception {
+		Message message = new Message();
+		codec.encode(message, request(arg));
+		return message;
+	}
+
+	private static void assertRejected(RemoteMessageCodec codec, Message message) {
+		try {
+			codec.decode(message.toInput());
+			fail("should be rejected");
+		} catch (RemoteMessageCodecException e) {
+			// ok
+		} catch (IOException e) {
+			// ok
+		}
+	}
+
+	@Test
+	public void roundTrip() throws Exception {
+		String arg = text(50000);
+		for (Mode mode : Mode.values()) {
+			BinaryRemoteMessageCodec codec = new BinaryRemoteMessageCodec(null,
+					mode == Mode.NONE ? null : SECRET_KEY, mode, null);
+			codec.setChunkSize(1024);
+			assertEquals(mode.name(), arg.toUpperCase(), call(codec, codec, arg));
+			assertTrue(isBinary(encode(codec, arg)));
+		}
+	}
+
+	@Test
+	public void tampered() throws Exception {
+		for (Mode mode : new Mode[] { Mode.HMAC, Mode.AES_GCM }) {
+			BinaryRemoteMessageCodec codec = new BinaryRemoteMessageCodec(null, SECRET_KEY, mode, null);
+			int headerLength = mode == Mode.AES_GCM ? 16 : 4;
+			Message message = encode(codec, text(100));
+			byte[] data = message.toByteArray();
+			// 头部(mode或iv)、数据、签名(最后一个字节)
+			for (int index : new int[] { 3, headerLength - 1, headerLength + 4 + 10, data.length - 1 }) {
+				byte[] copy = data.clone();
+				copy[index] ^= 1;
+				assertRejected(codec, message.with(copy));
+			}
+			assertEquals(text(100), codec.decode(message.toInput()).getArgs()[0]);
+		}
+	}
+
+	@Test
+	public void wrongKey() throws Exception {
+		for (Mode mode : new Mode[] { Mode.HMAC, Mode.AES_GCM }) {
+			Message message = encode(new BinaryRemoteMessageCodec(null, SECRET_KEY, mode, null), "a");
+			assertRejected(new BinaryRemoteMessageCodec(null, "other", mode, null), message);
+		}
+	}
+
+	@Test
+	public void unauthenticated() throws Exception {
+		Message message = encode(new BinaryRemoteMessageCodec(null, (String) null, Mode.NONE, null), "a");
+		// 配置了密钥时不接收未认证的数据
+		assertRejected(new BinaryRemoteMessageCodec(null, SECRET_KEY, Mode.HMAC, null), message);
+		assertRejected(new BinaryRemoteMessageCodec(SECRET_KEY), message);
+	}
+
+	@Test
+	public void maxFrameSize() throws Exception {
+		BinaryRemoteMessageCodec codec = new BinaryRemoteMessageCodec(null, SECRET_KEY, Mode.HMAC, null);
+		Message message = encode(codec, text(10000));
+		codec.setMaxFrameSize(1024);
+		assertRejected(codec, message);
+	}
+
+	@Test
+	public void oldClient() throws Exception {
+		BinaryRemoteMessageCodec server = new BinaryRemoteMessageCodec(SECRET_KEY);
+		assertEquals("A", call(new SignerRemoteMessageCodec(SECRET_KEY), server, "a"));
+
+		// 旧的客户端收到的响应也必须是旧的格式
+		Message request = encode(new SignerRemoteMessageCodec(SECRET_KEY), "b");
+		RemoteRequestMessage requestMessage = server.decode(request.toInput());
+		Message response = new Message();
+		server.encode(response, new DefaultRemoteResponseMessage(), requestMessage);
+		assertFalse(isBinary(response));
+
+		// DES的密钥必须是8个字节
+		String desKey = "12345678";
+		BinaryRemoteMessageCodec desServer = new BinaryRemoteMessageCodec(null, desKey, Mode.AES_GCM,
+				new DefaultRemoteMessageCodec(desKey));
+		assertEquals("C", call(new DefaultRemoteMessageCodec(desKey), desServer, "c"));
+	}
+
+	@Test
+	public void oldServer() throws Exception {
+		BinaryRemoteMessageCodec client = new BinaryRemoteMessageCodec(SECRET_KEY);
+		SignerRemoteMessageCodec server = new SignerRemoteMessageCodec(SECRET_KEY);
+		for (int i = 0; i < 3; i++) {
+			assertEquals("A", call(client, server, "a"));
+			assertFalse(isBinary(encode(client, "a")));
+		}
+	}
+
+	@Test
+	public void negotiate() throws Exception {
+		BinaryRemoteMessageCodec client = new BinaryRemoteMessageCodec(SECRET_KEY);
+		BinaryRemoteMessageCodec server = new BinaryRemoteMessageCodec(SECRET_KEY);
+		Message request = encode(client, "a");
+		assertFalse(isBinary(request));
+		assertEquals(BinaryRemoteMessageCodec.CODEC_NAME,
+				request.getHeaders().getFirst(BinaryRemoteMessageCodec.ACCEPT_CODEC_HEADER_NAME));
+
+		// 收到二进制格式的响应后使用二进制格式
+		assertEquals("A", call(client, server, "a"));
+		request = encode(client, "b");
+		assertTrue(isBinary(request));
+		assertEquals(BinaryRemoteMessageCodec.CODEC_NAME,
+				request.getHeaders().getFirst(BinaryRemoteMessageCodec.ACCEPT_CODEC_HEADER_NAME));
+
+		// 滚动升级时负载均衡到了旧的节点，旧的节点无法解码时返回旧格式的错误响应
+		SignerRemoteMessageCodec oldServer = new SignerRemoteMessageCodec(SECRET_KEY);
+		RemoteRequestMessage requestMessage = request("b");
+		request = new Message();
+		client.encode(request, requestMessage);
+		assertTrue(isBinary(request));
+		assertRejected(oldServer, request);
+		DefaultRemoteResponseMessage error = new DefaultRemoteResponseMessage();
+		error.setThrowable(new RemoteMessageCodecException("not found sign"));
+		Message response = new Message();
+		oldServer.encode(response, error, null);
+		try {
+			client.decode(response.toInput(), requestMessage);
+			fail("should be unsupported");
+		} catch (UnsupportedCodecException e) {
+			// 请求没有被执行，可以重试
+		}
+
+		// 使用fallback格式发送的请求收到的错误响应原样返回
+		requestMessage = request("b");
+		request = new Message();
+		client.encode(request, requestMessage);
+		assertFalse(isBinary(request));
+		assertNull(client.decode(response.toInput(), requestMessage).getBody());
+
+		// 重新使用旧的格式
+		assertFalse(isBinary(encode(client, "c")));
+		assertEquals("C", call(client, oldServer, "c"));
+		assertEquals("D", call(client, server, "d"));
+		assertTrue(isBinary(encode(client, "e")));
+	}
+
+	@Test
+	public void mixedNodes() throws Exception {
+		BinaryRemoteMessageCodec client = new BinaryRemoteMessageCodec(SECRET_KEY);
+		Node newNode = new Node(new BinaryRemoteMessageCodec(SECRET_KEY));
+		Node oldNode = new Node(new SignerRemoteMessageCodec(SECRET_KEY));
+		Cluster cluster = new Cluster();
+		cluster.nodes.put("new", new Node[] { newNode });
+		cluster.nodes.put("old", new Node[] { oldNode });
+		// 负载均衡到新旧两个节点
+		cluster.nodes.put("lb", new Node[] { newNode, oldNode });
+
+		// 每个目标分别协商
+		assertEquals("A", cluster.call(client, "new", "a"));
+		assertEquals("B", cluster.call(client, "old", "b"));
+		assertTrue(client.isSupported("http://new"));
+		assertFalse(client.isSupported("http://old"));
+		assertEquals("C", cluster.call(client, "new", "c"));
+		assertEquals("D", cluster.call(client, "old", "d"));
+		assertEquals(newNode.binary, list(false, true));
+		assertEquals(oldNode.binary, list(false, false));
+
+		// 二进制格式的请求被旧的节点拒绝后使用旧的格式重试一次
+		newNode.binary.clear();
+		oldNode.binary.clear();
+		oldNode.executed = 0;
+		assertEquals("E", cluster.call(client, "lb", "e"));
+		assertTrue(client.isSupported("http://lb"));
+		assertEquals("F", cluster.call(client, "lb", "f"));
+		assertEquals(newNode.binary, list(false, false));
+		assertEquals(oldNode.binary, list(true));
+		assertEquals(0, oldNode.executed);
+		assertTrue(client.isSupported("http://new"));
+	}
+
+	private static List<Boolean> list(Boolean... values) {
+		List<Boolean> list = new ArrayList<Boolean>();
+		for (Boolean value : values) {
+			list.add(value);
+		}
+		return list;
+	}
+
+	/**
+	 * 模拟RemoteHttpServiceHandler，服务端返回参数的大写
+	 */
+	private static class Node {
+		private final RemoteMessageCodec codec;
+		private final List<Boolean> binary = new ArrayList<Boolean>();
+		private int executed;
+
+		Node(RemoteMessageCodec codec) {
+			this.codec = codec;
+		}
+
+		Message service(Message request) throws IOException {
+			binary.add(isBinary(request));
+			DefaultRemoteResponseMessage responseMessage = new DefaultRemoteResponseMessage();
+			RemoteRequestMessage requestMessage = null;
+			try {
+				requestMessage = codec.decode(request.toInput());
+				responseMessage.setBody(((String) requestMessage.getArgs()[0]).toUpperCase());
+				executed++;
+			} catch (RemoteMessageCodecException e) {
+				responseMessage.setThrowable(e);
+			}
+
+			Message response = new Message();
+			codec.encode(response, responseMessage, requestMessage);
+			return response;
+		}
+	}
+
+	private static class Cluster implements ClientHttpRequestFactory {
+		private final Map<String, Node[]> nodes = new HashMap<String, Node[]>();
+		private int count;
+
+		Object call(RemoteMessageCodec client, String host, String arg) throws Exception {
+			return new HttpCallable(this, client, request(arg), URI.create("http://" + host + "/rpc"), null).call();
+		}
+
+		public ClientHttpRequest createRequest(URI url, HttpMethod httpMethod) throws IOException {
+			Node[] candidates = nodes.get(url.getHost());
+			return new ClientRequest(url, candidates[count++ % candidates.length]);
+		}
+	}
+
+	private static class ClientRequest implements ClientHttpRequest {
+		private final URI uri;
+		private final Node node;
+		private final HttpHeaders headers = new HttpHeaders();
+		private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		ClientRequest(URI uri, Node node) {
+			this.uri = uri;
+			this.node = node;
+		}
+
+		public HttpHeaders getHeaders() {
+			return headers;
+		}
+
+		public HttpMethod getMethod() {
+			return HttpMethod.POST;
+		}
+
+		public URI getURI() {
+			return uri;
+		}
+
+		public OutputStream getOutputStream() {
+			return out;
+		}
+
+		public ClientHttpResponse execute() throws IOException {
+			Message request = new Message();
+			request.headers.putAll(headers);
+			request.out.write(out.toByteArray());
+			return new ClientResponse(node.service(request));
+		}
+	}
+
+	private static class ClientResponse implements ClientHttpResponse {
+		private final Message message;
+		private final HttpHeaders headers = new HttpHeaders();
+
+		ClientResponse(Message message) {
+			this.message = message;
+			headers.putAll(message.getHeaders());
+		}
+
+		public HttpHeaders getHeaders() {
+			return headers;
+		}
+
+		public InputStream getInputStream() {
+			return message.getInputStream();
+		}
+
+		public int getRawStatusCode() {
+			return 200;
+		}
+
+		public String getStatusText() {
+			return "OK";
+		}
+
+		public void close() {
+		}
+	}
+
+	private static class Message implements InputMessage, OutputMessage {
+		private final Headers headers = new Headers(false);
+		private ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		public Headers getHeaders() {
+			return headers;
+		}
+
+		public MimeType getContentType() {
+			return null;
+		}
+
+		public void setContentType(MimeType contentType) {
+		}
+
+		public long getContentLength() {
+			return -1;
+		}
+
+		public void setContentLength(long contentLength) {
+		}
+
+		public OutputStream getOutputStream() {
+			return out;
+		}
+
+		public InputStream getInputStream() {
+			return new ByteArrayInputStream(out.toByteArray());
+		}
+
+		byte[] toByteArray() {
+			return out.toByteArray();
+		}
+
+		Message toInput() {
+			return this;
+		}
+
+		Message with(byte[] data) throws IOException {
+			Message message = new Message();
+			message.headers.putAll(headers);
+			message.out.write(data);
+			return message;
+		}
+	}
+}
@@ -1,23 +1,46 @@
 package scw.security.ip;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import scw.core.utils.ArrayUtils;
 import scw.core.utils.CollectionUtils;
 import scw.core.utils.StringUtils;
 import scw.env.Environment;
+import scw.event.ChangeEvent;
+import scw.event.EventListener;
+import scw.event.Observable;
 import scw.io.Resource;
-import scw.io.ResourceUtils;
+import scw.io.event.ObservableResourceUtils;
 import scw.logger.Logger;
 import scw.logger.LoggerFactory;
 import scw.util.StringMatcher;
 import scw.util.StringMatchers;
 
+/**
+ * 使用{@link IPMatcher}(前缀树)校验，修改后会在下一次校验时重新构建<br/>
+ * 通过{@link #appendIPFile(Environment, String)}加载的文件发生变化时会重新加载，重新加载期间校验仍然使用旧的规则<br/>
+ * 重新加载时只会替换此文件中的ip，不会影响其他文件中的或手动添加的ip
+ *
+ * @author shuchaowen
+ *
+ */
 public class BaseIPVerification extends HashSet<String> implements IPVerification {
 	private static final long serialVersionUID = 1L;
-	private Logger logger = LoggerFactory.getLogger(getClass());
+	private transient Logger logger = LoggerFactory.getLogger(getClass());
 	private StringMatcher matcher = StringMatchers.SIMPLE;
+	private transient volatile IPMatcher ipMatcher;
+	private final transient Map<String, Collection<String>> files = new LinkedHashMap<String, Collection<String>>();
+	/**
+	 * 手动添加的ip
+	 */
+	private final Set<String> manual = new HashSet<String>();
 
 	public StringMatcher getMatcher() {
 		return matcher;
@@ -25,49 +48,125 @@ public class BaseIPVerification extends HashSet<String> implements IPVerificatio
 
 	public void setMatcher(StringMatcher matcher) {
 		this.matcher = matcher;
+		this.ipMatcher = null;
+	}
+
+	@Override
+	public synchronized boolean add(String e) {
+		manual.add(e);
+		boolean changed = super.add(e);
+		if (changed) {
+			ipMatcher = null;
+		}
+		return changed;
+	}
+
+	@Override
+	public synchronized boolean remove(Object o) {
+		manual.remove(o);
+		boolean changed = super.remove(o);
+		if (changed) {
+			ipMatcher = null;
+		}
+		return changed;
+	}
+
+	@Override
+	public synchronized void clear() {
+		manual.clear();
+		super.clear();
+		ipMatcher = null;
 	}
 
 	protected void appendIPFile(Environment environment, String path) {
 		Resource resource = environment.getResource(path);
-		if (resource != null && resource.exists()) {
-			List<String> contentList = ResourceUtils.getLines(resource, environment.getCharsetName());
-			if (!CollectionUtils.isEmpty(contentList)) {
-				for (String content : contentList) {
-					if (StringUtils.isEmpty(content)) {
-						continue;
-					}
+		if (resource == null || !resource.exists()) {
+			return;
+		}
+
+		Observable<List<String>> observable = ObservableResourceUtils.getLines(resource,
+				environment.getCharsetName());
+		observable.registerListener(new EventListener<ChangeEvent<List<String>>>() {
+
+			public void onEvent(ChangeEvent<List<String>> event) {
+				reload(path, event.getSource());
+			}
+		});
+
+		Collection<String> ips = parseIPs(observable.get());
+		synchronized (this) {
+			files.put(path, ips);
+			for (String ip : ips) {
+				super.add(ip);
+			}
+			ipMatcher = null;
+		}
+	}
+
+	private Collection<String> parseIPs(List<String> contentList) {
+		List<String> ips = new ArrayList<String>();
+		if (!CollectionUtils.isEmpty(contentList)) {
+			for (String content : contentList) {
+				if (StringUtils.isEmpty(content)) {
+					continue;
+				}
 
-					String[] arr = StringUtils.commonSplit(content);
-					if (ArrayUtils.isEmpty(arr)) {
+				String[] arr = StringUtils.commonSplit(content);
+				if (ArrayUtils.isEmpty(arr)) {
+					continue;
+				}
+
+				for (String ip : arr) {
+					if (StringUtils.isEmpty(ip)) {
 						continue;
 					}
 
-					for (String ip : arr) {
-						if (StringUtils.isEmpty(ip)) {
-							continue;
-						}
-
-						ip = ip.trim();
-						if (logger.isDebugEnabled()) {
-							logger.debug("add ip {}", ip);
-						}
-						add(ip);
+					ip = ip.trim();
+					if (logger.isDebugEnabled()) {
+						logger.debug("add ip {}", ip);
 					}
+					ips.add(ip);
 				}
 			}
 		}
+		return ips;
 	}
 
-	public boolean verification(String ip) {
-		return contains(ip) || testIp(ip);
+	private void reload(String path, List<String> contentList) {
+		Collection<String> ips = parseIPs(contentList);
+		synchronized (this) {
+			files.put(path, ips);
+			Set<String> all = new LinkedHashSet<String>(manual);
+			for (Collection<String> fileIps : files.values()) {
+				all.addAll(fileIps);
+			}
+
+			// 先构建新的规则再替换，避免校验时看到一半的数据
+			IPMatcher ipMatcher = new IPMatcher(all, matcher);
+			super.clear();
+			for (String ip : all) {
+				super.add(ip);
+			}
+			this.ipMatcher = ipMatcher;
+		}
+		logger.info("reload ip file {}, size {}", path, ips.size());
 	}
 
-	protected final boolean testIp(String matchIp) {
-		for (String ip : this) {
-			if (getMatcher().match(ip, matchIp)) {
-				return true;
+	private IPMatcher getIPMatcher() {
+		IPMatcher ipMatcher = this.ipMatcher;
+		if (ipMatcher == null) {
+			synchronized (this) {
+				ipMatcher = this.ipMatcher;
+				if (ipMatcher == null) {
+					ipMatcher = new IPMatcher(this, matcher);
+					this.ipMatcher = ipMatcher;
+				}
 			}
 		}
-		return false;
+		return ipMatcher;
+	}
+
+	public boolean verification(String ip) {
+		return getIPMatcher().matches(ip);
 	}
 }
@@ -0,0 +1,503 @@
+package scw.security.ip;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import scw.core.Assert;
+import scw.util.StringMatcher;
+import scw.util.StringMatchers;
+
+/**
+ * 使用二进制前缀树匹配ip，不可变<br/>
+ * 支持的规则:
+ * <ul>
+ * <li>ipv4/ipv6地址，如 192.168.1.1、2001:db8::1</li>
+ * <li>CIDR，如 10.0.0.0/8、2001:db8::/32</li>
+ * <li>末尾的通配符，如 192.168.*、192.168.1.*，等同于CIDR</li>
+ * <li>其他的通配符规则(如 192.*.1.1)和非ip的字符串仍然使用{@link StringMatcher}/equals匹配</li>
+ * </ul>
+ * 匹配一个ip最多走32/128步，不会创建对象
+ *
+ * @author shuchaowen
+ *
+ */
+public final class IPMatcher {
+	private static final int NONE = -1;
+	private static final int MATCHED = -2;
+
+	private final Trie ipv4 = new Trie();
+	private final Trie ipv6 = new Trie();
+	private final Set<String> exacts = new HashSet<String>();
+	private final List<String> patterns = new ArrayList<String>();
+	private final StringMatcher matcher;
+	private int size;
+
+	public IPMatcher(Collection<String> rules) {
+		this(rules, StringMatchers.SIMPLE);
+	}
+
+	public IPMatcher(Collection<String> rules, StringMatcher matcher) {
+		Assert.requiredArgument(matcher != null, "matcher");
+		this.matcher = matcher;
+		for (String rule : rules) {
+			if (rule != null) {
+				add(rule.trim());
+			}
+		}
+	}
+
+	/**
+	 * 规则的数量
+	 *
+	 * @return
+	 */
+	public int size() {
+		return size;
+	}
+
+	private void add(String rule) {
+		if (rule.length() == 0) {
+			return;
+		}
+
+		size++;
+		if (rule.equals("*")) {
+			// 匹配所有
+			patterns.add(rule);
+			return;
+		}
+
+		if (addIPv4(rule) || addIPv6(rule)) {
+			return;
+		}
+
+		if (rule.indexOf('*') != -1 || rule.indexOf('?') != -1) {
+			patterns.add(rule);
+		} else {
+			exacts.add(rule);
+		}
+	}
+
+	private boolean addIPv4(String rule) {
+		String address = rule;
+		int prefixLength = 32;
+		int slash = rule.indexOf('/');
+		if (slash != -1) {
+			prefixLength = parseInt(rule, slash + 1, rule.length(), 32);
+			if (prefixLength < 0) {
+				return false;
+			}
+			address = rule.substring(0, slash);
+		}
+
+		// 处理末尾的通配符
+		int value = 0;
+		int parts = 0;
+		int numbers = 0;
+		int begin = 0;
+		boolean wildcard = false;
+		for (int i = 0; i <= address.length(); i++) {
+			if (i != address.length() && address.charAt(i) != '.') {
+				continue;
+			}
+
+			if (++parts > 4) {
+				return false;
+			}
+
+			if (i - begin == 1 && address.charAt(begin) == '*') {
+				wildcard = true;
+			} else {
+				int number = parseInt(address, begin, i, 255);
+				if (number < 0 || wildcard) {
+					return false;
+				}
+				value = (value << 8) | number;
+				numbers++;
+			}
+			begin = i + 1;
+		}
+
+		if (wildcard) {
+			if (slash != -1) {
+				return false;
+			}
+			prefixLength = numbers * 8;
+		} else if (parts != 4) {
+			return false;
+		}
+
+		value = numbers == 4 ? value : (numbers == 0 ? 0 : value << (8 * (4 - numbers)));
+		ipv4.insert(new long[] { ((long) value) << 32 }, prefixLength);
+		return true;
+	}
+
+	private boolean addIPv6(String rule) {
+		if (rule.indexOf(':') == -1) {
+			return false;
+		}
+
+		String address = rule;
+		int prefixLength = 128;
+		int slash = rule.indexOf('/');
+		if (slash != -1) {
+			prefixLength = parseInt(rule, slash + 1, rule.length(), 128);
+			if (prefixLength < 0) {
+				return false;
+			}
+			address = rule.substring(0, slash);
+		}
+
+		for (int i = 0; i < address.length(); i++) {
+			char c = address.charAt(i);
+			// 只处理字面量，避免触发dns解析
+			if (!(c == ':' || c == '.' || Character.digit(c, 16) != -1)) {
+				return false;
+			}
+		}
+
+		byte[] bytes;
+		try {
+			bytes = InetAddress.getByName(address).getAddress();
+		} catch (UnknownHostException e) {
+			return false;
+		}
+
+		if (bytes.length == 4) {
+			// ipv4映射的地址
+			ipv4.insert(new long[] { (toLong(bytes, 0, 4)) << 32 }, Math.max(0, prefixLength - 96));
+		} else {
+			ipv6.insert(new long[] { toLong(bytes, 0, 8), toLong(bytes, 8, 8) }, prefixLength);
+		}
+		return true;
+	}
+
+	private static long toLong(byte[] bytes, int offset, int length) {
+		long value = 0;
+		for (int i = 0; i < length; i++) {
+			value = (value << 8) | (bytes[offset + i] & 0xff);
+		}
+		return value;
+	}
+
+	/**
+	 * @return 无效返回-1
+	 */
+	private static int parseInt(CharSequence text, int begin, int end, int max) {
+		if (begin >= end || end - begin > 3) {
+			return -1;
+		}
+
+		int value = 0;
+		for (int i = begin; i < end; i++) {
+			char c = text.charAt(i);
+			if (c < '0' || c > '9') {
+				return -1;
+			}
+			value = value * 10 + (c - '0');
+		}
+		return value > max ? -1 : value;
+	}
+
+	public boolean matches(String ip) {
+		if (ip == null) {
+			return false;
+		}
+
+		int begin = 0;
+		int end = ip.length();
+		while (begin < end && ip.charAt(begin) <= ' ') {
+			begin++;
+		}
+
+		while (end > begin && ip.charAt(end - 1) <= ' ') {
+			end--;
+		}
+
+		if (begin == end) {
+			return false;
+		}
+
+		boolean matched = matchesIPv4(ip, begin, end) || matchesIPv6(ip, begin, end);
+		if (matched) {
+			return true;
+		}
+
+		if (!exacts.isEmpty() && exacts.contains(ip)) {
+			return true;
+		}
+
+		for (String pattern : patterns) {
+			if (matcher.match(pattern, ip)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean matchesIPv4(String ip, int begin, int end) {
+		long value = parseIPv4(ip, begin, end);
+		return value >= 0 && ipv4.matches((int) value);
+	}
+
+	/**
+	 * @return 无效返回-1
+	 */
+	private static long parseIPv4(String ip, int begin, int end) {
+		long value = 0;
+		int parts = 0;
+		int partBegin = begin;
+		for (int i = begin; i <= end; i++) {
+			if (i != end && ip.charAt(i) != '.') {
+				continue;
+			}
+
+			int number = parseInt(ip, partBegin, i, 255);
+			if (number < 0 || ++parts > 4) {
+				return -1;
+			}
+			value = (value << 8) | number;
+			partBegin = i + 1;
+		}
+		return parts == 4 ? value : -1;
+	}
+
+	private boolean matchesIPv6(String ip, int begin, int end) {
+		if (ipv6.isEmpty() && ipv4.isEmpty()) {
+			return false;
+		}
+
+		int zone = ip.indexOf('%', begin);
+		if (zone != -1 && zone < end) {
+			end = zone;
+		}
+
+		int groups = countIPv6Groups(ip, begin, end);
+		if (groups < 0) {
+			return false;
+		}
+
+		// ::ffff:a.b.c.d 按ipv4匹配
+		int lastColon = ip.lastIndexOf(':', end - 1);
+		if (hasDot(ip, lastColon, end) && isIPv4Mapped(ip, begin, lastColon)) {
+			long value = parseIPv4(ip, lastColon + 1, end);
+			return value >= 0 && ipv4.matches((int) value);
+		}
+
+		if (ipv6.isEmpty()) {
+			return false;
+		}
+
+		int node = 0;
+		int partBegin = begin;
+		for (int i = begin; i <= end; i++) {
+			if (i != end && ip.charAt(i) != ':') {
+				continue;
+			}
+
+			if (i == partBegin) {
+				if (i != end) {
+					// "::"的位置插入省略的0
+					for (int g = groups; g < 8; g++) {
+						node = ipv6.walk(node, 0, 16);
+						if (node < 0) {
+							return node == MATCHED;
+						}
+					}
+
+					if (i == begin) {
+						i++;
+					}
+				}
+				partBegin = i + 1;
+				continue;
+			}
+
+			if (i != end || !hasDot(ip, partBegin, end)) {
+				node = ipv6.walk(node, parseHex(ip, partBegin, i), 16);
+			} else {
+				long value = parseIPv4(ip, partBegin, end);
+				node = ipv6.walk(node, (int) (value >>> 16), 16);
+				if (node >= 0) {
+					node = ipv6.walk(node, (int) (value & 0xffff), 16);
+				}
+			}
+
+			if (node < 0) {
+				return node == MATCHED;
+			}
+			partBegin = i + 1;
+		}
+		return ipv6.isTerminal(node);
+	}
+
+	private static boolean hasDot(String text, int begin, int end) {
+		for (int i = begin; i < end; i++) {
+			if (text.charAt(i) == '.') {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean isIPv4Mapped(String ip, int begin, int lastColon) {
+		// 只支持 ::ffff:a.b.c.d 的形式
+		return lastColon - begin == 6 && ip.regionMatches(true, begin, "::ffff", 0, 6);
+	}
+
+	/**
+	 * 校验并计算ipv6中出现的组数(嵌入的ipv4算两组)
+	 *
+	 * @return 无效返回-1
+	 */
+	private static int countIPv6Groups(String ip, int begin, int end) {
+		int groups = 0;
+		boolean compressed = false;
+		int partBegin = begin;
+		for (int i = begin; i <= end; i++) {
+			if (i != end && ip.charAt(i) != ':') {
+				continue;
+			}
+
+			if (i == partBegin) {
+				if (i == begin) {
+					if (i + 1 >= end || ip.charAt(i + 1) != ':' || compressed) {
+						return -1;
+					}
+					compressed = true;
+					i++;
+				} else if (i != end) {
+					if (compressed) {
+						return -1;
+					}
+					compressed = true;
+				} else if (!compressed || ip.charAt(i - 2) != ':') {
+					// 以单个:结尾
+					return -1;
+				}
+				partBegin = i + 1;
+				continue;
+			}
+
+			if (i == end && hasDot(ip, partBegin, end)) {
+				if (parseIPv4(ip, partBegin, end) < 0) {
+					return -1;
+				}
+				groups += 2;
+			} else if (parseHex(ip, partBegin, i) < 0) {
+				return -1;
+			} else {
+				groups++;
+			}
+			partBegin = i + 1;
+		}
+
+		if (compressed ? groups > 7 : groups != 8) {
+			return -1;
+		}
+		return groups;
+	}
+
+	/**
+	 * @return 无效返回-1
+	 */
+	private static int parseHex(String text, int begin, int end) {
+		if (begin >= end || end - begin > 4) {
+			return -1;
+		}
+
+		int value = 0;
+		for (int i = begin; i < end; i++) {
+			int digit = Character.digit(text.charAt(i), 16);
+			if (digit < 0) {
+				return -1;
+			}
+			value = (value << 4) | digit;
+		}
+		return value;
+	}
+
+	/**
+	 * 二进制前缀树，节点使用数组存储，0是根节点，子节点为0表示不存在
+	 */
+	private static final class Trie {
+		private int[] zero = new int[16];
+		private int[] one = new int[16];
+		private boolean[] terminal = new boolean[16];
+		private int size = 1;
+
+		boolean isEmpty() {
+			return size == 1 && !terminal[0];
+		}
+
+		boolean isTerminal(int node) {
+			return terminal[node];
+		}
+
+		/**
+		 * @param bits         高位在前
+		 * @param prefixLength
+		 */
+		void insert(long[] bits, int prefixLength) {
+			int node = 0;
+			for (int i = 0; i < prefixLength; i++) {
+				if (terminal[node]) {
+					// 已经被更短的前缀包含
+					return;
+				}
+
+				long word = bits[i >>> 6];
+				boolean bit = ((word >>> (63 - (i & 63))) & 1) != 0;
+				int[] children = bit ? one : zero;
+				int child = children[node];
+				if (child == 0) {
+					child = newNode();
+					// 扩容后数组可能已经变了
+					(bit ? one : zero)[node] = child;
+				}
+				node = child;
+			}
+			terminal[node] = true;
+		}
+
+		private int newNode() {
+			if (size == terminal.length) {
+				int length = size << 1;
+				zero = Arrays.copyOf(zero, length);
+				one = Arrays.copyOf(one, length);
+				terminal = Arrays.copyOf(terminal, length);
+			}
+			return size++;
+		}
+
+		boolean matches(int value) {
+			int node = walk(0, value, 32);
+			return node == MATCHED || (node >= 0 && terminal[node]);
+		}
+
+		/**
+		 * 从node开始按value的低bits位向下走
+		 *
+		 * @return 下一个节点，{@link #MATCHED}表示已经匹配，{@link #NONE}表示不可能匹配
+		 */
+		int walk(int node, int value, int bits) {
+			for (int i = bits - 1; i >= 0; i--) {
+				if (terminal[node]) {
+					return MATCHED;
+				}
+
+				node = ((value >>> i) & 1) == 0 ? zero[node] : one[node];
+				if (node == 0) {
+					return NONE;
+				}
+			}
+			return node;
+		}
+	}
+}
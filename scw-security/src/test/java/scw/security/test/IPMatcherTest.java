@@ -0,0 +1,132 @@
+package scw.security.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import scw.security.ip.IPMatcher;
+
+public class IPMatcherTest {
+
+	private static IPMatcher matcher(String... rules) {
+		return new IPMatcher(Arrays.asList(rules));
+	}
+
+	@Test
+	public void ipv4() {
+		IPMatcher matcher = matcher("192.168.1.1", "10.0.0.0/8", "172.16.*");
+		assertTrue(matcher.matches("192.168.1.1"));
+		assertTrue(matcher.matches(" 192.168.1.1 "));
+		assertFalse(matcher.matches("192.168.1.2"));
+		assertTrue(matcher.matches("10.0.0.0"));
+		assertTrue(matcher.matches("10.255.255.255"));
+		assertFalse(matcher.matches("11.0.0.0"));
+		assertFalse(matcher.matches("9.255.255.255"));
+		assertTrue(matcher.matches("172.16.200.1"));
+		assertFalse(matcher.matches("172.17.0.1"));
+		// 映射的ipv4地址
+		assertTrue(matcher.matches("::ffff:10.1.2.3"));
+		assertTrue(matcher.matches("::FFFF:192.168.1.1"));
+		assertFalse(matcher.matches("::ffff:11.1.2.3"));
+	}
+
+	@Test
+	public void ipv6() {
+		IPMatcher matcher = matcher("2001:db8::1", "2001:db9::/32", "fe80::/10");
+		assertTrue(matcher.matches("2001:db8::1"));
+		assertTrue(matcher.matches("2001:0db8:0000:0000:0000:0000:0000:0001"));
+		assertTrue(matcher.matches("2001:DB8:0::0:1"));
+		assertFalse(matcher.matches("2001:db8::2"));
+		assertFalse(matcher.matches("2001:db8::1:0"));
+		assertTrue(matcher.matches("2001:db9:ffff::1"));
+		assertFalse(matcher.matches("2001:dba::1"));
+		assertTrue(matcher.matches("fe80::1"));
+		assertTrue(matcher.matches("febf:ffff::"));
+		assertFalse(matcher.matches("fec0::1"));
+		// 忽略zone id
+		assertTrue(matcher.matches("fe80::1%eth0"));
+	}
+
+	@Test
+	public void compression() {
+		IPMatcher matcher = matcher("::1", "fe80::", "1:2:3:4:5:6:7:8", "1::8");
+		assertTrue(matcher.matches("::1"));
+		assertTrue(matcher.matches("0:0:0:0:0:0:0:1"));
+		assertTrue(matcher.matches("::0:1"));
+		assertFalse(matcher.matches("::"));
+		assertTrue(matcher.matches("fe80::"));
+		assertTrue(matcher.matches("fe80:0:0:0:0:0:0:0"));
+		assertTrue(matcher.matches("1:2:3:4:5:6:7:8"));
+		assertTrue(matcher.matches("1:0:0:0:0:0:0:8"));
+		assertTrue(matcher.matches("1:0::0:8"));
+		assertFalse(matcher.matches("1::9"));
+	}
+
+	@Test
+	public void embeddedIPv4() {
+		IPMatcher matcher = matcher("64:ff9b::192.0.2.33", "::ffff:192.168.0.0/112");
+		assertTrue(matcher.matches("64:ff9b::c000:221"));
+		assertTrue(matcher.matches("64:ff9b::192.0.2.33"));
+		assertFalse(matcher.matches("64:ff9b::192.0.2.34"));
+		assertTrue(matcher.matches("192.168.3.4"));
+		assertTrue(matcher.matches("::ffff:192.168.3.4"));
+		assertFalse(matcher.matches("192.169.3.4"));
+	}
+
+	@Test
+	public void prefixBoundaries() {
+		IPMatcher all = matcher("0.0.0.0/0", "::/0");
+		assertTrue(all.matches("0.0.0.0"));
+		assertTrue(all.matches("255.255.255.255"));
+		assertTrue(all.matches("::"));
+		assertTrue(all.matches("ffff:ffff:ffff:ffff:ffff:ffff:ffff:ffff"));
+
+		IPMatcher ipv4 = matcher("0.0.0.0/0");
+		assertTrue(ipv4.matches("1.2.3.4"));
+		assertFalse(ipv4.matches("2001:db8::1"));
+
+		IPMatcher host = matcher("1.2.3.4/32", "2001:db8::1/128");
+		assertTrue(host.matches("1.2.3.4"));
+		assertFalse(host.matches("1.2.3.5"));
+		assertFalse(host.matches("1.2.3.3"));
+		assertTrue(host.matches("2001:db8::1"));
+		assertFalse(host.matches("2001:db8::0"));
+		assertFalse(host.matches("2001:db8::2"));
+
+		IPMatcher odd = matcher("192.168.1.128/25", "2001:db8::8000/113");
+		assertTrue(odd.matches("192.168.1.128"));
+		assertTrue(odd.matches("192.168.1.255"));
+		assertFalse(odd.matches("192.168.1.127"));
+		assertTrue(odd.matches("2001:db8::ffff"));
+		assertFalse(odd.matches("2001:db8::7fff"));
+	}
+
+	@Test
+	public void invalidInput() {
+		IPMatcher matcher = matcher("0.0.0.0/0", "::/0");
+		String[] invalids = { null, "", " ", "abc", "256.1.1.1", "1.2.3", "1.2.3.4.5", "1.2.3.-1", "1..2.3",
+				"1.2.3.4/8", "1::2::3", "12345::1", ":1::", "1:", "1:2:3:4:5:6:7:8:9", "1:2:3:4:5:6:7", "::ffff:999.1.1.1",
+				"g::1", ":::" };
+		for (String ip : invalids) {
+			assertFalse(String.valueOf(ip), matcher.matches(ip));
+		}
+	}
+
+	@Test
+	public void invalidRules() {
+		// 无效的ip规则按普通字符串处理
+		IPMatcher matcher = matcher("1.2.3.4/33", "300.1.1.1", "2001:db8::/129", "localhost", "192.*.1.1", "");
+		assertEquals(5, matcher.size());
+		assertFalse(matcher.matches("1.2.3.4"));
+		assertTrue(matcher.matches("1.2.3.4/33"));
+		assertTrue(matcher.matches("300.1.1.1"));
+		assertFalse(matcher.matches("2001:db8::1"));
+		assertTrue(matcher.matches("localhost"));
+		assertTrue(matcher.matches("192.5.1.1"));
+		assertFalse(matcher.matches("192.5.1.2"));
+	}
+}
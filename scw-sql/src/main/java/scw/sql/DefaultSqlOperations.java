@@ -14,6 +14,7 @@ public class DefaultSqlOperations extends DefaultSqlStatementProcessor implement
 
 	@Override
 	public Connection getConnection() throws SQLException {
-		return SqlTransactionUtils.getTransactionConnection(connectionFactory);
+		return SqlTransactionUtils.getTransactionConnection(connectionFactory,
+				() -> cacheStatements(connectionFactory.getConnection()));
 	}
 }
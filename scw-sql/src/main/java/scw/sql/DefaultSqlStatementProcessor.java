@@ -1,23 +1,84 @@
 package scw.sql;
 
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import scw.logger.Logger;
 import scw.logger.LoggerFactory;
+import scw.sql.transaction.ConnectionProxy;
 
 public class DefaultSqlStatementProcessor implements SqlStatementProcessor {
 	private static Logger logger = LoggerFactory.getLogger(DefaultSqlStatementProcessor.class);
 
+	private int statementCacheSize = 0;
+
+	public int getStatementCacheSize() {
+		return statementCacheSize;
+	}
+
+	/**
+	 * 每个连接缓存的PreparedStatement数量，默认为0(不缓存)<br/>
+	 * 开启后{@link #cacheStatements(Connection)}返回的连接会按sql复用PreparedStatement，调用close只会清空参数并归还到缓存，
+	 * 连接关闭(归还到连接池)时关闭所有缓存的语句，所以只在同一个连接的生命周期内(如一个事务中)复用<br/>
+	 * 不要在返回的PreparedStatement上修改fetchSize/maxRows等会影响后续使用的属性<br/>
+	 * 如果连接池或驱动已经开启了语句缓存(如mysql的cachePrepStmts)则不需要开启
+	 *
+	 * @param statementCacheSize
+	 */
+	public void setStatementCacheSize(int statementCacheSize) {
+		this.statementCacheSize = statementCacheSize;
+	}
+
+	/**
+	 * 如果开启了语句缓存，返回一个带语句缓存的连接，关闭连接时会关闭缓存的语句
+	 * 
+	 * @param connection
+	 * @return
+	 */
+	public Connection cacheStatements(Connection connection) {
+		if (statementCacheSize <= 0 || connection == null || getStatementCache(connection) != null) {
+			return connection;
+		}
+
+		return (Connection) Proxy.newProxyInstance(DefaultSqlStatementProcessor.class.getClassLoader(),
+				new Class<?>[] { Connection.class }, new StatementCache(connection, statementCacheSize));
+	}
+
 	protected PreparedStatement statementCall(Connection connection, String sql) throws SQLException {
 		return connection.prepareCall(sql);
 	}
 
 	protected PreparedStatement statementSql(Connection connection, String sql) throws SQLException {
+		StatementCache cache = getStatementCache(connection);
+		if (cache != null) {
+			return cache.prepare(sql);
+		}
 		return connection.prepareStatement(sql);
 	}
 
+	private static StatementCache getStatementCache(Connection connection) {
+		Connection target = connection;
+		if (target instanceof ConnectionProxy) {
+			// 事务中的连接
+			target = ((ConnectionProxy) target).getTargetConnection();
+		}
+
+		if (Proxy.isProxyClass(target.getClass())) {
+			InvocationHandler handler = Proxy.getInvocationHandler(target);
+			if (handler instanceof StatementCache) {
+				return (StatementCache) handler;
+			}
+		}
+		return null;
+	}
+
 	@Override
 	public PreparedStatement statement(Connection connection, Sql sql) throws SQLException {
 		if (logger.isDebugEnabled()) {
@@ -33,4 +94,167 @@ public class DefaultSqlStatementProcessor implements SqlStatementProcessor {
 		}
 		return ps;
 	}
+
+	/**
+	 * 一个连接上的语句缓存，同一个sql正在使用时会创建一个不缓存的语句<br/>
+	 * 作为连接的代理，连接关闭时关闭并清空缓存
+	 */
+	private static final class StatementCache extends LinkedHashMap<String, CachedStatement>
+			implements InvocationHandler {
+		private static final long serialVersionUID = 1L;
+		private final Connection connection;
+		private final int maxSize;
+		private boolean closed;
+
+		StatementCache(Connection connection, int maxSize) {
+			super(Math.min(maxSize, 64), 0.75f, true);
+			this.connection = connection;
+			this.maxSize = maxSize;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if (args == null || args.length == 0) {
+				if (name.equals("close")) {
+					try {
+						closeStatements();
+					} finally {
+						connection.close();
+					}
+					return null;
+				} else if (name.equals("hashCode")) {
+					return System.identityHashCode(proxy);
+				}
+			} else if (args.length == 1 && name.equals("equals")) {
+				return proxy == args[0];
+			}
+
+			try {
+				return method.invoke(connection, args);
+			} catch (InvocationTargetException e) {
+				throw e.getTargetException();
+			}
+		}
+
+		synchronized PreparedStatement prepare(String sql) throws SQLException {
+			if (closed) {
+				return connection.prepareStatement(sql);
+			}
+
+			CachedStatement cached = get(sql);
+			if (cached != null) {
+				if (cached.inUse) {
+					return connection.prepareStatement(sql);
+				}
+
+				if (!cached.target.isClosed()) {
+					cached.inUse = true;
+					return cached.proxy;
+				}
+				remove(sql);
+			}
+
+			cached = new CachedStatement(this, sql, connection.prepareStatement(sql));
+			cached.inUse = true;
+			put(sql, cached);
+			return cached.proxy;
+		}
+
+		synchronized void release(CachedStatement cached) throws SQLException {
+			cached.inUse = false;
+			if (cached.evicted) {
+				cached.target.close();
+				return;
+			}
+
+			try {
+				cached.target.clearParameters();
+				cached.target.clearBatch();
+			} catch (SQLException e) {
+				cached.evicted = true;
+				remove(cached.sql, cached);
+				cached.target.close();
+			}
+		}
+
+		private synchronized void closeStatements() {
+			closed = true;
+			for (CachedStatement cached : values()) {
+				cached.evicted = true;
+				if (!cached.inUse) {
+					close(cached);
+				}
+			}
+			clear();
+		}
+
+		private static void close(CachedStatement cached) {
+			try {
+				cached.target.close();
+			} catch (SQLException e) {
+				logger.error(e, "close statement error");
+			}
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+			if (size() <= maxSize) {
+				return false;
+			}
+
+			CachedStatement cached = eldest.getValue();
+			cached.evicted = true;
+			if (!cached.inUse) {
+				close(cached);
+			}
+			return true;
+		}
+	}
+
+	private static final class CachedStatement implements InvocationHandler {
+		private final StatementCache cache;
+		private final String sql;
+		private final PreparedStatement target;
+		private final PreparedStatement proxy;
+		private boolean inUse;
+		private boolean evicted;
+
+		CachedStatement(StatementCache cache, String sql, PreparedStatement target) {
+			this.cache = cache;
+			this.sql = sql;
+			this.target = target;
+			this.proxy = (PreparedStatement) Proxy.newProxyInstance(DefaultSqlStatementProcessor.class.getClassLoader(),
+					new Class<?>[] { PreparedStatement.class }, this);
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if (args == null || args.length == 0) {
+				if (name.equals("close")) {
+					synchronized (cache) {
+						if (inUse) {
+							cache.release(this);
+						}
+					}
+					return null;
+				} else if (name.equals("isClosed")) {
+					synchronized (cache) {
+						return !inUse || target.isClosed();
+					}
+				} else if (name.equals("hashCode")) {
+					return System.identityHashCode(proxy);
+				}
+			} else if (args.length == 1 && name.equals("equals")) {
+				return proxy == args[0];
+			}
+
+			try {
+				return method.invoke(target, args);
+			} catch (InvocationTargetException e) {
+				throw e.getTargetException();
+			}
+		}
+	}
 }
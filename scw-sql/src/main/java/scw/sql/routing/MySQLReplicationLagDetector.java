@@ -0,0 +1,40 @@
+package scw.sql.routing;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * 通过SHOW SLAVE STATUS中的Seconds_Behind_Master获取mysql从库的延迟
+ *
+ * @author shuchaowen
+ *
+ */
+public class MySQLReplicationLagDetector implements ReplicationLagDetector {
+
+	@Override
+	public long getLag(Connection connection) throws SQLException {
+		Statement statement = connection.createStatement();
+		try {
+			ResultSet resultSet = statement.executeQuery("SHOW SLAVE STATUS");
+			try {
+				if (!resultSet.next()) {
+					// 不是从库
+					return Long.MAX_VALUE;
+				}
+
+				long seconds = resultSet.getLong("Seconds_Behind_Master");
+				if (resultSet.wasNull()) {
+					// 复制已停止
+					return Long.MAX_VALUE;
+				}
+				return seconds * 1000;
+			} finally {
+				resultSet.close();
+			}
+		} finally {
+			statement.close();
+		}
+	}
+}
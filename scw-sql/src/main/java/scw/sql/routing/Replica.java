@@ -0,0 +1,107 @@
+package scw.sql.routing;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import scw.sql.ConnectionFactory;
+
+/**
+ * 从库
+ *
+ * @author shuchaowen
+ *
+ */
+public final class Replica implements ConnectionFactory {
+	private final String name;
+	private final ConnectionFactory connectionFactory;
+	private final int weight;
+	private volatile boolean healthy = true;
+	private volatile long lag;
+	private volatile long lastCheckTime;
+	/**
+	 * 连接失败后重新尝试的时间，0表示不需要重试
+	 */
+	private final AtomicLong retryTime = new AtomicLong();
+
+	Replica(String name, ConnectionFactory connectionFactory, int weight) {
+		this.name = name;
+		this.connectionFactory = connectionFactory;
+		this.weight = weight;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getWeight() {
+		return weight;
+	}
+
+	public boolean isHealthy() {
+		return healthy;
+	}
+
+	/**
+	 * 最近一次检查到的复制延迟(毫秒)
+	 * 
+	 * @return
+	 */
+	public long getLag() {
+		return lag;
+	}
+
+	/**
+	 * 最近一次健康检查的时间
+	 * 
+	 * @return
+	 */
+	public long getLastCheckTime() {
+		return lastCheckTime;
+	}
+
+	/**
+	 * 连接失败
+	 * 
+	 * @param retryDelay 多久后(毫秒)重新尝试
+	 */
+	void markUnhealthy(long retryDelay) {
+		this.healthy = false;
+		retryTime.set(System.currentTimeMillis() + Math.max(0, retryDelay));
+	}
+
+	/**
+	 * 重新尝试连接成功
+	 */
+	void markHealthy() {
+		retryTime.set(0);
+		this.healthy = true;
+	}
+
+	/**
+	 * 是否到了重新尝试连接的时间，同一时间只有一个调用者会得到true
+	 * 
+	 * @return
+	 */
+	boolean tryRetry() {
+		long time = retryTime.get();
+		return time > 0 && System.currentTimeMillis() >= time && retryTime.compareAndSet(time, Long.MAX_VALUE);
+	}
+
+	void update(boolean healthy, long lag) {
+		retryTime.set(0);
+		this.lag = lag;
+		this.healthy = healthy;
+		this.lastCheckTime = System.currentTimeMillis();
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		return connectionFactory.getConnection();
+	}
+
+	@Override
+	public String toString() {
+		return "Replica(name=" + name + ", weight=" + weight + ", healthy=" + healthy + ", lag=" + lag + ")";
+	}
+}
@@ -0,0 +1,32 @@
+package scw.sql.routing;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * 检查从库的复制延迟
+ *
+ * @author shuchaowen
+ *
+ */
+@FunctionalInterface
+public interface ReplicationLagDetector {
+	/**
+	 * 仅检查连接是否可用，认为没有延迟
+	 */
+	static final ReplicationLagDetector VALIDATION = (connection) -> {
+		if (!connection.isValid(5)) {
+			throw new SQLException("Invalid connection");
+		}
+		return 0;
+	};
+
+	/**
+	 * 获取复制延迟
+	 * 
+	 * @param connection
+	 * @return 延迟的毫秒数，无法复制时返回{@link Long#MAX_VALUE}
+	 * @throws SQLException 连接不可用
+	 */
+	long getLag(Connection connection) throws SQLException;
+}
@@ -0,0 +1,266 @@
+package scw.sql.routing;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import scw.core.Assert;
+import scw.core.utils.XTime;
+import scw.logger.Logger;
+import scw.logger.LoggerFactory;
+import scw.sql.ConnectionFactory;
+import scw.transaction.Transaction;
+import scw.transaction.TransactionUtils;
+
+/**
+ * 读写分离的连接工厂<br/>
+ * 只读事务和没有事务时显式标记为只读的操作({@link RoutingContext#readOnly(scw.util.stream.CallableProcessor)})使用从库，其他情况使用主库<br/>
+ * 事务中的连接由事务管理，同一个事务中只会使用一个连接，所以非只读事务中的读写都在主库上<br/>
+ * 从库按权重轮询，复制延迟超过{@link #getMaxLag()}或连接失败的从库会被跳过，没有可用的从库时使用主库<br/>
+ * 连接失败的从库在{@link #getRetryDelay()}后由下一次请求重新尝试，不依赖健康检查
+ *
+ * @author shuchaowen
+ *
+ */
+public class RoutingConnectionFactory implements ConnectionFactory, AutoCloseable {
+	private static Logger logger = LoggerFactory.getLogger(RoutingConnectionFactory.class);
+
+	private final ConnectionFactory primary;
+	private final List<Replica> replicas = new CopyOnWriteArrayList<Replica>();
+	private final AtomicLong counter = new AtomicLong();
+	private volatile ReplicationLagDetector lagDetector = ReplicationLagDetector.VALIDATION;
+	private volatile long maxLag = 5 * XTime.ONE_SECOND;
+	private volatile long healthCheckPeriod = 5 * XTime.ONE_SECOND;
+	private volatile long retryDelay = 5 * XTime.ONE_SECOND;
+	private volatile ScheduledExecutorService executor;
+
+	public RoutingConnectionFactory(ConnectionFactory primary) {
+		Assert.requiredArgument(primary != null, "primary");
+		this.primary = primary;
+	}
+
+	public ConnectionFactory getPrimary() {
+		return primary;
+	}
+
+	public List<Replica> getReplicas() {
+		return Collections.unmodifiableList(replicas);
+	}
+
+	public ReplicationLagDetector getLagDetector() {
+		return lagDetector;
+	}
+
+	public void setLagDetector(ReplicationLagDetector lagDetector) {
+		Assert.requiredArgument(lagDetector != null, "lagDetector");
+		this.lagDetector = lagDetector;
+	}
+
+	/**
+	 * 允许的最大复制延迟(毫秒)
+	 * 
+	 * @return
+	 */
+	public long getMaxLag() {
+		return maxLag;
+	}
+
+	public void setMaxLag(long maxLag) {
+		this.maxLag = maxLag;
+	}
+
+	public long getHealthCheckPeriod() {
+		return healthCheckPeriod;
+	}
+
+	/**
+	 * 健康检查的间隔(毫秒)，小于等于0时不自动检查，需要手动调用{@link #checkHealth()}<br/>
+	 * 需要在{@link #addReplica(String, ConnectionFactory, int)}之前设置
+	 * 
+	 * @param healthCheckPeriod
+	 */
+	public void setHealthCheckPeriod(long healthCheckPeriod) {
+		this.healthCheckPeriod = healthCheckPeriod;
+	}
+
+	public long getRetryDelay() {
+		return retryDelay;
+	}
+
+	/**
+	 * 连接失败的从库多久后(毫秒)重新尝试
+	 * 
+	 * @param retryDelay
+	 */
+	public void setRetryDelay(long retryDelay) {
+		this.retryDelay = retryDelay;
+	}
+
+	public Replica addReplica(String name, ConnectionFactory connectionFactory) {
+		return addReplica(name, connectionFactory, 1);
+	}
+
+	public Replica addReplica(String name, ConnectionFactory connectionFactory, int weight) {
+		Assert.requiredArgument(name != null, "name");
+		Assert.requiredArgument(connectionFactory != null, "connectionFactory");
+		Assert.requiredArgument(weight > 0, "weight");
+		Replica replica = new Replica(name, connectionFactory, weight);
+		replicas.add(replica);
+		startHealthCheck();
+		return replica;
+	}
+
+	/**
+	 * 当前操作是否应该使用从库
+	 * 
+	 * @return
+	 */
+	protected boolean isReadOnly() {
+		Transaction transaction = TransactionUtils.getManager().getTransaction();
+		if (transaction != null) {
+			return transaction.getDefinition().isReadOnly();
+		}
+		return RoutingContext.isReadOnly();
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		if (replicas.isEmpty() || !isReadOnly()) {
+			return primary.getConnection();
+		}
+
+		Connection connection = retry();
+		if (connection != null) {
+			return connection;
+		}
+
+		Replica replica = select(null);
+		while (replica != null) {
+			try {
+				return replica.getConnection();
+			} catch (SQLException e) {
+				replica.markUnhealthy(retryDelay);
+				logger.warn(e, "Replica [{}] is unavailable", replica.getName());
+			}
+			replica = select(replica);
+		}
+		return primary.getConnection();
+	}
+
+	/**
+	 * 重新尝试连接失败的从库
+	 * 
+	 * @return 重新连接成功返回此连接
+	 */
+	private Connection retry() {
+		for (Replica replica : replicas) {
+			if (replica.isHealthy() || !replica.tryRetry()) {
+				continue;
+			}
+
+			try {
+				Connection connection = replica.getConnection();
+				replica.markHealthy();
+				logger.info("Replica [{}] is available again", replica.getName());
+				return connection;
+			} catch (SQLException e) {
+				replica.markUnhealthy(retryDelay);
+				logger.debug(e, "Retry replica [{}] error", replica.getName());
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * 按权重轮询选择一个可用的从库
+	 * 
+	 * @param exclude 刚刚失败的从库
+	 * @return 没有可用的从库返回空
+	 */
+	protected Replica select(Replica exclude) {
+		int totalWeight = 0;
+		for (Replica replica : replicas) {
+			if (replica != exclude && replica.isHealthy()) {
+				totalWeight += replica.getWeight();
+			}
+		}
+
+		if (totalWeight == 0) {
+			return null;
+		}
+
+		long position = (counter.getAndIncrement() & Long.MAX_VALUE) % totalWeight;
+		for (Replica replica : replicas) {
+			if (replica == exclude || !replica.isHealthy()) {
+				continue;
+			}
+
+			position -= replica.getWeight();
+			if (position < 0) {
+				return replica;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * 检查所有从库的可用性和复制延迟
+	 */
+	public void checkHealth() {
+		for (Replica replica : replicas) {
+			boolean healthy;
+			long lag;
+			try {
+				Connection connection = replica.getConnection();
+				try {
+					lag = lagDetector.getLag(connection);
+				} finally {
+					connection.close();
+				}
+				healthy = lag <= maxLag;
+			} catch (Throwable e) {
+				logger.debug(e, "Check replica [{}] error", replica.getName());
+				lag = Long.MAX_VALUE;
+				healthy = false;
+			}
+
+			if (replica.isHealthy() != healthy) {
+				logger.info("Replica [{}] healthy changed to {}, lag: {}ms", replica.getName(), healthy, lag);
+			}
+			replica.update(healthy, lag);
+		}
+	}
+
+	private synchronized void startHealthCheck() {
+		if (executor != null || healthCheckPeriod <= 0) {
+			return;
+		}
+
+		executor = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+			Thread thread = new Thread(runnable, RoutingConnectionFactory.class.getSimpleName());
+			thread.setDaemon(true);
+			return thread;
+		});
+		executor.scheduleWithFixedDelay(() -> {
+			try {
+				checkHealth();
+			} catch (Throwable e) {
+				logger.error(e, "check replicas health error");
+			}
+		}, healthCheckPeriod, healthCheckPeriod, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public synchronized void close() {
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+	}
+}
@@ -0,0 +1,66 @@
+package scw.sql.routing;
+
+import scw.lang.NamedThreadLocal;
+import scw.util.stream.CallableProcessor;
+
+/**
+ * 读写分离的路由提示<br/>
+ * 在没有事务的情况下，只有在{@link #readOnly(CallableProcessor)}中执行的操作才会被路由到从库，
+ * 默认(包括框架内部的查询)都使用主库，由调用方决定哪些查询可以接受复制延迟
+ *
+ * @author shuchaowen
+ *
+ */
+public final class RoutingContext {
+	private static final ThreadLocal<Boolean> READ_ONLY = new NamedThreadLocal<Boolean>(
+			RoutingContext.class.getSimpleName());
+
+	private RoutingContext() {
+	}
+
+	/**
+	 * 当前线程是否标记为只读
+	 * 
+	 * @return
+	 */
+	public static boolean isReadOnly() {
+		Boolean readOnly = READ_ONLY.get();
+		return readOnly != null && readOnly;
+	}
+
+	/**
+	 * 以只读的方式执行，执行完后恢复之前的状态
+	 * 
+	 * @param processor
+	 * @return
+	 * @throws E
+	 */
+	public static <T, E extends Throwable> T readOnly(CallableProcessor<T, E> processor) throws E {
+		return execute(true, processor);
+	}
+
+	/**
+	 * 强制使用主库执行，执行完后恢复之前的状态
+	 * 
+	 * @param processor
+	 * @return
+	 * @throws E
+	 */
+	public static <T, E extends Throwable> T primary(CallableProcessor<T, E> processor) throws E {
+		return execute(false, processor);
+	}
+
+	private static <T, E extends Throwable> T execute(boolean readOnly, CallableProcessor<T, E> processor) throws E {
+		Boolean old = READ_ONLY.get();
+		READ_ONLY.set(readOnly);
+		try {
+			return processor.process();
+		} finally {
+			if (old == null) {
+				READ_ONLY.remove();
+			} else {
+				READ_ONLY.set(old);
+			}
+		}
+	}
+}
@@ -20,16 +20,27 @@ public final class SqlTransactionUtils {
 	 * @throws SQLException
 	 */
 	public static Connection getTransactionConnection(ConnectionFactory connectionFactory) throws SQLException {
+		return getTransactionConnection(connectionFactory, connectionFactory);
+	}
+
+	/**
+	 * 获取一个当前事务的连接，如果不存在事务就返回可用的连接
+	 * @param name 事务资源的名称，同一个名称在一个事务中使用同一个连接
+	 * @param connectionFactory 创建连接的方式
+	 * @return
+	 * @throws SQLException
+	 */
+	public static Connection getTransactionConnection(Object name, ConnectionFactory connectionFactory) throws SQLException {
 		Transaction transaction = TransactionUtils.getManager().getTransaction();
 		if (transaction == null) {
 			return connectionFactory.getConnection();
 		}
 
-		ConnectionTransactionResource resource = transaction.getResource(connectionFactory);
+		ConnectionTransactionResource resource = transaction.getResource(name);
 		if (resource == null) {
 			ConnectionTransactionResource connectionTransactionResource = new ConnectionTransactionResource(connectionFactory, transaction.getDefinition(),
 					transaction.isActive());
-			resource = transaction.bindResource(connectionFactory, connectionTransactionResource);
+			resource = transaction.bindResource(name, connectionTransactionResource);
 			if(resource == null){
 				resource = connectionTransactionResource;
 			}
@@ -3,6 +3,7 @@ package scw.sqlite;
 import org.sqlite.SQLiteDataSource;
 
 import scw.db.DefaultDB;
+import scw.sql.ConnectionFactory;
 import scw.sql.DataSourceConnectionFactory;
 
 public class SQLiteDB extends DefaultDB {
@@ -11,6 +12,10 @@ public class SQLiteDB extends DefaultDB {
 		super(new DataSourceConnectionFactory(dataSource), new SQLiteDialect());
 	}
 
+	public SQLiteDB(ConnectionFactory connectionFactory) {
+		super(connectionFactory, new SQLiteDialect());
+	}
+
 	public SQLiteDB(String databasePath) {
 		super(new SQLiteConnectionFactory(databasePath), new SQLiteDialect());
 	}
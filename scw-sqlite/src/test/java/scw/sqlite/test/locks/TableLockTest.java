@@ -0,0 +1,60 @@
+package scw.sqlite.test.locks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import scw.db.locks.TableLockFactory;
+import scw.env.Sys;
+import scw.locks.LeaseManager;
+import scw.locks.RenewableLock;
+import scw.sql.SimpleSql;
+import scw.sqlite.SQLiteDB;
+
+public class TableLockTest {
+	private SQLiteDB db = new SQLiteDB(Sys.env.getWorkPath() + "/lock_test.db");
+	private TableLockFactory lockFactory = new TableLockFactory(db);
+
+	@Test
+	public void renewal() throws InterruptedException {
+		db.update(new SimpleSql("delete from lock_table"));
+		// 不自动检查，手动调用续期
+		LeaseManager leaseManager = new LeaseManager(TimeUnit.HOURS.toMillis(1));
+		List<RenewableLock> lost = new ArrayList<RenewableLock>();
+		leaseManager.addLeaseListener((lock) -> lost.add(lock));
+
+		List<RenewableLock> locks = new ArrayList<RenewableLock>();
+		for (int i = 0; i < 3; i++) {
+			RenewableLock lock = lockFactory.getLock("lease" + i, TimeUnit.MILLISECONDS, 200);
+			lock.setLeaseManager(leaseManager);
+			assertTrue(lock.tryLock());
+			assertTrue(lock.isAutoRenewal());
+			locks.add(lock);
+		}
+		assertEquals(3, leaseManager.size());
+
+		Thread.sleep(150);
+		leaseManager.renewal();
+		assertTrue(lost.isEmpty());
+
+		// 模拟锁被其他人抢占
+		db.update(new SimpleSql("update lock_table set value=? where name=?", "other", "lease1"));
+		Thread.sleep(150);
+		leaseManager.renewal();
+		assertEquals(1, lost.size());
+		assertTrue(lost.get(0) == locks.get(1));
+		assertFalse(locks.get(1).isAutoRenewal());
+		assertEquals(2, leaseManager.size());
+
+		for (RenewableLock lock : locks) {
+			lock.unlock();
+		}
+		assertEquals(0, leaseManager.size());
+	}
+}
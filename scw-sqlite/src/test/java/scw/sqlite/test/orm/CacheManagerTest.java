@@ -0,0 +1,161 @@
+package scw.sqlite.test.orm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+import scw.data.memory.MemoryDataOperations;
+import scw.env.Sys;
+import scw.orm.annotation.PrimaryKey;
+import scw.orm.cache.DefaultCacheManager;
+import scw.orm.sql.annotation.Table;
+import scw.sqlite.SQLiteDB;
+import scw.transaction.Transaction;
+import scw.transaction.TransactionDefinition;
+import scw.transaction.TransactionUtils;
+
+public class CacheManagerTest {
+	private SQLiteDB db = new SQLiteDB(Sys.env.getWorkPath() + "/cache_test.db");
+	private DefaultCacheManager cacheManager = new DefaultCacheManager(db.getSqlDialect(), null);
+
+	{
+		db.createTable(CacheTable.class, false);
+		db.deleteById(CacheTable.class, 1);
+		db.deleteById(CacheTable.class, 2);
+		db.deleteById(CacheTable.class, 3);
+		db.setCacheManager(cacheManager);
+	}
+
+	private CacheTable create(int id, int value) {
+		CacheTable table1 = new CacheTable();
+		table1.setId(id);
+		table1.setKey("key" + id);
+		table1.setValue(value);
+		return table1;
+	}
+
+	@Test
+	public void test() {
+		// 不存在的数据会被缓存
+		assertNull(db.getById(CacheTable.class, 1));
+		assertFalse(cacheManager.isKeepLooking(CacheTable.class, 1));
+
+		assertTrue(db.save(create(1, 1)));
+		assertTrue(cacheManager.isKeepLooking(CacheTable.class, 1));
+		assertEquals(1, db.getById(CacheTable.class, 1).getValue());
+
+		// 修改缓存返回的对象不会影响缓存
+		cacheManager.getById(CacheTable.class, 1).setValue(100);
+		assertEquals(1, cacheManager.getById(CacheTable.class, 1).getValue());
+
+		assertTrue(db.update(create(1, 2)));
+		assertNull(cacheManager.getById(CacheTable.class, 1));
+		assertEquals(2, db.getById(CacheTable.class, 1).getValue());
+		assertNotNull(cacheManager.getById(CacheTable.class, 1));
+
+		assertTrue(db.save(create(2, 2)));
+		cacheManager.clearNear();
+		Map<Integer, CacheTable> map = db.getInIds(CacheTable.class, Arrays.asList(3, 2, 1));
+		assertEquals(2, map.size());
+		assertEquals(2, map.get(2).getValue());
+		assertEquals(2, cacheManager.getInIds(CacheTable.class, Arrays.asList(1, 2, 3)).size());
+		assertFalse(cacheManager.isKeepLooking(CacheTable.class, 3));
+	}
+
+	@Test
+	public void remote() {
+		// 两个节点共享远程缓存，本地缓存是独立的
+		MemoryDataOperations remote = new MemoryDataOperations();
+		DefaultCacheManager node1 = new DefaultCacheManager(db.getSqlDialect(), remote);
+		DefaultCacheManager node2 = new DefaultCacheManager(db.getSqlDialect(), remote);
+		assertTrue(node2.isKeepLooking(CacheTable.class, 4));
+		node1.notFound(CacheTable.class, 4);
+		// 本地缓存中没有时检查远程缓存
+		assertFalse(node2.isKeepLooking(CacheTable.class, 4));
+		assertTrue(node2.isKeepLooking(CacheTable.class, 5));
+	}
+
+	@Test
+	public void rollback() {
+		assertNull(db.getById(CacheTable.class, 3));
+		Transaction transaction = TransactionUtils.getManager().getTransaction(TransactionDefinition.DEFAULT);
+		try {
+			assertTrue(db.save(create(3, 3)));
+			// 事务中可以读取到自己的修改，但不会写入缓存
+			assertEquals(3, db.getById(CacheTable.class, 3).getValue());
+			assertFalse(cacheManager.isKeepLooking(CacheTable.class, 3));
+		} finally {
+			TransactionUtils.getManager().rollback(transaction);
+		}
+
+		// 回滚后缓存中不能存在未提交的数据
+		assertNull(cacheManager.getById(CacheTable.class, 3));
+		assertNull(db.getById(CacheTable.class, 3));
+	}
+
+	@Test
+	public void readAfterUpdate() throws Throwable {
+		assertTrue(db.save(create(1, 1)));
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Transaction transaction = TransactionUtils.getManager().getTransaction(TransactionDefinition.DEFAULT);
+			try {
+				assertTrue(db.update(create(1, 2)));
+				// 提交前其他线程读取到旧的数据并填充了缓存
+				assertEquals(1, executor.submit(() -> db.getById(CacheTable.class, 1).getValue()).get().intValue());
+				assertEquals(1, cacheManager.getById(CacheTable.class, 1).getValue());
+				TransactionUtils.getManager().commit(transaction);
+			} catch (Throwable e) {
+				TransactionUtils.getManager().rollback(transaction);
+				throw e;
+			}
+		} finally {
+			executor.shutdown();
+		}
+
+		// 提交后旧的数据被清除
+		assertNull(cacheManager.getById(CacheTable.class, 1));
+		assertEquals(2, db.getById(CacheTable.class, 1).getValue());
+	}
+
+	@Table
+	public static class CacheTable {
+		@PrimaryKey
+		private int id;
+		private String key;
+		private int value;
+
+		public int getId() {
+			return id;
+		}
+
+		public void setId(int id) {
+			this.id = id;
+		}
+
+		public String getKey() {
+			return key;
+		}
+
+		public void setKey(String key) {
+			this.key = key;
+		}
+
+		public int getValue() {
+			return value;
+		}
+
+		public void setValue(int value) {
+			this.value = value;
+		}
+	}
+}
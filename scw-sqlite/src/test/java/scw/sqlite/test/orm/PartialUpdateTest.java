@@ -0,0 +1,185 @@
+package scw.sqlite.test.orm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import scw.aop.support.FieldSetterListen;
+import scw.env.Sys;
+import scw.orm.annotation.PrimaryKey;
+import scw.orm.annotation.Version;
+import scw.orm.sql.VersionConflictException;
+import scw.orm.sql.annotation.Table;
+import scw.sql.SimpleSql;
+import scw.sqlite.SQLiteDB;
+
+public class PartialUpdateTest {
+	private static SQLiteDB db = new SQLiteDB(Sys.env.getWorkPath() + "/partial_update_test.db");
+
+	static {
+		db.createTable(VersionTable.class);
+		db.createTable(NullableVersionTable.class);
+		db.setTrackChanges(true);
+	}
+
+	@Test
+	public void test() {
+		db.deleteById(VersionTable.class, 1);
+		VersionTable table = new VersionTable();
+		table.setId(1);
+		table.setName("a");
+		table.setRemark("a");
+		assertTrue(db.save(table));
+
+		VersionTable loaded = db.getById(VersionTable.class, 1);
+		assertTrue(loaded instanceof FieldSetterListen);
+		// 没有修改
+		assertTrue(db.update(loaded));
+		assertEquals(0, db.getById(VersionTable.class, 1).getVersion());
+
+		// 其他地方修改了remark，只更新name不会覆盖remark
+		db.prepare(new SimpleSql("update version_table set remark=? where id=?", "b", 1)).update();
+		loaded.setName("c");
+		assertTrue(db.update(loaded));
+		assertEquals(1, loaded.getVersion());
+
+		VersionTable result = db.getById(VersionTable.class, 1);
+		assertEquals("c", result.getName());
+		assertEquals("b", result.getRemark());
+		assertEquals(1, result.getVersion());
+
+		// 版本号不一致
+		VersionTable stale = db.getById(VersionTable.class, 1);
+		result.setName("d");
+		assertTrue(db.update(result));
+		stale.setName("e");
+		try {
+			db.update(stale);
+			fail();
+		} catch (VersionConflictException e) {
+			// expected
+		}
+		assertEquals("d", db.getById(VersionTable.class, 1).getName());
+
+		// 不是跟踪修改的实体时更新所有字段，不检查版本号
+		VersionTable plain = new VersionTable();
+		plain.setId(1);
+		plain.setName("f");
+		plain.setVersion(10);
+		assertTrue(db.update(plain));
+		assertEquals(10, plain.getVersion());
+		result = db.getById(VersionTable.class, 1);
+		assertEquals("f", result.getName());
+		assertEquals(10, result.getVersion());
+
+		// 不存在的数据
+		plain.setId(2);
+		assertFalse(db.update(plain));
+	}
+
+	@Test
+	public void nullVersion() {
+		db.deleteById(NullableVersionTable.class, 1);
+		NullableVersionTable table = new NullableVersionTable();
+		table.setId(1);
+		table.setName("a");
+		assertTrue(db.save(table));
+
+		NullableVersionTable loaded = db.getById(NullableVersionTable.class, 1);
+		assertNull(loaded.getVersion());
+		NullableVersionTable stale = db.getById(NullableVersionTable.class, 1);
+		// 版本号为空时和数据库中的空版本号匹配，更新后是1
+		loaded.setName("b");
+		assertTrue(db.update(loaded));
+		assertEquals(Integer.valueOf(1), loaded.getVersion());
+		assertEquals(Integer.valueOf(1), db.getById(NullableVersionTable.class, 1).getVersion());
+
+		stale.setName("c");
+		try {
+			db.update(stale);
+			fail();
+		} catch (VersionConflictException e) {
+			// expected
+		}
+		assertEquals("b", db.getById(NullableVersionTable.class, 1).getName());
+	}
+
+	@Table(name = "version_table")
+	public static class VersionTable {
+		@PrimaryKey
+		private int id;
+		private String name;
+		private String remark;
+		@Version
+		private int version;
+
+		public int getId() {
+			return id;
+		}
+
+		public void setId(int id) {
+			this.id = id;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public void setName(String name) {
+			this.name = name;
+		}
+
+		public String getRemark() {
+			return remark;
+		}
+
+		public void setRemark(String remark) {
+			this.remark = remark;
+		}
+
+		public int getVersion() {
+			return version;
+		}
+
+		public void setVersion(int version) {
+			this.version = version;
+		}
+	}
+
+	@Table(name = "nullable_version_table")
+	public static class NullableVersionTable {
+		@PrimaryKey
+		private int id;
+		private String name;
+		@Version
+		private Integer version;
+
+		public int getId() {
+			return id;
+		}
+
+		public void setId(int id) {
+			this.id = id;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public void setName(String name) {
+			this.name = name;
+		}
+
+		public Integer getVersion() {
+			return version;
+		}
+
+		public void setVersion(Integer version) {
+			this.version = version;
+		}
+	}
+}
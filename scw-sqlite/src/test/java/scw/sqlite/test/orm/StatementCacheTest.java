@@ -0,0 +1,156 @@
+package scw.sqlite.test.orm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import org.junit.Test;
+
+import scw.env.Sys;
+import scw.orm.annotation.PrimaryKey;
+import scw.orm.sql.annotation.Counter;
+import scw.orm.sql.annotation.Table;
+import scw.sql.SimpleSql;
+import scw.sql.Sql;
+import scw.sqlite.SQLiteDB;
+import scw.transaction.Transaction;
+import scw.transaction.TransactionDefinition;
+import scw.transaction.TransactionManager;
+import scw.transaction.TransactionUtils;
+
+public class StatementCacheTest {
+	private static SQLiteDB db = new SQLiteDB(Sys.env.getWorkPath() + "/statement_cache_test.db");
+
+	static {
+		db.createTable(StatementTable.class);
+		db.setStatementCacheSize(16);
+	}
+
+	@Test
+	public void test() {
+		for (int i = 0; i < 10; i++) {
+			db.deleteById(StatementTable.class, i);
+			assertNull(db.getById(StatementTable.class, i));
+
+			StatementTable table = new StatementTable();
+			table.setId(i);
+			table.setName("name" + i);
+			table.setCount(i);
+			assertTrue(db.save(table));
+
+			table.setName("update" + i);
+			assertTrue(db.update(table));
+			assertEquals("update" + i, db.getById(StatementTable.class, i).getName());
+		}
+
+		StatementTable table = new StatementTable();
+		table.setId(1);
+		// sql模板被缓存
+		assertTrue(db.getSqlDialect().save(null, StatementTable.class, table).getSql() == db.getSqlDialect()
+				.save(null, StatementTable.class, table).getSql());
+	}
+
+	@Test
+	public void reuse() throws SQLException {
+		Sql sql = new SimpleSql("select ?", 1);
+		Connection connection = db.getConnection();
+		PreparedStatement target;
+		try {
+			PreparedStatement ps = db.statement(connection, sql);
+			target = ps.unwrap(PreparedStatement.class);
+			ps.close();
+			assertFalse(target.isClosed());
+
+			// 同一个连接上复用同一个语句
+			PreparedStatement reused = db.statement(connection, sql);
+			assertSame(ps, reused);
+			assertSame(target, reused.unwrap(PreparedStatement.class));
+
+			// 正在使用的语句不会被复用
+			PreparedStatement other = db.statement(connection, sql);
+			assertNotSame(reused, other);
+			other.close();
+			assertTrue(other.isClosed());
+			reused.close();
+			assertFalse(target.isClosed());
+		} finally {
+			connection.close();
+		}
+		// 连接关闭(归还)时关闭缓存的语句
+		assertTrue(target.isClosed());
+
+		connection = db.getConnection();
+		try {
+			PreparedStatement ps = db.statement(connection, sql);
+			assertNotSame(target, ps.unwrap(PreparedStatement.class));
+			ps.close();
+		} finally {
+			connection.close();
+		}
+	}
+
+	@Test
+	public void transaction() throws Throwable {
+		Sql sql = new SimpleSql("select ?", 1);
+		TransactionManager manager = TransactionUtils.getManager();
+		Transaction transaction = manager.getTransaction(TransactionDefinition.DEFAULT);
+		PreparedStatement target;
+		try {
+			PreparedStatement ps = db.statement(db.getConnection(), sql);
+			target = ps.unwrap(PreparedStatement.class);
+			ps.close();
+
+			// 事务中的多次操作使用同一个连接，复用同一个语句
+			PreparedStatement reused = db.statement(db.getConnection(), sql);
+			assertSame(ps, reused);
+			reused.close();
+			assertFalse(target.isClosed());
+			manager.commit(transaction);
+		} catch (Throwable e) {
+			manager.rollback(transaction);
+			throw e;
+		}
+		// 事务结束时关闭缓存的语句
+		assertTrue(target.isClosed());
+	}
+
+	@Table
+	public static class StatementTable {
+		@PrimaryKey
+		private int id;
+		private String name;
+		@Counter(min = 0, max = 100)
+		private Integer count;
+
+		public int getId() {
+			return id;
+		}
+
+		public void setId(int id) {
+			this.id = id;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public void setName(String name) {
+			this.name = name;
+		}
+
+		public Integer getCount() {
+			return count;
+		}
+
+		public void setCount(Integer count) {
+			this.count = count;
+		}
+	}
+}
@@ -0,0 +1,212 @@
+package scw.sqlite.test.routing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.SQLException;
+
+import org.junit.Test;
+import org.sqlite.SQLiteConfig;
+import org.sqlite.SQLiteDataSource;
+
+import scw.env.Sys;
+import scw.orm.annotation.PrimaryKey;
+import scw.orm.sql.annotation.Table;
+import scw.sql.routing.Replica;
+import scw.sql.routing.RoutingConnectionFactory;
+import scw.sql.routing.RoutingContext;
+import scw.sqlite.SQLiteConnectionFactory;
+import scw.sqlite.SQLiteDB;
+import scw.transaction.DefaultTransactionDefinition;
+import scw.transaction.Transaction;
+import scw.transaction.TransactionDefinition;
+import scw.transaction.TransactionUtils;
+
+public class ReadWriteSplittingTest {
+	private static final TransactionDefinition READ_ONLY = new DefaultTransactionDefinition() {
+		public boolean isReadOnly() {
+			return true;
+		};
+	};
+
+	private final SQLiteConnectionFactory primary = new SQLiteConnectionFactory(
+			Sys.env.getWorkPath() + "/routing_primary.db");
+	private final SQLiteConnectionFactory replica = new SQLiteConnectionFactory(
+			Sys.env.getWorkPath() + "/routing_replica.db");
+	private final SQLiteConnectionFactory readOnlyReplica;
+	private volatile long lag = 0;
+	private volatile boolean replicaDown = false;
+
+	{
+		// 从库是只读的
+		SQLiteConfig config = new SQLiteConfig();
+		config.setReadOnly(true);
+		SQLiteDataSource dataSource = new SQLiteDataSource(config);
+		dataSource.setUrl(replica.getDataSource().getUrl());
+		readOnlyReplica = new SQLiteConnectionFactory(dataSource);
+	}
+	private RoutingConnectionFactory createRouting() {
+		init(primary, "primary");
+		init(replica, "replica");
+		RoutingConnectionFactory routing = new RoutingConnectionFactory(primary);
+		routing.setHealthCheckPeriod(0);
+		routing.setMaxLag(1000);
+		routing.setLagDetector((connection) -> lag);
+		routing.addReplica("replica", () -> {
+			if (replicaDown) {
+				throw new SQLException("replica is down");
+			}
+			return readOnlyReplica.getConnection();
+		});
+		return routing;
+	}
+
+	private void init(SQLiteConnectionFactory connectionFactory, String name) {
+		SQLiteDB db = new SQLiteDB(connectionFactory);
+		db.createTable(RoutingTable.class, false);
+		RoutingTable table = new RoutingTable();
+		table.setId(1);
+		table.setName(name);
+		db.saveOrUpdate(table);
+	}
+
+	private String getName(SQLiteDB db) {
+		return db.getById(RoutingTable.class, 1).getName();
+	}
+
+	private String getReadOnlyName(SQLiteDB db) {
+		return RoutingContext.readOnly(() -> getName(db));
+	}
+
+	@Test
+	public void route() {
+		RoutingConnectionFactory routing = createRouting();
+		SQLiteDB db = new SQLiteDB(routing);
+		try {
+			// 没有事务时默认使用主库，显式标记为只读的查询使用从库
+			assertEquals("primary", getName(db));
+			assertEquals("replica", getReadOnlyName(db));
+
+			// 更新使用主库
+			RoutingTable table = new RoutingTable();
+			table.setId(1);
+			table.setName("update");
+			assertTrue(db.update(table));
+			assertEquals("update", getName(db));
+			assertEquals("replica", getReadOnlyName(db));
+		} finally {
+			routing.close();
+		}
+	}
+
+	@Test
+	public void transaction() throws Throwable {
+		RoutingConnectionFactory routing = createRouting();
+		SQLiteDB db = new SQLiteDB(routing);
+		try {
+			// 非只读事务中的查询使用主库，可以读到自己的写入
+			Transaction transaction = TransactionUtils.getManager().getTransaction(TransactionDefinition.DEFAULT);
+			try {
+				assertEquals("primary", getName(db));
+				RoutingTable table = new RoutingTable();
+				table.setId(1);
+				table.setName("transaction");
+				db.update(table);
+				assertEquals("transaction", getName(db));
+				TransactionUtils.getManager().commit(transaction);
+			} catch (Throwable e) {
+				TransactionUtils.getManager().rollback(transaction);
+				throw e;
+			}
+
+			// 只读事务使用从库
+			transaction = TransactionUtils.getManager().getTransaction(READ_ONLY);
+			try {
+				assertEquals("replica", getName(db));
+				TransactionUtils.getManager().commit(transaction);
+			} catch (Throwable e) {
+				TransactionUtils.getManager().rollback(transaction);
+				throw e;
+			}
+		} finally {
+			routing.close();
+		}
+	}
+
+	@Test
+	public void lag() {
+		RoutingConnectionFactory routing = createRouting();
+		SQLiteDB db = new SQLiteDB(routing);
+		try {
+			Replica replica = routing.getReplicas().get(0);
+			lag = 5000;
+			routing.checkHealth();
+			assertFalse(replica.isHealthy());
+			assertEquals(5000, replica.getLag());
+			// 延迟过大时使用主库
+			assertEquals("primary", getReadOnlyName(db));
+
+			lag = 0;
+			routing.checkHealth();
+			assertTrue(replica.isHealthy());
+			assertEquals("replica", getReadOnlyName(db));
+		} finally {
+			routing.close();
+		}
+	}
+
+	@Test
+	public void retry() throws InterruptedException {
+		RoutingConnectionFactory routing = createRouting();
+		routing.setRetryDelay(50);
+		SQLiteDB db = new SQLiteDB(routing);
+		try {
+			Replica replica = routing.getReplicas().get(0);
+			replicaDown = true;
+			// 连接失败时使用主库
+			assertEquals("primary", getReadOnlyName(db));
+			assertFalse(replica.isHealthy());
+
+			// 没有健康检查时，到了重试时间由下一次请求重新尝试
+			replicaDown = false;
+			assertEquals("primary", getReadOnlyName(db));
+			Thread.sleep(100);
+			assertEquals("replica", getReadOnlyName(db));
+			assertTrue(replica.isHealthy());
+
+			// 重试失败继续使用主库
+			replicaDown = true;
+			assertEquals("primary", getReadOnlyName(db));
+			Thread.sleep(100);
+			assertEquals("primary", getReadOnlyName(db));
+			assertFalse(replica.isHealthy());
+		} finally {
+			replicaDown = false;
+			routing.close();
+		}
+	}
+
+	@Table
+	public static class RoutingTable {
+		@PrimaryKey
+		private int id;
+		private String name;
+
+		public int getId() {
+			return id;
+		}
+
+		public void setId(int id) {
+			this.id = id;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public void setName(String name) {
+			this.name = name;
+		}
+	}
+}
@@ -0,0 +1,50 @@
+package scw.tcc;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import scw.beans.BeanFactory;
+import scw.beans.BeanFactoryAware;
+
+/**
+ * 一个事务中的多个{@link Stage}，作为一条补偿记录保存，按顺序执行<br/>
+ * 在同一个进程中重试时会跳过已经执行成功的部分
+ *
+ * @author shuchaowen
+ *
+ */
+public class StageGroup implements Runnable, Serializable, BeanFactoryAware {
+	private static final long serialVersionUID = 1L;
+	private final List<Stage> stages;
+	private transient int completed;
+
+	public StageGroup(List<Stage> stages) {
+		this.stages = new ArrayList<Stage>(stages);
+	}
+
+	public List<Stage> getStages() {
+		return Collections.unmodifiableList(stages);
+	}
+
+	@Override
+	public void setBeanFactory(BeanFactory beanFactory) {
+		for (Stage stage : stages) {
+			stage.setBeanFactory(beanFactory);
+		}
+	}
+
+	@Override
+	public void run() {
+		for (int i = completed; i < stages.size(); i++) {
+			stages.get(i).run();
+			completed = i + 1;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "StageGroup" + stages;
+	}
+}
@@ -0,0 +1,110 @@
+package scw.tcc;
+
+import java.lang.reflect.Method;
+import java.util.LinkedHashMap;
+
+import scw.core.parameter.ParameterDescriptor;
+import scw.core.parameter.ParameterUtils;
+import scw.core.reflect.MethodInvoker;
+import scw.lang.Nullable;
+import scw.tcc.annotation.Tcc;
+import scw.tcc.annotation.TryResult;
+
+/**
+ * 一个try方法对应的confirm/cancel方法和参数映射，每个方法只解析一次
+ *
+ * @author shuchaowen
+ *
+ */
+final class TccDefinition {
+	private final StageDefinition confirm;
+	private final StageDefinition cancel;
+
+	TccDefinition(@Nullable StageDefinition confirm, @Nullable StageDefinition cancel) {
+		this.confirm = confirm;
+		this.cancel = cancel;
+	}
+
+	@Nullable
+	public StageDefinition getConfirm() {
+		return confirm;
+	}
+
+	@Nullable
+	public StageDefinition getCancel() {
+		return cancel;
+	}
+
+	static TccDefinition create(TccService tccService, Class<?> declaringClass, Method tryMethod, Tcc tcc) {
+		return new TccDefinition(StageDefinition.create(tryMethod, tccService.getStepMethod(declaringClass, tcc.confirm())),
+				StageDefinition.create(tryMethod, tccService.getStepMethod(declaringClass, tcc.cancel())));
+	}
+
+	static final class StageDefinition {
+		/**
+		 * 使用try方法的返回值
+		 */
+		private static final int TRY_RESULT = -1;
+
+		private final Method method;
+		/**
+		 * 每个参数对应的try方法参数的位置
+		 */
+		private final int[] argIndexes;
+
+		private StageDefinition(Method method, int[] argIndexes) {
+			this.method = method;
+			this.argIndexes = argIndexes;
+		}
+
+		public Method getMethod() {
+			return method;
+		}
+
+		@Nullable
+		static StageDefinition create(Method tryMethod, @Nullable Method stepMethod) {
+			if (stepMethod == null) {
+				return null;
+			}
+
+			ParameterDescriptor[] parameterDescriptors = ParameterUtils.getParameterDescriptors(stepMethod);
+			ParameterDescriptor[] tryParameterDescriptors = ParameterUtils.getParameterDescriptors(tryMethod);
+			LinkedHashMap<String, Integer> tryIndexMap = new LinkedHashMap<String, Integer>(
+					tryParameterDescriptors.length);
+			for (int i = 0; i < tryParameterDescriptors.length; i++) {
+				tryIndexMap.put(tryParameterDescriptors[i].getName(), i);
+			}
+
+			int[] argIndexes = new int[parameterDescriptors.length];
+			for (int i = 0; i < parameterDescriptors.length; i++) {
+				ParameterDescriptor descriptor = parameterDescriptors[i];
+				if (descriptor.getAnnotation(TryResult.class) != null) {
+					argIndexes[i] = TRY_RESULT;
+					continue;
+				}
+
+				Integer index = tryIndexMap.get(descriptor.getName());
+				if (index == null) {
+					throw new TccException("Undefined parameter [" + descriptor.getName() + "] in method:"
+							+ stepMethod.toString());
+				}
+				argIndexes[i] = index;
+			}
+			return new StageDefinition(stepMethod, argIndexes);
+		}
+
+		public Object[] getArgs(Object[] tryArgs, Object tryResult) {
+			Object[] args = new Object[argIndexes.length];
+			for (int i = 0; i < argIndexes.length; i++) {
+				args[i] = argIndexes[i] == TRY_RESULT ? tryResult : tryArgs[argIndexes[i]];
+			}
+			return args;
+		}
+
+		public Stage createStage(MethodInvoker invoker, String beanName, Object[] tryArgs, Object tryResult) {
+			Stage stage = new Stage(invoker.getDeclaringClass(), method, beanName, getArgs(tryArgs, tryResult));
+			stage.setInstance(invoker.getInstance());
+			return stage;
+		}
+	}
+}
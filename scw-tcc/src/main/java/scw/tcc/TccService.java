@@ -2,6 +2,8 @@ package scw.tcc;
 
 import java.lang.reflect.Method;
 import java.util.LinkedHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import scw.aop.MethodInterceptor;
 import scw.aop.MethodInterceptorAccept;
@@ -9,7 +11,6 @@ import scw.beans.BeanUtils;
 import scw.beans.RuntimeBean;
 import scw.beans.annotation.Autowired;
 import scw.consistency.CompensateRegistry;
-import scw.consistency.Compensator;
 import scw.context.annotation.Provider;
 import scw.core.Ordered;
 import scw.core.parameter.ParameterDescriptor;
@@ -69,8 +70,11 @@ public class TccService implements MethodInterceptor, MethodInterceptorAccept {
 		return oldId == null ? transactionId : oldId;
 	}
 
+	private static final TccDefinition NONE = new TccDefinition(null, null);
+
 	@Autowired(required = false)
 	private CompensateRegistry compensateRegistry;
+	private final ConcurrentMap<Class<?>, ConcurrentMap<Method, TccDefinition>> definitionMap = new ConcurrentHashMap<Class<?>, ConcurrentMap<Method, TccDefinition>>();
 
 	public CompensateRegistry getCompensateRegistry() {
 		return compensateRegistry;
@@ -81,14 +85,36 @@ public class TccService implements MethodInterceptor, MethodInterceptorAccept {
 	}
 
 	public boolean isAccept(MethodInvoker invoker, Object[] args) {
-		Tcc tcc = invoker.getMethod().getAnnotation(Tcc.class);
-		return tcc != null;
+		return getDefinition(invoker) != null;
+	}
+
+	private TccDefinition getDefinition(MethodInvoker invoker) {
+		ConcurrentMap<Method, TccDefinition> map = definitionMap.get(invoker.getDeclaringClass());
+		if (map == null) {
+			map = new ConcurrentHashMap<Method, TccDefinition>();
+			ConcurrentMap<Method, TccDefinition> old = definitionMap.putIfAbsent(invoker.getDeclaringClass(), map);
+			if (old != null) {
+				map = old;
+			}
+		}
+
+		TccDefinition definition = map.get(invoker.getMethod());
+		if (definition == null) {
+			Tcc tcc = invoker.getMethod().getAnnotation(Tcc.class);
+			definition = tcc == null ? NONE
+					: TccDefinition.create(this, invoker.getDeclaringClass(), invoker.getMethod(), tcc);
+			TccDefinition old = map.putIfAbsent(invoker.getMethod(), definition);
+			if (old != null) {
+				definition = old;
+			}
+		}
+		return definition == NONE ? null : definition;
 	}
 
 	public Object intercept(MethodInvoker invoker, Object[] args)
 			throws Throwable {
-		Tcc tcc = invoker.getMethod().getAnnotation(Tcc.class);
-		if (tcc == null) {
+		TccDefinition definition = getDefinition(invoker);
+		if (definition == null) {
 			return invoker.invoke(args);
 		}
 
@@ -109,39 +135,33 @@ public class TccService implements MethodInterceptor, MethodInterceptorAccept {
 		}
 
 		Object result = invoker.invoke(args);
-		// 先注册一个取消任务，以防止最坏的情况发生，那样还可以回滚,但是如果存在confirm的情况下还会执行confirm，所以应该在业务中判断如果已经cancel了那么confirm无效
-		Method confirmMethod = getStepMethod(invoker.getDeclaringClass(),
-				tcc.confirm());
-		Method cancelMethod = getStepMethod(invoker.getDeclaringClass(),
-				tcc.cancel());
-
-		String transactionId = getTransactionId(true);
-		Compensator confirm = null;
-		if (confirmMethod != null) {
-			Object[] stepArgs = getStepArgs(invoker.getMethod(), result, args,
-					confirmMethod);
-			Stage stage = new Stage(invoker.getDeclaringClass(), confirmMethod,
-					runtimeBean.getBeanDefinition().getId(), stepArgs);
-			stage.setInstance(invoker.getInstance());
-			confirm = compensateRegistry.register(transactionId,
-					XUtils.getUUID(), stage);
-		}
-
-		Compensator cancel = null;
-		if (cancelMethod != null) {
-			Object[] stepArgs = getStepArgs(invoker.getMethod(), result, args,
-					cancelMethod);
-			Stage stage = new Stage(invoker.getDeclaringClass(), cancelMethod,
-					runtimeBean.getBeanDefinition().getId(), stepArgs);
-			stage.setInstance(invoker.getInstance());
-			cancel = compensateRegistry.register(transactionId,
-					XUtils.getUUID(), stage);
-		}
-
-		transaction.addLifecycle(new TccCompensator(confirm, cancel));
+		// cancel在try后立即保存(每个事务一条记录)，confirm在提交前作为一条记录保存，崩溃恢复时两者都可能执行，所以应该在业务中判断如果已经cancel了那么confirm无效
+		TccTransaction tccTransaction = getTccTransaction(transaction);
+		String beanName = runtimeBean.getBeanDefinition().getId();
+		if (definition.getConfirm() != null) {
+			tccTransaction.addConfirm(definition.getConfirm().createStage(invoker, beanName, args, result));
+		}
+
+		if (definition.getCancel() != null) {
+			tccTransaction.addCancel(definition.getCancel().createStage(invoker, beanName, args, result));
+		}
 		return result;
 	}
 
+	private TccTransaction getTccTransaction(Transaction transaction) {
+		TccTransaction tccTransaction = transaction.getResource(TccTransaction.class);
+		if (tccTransaction == null) {
+			tccTransaction = new TccTransaction(compensateRegistry, getTransactionId(true));
+			// 返回的是已经绑定的资源
+			TccTransaction old = transaction.bindResource(TccTransaction.class, tccTransaction);
+			if (old != tccTransaction) {
+				return old;
+			}
+			transaction.addLifecycle(tccTransaction);
+		}
+		return tccTransaction;
+	}
+
 	public Method getStepMethod(Class<?> declaringClass, String stepName) {
 		if (StringUtils.isEmpty(stepName)) {
 			return null;
@@ -0,0 +1,101 @@
+package scw.tcc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import scw.consistency.CompensateRegistry;
+import scw.consistency.Compensator;
+import scw.transaction.TransactionLifecycle;
+
+/**
+ * 一个事务中所有的tcc阶段<br/>
+ * 每次try成功后立即保存包含当前所有cancel的一条记录(和注册顺序相反)，并取消上一条，即使在回滚前崩溃也可以恢复<br/>
+ * 所有的confirm在提交前作为一条记录注册，提交后取消cancel记录并执行confirm，回滚后执行cancel记录
+ *
+ * @author shuchaowen
+ *
+ */
+final class TccTransaction implements TransactionLifecycle {
+	private static final String CONFIRM_ID = "confirm";
+	private static final String CANCEL_ID = "cancel";
+
+	private final CompensateRegistry compensateRegistry;
+	private final String transactionId;
+	private final List<Stage> confirms = new ArrayList<Stage>(4);
+	private final List<Stage> cancels = new ArrayList<Stage>(4);
+	private volatile Compensator confirm;
+	private volatile Compensator cancel;
+
+	TccTransaction(CompensateRegistry compensateRegistry, String transactionId) {
+		this.compensateRegistry = compensateRegistry;
+		this.transactionId = transactionId;
+	}
+
+	public String getTransactionId() {
+		return transactionId;
+	}
+
+	public synchronized void addConfirm(Stage stage) {
+		confirms.add(stage);
+	}
+
+	public synchronized void addCancel(Stage stage) {
+		cancels.add(stage);
+		List<Stage> stages = new ArrayList<Stage>(cancels);
+		Collections.reverse(stages);
+		// 先保存新的记录再取消旧的记录，崩溃时最坏的情况是部分cancel重复执行
+		Compensator old = this.cancel;
+		this.cancel = compensateRegistry.register(transactionId, CANCEL_ID + cancels.size(), new StageGroup(stages));
+		if (old != null) {
+			old.cancel();
+		}
+	}
+
+	@Override
+	public void beforeCommit() throws Throwable {
+		List<Stage> stages;
+		synchronized (this) {
+			if (confirms.isEmpty()) {
+				return;
+			}
+			stages = new ArrayList<Stage>(confirms);
+		}
+		confirm = compensateRegistry.register(transactionId, CONFIRM_ID, new StageGroup(stages));
+	}
+
+	@Override
+	public void afterCommit() {
+		Compensator cancel = this.cancel;
+		if (cancel != null) {
+			cancel.cancel();
+		}
+
+		Compensator confirm = this.confirm;
+		if (confirm != null) {
+			confirm.run();
+		}
+	}
+
+	@Override
+	public void beforeRollback() {
+	}
+
+	@Override
+	public void afterRollback() {
+		// 提交前注册了confirm但提交失败
+		Compensator confirm = this.confirm;
+		if (confirm != null) {
+			confirm.cancel();
+		}
+
+		Compensator cancel = this.cancel;
+		if (cancel != null) {
+			cancel.run();
+		}
+	}
+
+	@Override
+	public void complete() {
+	}
+}
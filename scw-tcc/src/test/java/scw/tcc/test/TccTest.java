@@ -1,8 +1,13 @@
 package scw.tcc.test;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 import org.junit.Test;
 
@@ -12,6 +17,7 @@ import scw.consistency.CompensatePolicy;
 import scw.consistency.policy.FileCompensatePolicy;
 import scw.core.utils.ArrayUtils;
 import scw.io.FileUtils;
+import scw.tcc.TccService;
 import scw.tcc.annotation.Tcc;
 import scw.tcc.annotation.TccStage;
 import scw.tcc.annotation.TryResult;
@@ -33,6 +39,8 @@ public class TccTest {
 		} catch (Throwable e) {
 			e.printStackTrace();
 		}
+		// 显式注册tcc拦截器
+		beanFactory.getAop().getMethodInterceptor().addMethodInterceptor(beanFactory.getInstance(TccService.class));
 	}
 
 	@Test
@@ -64,6 +72,58 @@ public class TccTest {
 		assertTrue("执行完后目录应该为空", ArrayUtils.isEmpty(file.list()));
 	}
 
+	@Test
+	public void multiple() throws Throwable {
+		EVENTS.clear();
+		Transaction transaction = TransactionUtils.getManager().getTransaction(TransactionDefinition.DEFAULT);
+		try {
+			TestService testService = beanFactory.getInstance(TestService.class);
+			testService.tryMethod("multiple1");
+			assertEquals("try后立即保存cancel记录", 1, countRecords());
+			testService.tryMethod("multiple2");
+			assertEquals("每个事务只保存一条cancel记录", 1, countRecords());
+			TransactionUtils.getManager().commit(transaction);
+		} catch (Throwable e) {
+			TransactionUtils.getManager().rollback(transaction);
+			throw e;
+		}
+		// 同一个事务中的多次调用只会保存一条记录，按调用顺序confirm
+		assertEquals(Arrays.asList("multiple1 confirm records=1", "multiple2 confirm records=1"), EVENTS);
+		assertTrue("执行完后目录应该为空", ArrayUtils.isEmpty(file.list()));
+	}
+
+	@Test
+	public void multipleRollback() throws Throwable {
+		EVENTS.clear();
+		Transaction transaction = TransactionUtils.getManager().getTransaction(TransactionDefinition.DEFAULT);
+		try {
+			TestService testService = beanFactory.getInstance(TestService.class);
+			testService.tryMethod("rollback1");
+			testService.tryMethod("rollback2");
+			assertEquals("每个事务只保存一条cancel记录", 1, countRecords());
+		} finally {
+			TransactionUtils.getManager().rollback(transaction);
+		}
+		// 回滚时按调用的相反顺序cancel
+		assertEquals(Arrays.asList("rollback2 cancel records=1", "rollback1 cancel records=1"), EVENTS);
+		assertTrue("执行完后目录应该为空", ArrayUtils.isEmpty(file.list()));
+	}
+
+	private static int countRecords() {
+		String[] names = file.list();
+		int count = 0;
+		if (names != null) {
+			for (String name : names) {
+				if (name.endsWith(".compenstor")) {
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+
+	private static final List<String> EVENTS = Collections.synchronizedList(new ArrayList<String>());
+
 	public static interface TestService {
 		@Tcc(confirm = "confirm", cancel = "cancel")
 		String tryMethod(String group);
@@ -88,12 +148,14 @@ public class TccTest {
 		@Override
 		public void confirm(@TryResult String tryResult, String group) {
 			System.out.println(group + " confirm:" + tryResult);
+			EVENTS.add(group + " confirm records=" + countRecords());
 		}
 
 		@TccStage
 		@Override
 		public void cancel(@TryResult String tryResult, String group) {
 			System.out.println(group + " cancel:" + tryResult);
+			EVENTS.add(group + " cancel records=" + countRecords());
 		}
 
 	}
@@ -0,0 +1,21 @@
+package scw.upload;
+
+/**
+ * 上传的内容超过了限制的大小
+ * 
+ * @author shuchaowen
+ *
+ */
+public class UploadSizeExceededException extends UploaderException {
+	private static final long serialVersionUID = 1L;
+	private final long maxSize;
+
+	public UploadSizeExceededException(long maxSize) {
+		super("The upload exceeds its maximum permitted size of " + maxSize + " bytes");
+		this.maxSize = maxSize;
+	}
+
+	public long getMaxSize() {
+		return maxSize;
+	}
+}
@@ -0,0 +1,74 @@
+package scw.upload;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import scw.core.Assert;
+import scw.util.XUtils;
+
+public final class UploadUtils {
+	public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+	private UploadUtils() {
+	}
+
+	/**
+	 * 将输入流直接写入到文件<br/>
+	 * 先写入到同一个目录下的临时文件，完成后重命名，只使用一个固定大小的缓冲区，超过大小限制会立即停止读取
+	 * 
+	 * @param input
+	 * @param target
+	 * @param maxSize    小于0表示不限制
+	 * @param bufferSize
+	 * @return 写入的字节数
+	 * @throws IOException
+	 * @throws UploadSizeExceededException 超过了大小限制
+	 */
+	public static long transferTo(InputStream input, File target, long maxSize, int bufferSize)
+			throws IOException, UploadSizeExceededException {
+		Assert.requiredArgument(bufferSize > 0, "bufferSize");
+		File parent = target.getAbsoluteFile().getParentFile();
+		if (parent != null && !parent.exists() && !parent.mkdirs() && !parent.exists()) {
+			throw new IOException("Failed to create directory: " + parent);
+		}
+
+		File tmp = new File(parent, "." + target.getName() + "." + XUtils.getUUID() + ".tmp");
+		boolean success = false;
+		try {
+			long size = 0;
+			byte[] buffer = new byte[bufferSize];
+			OutputStream output = new FileOutputStream(tmp);
+			try {
+				int len;
+				while ((len = input.read(buffer)) != -1) {
+					size += len;
+					if (maxSize >= 0 && size > maxSize) {
+						throw new UploadSizeExceededException(maxSize);
+					}
+					output.write(buffer, 0, len);
+				}
+			} finally {
+				output.close();
+			}
+
+			// 同一个目录下重命名不需要再复制一次
+			Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			success = true;
+			return size;
+		} finally {
+			if (!success) {
+				tmp.delete();
+			}
+		}
+	}
+
+	public static long transferTo(InputStream input, File target, long maxSize)
+			throws IOException, UploadSizeExceededException {
+		return transferTo(input, target, maxSize, DEFAULT_BUFFER_SIZE);
+	}
+}
@@ -21,7 +21,6 @@ import scw.http.HttpMethod;
 import scw.http.HttpRequestEntity;
 import scw.http.HttpStatus;
 import scw.http.MediaType;
-import scw.io.FileUtils;
 import scw.io.IOUtils;
 import scw.io.Resource;
 import scw.logger.Logger;
@@ -30,6 +29,7 @@ import scw.net.FileMimeTypeUitls;
 import scw.net.MimeType;
 import scw.net.message.InputMessage;
 import scw.net.message.multipart.MultipartMessage;
+import scw.net.message.multipart.MultipartMessageIterator;
 import scw.net.uri.UriComponentsBuilder;
 import scw.net.uri.UriUtils;
 import scw.util.DefaultStatus;
@@ -57,6 +57,7 @@ public class Uploader implements ResourceStorageService, HttpService, ServerHttp
 	@Value(CONTROLLER)
 	private String controller;
 	private String sign;
+	private long maxFileSize = -1;
 
 	public Uploader(String directory) {
 		this.directory = directory;
@@ -79,7 +80,7 @@ public class Uploader implements ResourceStorageService, HttpService, ServerHttp
 		InputStream is = null;
 		try {
 			is = input.getInputStream();
-			FileUtils.copyInputStreamToFile(is, file);
+			UploadUtils.transferTo(is, file, maxFileSize);
 		} finally {
 			IOUtils.close(is);
 		}
@@ -122,6 +123,19 @@ public class Uploader implements ResourceStorageService, HttpService, ServerHttp
 		this.controller = StringUtils.cleanPath(controller);
 	}
 
+	public long getMaxFileSize() {
+		return maxFileSize;
+	}
+
+	/**
+	 * 单个文件的最大大小，小于0表示不限制
+	 * 
+	 * @param maxFileSize
+	 */
+	public void setMaxFileSize(long maxFileSize) {
+		this.maxFileSize = maxFileSize;
+	}
+
 	public String getSign() {
 		return sign;
 	}
@@ -166,12 +180,26 @@ public class Uploader implements ResourceStorageService, HttpService, ServerHttp
 
 		logger.info("upload request " + request);
 		MultiPartServerHttpRequest multiPartServerHttpRequest = (MultiPartServerHttpRequest) request;
-		MultipartMessage message = multiPartServerHttpRequest.getFirstFile();
-		if (message == null) {
-			return new DefaultStatus<String>(false, "无文件");
+		// 流式读取，文件直接写入目标位置
+		MultipartMessageIterator iterator = multiPartServerHttpRequest.getMultipartMessageIterator();
+		try {
+			while (iterator.hasNext()) {
+				MultipartMessage message = iterator.next();
+				if (!message.isFile()) {
+					continue;
+				}
+
+				try {
+					put(key, message);
+				} catch (UploadSizeExceededException e) {
+					return new DefaultStatus<String>(false, "文件过大");
+				}
+				return new DefaultStatus<>(true, key);
+			}
+		} finally {
+			iterator.close();
 		}
-		put(key, message);
-		return new DefaultStatus<>(true, key);
+		return new DefaultStatus<String>(false, "无文件");
 	}
 
 	@Override
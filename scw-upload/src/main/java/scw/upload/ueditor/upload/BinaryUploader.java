@@ -6,7 +6,9 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
+import scw.io.IOUtils;
 import scw.net.message.multipart.MultipartMessage;
+import scw.net.message.multipart.MultipartMessageIterator;
 import scw.upload.ueditor.PathFormat;
 import scw.upload.ueditor.define.AppInfo;
 import scw.upload.ueditor.define.BaseState;
@@ -16,48 +18,65 @@ import scw.web.MultiPartServerHttpRequest;
 
 public class BinaryUploader {
 
+	/**
+	 * 流式的读取请求，文件直接写入到目标位置
+	 */
 	public static final State save(MultiPartServerHttpRequest request,
 			Map<String, Object> conf) {
-		MultipartMessage fileItem = request.getFirstFile();
-		if (fileItem == null) {
-			return new BaseState(false, AppInfo.NOTFOUND_UPLOAD_DATA);
-		}
-		
+		MultipartMessageIterator iterator = null;
 		try {
-			String savePath = (String) conf.get("savePath");
-			String originFileName = fileItem.getOriginalFilename();
-			String suffix = FileType.getSuffixByFilename(originFileName);
+			iterator = request.getMultipartMessageIterator();
+			while (iterator.hasNext()) {
+				MultipartMessage fileItem = iterator.next();
+				if (fileItem.isFile()) {
+					return save(fileItem, conf);
+				}
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			return new BaseState(false, AppInfo.IO_ERROR);
+		} finally {
+			IOUtils.closeQuietly(iterator);
+		}
+		return new BaseState(false, AppInfo.NOTFOUND_UPLOAD_DATA);
+	}
 
-			originFileName = originFileName.substring(0,
-					originFileName.length() - suffix.length());
-			savePath = savePath + suffix;
+	private static State save(MultipartMessage fileItem, Map<String, Object> conf) throws IOException {
+		String savePath = (String) conf.get("savePath");
+		String originFileName = fileItem.getOriginalFilename();
+		String suffix = FileType.getSuffixByFilename(originFileName);
 
-			long maxSize = ((Long) conf.get("maxSize")).longValue();
+		originFileName = originFileName.substring(0,
+				originFileName.length() - suffix.length());
+		savePath = savePath + suffix;
 
-			if (!validType(suffix, (String[]) conf.get("allowFiles"))) {
-				return new BaseState(false, AppInfo.NOT_ALLOW_FILE_TYPE);
-			}
+		long maxSize = ((Long) conf.get("maxSize")).longValue();
+
+		// 在读取内容前校验
+		if (!validType(suffix, (String[]) conf.get("allowFiles"))) {
+			return new BaseState(false, AppInfo.NOT_ALLOW_FILE_TYPE);
+		}
 
-			savePath = PathFormat.parse(savePath, originFileName);
+		savePath = PathFormat.parse(savePath, originFileName);
 
-			String physicalPath = (String) conf.get("rootPath") + savePath;
+		String physicalPath = (String) conf.get("rootPath") + savePath;
 
-			InputStream is = fileItem.getInputStream();
-			State storageState = StorageManager.saveFileByInputStream(is,
+		InputStream is = fileItem.getInputStream();
+		State storageState;
+		try {
+			storageState = StorageManager.saveFileByInputStream(is,
 					physicalPath, maxSize);
+		} finally {
 			is.close();
+		}
 
-			if (storageState.isSuccess()) {
-				storageState.putInfo("url", PathFormat.format(savePath));
-				storageState.putInfo("type", suffix);
-				storageState.putInfo("original", originFileName + suffix);
-			}
-
-			return storageState;
-		} catch (IOException e) {
-			e.printStackTrace();
+		if (storageState.isSuccess()) {
+			storageState.putInfo("url", PathFormat.format(savePath));
+			storageState.putInfo("type", suffix);
+			storageState.putInfo("original", originFileName + suffix);
 		}
-		return new BaseState(false, AppInfo.IO_ERROR);
+
+		return storageState;
 	}
 
 	private static boolean validType(String type, String[] allowTypes) {
@@ -1,13 +1,13 @@
 package scw.upload.ueditor.upload;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
-import scw.io.FileUtils;
+import scw.upload.UploadSizeExceededException;
+import scw.upload.UploadUtils;
 import scw.upload.ueditor.define.AppInfo;
 import scw.upload.ueditor.define.BaseState;
 import scw.upload.ueditor.define.State;
@@ -44,101 +44,33 @@ public class StorageManager {
 		return state;
 	}
 
+	/**
+	 * 直接写入到目标文件所在的目录，超过maxSize会立即停止
+	 */
 	public static State saveFileByInputStream(InputStream is, String path,
 			long maxSize) {
-		State state = null;
-
-		File tmpFile = getTmpFile();
-
-		byte[] dataBuf = new byte[ 2048 ];
-		BufferedInputStream bis = new BufferedInputStream(is, StorageManager.BUFFER_SIZE);
-
-		try {
-			BufferedOutputStream bos = new BufferedOutputStream(
-					new FileOutputStream(tmpFile), StorageManager.BUFFER_SIZE);
-
-			int count = 0;
-			while ((count = bis.read(dataBuf)) != -1) {
-				bos.write(dataBuf, 0, count);
-			}
-			bos.flush();
-			bos.close();
-
-			if (tmpFile.length() > maxSize) {
-				tmpFile.delete();
-				return new BaseState(false, AppInfo.MAX_SIZE);
-			}
-
-			state = saveTmpFile(tmpFile, path);
-
-			if (!state.isSuccess()) {
-				tmpFile.delete();
-			}
-
+		File targetFile = new File(path);
+		State state = valid(targetFile);
+		if (!state.isSuccess()) {
 			return state;
-			
-		} catch (IOException e) {
-			e.printStackTrace();
 		}
-		return new BaseState(false, AppInfo.IO_ERROR);
-	}
-
-	public static State saveFileByInputStream(InputStream is, String path) {
-		State state = null;
-
-		File tmpFile = getTmpFile();
-
-		byte[] dataBuf = new byte[ 2048 ];
-		BufferedInputStream bis = new BufferedInputStream(is, StorageManager.BUFFER_SIZE);
 
 		try {
-			BufferedOutputStream bos = new BufferedOutputStream(
-					new FileOutputStream(tmpFile), StorageManager.BUFFER_SIZE);
-
-			int count = 0;
-			while ((count = bis.read(dataBuf)) != -1) {
-				bos.write(dataBuf, 0, count);
-			}
-			bos.flush();
-			bos.close();
-
-			state = saveTmpFile(tmpFile, path);
-
-			if (!state.isSuccess()) {
-				tmpFile.delete();
-			}
-
+			long size = UploadUtils.transferTo(is, targetFile, maxSize, BUFFER_SIZE);
+			state = new BaseState(true);
+			state.putInfo( "size", size );
+			state.putInfo( "title", targetFile.getName() );
 			return state;
+		} catch (UploadSizeExceededException e) {
+			return new BaseState(false, AppInfo.MAX_SIZE);
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
 		return new BaseState(false, AppInfo.IO_ERROR);
 	}
 
-	private static File getTmpFile() {
-		String tmpFileName = (Math.random() * 10000 + "").replace(".", "");
-		return new File(FileUtils.getTempDirectory(), tmpFileName);
-	}
-
-	private static State saveTmpFile(File tmpFile, String path) {
-		State state = null;
-		File targetFile = new File(path);
-
-		if (targetFile.canWrite()) {
-			return new BaseState(false, AppInfo.PERMISSION_DENIED);
-		}
-		try {
-			FileUtils.moveFile(tmpFile, targetFile, FileUtils.ONE_MB);
-		} catch (IOException e) {
-			e.printStackTrace();
-			return new BaseState(false, AppInfo.IO_ERROR);
-		}
-
-		state = new BaseState(true);
-		state.putInfo( "size", targetFile.length() );
-		state.putInfo( "title", targetFile.getName() );
-		
-		return state;
+	public static State saveFileByInputStream(InputStream is, String path) {
+		return saveFileByInputStream(is, path, -1);
 	}
 
 	private static State valid(File file) {
@@ -0,0 +1,185 @@
+package scw.upload.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import scw.core.Constants;
+import scw.io.FileUtils;
+import scw.net.MimeType;
+import scw.net.message.Headers;
+import scw.net.message.InputMessage;
+import scw.upload.ueditor.define.State;
+import scw.upload.ueditor.upload.BinaryUploader;
+import scw.web.MultiPartServerHttpRequest;
+import scw.web.apache.multipart.ApacheMultipartMessageResolver;
+
+public class BinaryUploaderTest {
+	private static final String BOUNDARY = "----scw-boundary";
+
+	private File directory;
+	private byte[] first;
+	private Body body;
+
+	@Before
+	public void before() throws IOException {
+		directory = Files.createTempDirectory("ueditor").toFile();
+		first = data(100000, 1);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		part(out, "title", null, "hello".getBytes(Constants.UTF_8));
+		part(out, "upfile", "a.png", first);
+		part(out, "other", "b.png", data(100000, 2));
+		out.write(("--" + BOUNDARY + "--\r\n").getBytes(Constants.UTF_8));
+		body = new Body(out.toByteArray());
+	}
+
+	@After
+	public void after() throws IOException {
+		FileUtils.deleteDirectory(directory);
+	}
+
+	private static byte[] data(int length, int seed) {
+		byte[] data = new byte[length];
+		for (int i = 0; i < length; i++) {
+			data[i] = (byte) (i * 31 + seed);
+		}
+		return data;
+	}
+
+	private static void part(ByteArrayOutputStream out, String name, String filename, byte[] content)
+			throws IOException {
+		StringBuilder sb = new StringBuilder();
+		sb.append("--").append(BOUNDARY).append("\r\n");
+		sb.append("Content-Disposition: form-data; name=\"").append(name).append("\"");
+		if (filename != null) {
+			sb.append("; filename=\"").append(filename).append("\"\r\n");
+			sb.append("Content-Type: image/png");
+		}
+		sb.append("\r\n\r\n");
+		out.write(sb.toString().getBytes(Constants.UTF_8));
+		out.write(content);
+		out.write("\r\n".getBytes(Constants.UTF_8));
+	}
+
+	/**
+	 * 只能流式的读取，获取全部part(会缓存)时失败
+	 */
+	private MultiPartServerHttpRequest request() {
+		ApacheMultipartMessageResolver resolver = new ApacheMultipartMessageResolver();
+		return (MultiPartServerHttpRequest) Proxy.newProxyInstance(BinaryUploaderTest.class.getClassLoader(),
+				new Class<?>[] { MultiPartServerHttpRequest.class }, (proxy, method, args) -> {
+					switch (method.getName()) {
+					case "getMultipartMessageIterator":
+						return resolver.resolveIterator(body);
+					case "getMultipartMessages":
+					case "getMultipartMessageMap":
+					case "getFirstFile":
+						throw new AssertionError("multipart messages should not be buffered");
+					default:
+						return null;
+					}
+				});
+	}
+
+	private Map<String, Object> conf(long maxSize, String... allowFiles) {
+		Map<String, Object> conf = new HashMap<String, Object>();
+		conf.put("savePath", "/upload/image");
+		conf.put("rootPath", directory.getPath());
+		conf.put("maxSize", maxSize);
+		conf.put("allowFiles", allowFiles);
+		return conf;
+	}
+
+	@Test
+	public void save() throws IOException {
+		State state = BinaryUploader.save(request(), conf(1024 * 1024, ".png"));
+		assertTrue(state.toJSONString(), state.isSuccess());
+		assertArrayEquals(first, Files.readAllBytes(new File(directory, "upload/image.png").toPath()));
+
+		// 只读取到第一个文件，之后的part不会被读取
+		assertTrue(body.read < body.length - 50000);
+	}
+
+	@Test
+	public void sizeExceeded() {
+		State state = BinaryUploader.save(request(), conf(1000, ".png"));
+		assertFalse(state.isSuccess());
+		assertFalse(new File(directory, "upload/image.png").exists());
+		assertEquals(0, new File(directory, "upload").list().length);
+		// 关闭时只会跳过当前part的剩余内容
+		assertTrue(body.read < body.length - 50000);
+	}
+
+	@Test
+	public void notAllowed() {
+		State state = BinaryUploader.save(request(), conf(1024 * 1024, ".jpg"));
+		assertFalse(state.isSuccess());
+		assertFalse(new File(directory, "upload").exists());
+		// 在读取文件内容前校验
+		assertTrue(body.read < 10000);
+	}
+
+	/**
+	 * 记录从请求体中读取的字节数
+	 */
+	private static class Body implements InputMessage {
+		private final Headers headers = new Headers(false);
+		private final byte[] data;
+		private final int length;
+		private long read;
+
+		Body(byte[] data) {
+			this.data = data;
+			this.length = data.length;
+		}
+
+		public Headers getHeaders() {
+			return headers;
+		}
+
+		public MimeType getContentType() {
+			return MimeType.valueOf("multipart/form-data; boundary=" + BOUNDARY);
+		}
+
+		public long getContentLength() {
+			return length;
+		}
+
+		public InputStream getInputStream() {
+			return new ByteArrayInputStream(data) {
+				@Override
+				public synchronized int read() {
+					int b = super.read();
+					if (b != -1) {
+						read++;
+					}
+					return b;
+				}
+
+				@Override
+				public synchronized int read(byte[] b, int off, int len) {
+					int count = super.read(b, off, len);
+					if (count > 0) {
+						read += count;
+					}
+					return count;
+				}
+			};
+		}
+	}
+}
@@ -0,0 +1,108 @@
+package scw.upload.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import scw.io.FileUtils;
+import scw.upload.UploadSizeExceededException;
+import scw.upload.UploadUtils;
+
+public class UploadUtilsTest {
+	private File directory;
+
+	@Before
+	public void before() throws IOException {
+		directory = Files.createTempDirectory("upload").toFile();
+	}
+
+	@After
+	public void after() throws IOException {
+		FileUtils.deleteDirectory(directory);
+	}
+
+	/**
+	 * 无限长的输入流，记录读取的字节数
+	 */
+	private static class EndlessInputStream extends InputStream {
+		private long read;
+
+		@Override
+		public int read() {
+			read++;
+			return 'a';
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			for (int i = 0; i < len; i++) {
+				b[off + i] = 'a';
+			}
+			read += len;
+			return len;
+		}
+	}
+
+	private static byte[] data(int length) {
+		byte[] data = new byte[length];
+		for (int i = 0; i < length; i++) {
+			data[i] = (byte) i;
+		}
+		return data;
+	}
+
+	@Test
+	public void transfer() throws IOException {
+		byte[] data = data(20000);
+		File target = new File(directory, "a/b/c.bin");
+		assertEquals(data.length, UploadUtils.transferTo(new ByteArrayInputStream(data), target, data.length, 1024));
+		assertArrayEquals(data, Files.readAllBytes(target.toPath()));
+
+		// 小于0不限制大小，覆盖已经存在的文件
+		data = data(30000);
+		assertEquals(data.length, UploadUtils.transferTo(new ByteArrayInputStream(data), target, -1));
+		assertArrayEquals(data, Files.readAllBytes(target.toPath()));
+		assertEquals(1, target.getParentFile().list().length);
+	}
+
+	@Test
+	public void sizeExceeded() throws IOException {
+		File target = new File(directory, "a.bin");
+		EndlessInputStream input = new EndlessInputStream();
+		try {
+			UploadUtils.transferTo(input, target, 10000, 1024);
+			fail("should exceed the max size");
+		} catch (UploadSizeExceededException e) {
+			assertEquals(10000, e.getMaxSize());
+		}
+
+		// 超过限制后立即停止读取，不会留下目标文件和临时文件
+		assertTrue(input.read <= 10000 + 1024);
+		assertFalse(target.exists());
+		assertEquals(0, directory.list().length);
+
+		// 已经存在的文件不会被修改
+		byte[] data = data(100);
+		Files.write(target.toPath(), data);
+		try {
+			UploadUtils.transferTo(new ByteArrayInputStream(data(101)), target, 100);
+			fail("should exceed the max size");
+		} catch (UploadSizeExceededException e) {
+			// ok
+		}
+		assertArrayEquals(data, Files.readAllBytes(target.toPath()));
+		assertEquals(1, directory.list().length);
+	}
+}
@@ -10,7 +10,9 @@ import scw.core.utils.CollectionUtils;
 import scw.http.MediaType;
 import scw.logger.Logger;
 import scw.logger.LoggerFactory;
+import scw.net.message.multipart.ListMultipartMessageIterator;
 import scw.net.message.multipart.MultipartMessage;
+import scw.net.message.multipart.MultipartMessageIterator;
 import scw.net.message.multipart.MultipartMessageResolver;
 
 /**
@@ -32,9 +34,14 @@ public class DefaultMultiPartServerHttpRequest extends ServerHttpRequestWrapper
 	}
 
 	private List<MultipartMessage> multipartMessages;
+	private MultipartMessageIterator multipartMessageIterator;
 
 	public List<MultipartMessage> getMultipartMessages() {
 		if (multipartMessages == null) {
+			if (multipartMessageIterator != null) {
+				throw new IllegalStateException("The multipart request has been read as a stream");
+			}
+
 			try {
 				multipartMessages = multipartMessageResolver.resolve(this);
 			} catch (IOException e) {
@@ -50,6 +57,20 @@ public class DefaultMultiPartServerHttpRequest extends ServerHttpRequestWrapper
 		return multipartMessages;
 	}
 
+	@Override
+	public MultipartMessageIterator getMultipartMessageIterator() throws IOException {
+		if (multipartMessages != null) {
+			return new ListMultipartMessageIterator(multipartMessages, false);
+		}
+
+		if (multipartMessageIterator != null) {
+			throw new IllegalStateException("The multipart request has been read as a stream");
+		}
+
+		multipartMessageIterator = multipartMessageResolver.resolveIterator(this);
+		return multipartMessageIterator;
+	}
+
 	/**
 	 * 关闭所有的item
 	 * 
@@ -58,6 +79,10 @@ public class DefaultMultiPartServerHttpRequest extends ServerHttpRequestWrapper
 	 * @see FileItem#close()
 	 */
 	public void close() throws IOException {
+		if (multipartMessageIterator != null) {
+			multipartMessageIterator.close();
+		}
+
 		if (!CollectionUtils.isEmpty(multipartMessages)) {
 			for (MultipartMessage message : multipartMessages) {
 				message.close();
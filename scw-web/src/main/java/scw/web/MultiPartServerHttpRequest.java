@@ -1,10 +1,13 @@
 package scw.web;
 
+import java.io.IOException;
 import java.util.Collection;
 
 import scw.core.utils.CollectionUtils;
 import scw.http.MediaType;
+import scw.net.message.multipart.ListMultipartMessageIterator;
 import scw.net.message.multipart.MultipartMessage;
+import scw.net.message.multipart.MultipartMessageIterator;
 import scw.util.LinkedMultiValueMap;
 import scw.util.MultiValueMap;
 
@@ -19,6 +22,17 @@ public interface MultiPartServerHttpRequest extends ServerHttpRequest {
 
 	Collection<MultipartMessage> getMultipartMessages();
 
+	/**
+	 * 流式的读取每一个part, 适用于大文件上传，可以直接将文件写入到目标位置<br/>
+	 * 请求体只能读取一次，所以和{@link #getMultipartMessages()}只能使用其中一个
+	 * 
+	 * @return
+	 * @throws IOException
+	 */
+	default MultipartMessageIterator getMultipartMessageIterator() throws IOException {
+		return new ListMultipartMessageIterator(getMultipartMessages(), false);
+	}
+
 	default MultiValueMap<String, MultipartMessage> getMultipartMessageMap() {
 		Collection<MultipartMessage> messages = getMultipartMessages();
 		if(CollectionUtils.isEmpty(messages)) {
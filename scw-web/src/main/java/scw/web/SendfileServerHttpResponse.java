@@ -0,0 +1,23 @@
+package scw.web;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * 可以由容器直接发送文件(零拷贝)的响应
+ *
+ * @author shuchaowen
+ *
+ */
+public interface SendfileServerHttpResponse extends ServerHttpResponse {
+	/**
+	 * 使用文件的一部分作为响应内容，之前写入的内容会被丢弃
+	 *
+	 * @param file
+	 * @param position
+	 * @param count
+	 * @return 当前不支持时返回false，调用方需要自己写出内容
+	 * @throws IOException
+	 */
+	boolean sendfile(File file, long position, long count) throws IOException;
+}
@@ -16,7 +16,6 @@ import scw.dom.DomUtils;
 import scw.http.HttpCookie;
 import scw.http.HttpMethod;
 import scw.http.HttpStatus;
-import scw.io.IOUtils;
 import scw.io.Resource;
 import scw.json.JSONUtils;
 import scw.json.JsonArray;
@@ -33,6 +32,7 @@ import scw.value.AnyValue;
 import scw.value.EmptyValue;
 import scw.value.StringValue;
 import scw.value.Value;
+import scw.web.resource.StaticResourceWriter;
 import scw.web.support.DefaultHttpService;
 
 public final class WebUtils {
@@ -40,6 +40,7 @@ public final class WebUtils {
 	private static ThreadLocal<ServerHttpRequest> SERVER_HTTP_REQUEST_LOCAL = new NamedThreadLocal<ServerHttpRequest>(
 			WebUtils.class.getSimpleName() + "-ServerHttpRequest");
 	private static final String RESTFUL_PARAMETER_MAP = "_scw_restful_parameter_map";
+	private static final StaticResourceWriter STATIC_RESOURCE_WRITER = new StaticResourceWriter();
 
 	/**
 	 * 缓存是否过期,如果未过期那么返回304，如果已过期则setLastModified
@@ -79,19 +80,16 @@ public final class WebUtils {
 	 */
 	public static void writeStaticResource(ServerHttpRequest request, ServerHttpResponse response, Resource resource,
 			MimeType mimeType) throws IOException {
-		if (resource == null || !resource.exists()) {
-			response.sendError(HttpStatus.NOT_FOUND.value(), "The resource does not exist!");
-			return;
-		}
-
-		if (mimeType != null) {
-			response.setContentType(mimeType);
-		}
+		STATIC_RESOURCE_WRITER.write(request, response, resource, mimeType);
+	}
 
-		if (!isExpired(request, response, resource.lastModified())) {
-			return;
-		}
-		IOUtils.copy(resource.getInputStream(), response.getOutputStream());
+	/**
+	 * 默认的静态资源输出,会缓存资源的元数据
+	 * 
+	 * @return
+	 */
+	public static StaticResourceWriter getStaticResourceWriter() {
+		return STATIC_RESOURCE_WRITER;
 	}
 
 	/**
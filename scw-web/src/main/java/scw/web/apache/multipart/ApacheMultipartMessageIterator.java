@@ -0,0 +1,54 @@
+package scw.web.apache.multipart;
+
+import java.io.IOException;
+import java.util.NoSuchElementException;
+
+import org.apache.commons.fileupload.FileItemIterator;
+import org.apache.commons.fileupload.FileUploadException;
+
+import scw.net.message.multipart.MultipartMessage;
+import scw.net.message.multipart.MultipartMessageIterator;
+
+public class ApacheMultipartMessageIterator implements MultipartMessageIterator {
+	private final FileItemIterator iterator;
+	private ApacheStreamingMultipartMessage current;
+
+	public ApacheMultipartMessageIterator(FileItemIterator iterator) {
+		this.iterator = iterator;
+	}
+
+	@Override
+	public boolean hasNext() throws IOException {
+		try {
+			return iterator.hasNext();
+		} catch (FileUploadException e) {
+			throw new IOException(e);
+		}
+	}
+
+	@Override
+	public MultipartMessage next() throws IOException {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+
+		if (current != null) {
+			current.close();
+		}
+
+		try {
+			current = new ApacheStreamingMultipartMessage(iterator.next());
+		} catch (FileUploadException e) {
+			throw new IOException(e);
+		}
+		return current;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (current != null) {
+			current.close();
+			current = null;
+		}
+	}
+}
@@ -13,6 +13,7 @@ import scw.logger.Logger;
 import scw.logger.LoggerFactory;
 import scw.net.message.InputMessage;
 import scw.net.message.multipart.MultipartMessage;
+import scw.net.message.multipart.MultipartMessageIterator;
 import scw.net.message.multipart.MultipartMessageResolver;
 
 public class ApacheMultipartMessageResolver implements MultipartMessageResolver {
@@ -65,6 +66,19 @@ public class ApacheMultipartMessageResolver implements MultipartMessageResolver
 		return ApacheFileUpload.isMultipartContent(new InternalRequestContext(inputMessage));
 	}
 
+	/**
+	 * 不会缓存part，可以直接将文件写入到目标位置<br/>
+	 * 大小限制使用{@link ApacheFileUpload#setFileSizeMax(long)}和{@link ApacheFileUpload#setSizeMax(long)}
+	 */
+	@Override
+	public MultipartMessageIterator resolveIterator(InputMessage inputMessage) throws IOException {
+		try {
+			return new ApacheMultipartMessageIterator(fileUpload.getItemIterator(new InternalRequestContext(inputMessage)));
+		} catch (FileUploadException e) {
+			throw new IOException(e);
+		}
+	}
+
 	@Override
 	public List<MultipartMessage> resolve(InputMessage inputMessage) throws IOException {
 		List<org.apache.commons.fileupload.FileItem> list;
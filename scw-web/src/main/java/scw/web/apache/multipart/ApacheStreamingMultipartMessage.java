@@ -0,0 +1,92 @@
+package scw.web.apache.multipart;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.fileupload.FileItemStream;
+
+import scw.core.utils.StringUtils;
+import scw.io.IOUtils;
+import scw.net.MimeType;
+import scw.net.message.Headers;
+import scw.net.message.multipart.MultipartMessage;
+
+/**
+ * 流式的part，输入流直接读取请求体并且只能读取一次
+ * 
+ * @author shuchaowen
+ *
+ */
+public class ApacheStreamingMultipartMessage implements MultipartMessage {
+	private final FileItemStream itemStream;
+	private InputStream inputStream;
+	private ApacheFileItemHeaders headers;
+
+	public ApacheStreamingMultipartMessage(FileItemStream itemStream) {
+		this.itemStream = itemStream;
+	}
+
+	@Override
+	public InputStream getInputStream() throws IOException {
+		if (inputStream == null) {
+			inputStream = itemStream.openStream();
+		}
+		return inputStream;
+	}
+
+	@Override
+	public byte[] getBytes() throws IOException {
+		return IOUtils.toByteArray(getInputStream());
+	}
+
+	@Override
+	public Headers getHeaders() {
+		if (headers == null) {
+			headers = new ApacheFileItemHeaders(itemStream.getHeaders());
+		}
+		return headers;
+	}
+
+	@Override
+	public MimeType getContentType() {
+		String contentType = itemStream.getContentType();
+		if (StringUtils.isEmpty(contentType)) {
+			return null;
+		}
+
+		return MimeType.valueOf(contentType);
+	}
+
+	/**
+	 * 流式读取时大小是未知的
+	 */
+	@Override
+	public long getContentLength() {
+		return -1;
+	}
+
+	@Override
+	public String getName() {
+		return itemStream.getFieldName();
+	}
+
+	@Override
+	public String getOriginalFilename() {
+		return itemStream.isFormField() ? null : itemStream.getName();
+	}
+
+	@Override
+	public long getSize() {
+		return -1;
+	}
+
+	@Override
+	public void close() {
+		IOUtils.closeQuietly(inputStream);
+	}
+
+	@Override
+	public String toString() {
+		return "name=" + getName() + ", originalFilename=" + getOriginalFilename();
+	}
+}
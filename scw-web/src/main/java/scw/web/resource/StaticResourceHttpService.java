@@ -2,6 +2,7 @@ package scw.web.resource;
 
 import java.io.IOException;
 
+import scw.core.Assert;
 import scw.http.HttpMethod;
 import scw.io.Resource;
 import scw.net.MimeType;
@@ -12,7 +13,9 @@ import scw.web.WebUtils;
 import scw.web.pattern.ServerHttpRequestAccept;
 
 public class StaticResourceHttpService implements HttpService, ServerHttpRequestAccept {
+	private static final String METADATA_ATTRIBUTE = StaticResourceMetadata.class.getName();
 	private StaticResourceLoader resourceLoader;
+	private StaticResourceWriter resourceWriter = WebUtils.getStaticResourceWriter();
 
 	public StaticResourceLoader getResourceLoader() {
 		return resourceLoader;
@@ -22,23 +25,54 @@ public class StaticResourceHttpService implements HttpService, ServerHttpRequest
 		this.resourceLoader = resourceLoader;
 	}
 
+	public StaticResourceWriter getResourceWriter() {
+		return resourceWriter;
+	}
+
+	public void setResourceWriter(StaticResourceWriter resourceWriter) {
+		Assert.requiredArgument(resourceWriter != null, "resourceWriter");
+		this.resourceWriter = resourceWriter;
+	}
+
 	public boolean accept(ServerHttpRequest request) {
 		if (resourceLoader == null) {
 			return false;
 		}
 
-		if (request.getMethod() != HttpMethod.GET) {
+		if (request.getMethod() != HttpMethod.GET && request.getMethod() != HttpMethod.HEAD) {
 			return false;
 		}
 
 		Resource resource = resourceLoader.getResource(request.getPath());
-		return resource != null && resource.exists();
+		if (resource == null) {
+			return false;
+		}
+
+		StaticResourceMetadata metadata;
+		try {
+			metadata = resourceWriter.getMetadata(resource);
+		} catch (IOException e) {
+			return false;
+		}
+
+		if (!metadata.exists()) {
+			return false;
+		}
+
+		// 保存解析结果，service时不再重复解析
+		request.setAttribute(METADATA_ATTRIBUTE, metadata);
+		return true;
 	}
 
 	@Override
 	public void service(ServerHttpRequest request, ServerHttpResponse response) throws IOException {
-		Resource resource = resourceLoader.getResource(request.getPath());
-		MimeType mimeType = resourceLoader.getMimeType(resource);
-		WebUtils.writeStaticResource(request, response, resource, mimeType);
+		StaticResourceMetadata metadata = (StaticResourceMetadata) request.getAttribute(METADATA_ATTRIBUTE);
+		if (metadata == null) {
+			Resource resource = resourceLoader.getResource(request.getPath());
+			metadata = resource == null ? null : resourceWriter.getMetadata(resource);
+		}
+
+		MimeType mimeType = metadata == null ? null : resourceLoader.getMimeType(metadata.getResource());
+		resourceWriter.write(request, response, metadata, mimeType);
 	}
 }
@@ -0,0 +1,219 @@
+package scw.web.resource;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import scw.io.IOUtils;
+import scw.io.Resource;
+import scw.lang.Nullable;
+
+/**
+ * 静态资源的元数据快照，解析一次后可被多个请求复用
+ *
+ * @author shuchaowen
+ *
+ */
+public final class StaticResourceMetadata {
+	private final Resource resource;
+	private final boolean exists;
+	private final long contentLength;
+	private final long lastModified;
+	private final String etag;
+	private final String contentEncoding;
+	private final File file;
+	private final byte[] content;
+	private final StaticResourceMetadata gzip;
+	private final StaticResourceMetadata brotli;
+	private volatile long checkTime = System.currentTimeMillis();
+
+	private StaticResourceMetadata(Resource resource, boolean exists, long contentLength, long lastModified,
+			String contentEncoding, File file, byte[] content, StaticResourceMetadata gzip,
+			StaticResourceMetadata brotli) {
+		this.resource = resource;
+		this.exists = exists;
+		this.contentLength = contentLength;
+		this.lastModified = lastModified;
+		this.contentEncoding = contentEncoding;
+		this.file = file;
+		this.content = content;
+		this.gzip = gzip;
+		this.brotli = brotli;
+		this.etag = exists ? ("\"" + Long.toHexString(lastModified) + "-" + Long.toHexString(contentLength)
+				+ (contentEncoding == null ? "" : ("-" + contentEncoding)) + "\"") : null;
+	}
+
+	/**
+	 * 解析资源
+	 *
+	 * @param resource
+	 * @param maxContentLength 小于等于此大小的资源内容会被读入内存
+	 * @param precompressed    是否查找.gz和.br的预压缩资源
+	 * @return
+	 * @throws IOException
+	 */
+	public static StaticResourceMetadata resolve(Resource resource, long maxContentLength, boolean precompressed)
+			throws IOException {
+		StaticResourceMetadata gzip = null;
+		StaticResourceMetadata brotli = null;
+		if (precompressed && resource.exists()) {
+			gzip = resolveVariant(resource, ".gz", "gzip", maxContentLength);
+			brotli = resolveVariant(resource, ".br", "br", maxContentLength);
+		}
+		return resolve(resource, null, maxContentLength, gzip, brotli);
+	}
+
+	private static StaticResourceMetadata resolveVariant(Resource resource, String suffix, String contentEncoding,
+			long maxContentLength) {
+		try {
+			Resource variant = resource.createRelative(resource.getName() + suffix);
+			if (variant == null || !variant.exists()) {
+				return null;
+			}
+			return resolve(variant, contentEncoding, maxContentLength, null, null);
+		} catch (IOException e) {
+			return null;
+		} catch (RuntimeException e) {
+			// 一些资源不支持createRelative
+			return null;
+		}
+	}
+
+	private static StaticResourceMetadata resolve(Resource resource, String contentEncoding, long maxContentLength,
+			StaticResourceMetadata gzip, StaticResourceMetadata brotli) throws IOException {
+		if (!resource.exists()) {
+			return new StaticResourceMetadata(resource, false, -1, -1, contentEncoding, null, null, null, null);
+		}
+
+		long contentLength = resource.contentLength();
+		long lastModified = resource.lastModified();
+		File file = resource.isFile() ? resource.getFile() : null;
+		byte[] content = null;
+		if (contentLength >= 0 && contentLength <= maxContentLength) {
+			InputStream is = resource.getInputStream();
+			try {
+				content = IOUtils.toByteArray(is, contentLength);
+			} finally {
+				is.close();
+			}
+		}
+		return new StaticResourceMetadata(resource, true, contentLength, lastModified, contentEncoding, file, content,
+				gzip, brotli);
+	}
+
+	public Resource getResource() {
+		return resource;
+	}
+
+	public boolean exists() {
+		return exists;
+	}
+
+	public long getContentLength() {
+		return contentLength;
+	}
+
+	public long getLastModified() {
+		return lastModified;
+	}
+
+	public String getETag() {
+		return etag;
+	}
+
+	/**
+	 * 预压缩资源的编码(gzip/br)
+	 *
+	 * @return
+	 */
+	@Nullable
+	public String getContentEncoding() {
+		return contentEncoding;
+	}
+
+	/**
+	 * 如果资源是一个文件返回此文件
+	 *
+	 * @return
+	 */
+	@Nullable
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * 已缓存在内存中的内容
+	 *
+	 * @return
+	 */
+	@Nullable
+	public byte[] getContent() {
+		return content;
+	}
+
+	@Nullable
+	public StaticResourceMetadata getGzip() {
+		return gzip;
+	}
+
+	@Nullable
+	public StaticResourceMetadata getBrotli() {
+		return brotli;
+	}
+
+	public boolean hasVariants() {
+		return gzip != null || brotli != null;
+	}
+
+	/**
+	 * 最后一次确认资源未发生变化的时间
+	 *
+	 * @return
+	 */
+	public long getCheckTime() {
+		return checkTime;
+	}
+
+	void setCheckTime(long checkTime) {
+		this.checkTime = checkTime;
+	}
+
+	/**
+	 * 缓存在内存中的字节数
+	 *
+	 * @return
+	 */
+	public long getMemorySize() {
+		long size = content == null ? 0 : content.length;
+		if (gzip != null) {
+			size += gzip.getMemorySize();
+		}
+
+		if (brotli != null) {
+			size += brotli.getMemorySize();
+		}
+		return size;
+	}
+
+	/**
+	 * 资源是否已经发生了变化
+	 *
+	 * @return
+	 */
+	public boolean isModified() {
+		try {
+			if (exists != resource.exists()) {
+				return true;
+			}
+
+			return exists && (lastModified != resource.lastModified() || contentLength != resource.contentLength());
+		} catch (IOException e) {
+			return true;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return resource.getDescription() + (exists ? (" " + etag) : " not exists");
+	}
+}
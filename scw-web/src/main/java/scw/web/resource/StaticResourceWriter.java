@@ -0,0 +1,427 @@
+package scw.web.resource;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map.Entry;
+
+import scw.core.Assert;
+import scw.core.utils.StringUtils;
+import scw.http.HttpHeaders;
+import scw.http.HttpMethod;
+import scw.http.HttpRange;
+import scw.http.HttpStatus;
+import scw.io.IOUtils;
+import scw.io.Resource;
+import scw.net.MimeType;
+import scw.util.XUtils;
+import scw.web.SendfileServerHttpResponse;
+import scw.web.ServerHttpRequest;
+import scw.web.ServerHttpResponse;
+
+/**
+ * 静态资源输出<br/>
+ * 支持ETag/Last-Modified条件请求、单个Range请求、.gz/.br预压缩资源，资源的元数据和小文件内容会被缓存<br/>
+ * 大文件在Tomcat下使用sendfile、在{@link SendfileServerHttpResponse}(如netty)下由容器直接发送，其他情况经过缓冲区复制到输出流
+ *
+ * @author shuchaowen
+ *
+ */
+public class StaticResourceWriter {
+	private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+	private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+	private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+	private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+	private final LinkedHashMap<String, StaticResourceMetadata> cache = new LinkedHashMap<String, StaticResourceMetadata>(
+			64, 0.75f, true);
+	private long cacheMemorySize = 0;
+
+	private int maxCacheEntries = 4096;
+	private long maxCacheMemorySize = 16 * 1024 * 1024;
+	private long maxCacheContentLength = 64 * 1024;
+	private long checkInterval = 1000;
+	private long sendfileThreshold = 48 * 1024;
+	private boolean precompressed = true;
+
+	/**
+	 * 缓存的资源数量上限，0表示不缓存
+	 *
+	 * @return
+	 */
+	public int getMaxCacheEntries() {
+		return maxCacheEntries;
+	}
+
+	public void setMaxCacheEntries(int maxCacheEntries) {
+		Assert.requiredArgument(maxCacheEntries >= 0, "maxCacheEntries");
+		this.maxCacheEntries = maxCacheEntries;
+	}
+
+	/**
+	 * 缓存在内存中的资源内容总大小上限
+	 *
+	 * @return
+	 */
+	public long getMaxCacheMemorySize() {
+		return maxCacheMemorySize;
+	}
+
+	public void setMaxCacheMemorySize(long maxCacheMemorySize) {
+		Assert.requiredArgument(maxCacheMemorySize >= 0, "maxCacheMemorySize");
+		this.maxCacheMemorySize = maxCacheMemorySize;
+	}
+
+	/**
+	 * 小于等于此大小的资源内容会缓存在内存中
+	 *
+	 * @return
+	 */
+	public long getMaxCacheContentLength() {
+		return maxCacheContentLength;
+	}
+
+	public void setMaxCacheContentLength(long maxCacheContentLength) {
+		Assert.requiredArgument(maxCacheContentLength >= 0, "maxCacheContentLength");
+		this.maxCacheContentLength = maxCacheContentLength;
+	}
+
+	/**
+	 * 检查资源是否发生变化的间隔(毫秒)，在此时间内直接使用缓存的元数据
+	 *
+	 * @return
+	 */
+	public long getCheckInterval() {
+		return checkInterval;
+	}
+
+	public void setCheckInterval(long checkInterval) {
+		Assert.requiredArgument(checkInterval >= 0, "checkInterval");
+		this.checkInterval = checkInterval;
+	}
+
+	/**
+	 * 大于等于此大小的文件在支持时由容器直接发送
+	 *
+	 * @return
+	 */
+	public long getSendfileThreshold() {
+		return sendfileThreshold;
+	}
+
+	public void setSendfileThreshold(long sendfileThreshold) {
+		this.sendfileThreshold = sendfileThreshold;
+	}
+
+	/**
+	 * 是否在客户端支持时使用.gz/.br预压缩资源
+	 *
+	 * @return
+	 */
+	public boolean isPrecompressed() {
+		return precompressed;
+	}
+
+	public void setPrecompressed(boolean precompressed) {
+		this.precompressed = precompressed;
+	}
+
+	/**
+	 * 获取资源的元数据，在检查间隔内直接返回缓存
+	 *
+	 * @param resource
+	 * @return
+	 * @throws IOException
+	 */
+	public StaticResourceMetadata getMetadata(Resource resource) throws IOException {
+		if (maxCacheEntries == 0) {
+			return StaticResourceMetadata.resolve(resource, 0, precompressed);
+		}
+
+		String key = resource.getDescription();
+		StaticResourceMetadata metadata;
+		synchronized (cache) {
+			metadata = cache.get(key);
+		}
+
+		if (metadata != null) {
+			long now = System.currentTimeMillis();
+			if (now - metadata.getCheckTime() < checkInterval) {
+				return metadata;
+			}
+
+			if (!metadata.isModified()) {
+				metadata.setCheckTime(now);
+				return metadata;
+			}
+		}
+
+		metadata = StaticResourceMetadata.resolve(resource, maxCacheContentLength, precompressed);
+		put(key, metadata);
+		return metadata;
+	}
+
+	private void put(String key, StaticResourceMetadata metadata) {
+		long memorySize = metadata.getMemorySize();
+		if (memorySize > maxCacheMemorySize) {
+			return;
+		}
+
+		synchronized (cache) {
+			StaticResourceMetadata old = cache.put(key, metadata);
+			if (old != null) {
+				cacheMemorySize -= old.getMemorySize();
+			}
+			cacheMemorySize += memorySize;
+
+			Iterator<Entry<String, StaticResourceMetadata>> iterator = cache.entrySet().iterator();
+			while ((cacheMemorySize > maxCacheMemorySize || cache.size() > maxCacheEntries) && iterator.hasNext()) {
+				Entry<String, StaticResourceMetadata> eldest = iterator.next();
+				cacheMemorySize -= eldest.getValue().getMemorySize();
+				iterator.remove();
+			}
+		}
+	}
+
+	/**
+	 * 清空缓存
+	 */
+	public void clear() {
+		synchronized (cache) {
+			cache.clear();
+			cacheMemorySize = 0;
+		}
+	}
+
+	public void write(ServerHttpRequest request, ServerHttpResponse response, Resource resource, MimeType mimeType)
+			throws IOException {
+		if (resource == null) {
+			response.sendError(HttpStatus.NOT_FOUND.value(), "The resource does not exist!");
+			return;
+		}
+		write(request, response, getMetadata(resource), mimeType);
+	}
+
+	public void write(ServerHttpRequest request, ServerHttpResponse response, StaticResourceMetadata metadata,
+			MimeType mimeType) throws IOException {
+		if (metadata == null || !metadata.exists()) {
+			response.sendError(HttpStatus.NOT_FOUND.value(), "The resource does not exist!");
+			return;
+		}
+
+		if (mimeType != null) {
+			response.setContentType(mimeType);
+		}
+
+		HttpHeaders requestHeaders = request.getHeaders();
+		HttpHeaders responseHeaders = response.getHeaders();
+		StaticResourceMetadata representation = metadata;
+		if (precompressed && metadata.hasVariants()) {
+			responseHeaders.set(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+			representation = selectVariant(metadata, requestHeaders.getFirst(HttpHeaders.ACCEPT_ENCODING));
+		}
+
+		responseHeaders.setLastModified(representation.getLastModified());
+		responseHeaders.setETag(representation.getETag());
+		responseHeaders.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+		if (representation.getContentEncoding() != null) {
+			responseHeaders.set(HttpHeaders.CONTENT_ENCODING, representation.getContentEncoding());
+		}
+
+		if (isNotModified(requestHeaders, representation)) {
+			response.setStatusCode(HttpStatus.NOT_MODIFIED);
+			return;
+		}
+
+		long length = representation.getContentLength();
+		long start = 0;
+		long count = length;
+		HttpRange range = getRange(request, representation);
+		if (range != null) {
+			start = range.getRangeStart(length);
+			long end = range.getRangeEnd(length);
+			if (start >= length || end < start) {
+				responseHeaders.set(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+				response.setStatusCode(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+				return;
+			}
+
+			count = end - start + 1;
+			responseHeaders.set(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+			response.setStatusCode(HttpStatus.PARTIAL_CONTENT);
+		}
+
+		if (count >= 0) {
+			response.setContentLength(count);
+		}
+
+		if (request.getMethod() == HttpMethod.HEAD) {
+			return;
+		}
+
+		writeBody(request, response, representation, start, count);
+	}
+
+	private StaticResourceMetadata selectVariant(StaticResourceMetadata metadata, String acceptEncoding) {
+		if (StringUtils.isEmpty(acceptEncoding)) {
+			return metadata;
+		}
+
+		if (metadata.getBrotli() != null && isAcceptEncoding(acceptEncoding, "br")) {
+			return metadata.getBrotli();
+		}
+
+		if (metadata.getGzip() != null && isAcceptEncoding(acceptEncoding, "gzip")) {
+			return metadata.getGzip();
+		}
+		return metadata;
+	}
+
+	private static boolean isAcceptEncoding(String acceptEncoding, String encoding) {
+		for (String value : StringUtils.tokenizeToStringArray(acceptEncoding, ",")) {
+			int index = value.indexOf(';');
+			String name = (index == -1 ? value : value.substring(0, index)).trim();
+			if (!name.equalsIgnoreCase(encoding)) {
+				continue;
+			}
+
+			if (index == -1) {
+				return true;
+			}
+
+			// q=0表示不接受
+			String parameter = value.substring(index + 1).trim();
+			if (!parameter.startsWith("q=")) {
+				return true;
+			}
+
+			try {
+				return Double.parseDouble(parameter.substring(2).trim()) > 0;
+			} catch (NumberFormatException e) {
+				return false;
+			}
+		}
+		return false;
+	}
+
+	private static boolean isNotModified(HttpHeaders requestHeaders, StaticResourceMetadata metadata) {
+		List<String> ifNoneMatch;
+		try {
+			ifNoneMatch = requestHeaders.getIfNoneMatch();
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+
+		if (!ifNoneMatch.isEmpty()) {
+			// If-None-Match优先于If-Modified-Since，使用弱比较
+			String etag = metadata.getETag();
+			for (String value : ifNoneMatch) {
+				if ("*".equals(value) || etag.equals(value) || etag.equals(stripWeak(value))) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		long ifModifiedSince;
+		try {
+			ifModifiedSince = requestHeaders.getIfModifiedSince();
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+
+		// 不比较毫秒
+		return ifModifiedSince >= 0 && metadata.getLastModified() >= 0
+				&& ifModifiedSince / 1000 == metadata.getLastModified() / 1000;
+	}
+
+	private static String stripWeak(String etag) {
+		return etag.startsWith("W/") ? etag.substring(2) : etag;
+	}
+
+	/**
+	 * 只支持单个范围，多个范围时返回完整内容
+	 */
+	private static HttpRange getRange(ServerHttpRequest request, StaticResourceMetadata metadata) {
+		if (request.getMethod() != HttpMethod.GET || metadata.getContentLength() <= 0) {
+			return null;
+		}
+
+		HttpHeaders headers = request.getHeaders();
+		List<HttpRange> ranges;
+		try {
+			ranges = headers.getRange();
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+
+		if (ranges.size() != 1) {
+			return null;
+		}
+
+		String ifRange = headers.getFirst(HttpHeaders.IF_RANGE);
+		if (StringUtils.isNotEmpty(ifRange)) {
+			if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+				// 需要强比较
+				if (!ifRange.equals(metadata.getETag())) {
+					return null;
+				}
+			} else {
+				long date;
+				try {
+					date = headers.getFirstDate(HttpHeaders.IF_RANGE);
+				} catch (IllegalArgumentException e) {
+					return null;
+				}
+
+				if (date / 1000 != metadata.getLastModified() / 1000) {
+					return null;
+				}
+			}
+		}
+		return ranges.get(0);
+	}
+
+	private void writeBody(ServerHttpRequest request, ServerHttpResponse response, StaticResourceMetadata metadata,
+			long start, long count) throws IOException {
+		byte[] content = metadata.getContent();
+		if (content != null) {
+			response.getOutputStream().write(content, (int) start, (int) count);
+			return;
+		}
+
+		File file = metadata.getFile();
+		if (file != null && count >= sendfileThreshold) {
+			if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+				// 由容器直接发送文件
+				request.setAttribute(SENDFILE_FILENAME, file.getCanonicalPath());
+				request.setAttribute(SENDFILE_START, start);
+				request.setAttribute(SENDFILE_END, start + count);
+				return;
+			}
+
+			SendfileServerHttpResponse sendfileResponse = XUtils.getDelegate(response,
+					SendfileServerHttpResponse.class);
+			if (sendfileResponse != null && sendfileResponse.sendfile(file, start, count)) {
+				return;
+			}
+		}
+
+		// 其他情况只能经过缓冲区复制到输出流
+		InputStream is = metadata.getResource().getInputStream();
+		try {
+			long copied = IOUtils.copy(is, response.getOutputStream(), start, count);
+			if (count >= 0 && copied < count) {
+				// 文件比预期的短
+				throw new EOFException("Unexpected end of resource [" + metadata.getResource().getDescription()
+						+ "] at position " + (start + copied));
+			}
+		} finally {
+			is.close();
+		}
+	}
+}
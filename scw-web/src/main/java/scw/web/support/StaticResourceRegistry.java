@@ -14,6 +14,7 @@ import scw.web.ServerHttpResponse;
 import scw.web.WebUtils;
 import scw.web.pattern.HttpPatterns;
 import scw.web.pattern.ServerHttpRequestAccept;
+import scw.web.resource.StaticResourceMetadata;
 
 public class StaticResourceRegistry extends HttpPatterns<String>
 		implements HttpService, ServerHttpRequestAccept {
@@ -39,10 +40,21 @@ public class StaticResourceRegistry extends HttpPatterns<String>
 	@Override
 	public boolean accept(ServerHttpRequest request) {
 		Resource resource = getResource(request);
-		if (resource == null || !resource.exists()) {
+		if (resource == null) {
 			return false;
 		}
-		request.setAttribute(Resource.class.getName(), resource);
+
+		StaticResourceMetadata metadata;
+		try {
+			metadata = WebUtils.getStaticResourceWriter().getMetadata(resource);
+		} catch (IOException e) {
+			return false;
+		}
+
+		if (!metadata.exists()) {
+			return false;
+		}
+		request.setAttribute(StaticResourceMetadata.class.getName(), metadata);
 		return true;
 	}
 
@@ -68,10 +80,15 @@ public class StaticResourceRegistry extends HttpPatterns<String>
 	@Override
 	public void service(ServerHttpRequest request, ServerHttpResponse response)
 			throws IOException {
-		Resource resource = (Resource) request.getAttribute(Resource.class
-				.getName());
-		MimeType mimeType = getMimeType(resource);
-		WebUtils.writeStaticResource(request, response, resource, mimeType);
+		StaticResourceMetadata metadata = (StaticResourceMetadata) request
+				.getAttribute(StaticResourceMetadata.class.getName());
+		if (metadata == null) {
+			Resource resource = getResource(request);
+			metadata = resource == null ? null : WebUtils.getStaticResourceWriter().getMetadata(resource);
+		}
+
+		MimeType mimeType = metadata == null ? null : getMimeType(metadata.getResource());
+		WebUtils.getStaticResourceWriter().write(request, response, metadata, mimeType);
 	}
 
 }
@@ -0,0 +1,182 @@
+package scw.web.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+import org.junit.Test;
+
+import scw.core.Constants;
+import scw.io.IOUtils;
+import scw.net.MimeType;
+import scw.net.message.Headers;
+import scw.net.message.InputMessage;
+import scw.net.message.multipart.MultipartMessage;
+import scw.net.message.multipart.MultipartMessageIterator;
+import scw.web.apache.multipart.ApacheMultipartMessageResolver;
+
+public class ApacheMultipartMessageIteratorTest {
+	private static final String BOUNDARY = "----scw-boundary";
+
+	private static byte[] data(int length, int seed) {
+		byte[] data = new byte[length];
+		for (int i = 0; i < length; i++) {
+			data[i] = (byte) (i * 31 + seed);
+		}
+		return data;
+	}
+
+	private static void part(ByteArrayOutputStream out, String name, String filename, byte[] content)
+			throws IOException {
+		StringBuilder sb = new StringBuilder();
+		sb.append("--").append(BOUNDARY).append("\r\n");
+		sb.append("Content-Disposition: form-data; name=\"").append(name).append("\"");
+		if (filename != null) {
+			sb.append("; filename=\"").append(filename).append("\"\r\n");
+			sb.append("Content-Type: application/octet-stream");
+		}
+		sb.append("\r\n\r\n");
+		out.write(sb.toString().getBytes(Constants.UTF_8));
+		out.write(content);
+		out.write("\r\n".getBytes(Constants.UTF_8));
+	}
+
+	private static Body body(byte[] a, byte[] b) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		part(out, "title", null, "hello".getBytes(Constants.UTF_8));
+		part(out, "a", "a.bin", a);
+		part(out, "b", "b.bin", b);
+		out.write(("--" + BOUNDARY + "--\r\n").getBytes(Constants.UTF_8));
+		return new Body(out.toByteArray());
+	}
+
+	@Test
+	public void iterate() throws IOException {
+		byte[] a = data(100000, 1);
+		byte[] b = data(100000, 2);
+		Body body = body(a, b);
+		MultipartMessageIterator iterator = new ApacheMultipartMessageResolver().resolveIterator(body);
+		try {
+			assertTrue(iterator.hasNext());
+			MultipartMessage title = iterator.next();
+			assertEquals("title", title.getName());
+			assertFalse(title.isFile());
+			assertEquals("hello", new String(title.getBytes(), Constants.UTF_8));
+
+			// 不读取内容直接跳到下一个part
+			MultipartMessage part = iterator.next();
+			assertEquals("a", part.getName());
+			assertEquals("a.bin", part.getOriginalFilename());
+			assertTrue(part.isFile());
+			assertEquals(-1, part.getSize());
+
+			part = iterator.next();
+			assertEquals("b", part.getName());
+			assertArrayEquals(b, part.getBytes());
+
+			assertFalse(iterator.hasNext());
+			try {
+				iterator.next();
+				fail("should be no more parts");
+			} catch (NoSuchElementException e) {
+				// ok
+			}
+		} finally {
+			iterator.close();
+		}
+	}
+
+	@Test
+	public void stream() throws IOException {
+		byte[] a = data(100000, 1);
+		Body body = body(a, data(100000, 2));
+		MultipartMessageIterator iterator = new ApacheMultipartMessageResolver().resolveIterator(body);
+		try {
+			iterator.next();
+			MultipartMessage part = iterator.next();
+			// 读取part时才从请求体中读取
+			long read = body.read;
+			InputStream is = part.getInputStream();
+			byte[] buffer = new byte[1000];
+			assertEquals(1000, IOUtils.read(is, buffer));
+			assertArrayEquals(Arrays.copyOf(a, 1000), buffer);
+			assertTrue(body.read < read + a.length);
+		} finally {
+			iterator.close();
+		}
+
+		// 提前结束时只会跳过当前part的剩余内容，不会读取之后的part
+		assertTrue(body.read < body.length - 50000);
+	}
+
+	@Test
+	public void empty() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(("--" + BOUNDARY + "--\r\n").getBytes(Constants.UTF_8));
+		MultipartMessageIterator iterator = new ApacheMultipartMessageResolver()
+				.resolveIterator(new Body(out.toByteArray()));
+		try {
+			assertFalse(iterator.hasNext());
+		} finally {
+			iterator.close();
+		}
+	}
+
+	/**
+	 * 记录从请求体中读取的字节数
+	 */
+	private static class Body implements InputMessage {
+		private final Headers headers = new Headers(false);
+		private final byte[] data;
+		private final int length;
+		private long read;
+
+		Body(byte[] data) {
+			this.data = data;
+			this.length = data.length;
+		}
+
+		public Headers getHeaders() {
+			return headers;
+		}
+
+		public MimeType getContentType() {
+			return MimeType.valueOf("multipart/form-data; boundary=" + BOUNDARY);
+		}
+
+		public long getContentLength() {
+			return length;
+		}
+
+		public InputStream getInputStream() {
+			return new ByteArrayInputStream(data) {
+				@Override
+				public synchronized int read() {
+					int b = super.read();
+					if (b != -1) {
+						read++;
+					}
+					return b;
+				}
+
+				@Override
+				public synchronized int read(byte[] b, int off, int len) {
+					int count = super.read(b, off, len);
+					if (count > 0) {
+						read += count;
+					}
+					return count;
+				}
+			};
+		}
+	}
+}
@@ -0,0 +1,329 @@
+package scw.web.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import scw.http.HttpCookie;
+import scw.http.HttpHeaders;
+import scw.http.HttpMethod;
+import scw.http.HttpStatus;
+import scw.io.FileSystemResource;
+import scw.io.FileUtils;
+import scw.web.SendfileServerHttpResponse;
+import scw.web.ServerHttpRequest;
+import scw.web.resource.StaticResourceWriter;
+
+public class StaticResourceWriterTest {
+	private File directory;
+	private File file;
+	private byte[] content;
+	private StaticResourceWriter writer;
+
+	@Before
+	public void before() throws IOException {
+		directory = Files.createTempDirectory("static-resource").toFile();
+		content = new byte[1000];
+		for (int i = 0; i < content.length; i++) {
+			content[i] = (byte) i;
+		}
+		file = new File(directory, "a.txt");
+		Files.write(file.toPath(), content);
+		writer = new StaticResourceWriter();
+	}
+
+	@After
+	public void after() throws IOException {
+		FileUtils.deleteDirectory(directory);
+	}
+
+	private static byte[] slice(byte[] data, int start, int end) {
+		return Arrays.copyOfRange(data, start, end + 1);
+	}
+
+	private Response write(HttpMethod method, String... headers) throws IOException {
+		return write(new Response(), method, headers);
+	}
+
+	private Response write(Response response, HttpMethod method, String... headers) throws IOException {
+		HttpHeaders requestHeaders = new HttpHeaders();
+		for (int i = 0; i < headers.length; i += 2) {
+			requestHeaders.set(headers[i], headers[i + 1]);
+		}
+		writer.write(request(method, requestHeaders), response, new FileSystemResource(file), null);
+		return response;
+	}
+
+	/**
+	 * 只实现了静态资源输出使用到的方法
+	 */
+	private static ServerHttpRequest request(HttpMethod method, HttpHeaders headers) {
+		Map<String, Object> attributes = new HashMap<String, Object>();
+		return (ServerHttpRequest) Proxy.newProxyInstance(StaticResourceWriterTest.class.getClassLoader(),
+				new Class<?>[] { ServerHttpRequest.class }, (proxy, m, args) -> {
+					switch (m.getName()) {
+					case "getMethod":
+						return method;
+					case "getHeaders":
+						return headers;
+					case "getAttribute":
+						return attributes.get(args[0]);
+					case "setAttribute":
+						attributes.put((String) args[0], args[1]);
+						return null;
+					case "removeAttribute":
+						attributes.remove(args[0]);
+						return null;
+					default:
+						return null;
+					}
+				});
+	}
+
+	@Test
+	public void full() throws IOException {
+		Response response = write(HttpMethod.GET);
+		assertEquals(200, response.status);
+		assertArrayEquals(content, response.body());
+		assertEquals("bytes", response.headers.getFirst(HttpHeaders.ACCEPT_RANGES));
+		assertEquals(content.length, response.headers.getContentLength());
+		assertNotNull(response.headers.getETag());
+		assertNull(response.headers.getFirst(HttpHeaders.VARY));
+
+		response = write(HttpMethod.HEAD);
+		assertEquals(200, response.status);
+		assertEquals(content.length, response.headers.getContentLength());
+		assertEquals(0, response.body().length);
+	}
+
+	@Test
+	public void ifNoneMatch() throws IOException {
+		String etag = write(HttpMethod.GET).headers.getETag();
+		Response response = write(HttpMethod.GET, HttpHeaders.IF_NONE_MATCH, etag);
+		assertEquals(HttpStatus.NOT_MODIFIED.value(), response.status);
+		assertEquals(0, response.body().length);
+
+		// 弱比较
+		assertEquals(HttpStatus.NOT_MODIFIED.value(),
+				write(HttpMethod.GET, HttpHeaders.IF_NONE_MATCH, "\"other\", W/" + etag).status);
+		assertEquals(HttpStatus.NOT_MODIFIED.value(), write(HttpMethod.GET, HttpHeaders.IF_NONE_MATCH, "*").status);
+
+		response = write(HttpMethod.GET, HttpHeaders.IF_NONE_MATCH, "\"other\"");
+		assertEquals(200, response.status);
+		assertArrayEquals(content, response.body());
+	}
+
+	@Test
+	public void range() throws IOException {
+		Response response = write(HttpMethod.GET, HttpHeaders.RANGE, "bytes=10-19");
+		assertEquals(HttpStatus.PARTIAL_CONTENT.value(), response.status);
+		assertEquals("bytes 10-19/1000", response.headers.getFirst(HttpHeaders.CONTENT_RANGE));
+		assertEquals(10, response.headers.getContentLength());
+		assertArrayEquals(slice(content, 10, 19), response.body());
+
+		response = write(HttpMethod.GET, HttpHeaders.RANGE, "bytes=-5");
+		assertEquals(HttpStatus.PARTIAL_CONTENT.value(), response.status);
+		assertEquals("bytes 995-999/1000", response.headers.getFirst(HttpHeaders.CONTENT_RANGE));
+		assertArrayEquals(slice(content, 995, 999), response.body());
+
+		// 超出长度的结束位置截断到最后一个字节
+		response = write(HttpMethod.GET, HttpHeaders.RANGE, "bytes=990-2000");
+		assertEquals("bytes 990-999/1000", response.headers.getFirst(HttpHeaders.CONTENT_RANGE));
+		assertArrayEquals(slice(content, 990, 999), response.body());
+
+		// 多个范围返回完整内容
+		response = write(HttpMethod.GET, HttpHeaders.RANGE, "bytes=0-1,5-6");
+		assertEquals(200, response.status);
+		assertArrayEquals(content, response.body());
+	}
+
+	@Test
+	public void ifRange() throws IOException {
+		Response full = write(HttpMethod.GET);
+		String etag = full.headers.getETag();
+		Response response = write(HttpMethod.GET, HttpHeaders.RANGE, "bytes=0-9", HttpHeaders.IF_RANGE, etag);
+		assertEquals(HttpStatus.PARTIAL_CONTENT.value(), response.status);
+		assertArrayEquals(slice(content, 0, 9), response.body());
+
+		// 资源已经变化，返回完整内容
+		response = write(HttpMethod.GET, HttpHeaders.RANGE, "bytes=0-9", HttpHeaders.IF_RANGE, "\"other\"");
+		assertEquals(200, response.status);
+		assertArrayEquals(content, response.body());
+
+		// 弱ETag不能用于If-Range
+		response = write(HttpMethod.GET, HttpHeaders.RANGE, "bytes=0-9", HttpHeaders.IF_RANGE, "W/" + etag);
+		assertEquals(200, response.status);
+
+		// 日期
+		String lastModified = full.headers.getFirst(HttpHeaders.LAST_MODIFIED);
+		response = write(HttpMethod.GET, HttpHeaders.RANGE, "bytes=0-9", HttpHeaders.IF_RANGE, lastModified);
+		assertEquals(HttpStatus.PARTIAL_CONTENT.value(), response.status);
+		response = write(HttpMethod.GET, HttpHeaders.RANGE, "bytes=0-9", HttpHeaders.IF_RANGE,
+				"Thu, 01 Jan 1970 00:00:00 GMT");
+		assertEquals(200, response.status);
+	}
+
+	@Test
+	public void notSatisfiable() throws IOException {
+		Response response = write(HttpMethod.GET, HttpHeaders.RANGE, "bytes=1000-");
+		assertEquals(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value(), response.status);
+		assertEquals("bytes */1000", response.headers.getFirst(HttpHeaders.CONTENT_RANGE));
+		assertEquals(0, response.body().length);
+	}
+
+	@Test
+	public void precompressed() throws IOException {
+		byte[] gzip = "gzip".getBytes();
+		byte[] brotli = "brotli".getBytes();
+		Files.write(new File(directory, "a.txt.gz").toPath(), gzip);
+		Files.write(new File(directory, "a.txt.br").toPath(), brotli);
+
+		Response response = write(HttpMethod.GET, HttpHeaders.ACCEPT_ENCODING, "gzip, deflate");
+		assertEquals("gzip", response.headers.getFirst(HttpHeaders.CONTENT_ENCODING));
+		assertEquals(HttpHeaders.ACCEPT_ENCODING, response.headers.getFirst(HttpHeaders.VARY));
+		assertArrayEquals(gzip, response.body());
+		String gzipETag = response.headers.getETag();
+
+		response = write(HttpMethod.GET, HttpHeaders.ACCEPT_ENCODING, "gzip, br");
+		assertEquals("br", response.headers.getFirst(HttpHeaders.CONTENT_ENCODING));
+		assertArrayEquals(brotli, response.body());
+
+		// q=0表示不接受
+		response = write(HttpMethod.GET, HttpHeaders.ACCEPT_ENCODING, "br;q=0, gzip;q=0.5");
+		assertEquals("gzip", response.headers.getFirst(HttpHeaders.CONTENT_ENCODING));
+
+		response = write(HttpMethod.GET);
+		assertNull(response.headers.getFirst(HttpHeaders.CONTENT_ENCODING));
+		assertEquals(HttpHeaders.ACCEPT_ENCODING, response.headers.getFirst(HttpHeaders.VARY));
+		assertArrayEquals(content, response.body());
+		assertTrue(!gzipETag.equals(response.headers.getETag()));
+
+		// 每种编码有自己的ETag
+		response = write(HttpMethod.GET, HttpHeaders.ACCEPT_ENCODING, "gzip", HttpHeaders.IF_NONE_MATCH, gzipETag);
+		assertEquals(HttpStatus.NOT_MODIFIED.value(), response.status);
+		response = write(HttpMethod.GET, HttpHeaders.IF_NONE_MATCH, gzipETag);
+		assertEquals(200, response.status);
+	}
+
+	@Test
+	public void sendfile() throws IOException {
+		writer.setMaxCacheContentLength(0);
+		writer.setSendfileThreshold(100);
+		Response response = write(new Response(true), HttpMethod.GET, HttpHeaders.RANGE, "bytes=100-299");
+		assertEquals(HttpStatus.PARTIAL_CONTENT.value(), response.status);
+		assertEquals(file, response.file);
+		assertEquals(100, response.position);
+		assertEquals(200, response.count);
+		assertEquals(0, response.body().length);
+
+		// 小于阈值或不支持时写入输出流
+		response = write(new Response(true), HttpMethod.GET, HttpHeaders.RANGE, "bytes=0-9");
+		assertNull(response.file);
+		assertArrayEquals(slice(content, 0, 9), response.body());
+
+		response = write(new Response(false), HttpMethod.GET, HttpHeaders.RANGE, "bytes=100-299");
+		assertNull(response.file);
+		assertArrayEquals(slice(content, 100, 299), response.body());
+	}
+
+	private static class Response implements SendfileServerHttpResponse {
+		private final boolean sendfileSupported;
+		private final HttpHeaders headers = new HttpHeaders();
+		private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		private int status = HttpStatus.OK.value();
+		private File file;
+		private long position;
+		private long count;
+
+		Response() {
+			this(false);
+		}
+
+		Response(boolean sendfileSupported) {
+			this.sendfileSupported = sendfileSupported;
+		}
+
+		byte[] body() {
+			return out.toByteArray();
+		}
+
+		public boolean sendfile(File file, long position, long count) {
+			if (!sendfileSupported) {
+				return false;
+			}
+
+			this.file = file;
+			this.position = position;
+			this.count = count;
+			return true;
+		}
+
+		public HttpHeaders getHeaders() {
+			return headers;
+		}
+
+		public OutputStream getOutputStream() {
+			return out;
+		}
+
+		public void addCookie(HttpCookie cookie) {
+		}
+
+		public void addCookie(String name, String value) {
+		}
+
+		public void sendError(int sc) {
+			status = sc;
+		}
+
+		public void sendError(int sc, String msg) {
+			status = sc;
+		}
+
+		public void sendRedirect(String location) {
+		}
+
+		public void setStatusCode(HttpStatus httpStatus) {
+			status = httpStatus.value();
+		}
+
+		public void setStatus(int sc) {
+			status = sc;
+		}
+
+		public int getStatus() {
+			return status;
+		}
+
+		public PrintWriter getWriter() {
+			return new PrintWriter(out);
+		}
+
+		public boolean isCommitted() {
+			return false;
+		}
+
+		public void flush() {
+		}
+
+		public void close() {
+		}
+	}
+}
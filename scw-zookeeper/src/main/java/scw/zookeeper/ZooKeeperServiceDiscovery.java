@@ -1,24 +1,72 @@
 package scw.zookeeper;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
 import org.apache.zookeeper.WatchedEvent;
 import org.apache.zookeeper.Watcher;
 import org.apache.zookeeper.ZooDefs;
 import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.Stat;
 
 import scw.cloud.ServiceInstance;
+import scw.cloud.ServiceInstanceSnapshot;
 import scw.cloud.SimpleDiscoveryClient;
 import scw.context.annotation.Provider;
 import scw.io.JavaSerializer;
 import scw.logger.Logger;
 import scw.logger.LoggerFactory;
 
+/**
+ * 使用zookeeper的服务发现<br/>
+ * 在服务目录和实例节点上设置watch(一次性的，触发后在刷新时重新设置)，收到事件后只标记变更，
+ * 在{@link #getCoalesceDelay()}后由一个线程合并刷新，只有新增或数据变化的节点才会重新读取和反序列化<br/>
+ * {@link #getInstances(String)}直接读取不可变快照
+ *
+ * @author shuchaowen
+ *
+ */
 @Provider(order=Integer.MIN_VALUE + 1)
 public class ZooKeeperServiceDiscovery extends SimpleDiscoveryClient<ServiceInstance> implements Watcher {
 	private static Logger logger = LoggerFactory.getLogger(ZooKeeperServiceDiscovery.class);
 	public static final String DEFAULT_PARENT_PATH = "/scw";
+	private static final String SERVICES = "";
 	private final ZooKeeper zooKeeper;
 	private final String parentPath;
+	private final ScheduledExecutorService executor;
+	private long coalesceDelay = 100;
+	private long retryDelay = 5000;
+
+	/**
+	 * 待刷新的服务，{@link #SERVICES}表示服务列表
+	 */
+	private final Set<String> pendingServices = ConcurrentHashMap.newKeySet();
+	/**
+	 * 数据发生变化的实例节点
+	 */
+	private final Set<String> changedPaths = ConcurrentHashMap.newKeySet();
+	private final AtomicBoolean scheduled = new AtomicBoolean(false);
+	/**
+	 * 已经在监听的服务，只在刷新线程中访问
+	 */
+	private final Map<String, Map<String, CachedInstance>> services = new HashMap<String, Map<String, CachedInstance>>();
+	private final Set<String> watchedServices = ConcurrentHashMap.newKeySet();
 
 	public ZooKeeperServiceDiscovery(ZooKeeper zooKeeper) {
 		this(zooKeeper, DEFAULT_PARENT_PATH);
@@ -27,19 +75,65 @@ public class ZooKeeperServiceDiscovery extends SimpleDiscoveryClient<ServiceInst
 	public ZooKeeperServiceDiscovery(ZooKeeper zooKeeper, String parentPath) {
 		this.zooKeeper = zooKeeper;
 		this.parentPath = ZooKeeperUtils.cleanPath(parentPath);
+		this.executor = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+			Thread thread = new Thread(runnable, ZooKeeperServiceDiscovery.class.getSimpleName());
+			thread.setDaemon(true);
+			return thread;
+		});
 		zooKeeper.register(this);
+		markChanged(SERVICES, null);
 	}
 
-	private ServiceInstance getInstanceInfo(String path) {
-		byte[] data = ZooKeeperUtils.getData(zooKeeper, path);
-		if (data != null && data.length != 0) {
+	public long getCoalesceDelay() {
+		return coalesceDelay;
+	}
+
+	/**
+	 * 合并变更的延迟(毫秒)，在此期间内的多次变更只会刷新一次
+	 *
+	 * @param coalesceDelay
+	 */
+	public void setCoalesceDelay(long coalesceDelay) {
+		this.coalesceDelay = coalesceDelay;
+	}
+
+	public long getRetryDelay() {
+		return retryDelay;
+	}
+
+	/**
+	 * 刷新失败后重试的延迟(毫秒)
+	 *
+	 * @param retryDelay
+	 */
+	public void setRetryDelay(long retryDelay) {
+		this.retryDelay = retryDelay;
+	}
+
+	@Override
+	public List<ServiceInstance> getInstances(String name) {
+		ServiceInstanceSnapshot<ServiceInstance> snapshot = getSnapshot(name);
+		if (snapshot == null && watchedServices.add(name)) {
+			// 第一次获取，同步加载一次
 			try {
-				return JavaSerializer.INSTANCE.deserialize(data);
-			} catch (ClassNotFoundException e) {
-				throw new RuntimeException(e);
+				executor.submit(() -> {
+					refreshService(name);
+					return null;
+				}).get(zooKeeper.getSessionTimeout(), TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (ExecutionException e) {
+				logger.error(e, "load service [{}] error", name);
+				markChanged(name, null);
+			} catch (TimeoutException e) {
+				logger.warn("load service [{}] timeout", name);
 			}
 		}
-		return null;
+		return super.getInstances(name);
+	}
+
+	private String getServicePath(String name) {
+		return ZooKeeperUtils.cleanPath(parentPath, name);
 	}
 
 	public void process(WatchedEvent event) {
@@ -48,21 +142,29 @@ public class ZooKeeperServiceDiscovery extends SimpleDiscoveryClient<ServiceInst
 		}
 
 		String eventPath = event.getPath();
-		if (eventPath == null || !eventPath.startsWith(parentPath)) {
+		if (eventPath == null) {
+			if (event.getState() == Event.KeeperState.SyncConnected) {
+				// 重新连接后全部刷新一次
+				markChanged(SERVICES, null);
+				for (String name : watchedServices) {
+					markChanged(name, null);
+				}
+			}
 			return;
 		}
 
-		ServiceInstance instance = getInstanceInfo(eventPath);
-		switch (event.getType()) {
-		case NodeDeleted:
-			super.deregister(instance);
-			break;
-		case NodeCreated:
-			super.register(instance);
-			break;
-		default:
-			super.register(instance);
-			break;
+		if (!eventPath.equals(parentPath) && !eventPath.startsWith(parentPath + ZooKeeperUtils.PATH_PREFIX)) {
+			return;
+		}
+
+		String relativePath = ZooKeeperUtils.cleanPath(eventPath.substring(parentPath.length()));
+		String[] names = relativePath.substring(1).split(ZooKeeperUtils.PATH_PREFIX);
+		if (names.length == 0 || names[0].length() == 0) {
+			markChanged(SERVICES, null);
+		} else if (names.length == 1) {
+			markChanged(names[0], null);
+		} else {
+			markChanged(names[0], event.getType() == Event.EventType.NodeDataChanged ? eventPath : null);
 		}
 
 		if (logger.isDebugEnabled()) {
@@ -70,14 +172,155 @@ public class ZooKeeperServiceDiscovery extends SimpleDiscoveryClient<ServiceInst
 		}
 	}
 
+	private void markChanged(String name, String changedPath) {
+		if (changedPath != null) {
+			changedPaths.add(changedPath);
+		}
+		pendingServices.add(name);
+		schedule(coalesceDelay);
+	}
+
+	private void schedule(long delay) {
+		if (!scheduled.get() && scheduled.compareAndSet(false, true)) {
+			executor.schedule(() -> refresh(), delay, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private void refresh() {
+		scheduled.set(false);
+		boolean retry = false;
+		Iterator<String> iterator = pendingServices.iterator();
+		while (iterator.hasNext()) {
+			String name = iterator.next();
+			iterator.remove();
+			try {
+				if (SERVICES.equals(name)) {
+					refreshServices();
+				} else {
+					refreshService(name);
+				}
+			} catch (Throwable e) {
+				logger.error(e, "refresh service [{}] error", name.length() == 0 ? parentPath : name);
+				pendingServices.add(name);
+				retry = true;
+			}
+		}
+
+		if (retry) {
+			schedule(retryDelay);
+		}
+	}
+
+	private void refreshServices() throws KeeperException, InterruptedException {
+		List<String> names;
+		try {
+			names = zooKeeper.getChildren(parentPath, this);
+		} catch (KeeperException.NoNodeException e) {
+			// 等待节点创建
+			zooKeeper.exists(parentPath, this);
+			return;
+		}
+
+		for (String name : names) {
+			if (!services.containsKey(name)) {
+				watchedServices.add(name);
+				refreshService(name);
+			}
+		}
+
+		Set<String> removed = new HashSet<String>(services.keySet());
+		removed.removeAll(names);
+		for (String name : removed) {
+			// 服务节点已经不存在了，确认一次
+			refreshService(name);
+		}
+	}
+
+	private void refreshService(String name) throws KeeperException, InterruptedException {
+		String servicePath = getServicePath(name);
+		List<String> ids;
+		try {
+			ids = zooKeeper.getChildren(servicePath, this);
+		} catch (KeeperException.NoNodeException e) {
+			// 保留一个空的快照并等待节点创建，避免每次获取都去查询
+			Map<String, CachedInstance> removed = services.remove(name);
+			if (removed != null) {
+				clearChanged(servicePath, removed.keySet());
+			}
+			zooKeeper.exists(servicePath, this);
+			replace(name, Collections.<ServiceInstance>emptyList());
+			return;
+		}
+
+		Map<String, CachedInstance> oldInstances = services.get(name);
+		Map<String, CachedInstance> instances = new HashMap<String, CachedInstance>(ids.size());
+		List<ServiceInstance> list = new ArrayList<ServiceInstance>(ids.size());
+		for (String id : ids) {
+			String path = ZooKeeperUtils.cleanPath(servicePath, id);
+			CachedInstance cached = oldInstances == null ? null : oldInstances.get(id);
+			// 无论是否使用缓存都要移除变更标记
+			boolean changed = changedPaths.remove(path);
+			if (cached == null || changed) {
+				cached = loadInstance(path);
+			}
+
+			if (cached != null) {
+				instances.put(id, cached);
+				if (cached.instance != null) {
+					list.add(cached.instance);
+				}
+			}
+		}
+
+		if (oldInstances != null) {
+			// 已经删除的节点
+			Set<String> removed = new HashSet<String>(oldInstances.keySet());
+			removed.removeAll(instances.keySet());
+			clearChanged(servicePath, removed);
+		}
+
+		services.put(name, instances);
+		ServiceInstanceSnapshot<ServiceInstance> snapshot = replace(name, list);
+		if (logger.isDebugEnabled()) {
+			logger.debug("refresh service: {}", snapshot);
+		}
+	}
+
+	private void clearChanged(String servicePath, Collection<String> ids) {
+		for (String id : ids) {
+			changedPaths.remove(ZooKeeperUtils.cleanPath(servicePath, id));
+		}
+	}
+
+	private CachedInstance loadInstance(String path) throws KeeperException, InterruptedException {
+		Stat stat = new Stat();
+		byte[] data;
+		try {
+			data = zooKeeper.getData(path, this, stat);
+		} catch (KeeperException.NoNodeException e) {
+			return null;
+		}
+
+		ServiceInstance instance = null;
+		if (data != null && data.length != 0) {
+			try {
+				instance = JavaSerializer.INSTANCE.deserialize(data);
+			} catch (Exception e) {
+				logger.error(e, "deserialize instance error: {}", path);
+			}
+		}
+		return new CachedInstance(instance);
+	}
+
 	public void register(ServiceInstance instance) {
 		if (instance.getName().indexOf("/") != -1 || instance.getId().indexOf("/") != -1) {
 			throw new IllegalArgumentException("The name or ID cannot have characters '/'");
 		}
 
 		byte[] data = JavaSerializer.INSTANCE.serialize(instance);
-		String rootPath = ZooKeeperUtils.cleanPath(parentPath, instance.getName());
-		ZooKeeperUtils.createNotExist(zooKeeper, rootPath, ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.EPHEMERAL);
+		// 临时节点不能有子节点，所以服务节点是持久的
+		String rootPath = getServicePath(instance.getName());
+		ZooKeeperUtils.createNotExist(zooKeeper, rootPath, ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
 		String path = ZooKeeperUtils.cleanPath(rootPath, instance.getId());
 		ZooKeeperUtils.createNotExist(zooKeeper, path, ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.EPHEMERAL);
 		ZooKeeperUtils.setData(zooKeeper, path, data);
@@ -89,4 +332,16 @@ public class ZooKeeperServiceDiscovery extends SimpleDiscoveryClient<ServiceInst
 		ZooKeeperUtils.delete(zooKeeper, path, -1);
 		super.deregister(instance);
 	}
+
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	private static final class CachedInstance {
+		private final ServiceInstance instance;
+
+		CachedInstance(ServiceInstance instance) {
+			this.instance = instance;
+		}
+	}
 }
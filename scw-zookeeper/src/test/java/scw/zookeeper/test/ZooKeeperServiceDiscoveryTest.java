@@ -0,0 +1,197 @@
+package scw.zookeeper.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.net.InetSocketAddress;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.Watcher.Event.KeeperState;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.Stat;
+import org.apache.zookeeper.server.ServerCnxnFactory;
+import org.apache.zookeeper.server.ZooKeeperServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import scw.cloud.DefaultServiceInstance;
+import scw.cloud.ServiceInstance;
+import scw.io.FileUtils;
+import scw.io.JavaSerializer;
+import scw.util.XUtils;
+import scw.zookeeper.ZooKeeperServiceDiscovery;
+
+public class ZooKeeperServiceDiscoveryTest {
+	private static final String PARENT_PATH = "/scw_test";
+
+	private File directory;
+	private ServerCnxnFactory factory;
+	private ZooKeeper zooKeeper;
+	private ZooKeeperServiceDiscovery discovery;
+	/**
+	 * 读取实例节点数据的次数
+	 */
+	private final AtomicInteger loads = new AtomicInteger();
+
+	@Before
+	public void before() throws Exception {
+		directory = new File(FileUtils.getTempDirectory(), "zookeeper_test_" + XUtils.getUUID());
+		directory.mkdirs();
+		ZooKeeperServer server = new ZooKeeperServer(directory, directory, 2000);
+		factory = ServerCnxnFactory.createFactory(new InetSocketAddress("127.0.0.1", 0), 16);
+		factory.startup(server);
+
+		CountDownLatch connected = new CountDownLatch(1);
+		zooKeeper = new ZooKeeper("127.0.0.1:" + factory.getLocalPort(), 10000, (event) -> {
+			if (event.getState() == KeeperState.SyncConnected) {
+				connected.countDown();
+			}
+		}) {
+			@Override
+			public byte[] getData(String path, Watcher watcher, Stat stat)
+					throws KeeperException, InterruptedException {
+				loads.incrementAndGet();
+				return super.getData(path, watcher, stat);
+			}
+		};
+		assertTrue(connected.await(10, TimeUnit.SECONDS));
+		zooKeeper.create(PARENT_PATH, new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+		zooKeeper.create(PARENT_PATH + "/service", new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+		discovery = new ZooKeeperServiceDiscovery(zooKeeper, PARENT_PATH);
+		discovery.setCoalesceDelay(50);
+	}
+
+	@After
+	public void after() throws Exception {
+		discovery.shutdown();
+		zooKeeper.close();
+		factory.shutdown();
+		FileUtils.deleteDirectory(directory);
+	}
+
+	private static DefaultServiceInstance instance(String id, int port) {
+		return new DefaultServiceInstance(id, "service", "127.0.0.1", port, false);
+	}
+
+	private static String path(String id) {
+		return PARENT_PATH + "/service/" + id;
+	}
+
+	/**
+	 * 直接在zookeeper中创建节点，不经过{@link ZooKeeperServiceDiscovery#register(ServiceInstance)}修改本地快照
+	 */
+	private void create(String id, int port) throws Exception {
+		zooKeeper.create(path(id), JavaSerializer.INSTANCE.serialize(instance(id, port)), ZooDefs.Ids.OPEN_ACL_UNSAFE,
+				CreateMode.EPHEMERAL);
+	}
+
+	private void setData(String id, int port) throws Exception {
+		zooKeeper.setData(path(id), JavaSerializer.INSTANCE.serialize(instance(id, port)), -1);
+	}
+
+	private List<ServiceInstance> await(int size, int port) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		List<ServiceInstance> instances;
+		do {
+			instances = discovery.getInstances("service");
+			if (instances.size() == size && (port == 0 || instances.get(0).getPort() == port)) {
+				return instances;
+			}
+			Thread.sleep(20);
+		} while (System.currentTimeMillis() < deadline);
+		return instances;
+	}
+
+	@SuppressWarnings("unchecked")
+	private Collection<String> getChangedPaths() throws Exception {
+		Field field = ZooKeeperServiceDiscovery.class.getDeclaredField("changedPaths");
+		field.setAccessible(true);
+		return (Collection<String>) field.get(discovery);
+	}
+
+	@Test
+	public void snapshot() throws Exception {
+		create("a", 1);
+		List<ServiceInstance> instances = await(1, 1);
+		assertEquals(1, instances.size());
+		// 没有变更时返回同一个快照
+		assertSame(instances, discovery.getInstances("service"));
+		long version = discovery.getSnapshot("service").getVersion();
+
+		// 新增的节点只读取新节点
+		int count = loads.get();
+		create("b", 2);
+		instances = await(2, 0);
+		assertEquals(2, instances.size());
+		assertEquals(count + 1, loads.get());
+		assertTrue(discovery.getSnapshot("service").getVersion() > version);
+
+		try {
+			instances.clear();
+			fail();
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+		assertEquals(2, discovery.getInstances("service").size());
+	}
+
+	@Test
+	public void coalesce() throws Exception {
+		create("a", 1);
+		create("b", 2);
+		List<ServiceInstance> old = await(2, 0);
+		assertEquals(2, old.size());
+		Thread.sleep(200);
+
+		// 合并延迟内的多次变更只刷新一次，只重新读取变更的节点
+		discovery.setCoalesceDelay(500);
+		int count = loads.get();
+		setData("a", 10);
+		Thread.sleep(100);
+		assertSame(old, discovery.getInstances("service"));
+		setData("a", 11);
+		long deadline = System.currentTimeMillis() + 10000;
+		ServiceInstance a = null;
+		while (System.currentTimeMillis() < deadline) {
+			a = discovery.getSnapshot("service").getInstance("a");
+			if (a.getPort() == 11) {
+				break;
+			}
+			Thread.sleep(20);
+		}
+		assertEquals(11, a.getPort());
+		assertEquals(count + 1, loads.get());
+		assertSame(old.get(1), discovery.getSnapshot("service").getInstance("b"));
+		assertTrue(getChangedPaths().isEmpty());
+	}
+
+	@Test
+	public void deleteAfterChange() throws Exception {
+		create("a", 1);
+		create("b", 2);
+		assertEquals(2, await(2, 0).size());
+		Thread.sleep(200);
+
+		// 节点在刷新前被删除，变更标记不能残留
+		discovery.setCoalesceDelay(500);
+		setData("a", 10);
+		zooKeeper.delete(path("a"), -1);
+		List<ServiceInstance> instances = await(1, 2);
+		assertEquals(1, instances.size());
+		assertEquals("b", instances.get(0).getId());
+		assertTrue(getChangedPaths().isEmpty());
+	}
+}